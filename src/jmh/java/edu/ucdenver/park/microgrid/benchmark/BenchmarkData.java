@@ -0,0 +1,85 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.message.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * BenchmarkData
+ * <p>
+ * class: static utility
+ * <p>
+ * builds the graphs, data and payloads the benchmarks share, so every benchmark measures the same inputs
+ *
+ * @author Jake Billings
+ */
+final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    static final MicrogridNode GENERATOR = new MicrogridNode("microgrid-node-a-g", MicrogridNodeType.GENERATOR);
+
+    static FloatMicrogridDatum makeFloatDatum() {
+        return new FloatMicrogridDatum(1525559622009L, GENERATOR, MicrogridFloatMeasurementType.VOLTAGE, -4994.55f);
+    }
+
+    static BooleanMicrogridDatum makeBooleanDatum() {
+        return new BooleanMicrogridDatum(1525559622009L, GENERATOR, MicrogridBooleanMeasurementType.FAULT, true);
+    }
+
+    /**
+     * makeGraph()
+     * <p>
+     * builds a chain of nodes (cycling through the node types) with a bus edge between neighbours
+     *
+     * @param nodeCount the number of nodes in the graph
+     * @return a graph with nodeCount nodes and nodeCount - 1 edges
+     */
+    static MicrogridGraph makeGraph(int nodeCount) {
+        Set<MicrogridNode> nodes = new HashSet<MicrogridNode>();
+        Set<MicrogridEdge> edges = new HashSet<MicrogridEdge>();
+        MicrogridNodeType[] types = MicrogridNodeType.values();
+        MicrogridNode previous = null;
+        for (int i = 0; i < nodeCount; i++) {
+            MicrogridNode node = new MicrogridNode("microgrid-node-bench-" + i, types[i % types.length]);
+            nodes.add(node);
+            if (previous != null) {
+                edges.add(new MicrogridEdge("microgrid-edge-bench-" + i, node, previous, MicrogridEdgeType.BUS));
+            }
+            previous = node;
+        }
+        return new MicrogridGraph("microgrid-graph-bench-" + nodeCount, edges, nodes);
+    }
+
+    /**
+     * externalize()
+     *
+     * @return o externalized the way messages used to be sent (ObjectOutputStream framing around writeExternal())
+     */
+    static byte[] externalize(Externalizable o) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        o.writeExternal(out);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * legacyEncode()
+     *
+     * @return m encoded the way messages used to be sent; MessageCodec.decode() still accepts these
+     */
+    static byte[] legacyEncode(Message m) throws IOException {
+        return externalize(m);
+    }
+}
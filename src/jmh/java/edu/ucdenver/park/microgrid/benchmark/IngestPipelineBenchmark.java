@@ -0,0 +1,106 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridFloatMeasurementType;
+import edu.ucdenver.park.microgrid.data.MicrogridGraph;
+import edu.ucdenver.park.microgrid.data.MicrogridMeasurementTypeRegistry;
+import edu.ucdenver.park.microgrid.data.MicrogridNode;
+import edu.ucdenver.park.microgrid.live.IngestPipeline;
+import edu.ucdenver.park.microgrid.live.LiveMicrogridGraph;
+import edu.ucdenver.park.microgrid.message.Message;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IngestPipelineBenchmark
+ * <p>
+ * class: JMH benchmark
+ * <p>
+ * messages per second MicrogridReceiverAgent's IngestPipeline decodes and applies with a given number of decode
+ * workers and apply shards: each invocation offers a burst of 64 row batches from SENDERS senders (each with its own
+ * dictionary) and waits until the pipeline is empty; compare with LiveMicrogridGraphBenchmark.ingest() for a single
+ * thread
+ *
+ * @author Jake Billings
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IngestPipelineBenchmark {
+    private static final int SENDERS = 16;
+    private static final int BURST = 256;
+
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    private IngestPipeline<Object> pipeline;
+    private String[] senders;
+    private byte[][] batches;
+
+    @Setup
+    public void setup() throws IOException {
+        MicrogridGraph graph = BenchmarkData.makeGraph(8);
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        live.receiveMessage(new MicrogridGraphMessage(graph, Long.MAX_VALUE));
+        List<MicrogridFloatMeasurementType> types = MicrogridMeasurementTypeRegistry.getInstance().getFloatTypes();
+
+        senders = new String[SENDERS];
+        batches = new byte[SENDERS][];
+        for (int s = 0; s < SENDERS; s++) {
+            senders[s] = "sender-" + s;
+            MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(1, graph);
+            List<MicrogridNode> nodes = dictionary.getNodes();
+            MicrogridDatum[] data = new MicrogridDatum[64];
+            int[] handles = new int[data.length];
+            for (int i = 0; i < data.length; i++) {
+                int channel = i % 32;
+                data[i] = new FloatMicrogridDatum(1525559622009L + (i / 32) * 100, nodes.get(channel % nodes.size()),
+                        types.get((channel / nodes.size()) % types.size()), i * 1.5f);
+                handles[i] = dictionary.addChannel(data[i]);
+            }
+            live.receiveMessage(senders[s], new MicrogridChannelDictionaryMessage(dictionary));
+            batches[s] = MessageCodec.encode(new MicrogridDatumBatchMessage(1, handles, data));
+        }
+
+        pipeline = new IngestPipeline<Object>(live, 1024, workers, workers, new IngestPipeline.Handler<Object>() {
+            public void onControl(Object context, String sender, Message message) {
+            }
+
+            public void onProcessed(Object context, String sender, long lagNanos, long processingNanos) {
+            }
+        });
+        pipeline.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pipeline.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int burst() {
+        for (int i = 0; i < BURST; i++) {
+            int s = i % SENDERS;
+            while (!pipeline.offer(null, senders[s], batches[s])) Thread.yield();
+        }
+        while (pipeline.size() > 0) Thread.yield();
+        return pipeline.size();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridFloatMeasurementType;
+import edu.ucdenver.park.microgrid.data.MicrogridGraph;
+import edu.ucdenver.park.microgrid.data.MicrogridMeasurementTypeRegistry;
+import edu.ucdenver.park.microgrid.data.MicrogridNode;
+import edu.ucdenver.park.microgrid.live.LiveMicrogridGraph;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LiveMicrogridGraphBenchmark
+ * <p>
+ * class: JMH benchmark
+ * <p>
+ * the receiver's work per message: decoding a 64 row batch (one sample of 32 channels at two instants) from its
+ * payload and ingesting it into a LiveMicrogridGraph; snapshot() adds the node snapshot the receiver's ticker builds
+ * (bursty senders ingest many batches per snapshot)
+ *
+ * @author Jake Billings
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LiveMicrogridGraphBenchmark {
+    private LiveMicrogridGraph live;
+    private byte[] batch;
+
+    @Setup
+    public void setup() throws IOException {
+        MicrogridGraph graph = BenchmarkData.makeGraph(8);
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(1, graph);
+        List<MicrogridNode> nodes = dictionary.getNodes();
+        List<MicrogridFloatMeasurementType> types = MicrogridMeasurementTypeRegistry.getInstance().getFloatTypes();
+
+        MicrogridDatum[] data = new MicrogridDatum[64];
+        int[] handles = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            int channel = i % 32;
+            data[i] = new FloatMicrogridDatum(1525559622009L + (i / 32) * 100, nodes.get(channel % nodes.size()),
+                    types.get((channel / nodes.size()) % types.size()), i * 1.5f);
+            handles[i] = dictionary.addChannel(data[i]);
+        }
+        batch = MessageCodec.encode(new MicrogridDatumBatchMessage(1, handles, data));
+
+        live = new LiveMicrogridGraph();
+        live.receiveMessage(new MicrogridGraphMessage(graph, Long.MAX_VALUE));
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(dictionary));
+    }
+
+    @Benchmark
+    public LiveMicrogridGraph ingest() throws IOException {
+        live.receiveMessage("sender", (MicrogridDatumBatchMessage) MessageCodec.decode(batch));
+        return live;
+    }
+
+    @Benchmark
+    public Object snapshot() throws IOException {
+        live.receiveMessage("sender", (MicrogridDatumBatchMessage) MessageCodec.decode(batch));
+        return live.getCurrentStateForAllNodes();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridGraph;
+import edu.ucdenver.park.microgrid.message.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageReadBenchmark
+ * <p>
+ * class: JMH benchmark
+ * <p>
+ * encodes and decodes every message type through MessageCodec, i.e. the complete Message.read() dispatch the
+ * receiver runs for each ACL message, plus the legacy object stream payloads MessageCodec still accepts
+ *
+ * @author Jake Billings
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageReadBenchmark {
+    @Param({"datum", "graph", "channelDatum", "dictionary", "batch", "compressedBatch", "encoding", "keepAlive", "request"})
+    public String messageType;
+
+    private Message message;
+    private byte[] encoded;
+    private byte[] legacy;
+
+    private final ByteBufferDataOutput out = new ByteBufferDataOutput(1024);
+
+    @Setup
+    public void setup() throws IOException {
+        message = makeMessage(messageType);
+        encoded = MessageCodec.encode(message);
+        legacy = BenchmarkData.legacyEncode(message);
+    }
+
+    /**
+     * makeMessage()
+     *
+     * @return a representative message of the given type (data come from a 10 node graph; batches hold 64 rows)
+     */
+    private static Message makeMessage(String messageType) {
+        MicrogridGraph graph = BenchmarkData.makeGraph(10);
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(1, graph);
+        MicrogridDatum[] data = new MicrogridDatum[64];
+        int[] handles = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i % 8 == 0 ? BenchmarkData.makeBooleanDatum() : BenchmarkData.makeFloatDatum();
+            handles[i] = i % 4;
+        }
+
+        if ("datum".equals(messageType)) return new MicrogridDatumMessage(data[1]);
+        if ("graph".equals(messageType)) return new MicrogridGraphMessage(graph, 8000);
+        if ("channelDatum".equals(messageType)) return new MicrogridChannelDatumMessage(1, 0, data[1]);
+        if ("dictionary".equals(messageType)) return new MicrogridChannelDictionaryMessage(dictionary);
+        if ("batch".equals(messageType)) return new MicrogridDatumBatchMessage(1, handles, data);
+        if ("compressedBatch".equals(messageType)) return new MicrogridDatumBatchMessage(1, handles, data, true);
+        if ("encoding".equals(messageType)) return new MicrogridEncodingMessage(MicrogridEncodingMessage.SUPPORTED);
+        if ("keepAlive".equals(messageType)) return new MicrogridGraphKeepAliveMessage(graph.get_id(), graph.getContentHash(), 1, 8000);
+        if ("request".equals(messageType)) return new MicrogridGraphRequestMessage(graph.get_id());
+        throw new IllegalArgumentException("unknown message type " + messageType);
+    }
+
+    @Benchmark
+    public Message decode() throws IOException {
+        return MessageCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public Message decodeLegacy() throws IOException {
+        return MessageCodec.decode(legacy);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        out.reset();
+        MessageCodec.encode(message, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public byte[] encodeToByteArray() throws IOException {
+        return MessageCodec.encode(message);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * MicrogridBenchmarks
+ * <p>
+ * class: main
+ * <p>
+ * runs the JMH benchmarks (mvn -P jmh package; java -jar target/benchmarks.jar [JMH options])
+ * <p>
+ * Always adds the GC profiler so that every result reports gc.alloc.rate.norm (bytes allocated per op) next to ops/s.
+ *
+ * @author Jake Billings
+ */
+public class MicrogridBenchmarks {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
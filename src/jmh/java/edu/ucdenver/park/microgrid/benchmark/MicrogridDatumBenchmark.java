@@ -0,0 +1,125 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import edu.ucdenver.park.microgrid.data.BooleanMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.message.ByteBufferDataInput;
+import edu.ucdenver.park.microgrid.message.ByteBufferDataOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MicrogridDatumBenchmark
+ * <p>
+ * class: JMH benchmark
+ * <p>
+ * encodes and decodes a single FloatMicrogridDatum/BooleanMicrogridDatum
+ * writeExternal/readExternal go through an ObjectOutputStream/ObjectInputStream (the legacy path, including the
+ * stream setup every message used to pay for); write/read use the reusable ByteBuffer streams MessageCodec uses
+ *
+ * @author Jake Billings
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MicrogridDatumBenchmark {
+    private FloatMicrogridDatum floatDatum;
+    private BooleanMicrogridDatum booleanDatum;
+
+    private byte[] externalizedFloat;
+    private byte[] externalizedBoolean;
+    private byte[] encodedFloat;
+    private byte[] encodedBoolean;
+
+    private final ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+    private final ByteBufferDataOutput out = new ByteBufferDataOutput(256);
+
+    @Setup
+    public void setup() throws IOException {
+        floatDatum = BenchmarkData.makeFloatDatum();
+        booleanDatum = BenchmarkData.makeBooleanDatum();
+        externalizedFloat = BenchmarkData.externalize(floatDatum);
+        externalizedBoolean = BenchmarkData.externalize(booleanDatum);
+        out.reset();
+        floatDatum.write(out);
+        encodedFloat = out.toByteArray();
+        out.reset();
+        booleanDatum.write(out);
+        encodedBoolean = out.toByteArray();
+    }
+
+    //----Float----
+    @Benchmark
+    public int floatWriteExternal() throws IOException {
+        baos.reset();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        floatDatum.writeExternal(oos);
+        oos.flush();
+        return baos.size();
+    }
+
+    @Benchmark
+    public FloatMicrogridDatum floatReadExternal() throws IOException, ClassNotFoundException {
+        FloatMicrogridDatum datum = new FloatMicrogridDatum();
+        datum.readExternal(new ObjectInputStream(new ByteArrayInputStream(externalizedFloat)));
+        return datum;
+    }
+
+    @Benchmark
+    public int floatWrite() throws IOException {
+        out.reset();
+        floatDatum.write(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public FloatMicrogridDatum floatRead() throws IOException {
+        FloatMicrogridDatum datum = new FloatMicrogridDatum();
+        datum.read(new ByteBufferDataInput(ByteBuffer.wrap(encodedFloat)));
+        return datum;
+    }
+
+    //----Boolean----
+    @Benchmark
+    public int booleanWriteExternal() throws IOException {
+        baos.reset();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        booleanDatum.writeExternal(oos);
+        oos.flush();
+        return baos.size();
+    }
+
+    @Benchmark
+    public BooleanMicrogridDatum booleanReadExternal() throws IOException, ClassNotFoundException {
+        BooleanMicrogridDatum datum = new BooleanMicrogridDatum();
+        datum.readExternal(new ObjectInputStream(new ByteArrayInputStream(externalizedBoolean)));
+        return datum;
+    }
+
+    @Benchmark
+    public int booleanWrite() throws IOException {
+        out.reset();
+        booleanDatum.write(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public BooleanMicrogridDatum booleanRead() throws IOException {
+        BooleanMicrogridDatum datum = new BooleanMicrogridDatum();
+        datum.read(new ByteBufferDataInput(ByteBuffer.wrap(encodedBoolean)));
+        return datum;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import edu.ucdenver.park.microgrid.data.MicrogridGraph;
+import edu.ucdenver.park.microgrid.message.ByteBufferDataInput;
+import edu.ucdenver.park.microgrid.message.ByteBufferDataOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MicrogridGraphBenchmark
+ * <p>
+ * class: JMH benchmark
+ * <p>
+ * encodes and decodes MicrogridGraphs of several sizes (see BenchmarkData.makeGraph()), through an object stream
+ * (writeExternal/readExternal) and through MessageCodec's ByteBuffer streams (write/read)
+ *
+ * @author Jake Billings
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MicrogridGraphBenchmark {
+    @Param({"10", "100", "1000"})
+    public int nodeCount;
+
+    private MicrogridGraph graph;
+    private byte[] externalized;
+    private byte[] encoded;
+
+    private final ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+    private final ByteBufferDataOutput out = new ByteBufferDataOutput(1024);
+
+    @Setup
+    public void setup() throws IOException {
+        graph = BenchmarkData.makeGraph(nodeCount);
+        externalized = BenchmarkData.externalize(graph);
+        out.reset();
+        graph.write(out);
+        encoded = out.toByteArray();
+    }
+
+    @Benchmark
+    public int writeExternal() throws IOException {
+        baos.reset();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        graph.writeExternal(oos);
+        oos.flush();
+        return baos.size();
+    }
+
+    @Benchmark
+    public MicrogridGraph readExternal() throws IOException, ClassNotFoundException {
+        MicrogridGraph g = new MicrogridGraph();
+        g.readExternal(new ObjectInputStream(new ByteArrayInputStream(externalized)));
+        return g;
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        out.reset();
+        graph.write(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public MicrogridGraph read() throws IOException {
+        MicrogridGraph g = new MicrogridGraph();
+        g.read(new ByteBufferDataInput(ByteBuffer.wrap(encoded)));
+        return g;
+    }
+}
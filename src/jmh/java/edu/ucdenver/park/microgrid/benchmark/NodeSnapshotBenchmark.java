@@ -0,0 +1,82 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridFloatMeasurementType;
+import edu.ucdenver.park.microgrid.data.MicrogridGraph;
+import edu.ucdenver.park.microgrid.data.MicrogridMeasurementTypeRegistry;
+import edu.ucdenver.park.microgrid.data.MicrogridNode;
+import edu.ucdenver.park.microgrid.live.LiveMicrogridGraph;
+import edu.ucdenver.park.microgrid.live.MicrogridNodeSnapshot;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NodeSnapshotBenchmark
+ * <p>
+ * class: JMH benchmark
+ * <p>
+ * reading node snapshots from a LiveMicrogridGraph that holds the latest value of MEASUREMENTS_PER_NODE channels at
+ * each of nodes nodes: oneNode() is the snapshot a client polling one node gets, allNodes() the one the receiver's
+ * ticker builds. Compare nodes=100 with nodes=10000 to see how the cost of a snapshot grows with the grid.
+ *
+ * @author Jake Billings
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NodeSnapshotBenchmark {
+    private static final int MEASUREMENTS_PER_NODE = 4;
+
+    @Param({"100", "10000"})
+    public int nodes;
+
+    private LiveMicrogridGraph live;
+    private MicrogridNode node;
+
+    @Setup
+    public void setup() {
+        MicrogridGraph graph = BenchmarkData.makeGraph(nodes);
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(1, graph);
+        List<MicrogridNode> dictionaryNodes = dictionary.getNodes();
+        List<MicrogridFloatMeasurementType> types = MicrogridMeasurementTypeRegistry.getInstance().getFloatTypes();
+
+        MicrogridDatum[] data = new MicrogridDatum[nodes * MEASUREMENTS_PER_NODE];
+        int[] handles = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new FloatMicrogridDatum(1525559622009L, dictionaryNodes.get(i / MEASUREMENTS_PER_NODE),
+                    types.get(i % MEASUREMENTS_PER_NODE % types.size()), i * 1.5f);
+            handles[i] = dictionary.addChannel(data[i]);
+        }
+
+        live = new LiveMicrogridGraph();
+        live.receiveMessage(new MicrogridGraphMessage(graph, Long.MAX_VALUE));
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(dictionary));
+        live.receiveMessage("sender", new MicrogridDatumBatchMessage(1, handles, data));
+        node = dictionaryNodes.get(nodes / 2);
+    }
+
+    @Benchmark
+    public MicrogridNodeSnapshot oneNode() {
+        return live.getCurrentNodeState(node);
+    }
+
+    @Benchmark
+    public Set<MicrogridNodeSnapshot> allNodes() {
+        return live.getCurrentStateForAllNodes();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.benchmark;
+
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.message.ByteBufferDataOutput;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SenderEncodeBenchmark
+ * <p>
+ * class: JMH benchmark
+ * <p>
+ * the work MicrogridSenderAgent.sendDatum() does to turn one datum into an ACLMessage payload, from the original
+ * object stream encoding to the reused encode buffer (compare gc.alloc.rate.norm and gc.count)
+ *
+ * @author Jake Billings
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SenderEncodeBenchmark {
+    private FloatMicrogridDatum datum;
+
+    private final ByteBufferDataOutput encodeBuffer = new ByteBufferDataOutput(1024);
+
+    @Setup
+    public void setup() {
+        datum = BenchmarkData.makeFloatDatum();
+    }
+
+    /**
+     * objectStream()
+     * <p>
+     * the original sender: a MicrogridDatumMessage written through a new ObjectOutputStream
+     */
+    @Benchmark
+    public byte[] objectStream() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        new MicrogridDatumMessage(datum).writeExternal(out);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * channelDatumMessage()
+     * <p>
+     * a MicrogridChannelDatumMessage encoded into a new buffer by MessageCodec.encode()
+     */
+    @Benchmark
+    public byte[] channelDatumMessage() throws IOException {
+        return MessageCodec.encode(new MicrogridChannelDatumMessage(1, 0, datum));
+    }
+
+    /**
+     * reusedBuffer()
+     * <p>
+     * the current sender: the datum encoded straight into a reused buffer; only the payload copy is allocated
+     */
+    @Benchmark
+    public byte[] reusedBuffer() throws IOException {
+        encodeBuffer.reset();
+        MessageCodec.encodeChannelDatum(encodeBuffer, 1, 0, datum);
+        return encodeBuffer.toByteArray();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import edu.ucdenver.park.microgrid.message.MicrogridRateControlMessage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BackpressureController
+ * <p>
+ * class
+ * <p>
+ * thread safe
+ * <p>
+ * Decides how much each sender must throttle itself so that MicrogridReceiverAgent keeps up. The receiver reports the
+ * depth of its incoming message queue, how long each message waited in it (the lag) and how long processing it took;
+ * once per control period, tick() turns these into a pressure level between 0 (normal) and MAX_LEVEL:
+ * the level goes up one step for every period the queue was more than half full or the lag exceeded maxLagMillis (and
+ * straight to MAX_LEVEL if the queue overflowed), and down one step after RECOVERY_PERIODS calm periods in a row.
+ * <p>
+ * Senders that cost the receiver at least their fair share of processing time get the full level; the others one step
+ * less, so a single chatty sender is throttled before the rest (senders that sent nothing in a period are not
+ * throttled more than before). Each level doubles the deadbands of the senders and the least time between two samples
+ * of a channel (see controlFor()), so overload lowers resolution instead of losing random messages. Only senders that
+ * offered MicrogridEncodingMessage.RATE_CONTROL are controlled.
+ *
+ * @author Jake Billings
+ */
+public class BackpressureController {
+    /**
+     * MAX_LEVEL
+     * <p>
+     * int
+     * <p>
+     * the highest pressure level: deadbands times 16 and one sample per channel every 800 ms
+     */
+    public static final int MAX_LEVEL = 4;
+
+    /**
+     * RECOVERY_PERIODS
+     * <p>
+     * int
+     * <p>
+     * the number of calm control periods in a row before the level goes down a step
+     */
+    public static final int RECOVERY_PERIODS = 3;
+
+    /**
+     * BASE_INTERVAL_MILLIS
+     * <p>
+     * int
+     * <p>
+     * the least time between two samples of a channel at level 1 (doubled at every further level)
+     */
+    private static final int BASE_INTERVAL_MILLIS = 100;
+
+    private final int queueCapacity;
+    private final long maxLagNanos;
+
+    //Measurements of the current control period
+    private int maxDepth;
+    private long maxLag;
+    private boolean overflowed;
+    private final Map<String, Long> processingNanos = new HashMap<String, Long>();
+
+    private int level;
+    private int calmPeriods;
+
+    /**
+     * controllable
+     * <p>
+     * Set of String
+     * <p>
+     * the senders that offered MicrogridEncodingMessage.RATE_CONTROL
+     */
+    private final Set<String> controllable = new HashSet<String>();
+
+    /**
+     * sentLevels
+     * <p>
+     * Map String, Integer
+     * <p>
+     * the level each controllable sender was last told (senders never told are at level 0)
+     */
+    private final Map<String, Integer> sentLevels = new HashMap<String, Integer>();
+
+    /**
+     * BackpressureController()
+     * <p>
+     * constructor
+     *
+     * @param queueCapacity the capacity of the receiver's incoming message queue
+     * @param maxLagMillis  the longest a message should wait in the queue
+     */
+    public BackpressureController(int queueCapacity, long maxLagMillis) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity cannot be less than 1 when creating a BackpressureController");
+        if (maxLagMillis < 1) throw new IllegalArgumentException("maxLagMillis cannot be less than 1 when creating a BackpressureController");
+        this.queueCapacity = queueCapacity;
+        this.maxLagNanos = maxLagMillis * 1000000L;
+    }
+
+    /**
+     * setControllable()
+     * <p>
+     * called whenever a sender offers its encodings; the sender forgets any rate control then, so it is back at level 0
+     *
+     * @param sender       the name of a sender
+     * @param controllable whether the sender offered MicrogridEncodingMessage.RATE_CONTROL
+     */
+    public synchronized void setControllable(String sender, boolean controllable) {
+        if (controllable) {
+            this.controllable.add(sender);
+        } else {
+            this.controllable.remove(sender);
+        }
+        sentLevels.remove(sender);
+    }
+
+    /**
+     * onQueued()
+     *
+     * @param depth the depth of the incoming message queue after a message was added
+     */
+    public synchronized void onQueued(int depth) {
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /**
+     * onOverflow()
+     * <p>
+     * the incoming message queue was full and a message was dropped
+     */
+    public synchronized void onOverflow() {
+        overflowed = true;
+    }
+
+    /**
+     * onProcessed()
+     *
+     * @param sender          the name of the agent that sent the message
+     * @param lagNanos        how long the message waited in the incoming message queue
+     * @param processingNanos how long processing it took
+     */
+    public synchronized void onProcessed(String sender, long lagNanos, long processingNanos) {
+        maxLag = Math.max(maxLag, lagNanos);
+        Long total = this.processingNanos.get(sender);
+        this.processingNanos.put(sender, (total == null ? 0 : total) + processingNanos);
+    }
+
+    /**
+     * tick()
+     * <p>
+     * ends the current control period: updates the level and starts a new period
+     *
+     * @return the controllable senders whose level changed, with the message to send each of them
+     */
+    public synchronized Map<String, MicrogridRateControlMessage> tick() {
+        boolean overloaded = overflowed || maxDepth * 2 > queueCapacity || maxLag > maxLagNanos;
+        boolean calm = maxDepth * 10 <= queueCapacity && maxLag * 4 <= maxLagNanos;
+        if (overflowed) {
+            level = MAX_LEVEL;
+            calmPeriods = 0;
+        } else if (overloaded) {
+            level = Math.min(level + 1, MAX_LEVEL);
+            calmPeriods = 0;
+        } else if (calm && level > 0) {
+            if (++calmPeriods >= RECOVERY_PERIODS) {
+                level--;
+                calmPeriods = 0;
+            }
+        } else {
+            calmPeriods = 0;
+        }
+
+        //Fair share of the processing time among the controllable senders
+        long total = 0;
+        for (String sender : controllable) {
+            Long nanos = processingNanos.get(sender);
+            if (nanos != null) total += nanos;
+        }
+        Map<String, MicrogridRateControlMessage> changes = new LinkedHashMap<String, MicrogridRateControlMessage>();
+        for (String sender : controllable) {
+            Long nanos = processingNanos.get(sender);
+            Integer sent = sentLevels.get(sender);
+            int senderLevel;
+            if (nanos == null) {
+                //Idle this period: never throttled more than before
+                senderLevel = Math.min(sent == null ? 0 : sent, level);
+            } else {
+                senderLevel = nanos * controllable.size() >= total ? level : Math.max(level - 1, 0);
+            }
+            if ((sent == null ? 0 : sent) != senderLevel) {
+                sentLevels.put(sender, senderLevel);
+                changes.put(sender, controlFor(senderLevel));
+            }
+        }
+
+        maxDepth = 0;
+        maxLag = 0;
+        overflowed = false;
+        processingNanos.clear();
+        return changes;
+    }
+
+    /**
+     * controlFor()
+     *
+     * @param level a pressure level
+     * @return the rate control message for senders at that level
+     */
+    public static MicrogridRateControlMessage controlFor(int level) {
+        if (level < 0 || level > MAX_LEVEL) throw new IllegalArgumentException("level must be between 0 and " + MAX_LEVEL);
+        if (level == 0) return new MicrogridRateControlMessage(0, 1f);
+        return new MicrogridRateControlMessage(BASE_INTERVAL_MILLIS << (level - 1), 1 << level);
+    }
+
+    //----Getters----
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    /**
+     * getLevel()
+     *
+     * @param sender the name of a sender
+     * @return the level the sender was last told
+     */
+    public synchronized int getLevel(String sender) {
+        Integer sent = sentLevels.get(sender);
+        return sent == null ? 0 : sent;
+    }
+}
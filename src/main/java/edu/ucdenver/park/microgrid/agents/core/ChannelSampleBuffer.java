@@ -0,0 +1,135 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
+
+/**
+ * ChannelSampleBuffer
+ * <p>
+ * class
+ * <p>
+ * mutable, not thread safe (MicrogridSenderAgent guards its buffers with a lock)
+ * <p>
+ * Preallocated columns of samples referred to by channel handle, for MicrogridSenderAgent.sendFloat() and
+ * sendBoolean(). Appending a sample stores a handle, a timestamp and a value in the columns, so no datum, _id string or
+ * payload is created per sample. The sender turns the buffered samples into one MicrogridDatumBatchMessage when it
+ * dispatches (see toBatchMessage()) and clears the buffer.
+ * <p>
+ * All samples in the buffer must refer to the same dictionary version; append() refuses samples of another version
+ * (and samples once the buffer is full) so the caller can flush first.
+ *
+ * @author Jake Billings
+ */
+public class ChannelSampleBuffer {
+    private int dictionaryVersion = -1;
+    private int size;
+
+    //Columns; row i is (channelHandles[i], timestamps[i], isBooleanValues[i], floatValues[i] or booleanValues[i])
+    private final int[] channelHandles;
+    private final long[] timestamps;
+    private final boolean[] isBooleanValues;
+    private final float[] floatValues;
+    private final boolean[] booleanValues;
+
+    /**
+     * ChannelSampleBuffer()
+     * <p>
+     * constructor
+     *
+     * @param capacity the most samples the buffer holds (at most MicrogridDatumBatchMessage.MAX_SIZE)
+     */
+    public ChannelSampleBuffer(int capacity) {
+        if (capacity < 1 || capacity > MicrogridDatumBatchMessage.MAX_SIZE) throw new IllegalArgumentException("capacity must be between 1 and " + MicrogridDatumBatchMessage.MAX_SIZE + " when creating a ChannelSampleBuffer");
+        this.channelHandles = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.isBooleanValues = new boolean[capacity];
+        this.floatValues = new float[capacity];
+        this.booleanValues = new boolean[capacity];
+    }
+
+    /**
+     * append()
+     *
+     * @param dictionaryVersion the version of the dictionary channelHandle was assigned in
+     * @param channelHandle     the handle of the sample's channel
+     * @param timestamp         the time the sample was taken
+     * @param value             the sample
+     * @return false if the buffer is full or holds samples of another dictionary version (nothing was appended)
+     */
+    public boolean append(int dictionaryVersion, int channelHandle, long timestamp, float value) {
+        if (!accepts(dictionaryVersion)) return false;
+        channelHandles[size] = channelHandle;
+        timestamps[size] = timestamp;
+        isBooleanValues[size] = false;
+        floatValues[size] = value;
+        booleanValues[size] = false;
+        size++;
+        return true;
+    }
+
+    /**
+     * append()
+     *
+     * @param dictionaryVersion the version of the dictionary channelHandle was assigned in
+     * @param channelHandle     the handle of the sample's channel
+     * @param timestamp         the time the sample was taken
+     * @param value             the sample
+     * @return false if the buffer is full or holds samples of another dictionary version (nothing was appended)
+     */
+    public boolean append(int dictionaryVersion, int channelHandle, long timestamp, boolean value) {
+        if (!accepts(dictionaryVersion)) return false;
+        channelHandles[size] = channelHandle;
+        timestamps[size] = timestamp;
+        isBooleanValues[size] = true;
+        floatValues[size] = 0f;
+        booleanValues[size] = value;
+        size++;
+        return true;
+    }
+
+    private boolean accepts(int dictionaryVersion) {
+        if (size == 0) this.dictionaryVersion = dictionaryVersion;
+        return size < channelHandles.length && this.dictionaryVersion == dictionaryVersion;
+    }
+
+    /**
+     * toBatchMessage()
+     *
+     * @param compressed true to use the compressed encoding (only if the receiver agreed to XOR_FLOATS)
+     * @return a batch of the buffered samples (the buffer isn't cleared)
+     */
+    public MicrogridDatumBatchMessage toBatchMessage(boolean compressed) {
+        return new MicrogridDatumBatchMessage(dictionaryVersion, size, channelHandles, timestamps, isBooleanValues,
+                floatValues, booleanValues, compressed);
+    }
+
+    /**
+     * clear()
+     * <p>
+     * discards the buffered samples
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    //----Getters----
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return channelHandles.length;
+    }
+
+    /**
+     * getDictionaryVersion()
+     *
+     * @return the dictionary version of the buffered samples (only meaningful if size() is not 0)
+     */
+    public int getDictionaryVersion() {
+        return dictionaryVersion;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * ConflatingSendQueue
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * the send queue of MicrogridSenderAgent; a FIFO queue with two kinds of items:
+ * <p>
+ * required items (graph, dictionary and other control messages; see add()) are never dropped
+ * <p>
+ * data items (see offer()) may carry a conflation key, e.g. the _id of the measurement they carry. A newer data item
+ * replaces a queued item with the same key (in its place in the queue), so there is at most one pending item per key.
+ * If there are more than capacity data items, the oldest one is dropped. Under overload, we therefore send the latest
+ * value of every channel instead of discarding the whole queue.
+ * <p>
+ * The queue also measures how long items wait in it (from the time they, or the value that replaced them, were
+ * queued until they are polled).
+ *
+ * @author Jake Billings
+ */
+public class ConflatingSendQueue<T> {
+    /**
+     * Entry
+     * <p>
+     * one queued item; conflation replaces item in place
+     */
+    private static final class Entry<T> {
+        private final String key;
+        private final boolean required;
+        private T item;
+        private long queuedNanos;
+        private final long firstQueuedNanos;
+
+        private Entry(String key, boolean required, T item) {
+            this.key = key;
+            this.required = required;
+            this.item = item;
+            this.queuedNanos = System.nanoTime();
+            this.firstQueuedNanos = queuedNanos;
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Entry<T>> entries = new ArrayDeque<Entry<T>>();
+    private final Map<String, Entry<T>> entriesByKey = new HashMap<String, Entry<T>>();
+    private int dataCount;
+
+    private long conflatedCount;
+    private long droppedCount;
+    private long polledCount;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    /**
+     * ConflatingSendQueue()
+     * <p>
+     * constructor
+     *
+     * @param capacity the most data items to hold (required items don't count)
+     */
+    public ConflatingSendQueue(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive when creating a ConflatingSendQueue");
+        this.capacity = capacity;
+    }
+
+    /**
+     * add()
+     * <p>
+     * queues a required item; required items are never conflated or dropped
+     *
+     * @param item the item to queue
+     */
+    public synchronized void add(T item) {
+        entries.addLast(new Entry<T>(null, true, item));
+    }
+
+    /**
+     * offer()
+     * <p>
+     * queues a data item, replacing the pending item with the same key if there is one; if that makes the queue hold
+     * more than capacity data items, the oldest data item is dropped
+     *
+     * @param key  the conflation key (e.g. a datum _id) or null if the item must not be conflated
+     * @param item the item to queue
+     */
+    public synchronized void offer(String key, T item) {
+        if (key != null) {
+            Entry<T> pending = entriesByKey.get(key);
+            if (pending != null) {
+                pending.item = item;
+                pending.queuedNanos = System.nanoTime();
+                conflatedCount++;
+                return;
+            }
+        }
+        Entry<T> entry = new Entry<T>(key, false, item);
+        entries.addLast(entry);
+        if (key != null) entriesByKey.put(key, entry);
+        if (++dataCount > capacity) dropOldestData();
+    }
+
+    private void dropOldestData() {
+        Iterator<Entry<T>> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Entry<T> entry = iterator.next();
+            if (!entry.required) {
+                iterator.remove();
+                forget(entry);
+                droppedCount++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * poll()
+     *
+     * @return the item at the head of the queue or null if the queue is empty
+     */
+    public synchronized T poll() {
+        Entry<T> entry = entries.pollFirst();
+        if (entry == null) return null;
+        if (!entry.required) forget(entry);
+        long latencyNanos = System.nanoTime() - entry.queuedNanos;
+        polledCount++;
+        totalLatencyNanos += latencyNanos;
+        if (latencyNanos > maxLatencyNanos) maxLatencyNanos = latencyNanos;
+        return entry.item;
+    }
+
+    private void forget(Entry<T> entry) {
+        dataCount--;
+        if (entry.key != null) entriesByKey.remove(entry.key);
+    }
+
+    //----Getters----
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * getOldestWaitNanos()
+     *
+     * @return how long the item at the head of the queue has been waiting (its place in the queue, not its value,
+     * which conflation may have replaced since), or -1 if the queue is empty
+     */
+    public synchronized long getOldestWaitNanos() {
+        Entry<T> head = entries.peekFirst();
+        return head == null ? -1 : System.nanoTime() - head.firstQueuedNanos;
+    }
+
+    /**
+     * getConflatedCount()
+     *
+     * @return the number of data items that replaced a pending item with the same key
+     */
+    public synchronized long getConflatedCount() {
+        return conflatedCount;
+    }
+
+    /**
+     * getPolledCount()
+     *
+     * @return the number of items polled so far
+     */
+    public synchronized long getPolledCount() {
+        return polledCount;
+    }
+
+    /**
+     * getMeanLatencyNanos()
+     *
+     * @return the mean time polled items waited in the queue (0 if none were polled)
+     */
+    public synchronized long getMeanLatencyNanos() {
+        return polledCount == 0 ? 0 : totalLatencyNanos / polledCount;
+    }
+
+    /**
+     * getMaxLatencyNanos()
+     *
+     * @return the longest time a polled item waited in the queue
+     */
+    public synchronized long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * getDroppedCount()
+     *
+     * @return the number of data items dropped because the queue was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+}
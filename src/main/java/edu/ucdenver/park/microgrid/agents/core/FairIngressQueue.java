@@ -0,0 +1,220 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FairIngressQueue
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * the incoming message queue of MicrogridReceiverAgent: one FIFO queue per sender, drained round robin
+ * <p>
+ * poll() takes one item from each sender with queued items in turn, so a sender that floods us only delays its own
+ * messages. Like ConflatingSendQueue, there are required items (graph, dictionary and other control messages), which
+ * are never dropped, and data items: if a sender has more than capacity data items queued, its oldest data item is
+ * dropped. Under overload, a chatty sender thus loses its own stale data instead of everybody's.
+ * <p>
+ * The queue counts, per sender, the items queued and dropped and how long polled items waited.
+ *
+ * @author Jake Billings
+ */
+public class FairIngressQueue<T> {
+    /**
+     * Entry
+     * <p>
+     * one queued item
+     */
+    private static final class Entry<T> {
+        private final T item;
+        private final boolean required;
+        private final long queuedNanos;
+
+        private Entry(T item, boolean required) {
+            this.item = item;
+            this.required = required;
+            this.queuedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * SenderQueue
+     * <p>
+     * the queued items and counters of one sender
+     */
+    private static final class SenderQueue<T> {
+        private final ArrayDeque<Entry<T>> entries = new ArrayDeque<Entry<T>>();
+        private int dataCount;
+        private boolean active;
+
+        private long droppedCount;
+        private long polledCount;
+        private long totalLagNanos;
+        private long maxLagNanos;
+    }
+
+    private final int capacity;
+    private final Map<String, SenderQueue<T>> queues = new HashMap<String, SenderQueue<T>>();
+
+    /**
+     * active
+     * <p>
+     * ArrayDeque of SenderQueue
+     * <p>
+     * the senders with queued items, in the order poll() serves them
+     */
+    private final ArrayDeque<SenderQueue<T>> active = new ArrayDeque<SenderQueue<T>>();
+    private int size;
+    private long droppedCount;
+
+    /**
+     * FairIngressQueue()
+     * <p>
+     * constructor
+     *
+     * @param capacity the most data items to hold per sender (required items don't count)
+     */
+    public FairIngressQueue(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive when creating a FairIngressQueue");
+        this.capacity = capacity;
+    }
+
+    /**
+     * offer()
+     * <p>
+     * queues an item of sender; if that makes sender hold more than capacity data items, its oldest data item is
+     * dropped
+     *
+     * @param sender   the name of the agent that sent item
+     * @param item     the item to queue
+     * @param required whether item must never be dropped
+     * @return whether a data item of sender was dropped to make room
+     */
+    public synchronized boolean offer(String sender, T item, boolean required) {
+        SenderQueue<T> queue = queues.get(sender);
+        if (queue == null) {
+            queue = new SenderQueue<T>();
+            queues.put(sender, queue);
+        }
+        queue.entries.addLast(new Entry<T>(item, required));
+        size++;
+        if (!queue.active) {
+            queue.active = true;
+            active.addLast(queue);
+        }
+        if (required || ++queue.dataCount <= capacity) return false;
+        Iterator<Entry<T>> iterator = queue.entries.iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().required) {
+                iterator.remove();
+                queue.dataCount--;
+                queue.droppedCount++;
+                droppedCount++;
+                size--;
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * poll()
+     *
+     * @return the oldest item of the next sender in turn or null if the queue is empty
+     */
+    public synchronized T poll() {
+        SenderQueue<T> queue = active.pollFirst();
+        if (queue == null) return null;
+        Entry<T> entry = queue.entries.pollFirst();
+        if (queue.entries.isEmpty()) {
+            queue.active = false;
+        } else {
+            active.addLast(queue);
+        }
+        if (!entry.required) queue.dataCount--;
+        size--;
+        long lagNanos = System.nanoTime() - entry.queuedNanos;
+        queue.polledCount++;
+        queue.totalLagNanos += lagNanos;
+        if (lagNanos > queue.maxLagNanos) queue.maxLagNanos = lagNanos;
+        return entry.item;
+    }
+
+    //----Getters----
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * getSenders()
+     *
+     * @return the names of the senders we have counters for
+     */
+    public synchronized Set<String> getSenders() {
+        return Collections.unmodifiableSet(new HashSet<String>(queues.keySet()));
+    }
+
+    /**
+     * size()
+     *
+     * @param sender the name of a sender
+     * @return the number of items of sender in the queue
+     */
+    public synchronized int size(String sender) {
+        SenderQueue<T> queue = queues.get(sender);
+        return queue == null ? 0 : queue.entries.size();
+    }
+
+    /**
+     * getDroppedCount()
+     *
+     * @return the number of data items dropped because their sender had too many queued
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * getDroppedCount()
+     *
+     * @param sender the name of a sender
+     * @return the number of data items of sender dropped because it had too many queued
+     */
+    public synchronized long getDroppedCount(String sender) {
+        SenderQueue<T> queue = queues.get(sender);
+        return queue == null ? 0 : queue.droppedCount;
+    }
+
+    /**
+     * getMeanLagNanos()
+     *
+     * @param sender the name of a sender
+     * @return the mean time polled items of sender waited in the queue (0 if none were polled)
+     */
+    public synchronized long getMeanLagNanos(String sender) {
+        SenderQueue<T> queue = queues.get(sender);
+        return queue == null || queue.polledCount == 0 ? 0 : queue.totalLagNanos / queue.polledCount;
+    }
+
+    /**
+     * getMaxLagNanos()
+     *
+     * @param sender the name of a sender
+     * @return the longest time a polled item of sender waited in the queue
+     */
+    public synchronized long getMaxLagNanos(String sender) {
+        SenderQueue<T> queue = queues.get(sender);
+        return queue == null ? 0 : queue.maxLagNanos;
+    }
+}
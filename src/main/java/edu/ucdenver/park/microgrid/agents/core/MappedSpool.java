@@ -0,0 +1,226 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedSpool
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * an on-disk ring buffer of encoded messages, memory-mapped so that appending one is a copy into the page cache (no
+ * system call); MicrogridSenderAgent stores the data it can't deliver here and replays them later (store and forward)
+ * <p>
+ * The spool survives restarts of the agent: head and tail live in the file's header, so a sender that is restarted
+ * while the receiver is unreachable still replays its backlog. When the spool is full, the oldest records are
+ * dropped to make room (we keep the most recent history).
+ * <p>
+ * File format: a HEADER_SIZE byte header (MAGIC, data size, head, tail, record count), then the data area. Records
+ * are int length, long timestamp, length payload bytes; a record never wraps around the end of the data area (a
+ * length of -1, or fewer than 4 bytes left, marks the rest of the area as unused). head and tail are logical offsets
+ * that only grow (unless a record that doesn't fit before the end is appended to an empty spool, which resets both to
+ * 0); their position in the data area is the offset modulo its size.
+ *
+ * @author Jake Billings
+ */
+public class MappedSpool {
+    private static final int MAGIC = 0x4D53504C;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int WRAP = -1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int dataSize;
+
+    private long head;
+    private long tail;
+    private int recordCount;
+    private long droppedCount;
+
+    /**
+     * MappedSpool()
+     * <p>
+     * constructor
+     * <p>
+     * opens the spool in file, resuming its content if it was created with the same capacity, else (re)creating it
+     *
+     * @param file          the spool file
+     * @param capacityBytes the size of the data area (records take 12 bytes plus their payload)
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public MappedSpool(File file, int capacityBytes) throws IOException {
+        if (capacityBytes < RECORD_HEADER_SIZE * 2)
+            throw new IllegalArgumentException("capacityBytes is too small when creating a MappedSpool");
+        this.dataSize = capacityBytes;
+        this.file = new RandomAccessFile(file, "rw");
+        this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacityBytes);
+
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == capacityBytes) {
+            this.head = buffer.getLong(8);
+            this.tail = buffer.getLong(16);
+            this.recordCount = buffer.getInt(24);
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, capacityBytes);
+            writeHeader();
+        }
+    }
+
+    /**
+     * append()
+     * <p>
+     * stores a record at the tail, dropping the oldest records if there isn't enough room
+     *
+     * @param timestamp the time the payload was measured (see getOldestTimestamp())
+     * @param payload   the encoded message
+     * @return false if the payload is bigger than the whole spool (it is dropped)
+     */
+    public synchronized boolean append(long timestamp, byte[] payload) {
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (recordSize > dataSize) {
+            droppedCount++;
+            return false;
+        }
+        int position = (int) (tail % dataSize);
+        int skip = dataSize - position < recordSize ? dataSize - position : 0;
+        while (dataSize - (tail - head) < skip + recordSize) {
+            if (headPosition() < 0) {
+                //Empty, yet the record doesn't fit before the end: start over at the beginning of the data area
+                head = 0;
+                tail = 0;
+                position = 0;
+                skip = 0;
+                break;
+            }
+            dropHead();
+        }
+        if (skip > 0) {
+            if (skip >= 4) buffer.putInt(HEADER_SIZE + position, WRAP);
+            tail += skip;
+            position = 0;
+        }
+        buffer.putInt(HEADER_SIZE + position, payload.length);
+        buffer.putLong(HEADER_SIZE + position + 4, timestamp);
+        ByteBuffer record = buffer.duplicate();
+        record.position(HEADER_SIZE + position + RECORD_HEADER_SIZE);
+        record.put(payload);
+        tail += recordSize;
+        recordCount++;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * poll()
+     * <p>
+     * removes the record at the head
+     *
+     * @return its payload or null if the spool is empty
+     */
+    public synchronized byte[] poll() {
+        int position = headPosition();
+        if (position < 0) return null;
+        byte[] payload = new byte[buffer.getInt(HEADER_SIZE + position)];
+        ByteBuffer record = buffer.duplicate();
+        record.position(HEADER_SIZE + position + RECORD_HEADER_SIZE);
+        record.get(payload);
+        head += RECORD_HEADER_SIZE + payload.length;
+        recordCount--;
+        writeHeader();
+        return payload;
+    }
+
+    /**
+     * dropHead()
+     * <p>
+     * removes the record at the head without reading it (the spool must not be empty)
+     */
+    private void dropHead() {
+        int position = headPosition();
+        head += RECORD_HEADER_SIZE + buffer.getInt(HEADER_SIZE + position);
+        recordCount--;
+        droppedCount++;
+    }
+
+    /**
+     * headPosition()
+     * <p>
+     * skips the unused end of the data area if head points there
+     *
+     * @return the position of the head record in the data area or -1 if the spool is empty
+     */
+    private int headPosition() {
+        while (head < tail) {
+            int position = (int) (head % dataSize);
+            if (dataSize - position >= 4 && buffer.getInt(HEADER_SIZE + position) != WRAP) return position;
+            head += dataSize - position;
+        }
+        return -1;
+    }
+
+    private void writeHeader() {
+        buffer.putLong(8, head);
+        buffer.putLong(16, tail);
+        buffer.putInt(24, recordCount);
+    }
+
+    /**
+     * close()
+     * <p>
+     * writes the mapped pages to disk and closes the file
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    //----Getters----
+    public synchronized int size() {
+        return recordCount;
+    }
+
+    /**
+     * getUsedBytes()
+     *
+     * @return the bytes of the data area in use (including unused ends skipped by records that wrapped)
+     */
+    public synchronized long getUsedBytes() {
+        return tail - head;
+    }
+
+    public int getCapacityBytes() {
+        return dataSize;
+    }
+
+    /**
+     * getOldestTimestamp()
+     *
+     * @return the timestamp of the oldest record (the oldest unsent datum) or -1 if the spool is empty
+     */
+    public synchronized long getOldestTimestamp() {
+        int position = headPosition();
+        return position < 0 ? -1 : buffer.getLong(HEADER_SIZE + position + 4);
+    }
+
+    /**
+     * getDroppedCount()
+     *
+     * @return the number of records dropped because the spool was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -10,6 +10,8 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MicrogridDataLoggingReceiverAgent
@@ -21,22 +23,32 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class MicrogridDataLoggingReceiverAgent extends MicrogridReceiverAgent {
     private BlockingQueue<Datum> dataQueue;
+    private final DataPersistenceBehavior persistence = new DataPersistenceBehavior();
+    private final AtomicLong droppedDatumCount = new AtomicLong();
 
     public MicrogridDataLoggingReceiverAgent() {
         super();
 
-        //Setup a blocking queue that will throw an error if we can't write to the db fast enough
+        //Setup a bounded queue; data that don't fit because we can't write to the db fast enough are dropped
         dataQueue = new LinkedBlockingQueue<Datum>(100);
 
         //Register to receive all of the data from the LiveGrid as it comes in
+        //(called on the receiver's ingest threads, so this must never throw or block)
         this.getLiveGrid().registerDatumHadler(new DatumHandler() {
             public void onDatum(Datum datum) {
-                dataQueue.add(datum);
+                if (!dataQueue.offer(datum) && droppedDatumCount.getAndIncrement() % 1000 == 0) {
+                    System.out.println("Warning: DataLoggingReceiver can't write to the db fast enough; dropped "
+                            + droppedDatumCount.get() + " data so far");
+                }
+                persistence.wake();
             }
         });
 
-        //Add a behavior to save the queued data to the db ever blockTime ms
-        addBehaviour(new DataPersistenceBehavior(10));
+        //We persist every channel, so the senders must send all of them at full rate
+        this.getChannelInterest().setAllChannels("persistence", true);
+
+        //Add a behavior to save the queued data to the db whenever there are some
+        addBehaviour(persistence);
     }
 
     /**
@@ -46,24 +58,38 @@ public class MicrogridDataLoggingReceiverAgent extends MicrogridReceiverAgent {
      * private internal class: this class exists INSIDE the MicrogridReceiverAgent class and is private to it (it is used only in setup())
      * behavior: this a JADE behavior class
      * <p>
-     * writes the data we receive to the db using Hibernate every blockTime ms
+     * writes the data we receive to the db using Hibernate; it blocks while dataQueue is empty and is woken by the
+     * first datum queued, and every data queued while a transaction is written go into the next one
      */
     private class DataPersistenceBehavior extends CyclicBehaviour {
         /**
-         * blockTime
+         * idle
          *
-         * long
+         * AtomicBoolean
          *
-         * see documentation for blocktime on JADE's CyclicBehvaior; this is the amount of time we
-         *  give the db to handle our write requests
+         * whether the behavior is blocked waiting for data (see wake())
          */
-        private final long blockTime;
+        private final AtomicBoolean idle = new AtomicBoolean();
 
-        DataPersistenceBehavior(long blockTime) {
-            this.blockTime = blockTime;
+        /**
+         * wake()
+         *
+         * restarts the behavior if it waits for data; may be called from any thread
+         */
+        void wake() {
+            if (idle.compareAndSet(true, false)) restart();
         }
 
         public void action() {
+            idle.set(false);
+            if (dataQueue.isEmpty()) {
+                //Block first, then look again: data queued in between wake us
+                block();
+                idle.set(true);
+                if (!dataQueue.isEmpty()) wake();
+                return;
+            }
+
             //Open a new session to write to the db
             Session session = MicrogridHibernateUtil.sessionFactory.openSession();
 
@@ -73,18 +99,25 @@ public class MicrogridDataLoggingReceiverAgent extends MicrogridReceiverAgent {
             tx.begin();
 
             //Persist all the data from the queue
-            for (Datum datum : dataQueue) {
+            Datum datum;
+            while ((datum = dataQueue.poll()) != null) {
                 em.persist(datum);
             }
-            dataQueue.clear();
 
             //Commit/save the transaction
             tx.commit();
             //Close the session
             session.close();
-
-
-            block(this.blockTime);
         }
     }
+
+    //----Getters----
+    /**
+     * getDroppedDatumCount()
+     *
+     * @return the number of data not persisted because the db fell behind
+     */
+    public long getDroppedDatumCount() {
+        return droppedDatumCount.get();
+    }
 }
@@ -4,22 +4,27 @@
  */
 package edu.ucdenver.park.microgrid.agents.core;
 
+import edu.ucdenver.park.microgrid.live.ChannelInterestSet;
+import edu.ucdenver.park.microgrid.live.IngestPipeline;
 import edu.ucdenver.park.microgrid.live.LiveMicrogridGraph;
 import edu.ucdenver.park.microgrid.message.Message;
-import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridEncodingMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphKeepAliveMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphRequestMessage;
 import edu.ucdenver.park.microgrid.message.MicrogridGraphMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridRateControlMessage;
 import edu.ucdenver.park.microgrid.socketioserver.MicrogridSocketIOServer;
+import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.UnreadableException;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * MicrogridReceiverAgent
@@ -54,6 +59,17 @@ public class MicrogridReceiverAgent extends Agent {
      */
     private LiveMicrogridGraph liveGrid = new LiveMicrogridGraph();
 
+    /**
+     * channelInterest
+     * <p>
+     * ChannelInterestSet
+     * <p>
+     * the channels somebody watches: server adds the ones its clients plot, subclasses may add others (e.g. the ones
+     * they persist); senders that offered MicrogridEncodingMessage.INTEREST send the other float channels only at a
+     * background heartbeat (see ProcessInterestBehavior)
+     */
+    private final ChannelInterestSet channelInterest = new ChannelInterestSet();
+
     /**
      * server
      * <p>
@@ -68,25 +84,101 @@ public class MicrogridReceiverAgent extends Agent {
      * <p>
      * when we update liveGrid, server gets the update and forwards it as JSON to the frontend via Socket.io
      */
-    private MicrogridSocketIOServer server = new MicrogridSocketIOServer(liveGrid, (short) 4000);
+    private MicrogridSocketIOServer server = new MicrogridSocketIOServer(liveGrid, channelInterest, (short) 4000);
 
     /**
-     * jadeMessageReceiveQueue
+     * RECEIVE_QUEUE_CAPACITY
      * <p>
-     * BlockingQueue<ACLMessage>
+     * int
      * <p>
-     * when we receive message from JADE, we add them to this queue for processing
+     * the most received messages being decoded and applied at once (see pipeline); the others wait in ingress
      * <p>
-     * they are processed in a separate behavior
+     * large enough to keep every decode worker busy; this number can be tuned to optimize performance
+     */
+    private static final int RECEIVE_QUEUE_CAPACITY = 64;
+
+    /**
+     * INGRESS_CAPACITY_PER_SENDER
      * <p>
-     * the parameter to the LinkedBlockingQueue constructor is the queue capacity; if the number of queued messages
-     * for processing exceeds this amount, we give up, clear the queue, and start over
+     * int
      * <p>
-     * this prevents us from getting behind on our processing and lagging farther and farther behind from reality
+     * the most data messages of one sender waiting in ingress; if more arrive, we drop the sender's oldest ones
      * <p>
-     * I chose 20 arbitrarily; this number can be tuned to optimize performance
+     * this prevents us from getting behind on our processing and lagging farther and farther behind from reality;
+     * backpressure makes the senders slow down well before that happens, so dropping messages is a last resort
      */
-    private final BlockingQueue<ACLMessage> jadeMessageReceiveQueue = new LinkedBlockingQueue<ACLMessage>(20);
+    private static final int INGRESS_CAPACITY_PER_SENDER = 16;
+
+    /**
+     * DECODE_WORKERS
+     * <p>
+     * int
+     * <p>
+     * the number of threads that decode received messages, and of shards that apply them to liveGrid (system property
+     * microgrid.decodeWorkers; by default one per core, at most 8)
+     */
+    private static final int DECODE_WORKERS = Integer.getInteger("microgrid.decodeWorkers",
+            Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * MAX_LAG_MILLIS
+     * <p>
+     * long
+     * <p>
+     * the longest a message should wait to be decoded before we ask the senders to slow down
+     */
+    private static final long MAX_LAG_MILLIS = 250;
+
+    /**
+     * ingress
+     * <p>
+     * FairIngressQueue of ReceivedMessage
+     * <p>
+     * the received messages waiting for room in pipeline, queued per sender and handed to pipeline round robin, so a
+     * sender that floods us can only drop and delay its own messages
+     */
+    private final FairIngressQueue<ReceivedMessage> ingress = new FairIngressQueue<ReceivedMessage>(INGRESS_CAPACITY_PER_SENDER);
+
+    /**
+     * pipeline
+     * <p>
+     * IngestPipeline of ACLMessage
+     * <p>
+     * when we receive messages from JADE, we hand their payloads to this pipeline, which decodes them and applies the
+     * channel data to liveGrid on DECODE_WORKERS threads, so ingestion scales with the cores instead of running on the
+     * agent's thread; the other messages come back to us in order (see IngestHandler)
+     */
+    private final IngestPipeline<ACLMessage> pipeline = new IngestPipeline<ACLMessage>(liveGrid,
+            RECEIVE_QUEUE_CAPACITY, DECODE_WORKERS, DECODE_WORKERS, new IngestHandler());
+
+    /**
+     * backpressure
+     * <p>
+     * BackpressureController
+     * <p>
+     * watches how many messages are in pipeline and how long they wait in it, and decides how much each sender must
+     * throttle itself (see ProcessBackpressureBehavior)
+     */
+    private final BackpressureController backpressure = new BackpressureController(RECEIVE_QUEUE_CAPACITY, MAX_LAG_MILLIS);
+
+    /**
+     * senders
+     * <p>
+     * Map String, AID
+     * <p>
+     * the senders that offered us encodings, by name, so we can send them rate control and interest messages
+     * (updated by pipeline's threads, read by our behaviors)
+     */
+    private final Map<String, AID> senders = new ConcurrentHashMap<String, AID>();
+
+    /**
+     * senderEncodings
+     * <p>
+     * Map String, Integer
+     * <p>
+     * the optional encodings each of senders offered
+     */
+    private final Map<String, Integer> senderEncodings = new ConcurrentHashMap<String, Integer>();
 
     /**
      * setup()
@@ -101,15 +193,19 @@ public class MicrogridReceiverAgent extends Agent {
         //Start the socket.io server
         server.init();
 
+        //Start decoding
+        pipeline.start();
+
         //---Add Behaviors---
         addBehaviour(new ReceiveBehavior());
-        addBehaviour(new ProcessIncomingMessageBehavior(this, 1));
         addBehaviour(new ProcessGridGraphStateBehavior(this, 5000));
         addBehaviour(new ProcessGridMeasurementStateBehavior(this, 701)); //make sure this period is prime and small (see not in constructor docs)
+        addBehaviour(new ProcessBackpressureBehavior(this, 1000));
+        addBehaviour(new ProcessInterestBehavior(this, 250));
 
         //---Final Linking---
-        //Pass datum events from the liveGrid to the SocketIO server
-        liveGrid.registerDatumHadler(server);
+        //The SocketIO server only sends snapshots (its onDatum() is not implemented yet), so we don't register it for
+        // datum events; without DatumHandlers, liveGrid only resolves the data the snapshots read
 
         //---Completion Message---
         //Print a message that we finished setting up
@@ -117,6 +213,19 @@ public class MicrogridReceiverAgent extends Agent {
         System.out.println("MicrogridReceiverAgent running as: " + getLocalName());
     }
 
+    /**
+     * takeDown()
+     * <p>
+     * stops the decode threads when the agent is deleted
+     */
+    protected void takeDown() {
+        try {
+            pipeline.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * ReceiveBehavior
      * <p>
@@ -124,84 +233,158 @@ public class MicrogridReceiverAgent extends Agent {
      * private internal class: this class exists INSIDE the MicrogridReceiverAgent class and is private to it (it is used only in setup())
      * behavior: this a JADE behavior class
      * <p>
-     * This CyclicBehavior continuously reads messages via JADE's messaging system and passes the messages to our queue,
-     * which we manage; if the queue fills up, we clear it and start adding new data
+     * This CyclicBehavior continuously reads messages via JADE's messaging system into ingress and hands their payloads
+     * to pipeline as it has room; nothing is decoded on the agent's thread. If a sender has too many messages waiting,
+     * we drop its oldest data message (and tell backpressure, which makes every sender slow down as much as it can)
      * <p>
-     * the behavior ProcessIncomingMessageBehavior manages messages from the incoming message queue
+     * the behavior doesn't poll: it blocks until JADE delivers a message (which restarts blocked behaviors) or, while
+     * messages wait in ingress, until pipeline has room again
      */
     private class ReceiveBehavior extends CyclicBehaviour {
+        /**
+         * wakeUp
+         * <p>
+         * Runnable
+         * <p>
+         * restarts this behavior; pipeline runs it on one of its threads once it has room
+         */
+        private final Runnable wakeUp = new Runnable() {
+            public void run() {
+                restart();
+            }
+        };
 
         public void action() {
             ACLMessage msg;
             while ((msg = receive()) != null) {
-                if (!jadeMessageReceiveQueue.offer(msg)) {
-                    System.out.println("Warning: Receiver had to dump incoming message queue");
-                    jadeMessageReceiveQueue.clear();
-                    jadeMessageReceiveQueue.add(msg);
+                ReceivedMessage received = new ReceivedMessage(msg);
+                if (ingress.offer(received.sender, received, isRequired(received.payload))) {
+                    System.out.println("Warning: Receiver had to drop an incoming message from " + received.sender);
+                    backpressure.onOverflow();
                 }
             }
-            block(1);
+            ReceivedMessage received;
+            while (!pipeline.isFull() && (received = ingress.poll()) != null) {
+                pipeline.offer(received.msg, received.sender, received.payload, received.receivedNanos);
+            }
+            backpressure.onQueued(pipeline.size());
+            block();
+            if (ingress.size() > 0) pipeline.whenNotFull(wakeUp);
         }
     }
 
     /**
-     * ProcessIncomingMessageBehavior
+     * ReceivedMessage
      * <p>
      * class
-     * private internal class: this class exists
+     * private internal class: this class exists INSIDE the MicrogridReceiverAgent class and is private to it
      * <p>
-     * this behavior continuously processes the top element of the incoming messaging queue
-     * maintaining our own queue prevents us from falling behind on processing
+     * a message waiting in ingress, and when we received it
+     */
+    private static class ReceivedMessage {
+        private final ACLMessage msg;
+        private final String sender;
+        private final byte[] payload;
+        private final long receivedNanos = System.nanoTime();
+
+        ReceivedMessage(ACLMessage msg) {
+            this.msg = msg;
+            this.sender = msg.getSender() == null ? "" : msg.getSender().getName();
+            this.payload = msg.getByteSequenceContent();
+        }
+    }
+
+    /**
+     * isRequired()
      *
-     * this behavior can be "tuned" for CPU performance
+     * @param payload a received payload
+     * @return whether payload holds a message ingress must never drop: anything but float data (see
+     * MessageCodec.isTelemetry()); protection events, dictionaries and graphs are required even inside a bundle
      */
-    private class ProcessIncomingMessageBehavior extends CyclicBehaviour {
-        /**
-         * blockTime
-         * <p>
-         * long
-         * <p>
-         * this is the parameter to block() that dictates how long we wait between reading messages
-         * this helps us not peg the CPU while reading our messages but slows down our message
-         * processing ability
-         * <p>
-         * higher blockTime: better cpu performance/slower message processing/higher risk of queue overflow
-         * lower blockTime: worse cpu performance/faster message processing/lower risk of queue overflow
-         * <p>
-         * this number should be significantly lower than the time interval between repeating messages
-         * that the sender will receive
-         * <p>
-         * E.g. if message send ever 10,000 ms, this should be 1,000 ms or less
-         */
-        private final long blockTime;
+    private static boolean isRequired(byte[] payload) {
+        return !MessageCodec.isTelemetry(payload);
+    }
 
-        ProcessIncomingMessageBehavior(Agent a, long blockTime) {
-            super(a);
-            this.blockTime = blockTime;
+    /**
+     * IngestHandler
+     * <p>
+     * class
+     * private internal class: this class exists INSIDE the MicrogridReceiverAgent class and is private to it
+     * <p>
+     * gets the messages pipeline doesn't apply itself (everything but channel data), in order, on one of the
+     * pipeline's threads (replies are sent from there; JADE lets any thread send()), and reports the processing time of
+     * each message to backpressure
+     */
+    private class IngestHandler implements IngestPipeline.Handler<ACLMessage> {
+        public void onControl(ACLMessage msg, String sender, Message contentObject) {
+            try {
+                process(msg, sender, contentObject);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
 
-        public void action() {
-            ACLMessage msg;
+        public void onProcessed(ACLMessage msg, String sender, long lagNanos, long processingNanos) {
+            backpressure.onProcessed(sender, lagNanos, processingNanos);
+        }
 
-            while ((msg = jadeMessageReceiveQueue.poll()) != null) {
-                try {
-                    ByteArrayInputStream bais = new ByteArrayInputStream(msg.getByteSequenceContent());
-                    ObjectInputStream in = new ObjectInputStream(bais);
-                    Message contentObject = Message.read(in);
-
-                    if (contentObject instanceof MicrogridGraphMessage) {
-                        liveGrid.receiveMessage((MicrogridGraphMessage) contentObject);
-                    } else if (contentObject instanceof MicrogridDatumMessage) {
-                        liveGrid.receiveMessage((MicrogridDatumMessage) contentObject);
-                    } else {
-                        System.err.println("WARNING: Unknown message received in MicrogridReceiverAgent");
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
+        /**
+         * process()
+         * <p>
+         * passes one message from sender to liveGrid (or answers it)
+         *
+         * @param msg           the ACLMessage contentObject arrived in
+         * @param sender        the name of the agent that sent msg
+         * @param contentObject the decoded message (not a bundle, not channel data)
+         * @throws IOException if a reply cannot be encoded
+         */
+        private void process(ACLMessage msg, String sender, Message contentObject) throws IOException {
+            if (contentObject instanceof MicrogridGraphMessage) {
+                liveGrid.receiveMessage((MicrogridGraphMessage) contentObject);
+            } else if (contentObject instanceof MicrogridChannelDictionaryMessage) {
+                liveGrid.receiveMessage(sender, (MicrogridChannelDictionaryMessage) contentObject);
+            } else if (contentObject instanceof MicrogridGraphKeepAliveMessage) {
+                //Ask for the full graph if we don't hold the versions being renewed
+                MicrogridGraphKeepAliveMessage keepAlive = (MicrogridGraphKeepAliveMessage) contentObject;
+                if (!liveGrid.receiveMessage(sender, keepAlive)) {
+                    reply(msg, new MicrogridGraphRequestMessage(keepAlive.getSubgraphId()));
+                }
+            } else if (contentObject instanceof MicrogridEncodingMessage) {
+                //Answer with the optional encodings we can read out of the ones the sender offered
+                // and tell the sender which channels we watch, if it asked
+                int offered = ((MicrogridEncodingMessage) contentObject).getEncodings();
+                if (msg.getSender() == null) offered = 0;
+                if (offered != 0) {
+                    senders.put(sender, msg.getSender());
+                    senderEncodings.put(sender, offered);
+                } else {
+                    senders.remove(sender);
+                    senderEncodings.remove(sender);
                 }
+                backpressure.setControllable(sender, (offered & MicrogridEncodingMessage.RATE_CONTROL) != 0);
+                reply(msg, new MicrogridEncodingMessage(offered & MicrogridEncodingMessage.SUPPORTED));
+                if ((offered & MicrogridEncodingMessage.INTEREST) != 0) {
+                    reply(msg, channelInterest.toMessage());
+                }
+            } else {
+                System.err.println("WARNING: Unknown message received in MicrogridReceiverAgent");
             }
+        }
 
-            block(this.blockTime);
+        /**
+         * reply()
+         * <p>
+         * sends content back to the agent that sent msg
+         *
+         * @param msg     the message we're answering
+         * @param content the message to send back
+         * @throws IOException if content cannot be encoded
+         */
+        private void reply(ACLMessage msg, Message content) throws IOException {
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setByteSequenceContent(MessageCodec.encode(content));
+            send(reply);
         }
     }
 
@@ -259,7 +442,112 @@ public class MicrogridReceiverAgent extends Agent {
         }
     }
 
+    /**
+     * ProcessBackpressureBehavior
+     * <p>
+     * class
+     * private internal class: this class exists INSIDE the MicrogridReceiverAgent class and is private to it (it is used only in setup())
+     * behavior: this a JADE behavior class
+     * <p>
+     * This TickerBehavior runs on a regular interval
+     * <p>
+     * every period, it asks backpressure which senders must throttle themselves more (or may recover) and sends each of
+     * them a MicrogridRateControlMessage; overload thus lowers the resolution of routine telemetry instead of making us
+     * drop incoming messages
+     */
+    private class ProcessBackpressureBehavior extends TickerBehaviour {
+        ProcessBackpressureBehavior(Agent a, long period) {
+            super(a, period);
+        }
+
+        @Override
+        protected void onTick() {
+            for (Map.Entry<String, MicrogridRateControlMessage> change : backpressure.tick().entrySet()) {
+                AID sender = senders.get(change.getKey());
+                if (sender != null) sendToSender(sender, change.getValue());
+            }
+        }
+    }
+
+    /**
+     * ProcessInterestBehavior
+     * <p>
+     * class
+     * private internal class: this class exists INSIDE the MicrogridReceiverAgent class and is private to it (it is used only in setup())
+     * behavior: this a JADE behavior class
+     * <p>
+     * This TickerBehavior runs on a regular interval
+     * <p>
+     * whenever channelInterest changed (e.g. a browser started plotting a measurement), it sends the new set to every
+     * sender that offered MicrogridEncodingMessage.INTEREST; the period is short so a new plot gets full-rate data
+     * within a second
+     */
+    private class ProcessInterestBehavior extends TickerBehaviour {
+        private int sentVersion = -1;
+
+        ProcessInterestBehavior(Agent a, long period) {
+            super(a, period);
+        }
+
+        @Override
+        protected void onTick() {
+            int version = channelInterest.getVersion();
+            if (version == sentVersion) return;
+            sentVersion = version;
+            Message interest = channelInterest.toMessage();
+            for (Map.Entry<String, AID> sender : senders.entrySet()) {
+                Integer encodings = senderEncodings.get(sender.getKey());
+                if (encodings != null && (encodings & MicrogridEncodingMessage.INTEREST) != 0) {
+                    sendToSender(sender.getValue(), interest);
+                }
+            }
+        }
+    }
+
+    /**
+     * sendToSender()
+     *
+     * @param sender  a sender agent
+     * @param content the message to send it
+     */
+    private void sendToSender(AID sender, Message content) {
+        try {
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.addReceiver(sender);
+            msg.setByteSequenceContent(MessageCodec.encode(content));
+            send(msg);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     protected LiveMicrogridGraph getLiveGrid() {
         return liveGrid;
     }
+
+    protected ChannelInterestSet getChannelInterest() {
+        return channelInterest;
+    }
+
+    protected BackpressureController getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * getIngress()
+     *
+     * @return the queue of received messages, with the depth, drop and lag counters of every sender
+     */
+    protected FairIngressQueue<?> getIngress() {
+        return ingress;
+    }
+
+    /**
+     * getDroppedMessageCount()
+     *
+     * @return the number of received messages dropped because their sender had too many waiting
+     */
+    protected long getDroppedMessageCount() {
+        return ingress.getDroppedCount();
+    }
 }
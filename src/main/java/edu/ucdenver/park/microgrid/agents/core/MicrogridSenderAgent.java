@@ -4,25 +4,44 @@
  */
 package edu.ucdenver.park.microgrid.agents.core;
 
+import edu.ucdenver.park.microgrid.agents.core.PrioritySendQueue.Lane;
+import edu.ucdenver.park.microgrid.data.AggregateMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.BooleanMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridBooleanMeasurementType;
 import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridFloatMeasurementType;
 import edu.ucdenver.park.microgrid.data.MicrogridGraph;
-import edu.ucdenver.park.microgrid.data.abs.Datum;
+import edu.ucdenver.park.microgrid.data.MicrogridIdentityRegistry;
+import edu.ucdenver.park.microgrid.data.MicrogridNode;
+import edu.ucdenver.park.microgrid.message.ByteBufferDataOutput;
+import edu.ucdenver.park.microgrid.message.Message;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
 import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridEncodingMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphKeepAliveMessage;
 import edu.ucdenver.park.microgrid.message.MicrogridGraphMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphRequestMessage;
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.TickerBehaviour;
 import jade.lang.acl.ACLMessage;
-import jade.lang.acl.UnreadableException;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * MicrogridSenderAgent
@@ -32,11 +51,24 @@ import java.util.concurrent.LinkedBlockingQueue;
  * mutable
  * <p>
  * MicrogridSenderAgent is a superclass/example for agents that want to send data to the MicrogridReceiver agent
- * MicrogridSenderAgents send MicrogridGraphMessages periodically
+ * MicrogridSenderAgents send a MicrogridGraphMessage when they start and whenever their subgraph changes, and renew
+ * it periodically with MicrogridGraphKeepAliveMessages
  * MicrogridSenderAgents send MicrogridDatumMessages as data becomes available
+ * MicrogridSenderAgents that sample several measurements at once send them together with sendData()
+ * samples are reported by exception: a sample that hasn't changed (beyond the deadband of its measurement type) since
+ * its channel was last sent is skipped, unless the channel is due for a heartbeat (see getReportFilter())
+ * with enableSpool(), data are stored on disk while JADE can't deliver to any receiver and replayed once one answers
+ * again (see MappedSpool)
+ * a sender may send to several receivers (e.g. a primary, a standby and a logger): every message is encoded once and
+ * the payload is shared by the send queues of all receivers, each of which has its own health (see ReceiverLink and
+ * ReceiverDispatcher)
  * <p>
  * implements a message send queue and send behavior instead of direct sending; this was necessary because repeated
  * send requests over a network caused reliability issues
+ * the send behavior drains the whole queue whenever it flushes and packs it into as few ACLMessages as possible (see
+ * MicrogridBundleMessage); setDispatchThresholds() trades latency against throughput
+ * each queue (see PrioritySendQueue) sends protection events first and never drops them or graph and other control
+ * messages; under overload it keeps only the latest pending value of each routine measurement and drops the oldest
  * <p>
  * How to use:
  * subclass this agent
@@ -45,13 +77,14 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public abstract class MicrogridSenderAgent extends Agent {
     /**
-     * receiver
+     * dispatcher
      * <p>
-     * AID
+     * ReceiverDispatcher
      * <p>
-     * the agent id (AID) of the MicrogridReceiverAgent that should receive our graph data messages
+     * the MicrogridReceiverAgents that should receive our graph data messages, each with its own send queue and health
+     * (see ReceiverLink), and the fan-out of our messages to them
      */
-    private final AID receiver;
+    private final ReceiverDispatcher dispatcher;
 
     /**
      * subgraph
@@ -63,6 +96,37 @@ public abstract class MicrogridSenderAgent extends Agent {
      */
     private MicrogridGraph subgraph;
 
+    /**
+     * subgraphContentHash
+     * <p>
+     * long
+     * <p>
+     * the version of subgraph (MicrogridGraph.getContentHash()) named in our keep-alive messages
+     */
+    private long subgraphContentHash;
+
+    /**
+     * channelDictionary
+     * <p>
+     * MicrogridChannelDictionary
+     * <p>
+     * numbers the nodes of subgraph and the channels we send data for (see MicrogridChannelDictionary)
+     * a new dictionary (with the next version) is created every time the subgraph is set
+     * <p>
+     * replaced under sampleLock, so sendFloat() and sendBoolean() pair every sample with the dictionary (and version)
+     * its handle was taken from; volatile, so code that reads it without the lock sees the newest one
+     */
+    private volatile MicrogridChannelDictionary channelDictionary;
+
+    /**
+     * MAX_DICTIONARY_VERSION
+     * <p>
+     * int
+     * <p>
+     * dictionary versions wrap around at this value so that they always fit in a two byte varint
+     */
+    private static final int MAX_DICTIONARY_VERSION = 1 << 14;
+
     /**
      * gridUpdatePeriod
      * <p>
@@ -73,7 +137,223 @@ public abstract class MicrogridSenderAgent extends Agent {
      */
     private final long gridUpdatePeriod;
 
-    private final BlockingQueue<ACLMessage> jadeMessageSendQueue;
+    /**
+     * GRAPH_BUFFER_TIME_MILLIS
+     * <p>
+     * long
+     * <p>
+     * how long after the next scheduled keep-alive our subgraph expires (see SendMicrogridGraphMessageBehavior)
+     */
+    private static final long GRAPH_BUFFER_TIME_MILLIS = 8000;
+
+    /**
+     * encodeBuffer
+     * <p>
+     * ByteBufferDataOutput
+     * <p>
+     * the buffer every message we send is encoded into (reset and reused; synchronize on it while encoding)
+     * subclasses may call sendDatum() from their own threads (e.g. a serial reader), so access is locked rather than
+     * confined to the agent thread; encoding takes well under a microsecond, so the lock is practically uncontended
+     */
+    private final ByteBufferDataOutput encodeBuffer = new ByteBufferDataOutput(ENCODE_BUFFER_SIZE);
+
+    /**
+     * ENCODE_BUFFER_SIZE
+     * <p>
+     * int
+     * <p>
+     * starting capacity of encodeBuffer; it grows to fit the largest message we send (usually our graph message)
+     */
+    private static final int ENCODE_BUFFER_SIZE = 1024;
+
+    /**
+     * SEND_QUEUE_CAPACITY
+     * <p>
+     * int
+     * <p>
+     * the most telemetry messages (single data and batches) waiting in the send queue of each receiver; other lanes
+     * don't count
+     */
+    private static final int SEND_QUEUE_CAPACITY = 20;
+
+    /**
+     * reportFilter
+     * <p>
+     * ReportByExceptionFilter
+     * <p>
+     * decides which samples sendDatum() and sendData() actually send; reset whenever we send our full subgraph, so the
+     * receiver gets every channel's current value after it lost its state
+     */
+    private final ReportByExceptionFilter reportFilter = new ReportByExceptionFilter(DEFAULT_HEARTBEAT_MILLIS);
+
+    /**
+     * DEFAULT_HEARTBEAT_MILLIS
+     * <p>
+     * long
+     * <p>
+     * by default, a channel whose value doesn't change is still sent this often
+     */
+    public static final long DEFAULT_HEARTBEAT_MILLIS = 5000;
+
+    /**
+     * RegisteredChannel
+     * <p>
+     * a channel registered with registerChannel(): its node and measurement type, the _id its data have, and its
+     * handle in the dictionary it was last added to (re-added when the dictionary changes)
+     */
+    private static final class RegisteredChannel {
+        private final MicrogridNode node;
+        private final MicrogridFloatMeasurementType floatType;
+        private final MicrogridBooleanMeasurementType booleanType;
+        private final byte measurementTypeId;
+        private final String key;
+        private MicrogridChannelDictionary dictionary;
+        private int dictionaryHandle = -1;
+
+        private RegisteredChannel(MicrogridNode node, MicrogridFloatMeasurementType floatType,
+                                  MicrogridBooleanMeasurementType booleanType, byte measurementTypeId) {
+            this.node = node;
+            this.floatType = floatType;
+            this.booleanType = booleanType;
+            this.measurementTypeId = measurementTypeId;
+            this.key = MicrogridIdentityRegistry.getInstance().measurementKey(node, measurementTypeId);
+        }
+    }
+
+    /**
+     * registeredChannels
+     * <p>
+     * RegisteredChannel[]
+     * <p>
+     * the channel registered with handle i is registeredChannels[i]; replaced (never modified) by registerChannel(), so
+     * sendFloat() and sendBoolean() read it without a lock
+     */
+    private volatile RegisteredChannel[] registeredChannels = new RegisteredChannel[0];
+
+    /**
+     * registeredChannelHandles
+     * <p>
+     * Map String, Integer
+     * <p>
+     * channel _id to the handle registerChannel() returned for it (guarded by itself)
+     */
+    private final Map<String, Integer> registeredChannelHandles = new HashMap<String, Integer>();
+
+    /**
+     * telemetrySamples, protectionSamples
+     * <p>
+     * ChannelSampleBuffer
+     * <p>
+     * the float and boolean samples sendFloat() and sendBoolean() buffered since SendJadeMessagesBehavior last moved
+     * them into the send queue (guarded by sampleLock, together with the dictionary handles of registeredChannels and
+     * replacing channelDictionary)
+     * <p>
+     * reportFilter decides about a sample before sampleLock is taken, so the lock is only held for samples that are
+     * sent. The decision and the append are therefore not atomic: if several threads send samples of the same channel
+     * at once, each sample is still decided once, but they may be appended in another order than they were decided
+     * in. That is harmless because the receiver keeps the sample with the newest timestamp, not the last one applied
+     * (see LiveMicrogridGraph); callers that need samples of a channel in order send them from one thread.
+     */
+    private final ChannelSampleBuffer telemetrySamples = new ChannelSampleBuffer(SAMPLE_BUFFER_SIZE);
+    private final ChannelSampleBuffer protectionSamples = new ChannelSampleBuffer(SAMPLE_BUFFER_SIZE);
+    private final Object sampleLock = new Object();
+
+    /**
+     * sendBehavior
+     * <p>
+     * SendJadeMessagesBehavior
+     * <p>
+     * the behavior that sends the send queues (null until setup()); it sleeps until there is something to send, so
+     * whatever queues messages or samples wakes it (see wakeSendBehavior())
+     */
+    private volatile SendJadeMessagesBehavior sendBehavior;
+
+    /**
+     * SAMPLE_BUFFER_SIZE
+     * <p>
+     * int
+     * <p>
+     * the most samples buffered per lane; a full buffer is moved into the send queue as one batch right away
+     */
+    private static final int SAMPLE_BUFFER_SIZE = 1024;
+
+    /**
+     * aggregator
+     * <p>
+     * WindowedAggregator
+     * <p>
+     * summarizes the samples of the measurement types passed to enableAggregation(); their samples bypass reportFilter
+     * (the aggregates already reduce them) and only the aggregates are sent, unless sendRawSamples is set
+     */
+    private final WindowedAggregator aggregator = new WindowedAggregator();
+
+    /**
+     * sendRawSamples
+     * <p>
+     * boolean
+     * <p>
+     * whether samples of aggregated measurement types are also sent as they are, in the RAW lane (the lowest priority;
+     * they are dropped first under overload and not spooled)
+     */
+    private volatile boolean sendRawSamples = false;
+
+    /**
+     * spool
+     * <p>
+     * MappedSpool
+     * <p>
+     * where we store data while no receiver is reachable (full MicrogridDatumMessages, so they don't depend on a
+     * dictionary version); null unless enableSpool() was called
+     */
+    private volatile MappedSpool spool;
+
+    /**
+     * replayRate
+     * <p>
+     * int
+     * <p>
+     * the most spooled data per second ReplaySpoolBehavior queues once a receiver is reachable again; replayed data
+     * share the TELEMETRY lane with live data, so live data keep flowing during a replay
+     */
+    private volatile int replayRate = DEFAULT_REPLAY_RATE;
+
+    /**
+     * DEFAULT_REPLAY_RATE
+     * <p>
+     * int
+     * <p>
+     * default replayRate; a few times what the dummy controllers produce, so a backlog shrinks quickly
+     */
+    public static final int DEFAULT_REPLAY_RATE = 200;
+
+    /**
+     * REPLAY_PERIOD_MILLIS
+     * <p>
+     * long
+     * <p>
+     * how often ReplaySpoolBehavior queues its share of replayRate
+     */
+    private static final long REPLAY_PERIOD_MILLIS = 100;
+
+    private volatile long replayedCount;
+
+    /**
+     * DEFAULT_MAX_BUNDLE_MESSAGES
+     * <p>
+     * int
+     * <p>
+     * default size threshold of setDispatchThresholds()
+     */
+    public static final int DEFAULT_MAX_BUNDLE_MESSAGES = ReceiverDispatcher.DEFAULT_MAX_BUNDLE_MESSAGES;
+
+    /**
+     * DEFAULT_MAX_BUNDLE_DELAY_MILLIS
+     * <p>
+     * long
+     * <p>
+     * default time threshold of setDispatchThresholds()
+     */
+    public static final long DEFAULT_MAX_BUNDLE_DELAY_MILLIS = ReceiverDispatcher.DEFAULT_MAX_BUNDLE_DELAY_MILLIS;
 
     /**
      * MicrogridSenderAgent()
@@ -86,15 +366,28 @@ public abstract class MicrogridSenderAgent extends Agent {
      *                         cannot be less than 1000 ms (to preserve network bandwidth)
      */
     public MicrogridSenderAgent(AID receiver, MicrogridGraph subgraph, long gridUpdatePeriod) {
+        this(Collections.singletonList(receiver), subgraph, gridUpdatePeriod);
+    }
+
+    /**
+     * MicrogridSenderAgent()
+     * <p>
+     * constructor
+     * <p>
+     * sends the same messages to every receiver (see ReceiverLink)
+     *
+     * @param receivers        the agent ids (AIDs) of the MicrogridReceiverAgents that should receive our graph data
+     *                         messages; the first is the primary receiver
+     * @param subgraph         the subgraph (subgraph of the entire grid) that this agent knows about (should be statically configured in the constructor of a subclass)
+     * @param gridUpdatePeriod the time in milliseconds between each message we send to update the grid graph data on the map (this is also the amount of time roughly it will take for us to disappear from the map when shutdown)
+     *                         cannot be less than 1000 ms (to preserve network bandwidth)
+     */
+    public MicrogridSenderAgent(List<AID> receivers, MicrogridGraph subgraph, long gridUpdatePeriod) {
         this.setSubgraph(subgraph);
-        if (receiver == null)
-            throw new IllegalArgumentException("receiver cannot be null when creating MicrogridSenderAgent");
         if (gridUpdatePeriod < 1000)
             throw new IllegalArgumentException("gridUpdatePeriod cannot be less than 1000 when creating MicrogridSenderAgent");
-        this.receiver = receiver;
+        this.dispatcher = new ReceiverDispatcher(receivers, SEND_QUEUE_CAPACITY);
         this.gridUpdatePeriod = gridUpdatePeriod;
-
-        this.jadeMessageSendQueue = new LinkedBlockingQueue<ACLMessage>(20);
     }
 
     /**
@@ -109,8 +402,15 @@ public abstract class MicrogridSenderAgent extends Agent {
         System.out.print("MicrogridSenderAgent Starting...");
 
         //---Add Behaviors---
-        addBehaviour(new SendMicrogridGraphMessageBehavior(this, this.gridUpdatePeriod, 8000));
-        addBehaviour(new SendJadeMessagesBehavior(this, 10));
+        addBehaviour(new SendMicrogridGraphMessageBehavior(this, this.gridUpdatePeriod, GRAPH_BUFFER_TIME_MILLIS));
+        sendBehavior = new SendJadeMessagesBehavior(this);
+        addBehaviour(sendBehavior);
+        addBehaviour(new ReceiveReplyMessagesBehavior(this));
+        addBehaviour(new ReplaySpoolBehavior(this, REPLAY_PERIOD_MILLIS));
+
+        //---Announce Subgraph---
+        //Send the full graph now instead of waiting one period for the first tick
+        sendSubgraph();
 
         //---Completion Message---
         //Print a message that we finished setting up
@@ -121,18 +421,486 @@ public abstract class MicrogridSenderAgent extends Agent {
     /**
      * sendDatum()
      * <p>
-     * sends a Datum object to the receiver agent via JADE messaging
+     * sends a Datum object to the receiver agents via JADE messaging, unless reportFilter skips it
      * (catches exceptions for ease of use and consistency with SendMicrogridGraphMessageBehavior behavior)
      * <p>
-     * note: this doesn't "actually" send the datum; it calls sendObjectMessage()
-     * sendObjectMessage() doesn't "actually" send it either; it adds it to the message send queue,
-     * and the send behavior sends it
+     * if the datum was measured at a node in our subgraph, we send a MicrogridChannelDatumMessage that refers to
+     * the datum's channel by handle; the first time a channel is used, we announce the updated dictionary first
+     * data from nodes outside our subgraph are sent as full MicrogridDatumMessages
+     * <p>
+     * boolean data (faults, warnings, breaker trips) are protection events and go in the PROTECTION lane (see
+     * PrioritySendQueue), which overtakes topology messages; while one of those is pending, a receiver may not have
+     * the dictionary a handle refers to yet, so protection events are then sent as full MicrogridDatumMessages
+     * <p>
+     * once a channel has a handle, this allocates only the payload byte[]: the message is encoded straight from the
+     * datum into encodeBuffer (see MessageCodec.encodeChannelDatum())
+     * <p>
+     * note: this doesn't "actually" send the datum; it adds it to the message send queue (float data replace a pending
+     * value of the same measurement, see ConflatingSendQueue), and the send behavior sends it
      *
      * @param d the datum object to send
      */
     protected void sendDatum(MicrogridDatum d) {
         try {
-            sendObjectMessage(new MicrogridDatumMessage(d), this.receiver);
+            if (isAggregated(d)) {
+                aggregate((FloatMicrogridDatum) d);
+                return;
+            }
+            if (!reportFilter.shouldSend(d) || spool(d)) return;
+            sendChannelDatum(d, laneOf(d), d.get_id());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * registerChannel()
+     * <p>
+     * registers a float channel for sendFloat(); registering the same node and type again returns the same handle
+     *
+     * @param node the node the channel measures at
+     * @param type the measurement type of the channel
+     * @return the handle to pass to sendFloat()
+     */
+    protected int registerChannel(MicrogridNode node, MicrogridFloatMeasurementType type) {
+        if (type == null) throw new IllegalArgumentException("type cannot be null when registering a channel");
+        return registerChannel(node, type, null, type.get_id());
+    }
+
+    /**
+     * registerChannel()
+     * <p>
+     * registers a boolean channel for sendBoolean(); registering the same node and type again returns the same handle
+     *
+     * @param node the node the channel measures at
+     * @param type the measurement type of the channel
+     * @return the handle to pass to sendBoolean()
+     */
+    protected int registerChannel(MicrogridNode node, MicrogridBooleanMeasurementType type) {
+        if (type == null) throw new IllegalArgumentException("type cannot be null when registering a channel");
+        return registerChannel(node, null, type, type.get_id());
+    }
+
+    private int registerChannel(MicrogridNode node, MicrogridFloatMeasurementType floatType,
+                                MicrogridBooleanMeasurementType booleanType, byte measurementTypeId) {
+        if (node == null) throw new IllegalArgumentException("node cannot be null when registering a channel");
+        RegisteredChannel channel = new RegisteredChannel(MicrogridIdentityRegistry.getInstance().node(node),
+                floatType, booleanType, measurementTypeId);
+        synchronized (registeredChannelHandles) {
+            Integer existing = registeredChannelHandles.get(channel.key);
+            if (existing != null) return existing;
+            RegisteredChannel[] channels = Arrays.copyOf(registeredChannels, registeredChannels.length + 1);
+            channels[channels.length - 1] = channel;
+            registeredChannels = channels;
+            registeredChannelHandles.put(channel.key, channels.length - 1);
+            return channels.length - 1;
+        }
+    }
+
+    /**
+     * sendFloat()
+     * <p>
+     * sends a float sample of a channel registered with registerChannel(), unless reportFilter skips it, without
+     * creating a datum: the sample is appended to telemetrySamples, which SendJadeMessagesBehavior sends as one
+     * MicrogridDatumBatchMessage (compressed if the receivers agreed to MicrogridEncodingMessage.XOR_FLOATS) each time it
+     * dispatches. Once the channel has a dictionary handle, a sample allocates nothing.
+     * <p>
+     * samples that need a datum anyway take the sendDatum() path: those of aggregated measurement types (see
+     * enableAggregation()), those spooled while no receiver is reachable, and those of nodes outside our subgraph
+     * <p>
+     * may be called from any thread (see encodeBuffer; samples of one channel sent from several threads at once may be
+     * sent out of order, see telemetrySamples)
+     *
+     * @param channel   the handle registerChannel() returned
+     * @param timestamp the time the sample was taken in milliseconds since the epoch (like MicrogridDatum timestamps)
+     * @param value     the sample
+     */
+    protected void sendFloat(int channel, long timestamp, float value) {
+        RegisteredChannel c = registeredChannel(channel);
+        if (c.floatType == null) throw new IllegalArgumentException("channel " + channel + " is not a float channel");
+        if (aggregator.isAggregated(c.floatType) || isSpooling()) {
+            sendDatum(new FloatMicrogridDatum(timestamp, c.node, c.floatType, value));
+            return;
+        }
+        if (!reportFilter.shouldSend(c.key, c.measurementTypeId, timestamp, value)) return;
+        try {
+            synchronized (sampleLock) {
+                MicrogridChannelDictionary dictionary = this.channelDictionary;
+                int version = dictionary.getVersion();
+                int handle = dictionaryHandle(c, dictionary, Lane.TELEMETRY);
+                if (handle >= 0) {
+                    if (!telemetrySamples.append(version, handle, timestamp, value)) {
+                        flushSamples(telemetrySamples, Lane.TELEMETRY);
+                        telemetrySamples.append(version, handle, timestamp, value);
+                    }
+                    wakeSendBehavior(false);
+                    return;
+                }
+            }
+            sendDataMessage(new MicrogridDatumMessage(new FloatMicrogridDatum(timestamp, c.node, c.floatType, value)),
+                    c.key, Lane.TELEMETRY);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sendBoolean()
+     * <p>
+     * sends a boolean sample (a protection event) of a channel registered with registerChannel(), unless reportFilter
+     * skips it, without creating a datum: like sendFloat(), but the sample is appended to protectionSamples, which are
+     * sent in the PROTECTION lane
+     * <p>
+     * like sendDatum(), samples are sent as full MicrogridDatumMessages while a topology message is pending (see
+     * ReceiverDispatcher.isTopologyPending()); spooled samples and samples of nodes outside our subgraph take the
+     * sendDatum() path as well
+     *
+     * @param channel   the handle registerChannel() returned
+     * @param timestamp the time the sample was taken in milliseconds since the epoch (like MicrogridDatum timestamps)
+     * @param value     the sample
+     */
+    protected void sendBoolean(int channel, long timestamp, boolean value) {
+        RegisteredChannel c = registeredChannel(channel);
+        if (c.booleanType == null) throw new IllegalArgumentException("channel " + channel + " is not a boolean channel");
+        if (isSpooling()) {
+            sendDatum(new BooleanMicrogridDatum(timestamp, c.node, c.booleanType, value));
+            return;
+        }
+        if (!reportFilter.shouldSend(c.key, timestamp, value)) return;
+        try {
+            synchronized (sampleLock) {
+                MicrogridChannelDictionary dictionary = this.channelDictionary;
+                int version = dictionary.getVersion();
+                int handle = dispatcher.isTopologyPending() ? -1
+                        : dictionaryHandle(c, dictionary, Lane.PROTECTION);
+                if (handle >= 0) {
+                    if (!protectionSamples.append(version, handle, timestamp, value)) {
+                        flushSamples(protectionSamples, Lane.PROTECTION);
+                        protectionSamples.append(version, handle, timestamp, value);
+                    }
+                    wakeSendBehavior(true);
+                    return;
+                }
+            }
+            sendDataMessage(new MicrogridDatumMessage(new BooleanMicrogridDatum(timestamp, c.node, c.booleanType, value)),
+                    c.key, Lane.PROTECTION);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * registeredChannel()
+     *
+     * @return the channel registered with handle channel
+     */
+    private RegisteredChannel registeredChannel(int channel) {
+        RegisteredChannel[] channels = registeredChannels;
+        if (channel < 0 || channel >= channels.length) throw new IllegalArgumentException("unknown channel handle " + channel);
+        return channels[channel];
+    }
+
+    /**
+     * dictionaryHandle()
+     * <p>
+     * adds c to dictionary the first time it is used with it (announcing the dictionary, see announceDictionary());
+     * call with sampleLock held
+     *
+     * @param dictionary the current dictionary
+     * @param lane       the lane the sample that uses c travels in
+     * @return c's handle in dictionary or -1 if its node isn't part of our subgraph
+     */
+    private int dictionaryHandle(RegisteredChannel c, MicrogridChannelDictionary dictionary, Lane lane) throws IOException {
+        if (c.dictionary != dictionary) {
+            int channelCount = dictionary.getChannelCount();
+            c.dictionaryHandle = dictionary.addChannel(c.node, c.measurementTypeId);
+            c.dictionary = dictionary;
+            if (dictionary.getChannelCount() != channelCount) announceDictionary(dictionary, lane);
+        }
+        return c.dictionaryHandle;
+    }
+
+    /**
+     * flushSamples()
+     * <p>
+     * moves the samples sendFloat() and sendBoolean() buffered into the send queue as batches (called by
+     * SendJadeMessagesBehavior each time it wakes up)
+     */
+    private void flushSamples() throws IOException {
+        synchronized (sampleLock) {
+            flushSamples(protectionSamples, Lane.PROTECTION);
+            flushSamples(telemetrySamples, Lane.TELEMETRY);
+        }
+    }
+
+    /**
+     * flushSamples()
+     * <p>
+     * queues the samples in samples as one MicrogridDatumBatchMessage in lane and clears samples; call with sampleLock
+     * held
+     * <p>
+     * protection samples queued while a topology message is pending go behind it in the TOPOLOGY lane, so they can't
+     * overtake the dictionary their handles refer to
+     */
+    private void flushSamples(ChannelSampleBuffer samples, Lane lane) throws IOException {
+        if (samples.size() == 0) return;
+        boolean compressed = (dispatcher.agreedEncodings() & MicrogridEncodingMessage.XOR_FLOATS) != 0;
+        byte[] payload = encode(samples.toBatchMessage(compressed));
+        samples.clear();
+        if (lane == Lane.PROTECTION && dispatcher.isTopologyPending()) lane = Lane.TOPOLOGY;
+        queue(lane, null, payload);
+    }
+
+    /**
+     * sendChannelDatum()
+     * <p>
+     * queues d in lane, by channel handle if it has one (see sendDatum())
+     *
+     * @param key the conflation key for the TELEMETRY lane (see queue())
+     */
+    private void sendChannelDatum(MicrogridDatum d, Lane lane, String key) throws IOException {
+        if (!hasChannel(d) || (lane == Lane.PROTECTION && dispatcher.isTopologyPending())) {
+            sendDataMessage(new MicrogridDatumMessage(d), key, lane);
+            return;
+        }
+        MicrogridChannelDictionary dictionary = this.channelDictionary;
+        int handle = dictionary.getChannelHandle(d);
+        if (handle < 0) {
+            handle = dictionary.addChannel(d);
+            if (handle < 0) {
+                sendDataMessage(new MicrogridDatumMessage(d), key, lane);
+                return;
+            }
+            announceDictionary(dictionary, lane);
+        }
+        byte[] payload;
+        synchronized (encodeBuffer) {
+            encodeBuffer.reset();
+            MessageCodec.encodeChannelDatum(encodeBuffer, dictionary.getVersion(), handle, d);
+            payload = encodeBuffer.toByteArray();
+        }
+        queue(lane, key, payload);
+    }
+
+    /**
+     * aggregate()
+     * <p>
+     * adds a sample of an aggregated measurement type to its window and sends the aggregate of the previous window if
+     * the sample closed it (the aggregate replaces a pending one of the same channel); the sample itself is only sent
+     * if sendRawSamples is set, in the RAW lane
+     * <p>
+     * aggregates need MessageCodec version 2, so unless every reachable receiver agreed to
+     * MicrogridEncodingMessage.AGGREGATES, the last sample of the window is sent instead (as is the one spooled, since
+     * we can't know which receiver will replay it)
+     */
+    private void aggregate(FloatMicrogridDatum d) throws IOException {
+        AggregateMicrogridDatum aggregate = aggregator.add(d);
+        if (sendRawSamples && isReceiverReachable()) sendChannelDatum(d, Lane.RAW, null);
+        if (aggregate == null) return;
+        if ((dispatcher.agreedEncodings() & MicrogridEncodingMessage.AGGREGATES) == 0) {
+            FloatMicrogridDatum last = lastSample(aggregate);
+            if (!spool(last)) sendChannelDatum(last, Lane.TELEMETRY, last.get_id());
+        } else {
+            sendDataMessage(new MicrogridDatumMessage(aggregate), aggregate.get_id(), Lane.TELEMETRY);
+        }
+    }
+
+    /**
+     * lastSample()
+     *
+     * @return the last sample of aggregate's window, for receivers that can't read aggregates
+     */
+    private static FloatMicrogridDatum lastSample(AggregateMicrogridDatum aggregate) {
+        return new FloatMicrogridDatum(aggregate.getTimestamp(), aggregate.getNode(), aggregate.getMeasurementType(),
+                aggregate.getLast());
+    }
+
+    /**
+     * isAggregated()
+     *
+     * @return whether d is a sample of a measurement type we aggregate (see enableAggregation())
+     */
+    private boolean isAggregated(MicrogridDatum d) {
+        return d instanceof FloatMicrogridDatum && aggregator.isAggregated((FloatMicrogridDatum) d);
+    }
+
+    /**
+     * hasChannel()
+     *
+     * @return whether d can be sent by channel handle (single float and boolean readings can; aggregates are always
+     * sent as full MicrogridDatumMessages)
+     */
+    private static boolean hasChannel(MicrogridDatum d) {
+        return d instanceof FloatMicrogridDatum || d instanceof BooleanMicrogridDatum;
+    }
+
+    /**
+     * sendData()
+     * <p>
+     * sends several Datum objects (those reportFilter doesn't skip) to the receiver agents in MicrogridDatumBatchMessages
+     * (one ACLMessage per lane instead of one per datum: protection events and routine telemetry are batched
+     * separately, see sendDatum())
+     * <p>
+     * like sendDatum(), we announce the dictionary first if any of the data use a new channel, and data from nodes
+     * outside our subgraph are sent as full MicrogridDatumMessages
+     * <p>
+     * batches are compressed if the receivers agreed to MicrogridEncodingMessage.XOR_FLOATS
+     * telemetry batches are not conflated (each holds several measurements), but they are dropped oldest-first under
+     * overload
+     *
+     * @param data the datum objects to send (e.g. all measurements sampled in one tick)
+     */
+    protected void sendData(Collection<? extends MicrogridDatum> data) {
+        try {
+            boolean topologyPending = dispatcher.isTopologyPending();
+            MicrogridChannelDictionary dictionary = this.channelDictionary;
+            int channelCount = dictionary.getChannelCount();
+            int[] protectionHandles = new int[data.size()];
+            MicrogridDatum[] protectionData = new MicrogridDatum[data.size()];
+            int protectionCount = 0;
+            int[] telemetryHandles = new int[data.size()];
+            MicrogridDatum[] telemetryData = new MicrogridDatum[data.size()];
+            int telemetryCount = 0;
+            for (MicrogridDatum d : data) {
+                if (isAggregated(d)) {
+                    aggregate((FloatMicrogridDatum) d);
+                    continue;
+                }
+                if (!reportFilter.shouldSend(d) || spool(d)) continue;
+                Lane lane = laneOf(d);
+                int handle = !hasChannel(d) || (lane == Lane.PROTECTION && topologyPending) ? -1 : dictionary.addChannel(d);
+                if (handle < 0) {
+                    sendDataMessage(new MicrogridDatumMessage(d), d.get_id(), lane);
+                } else if (lane == Lane.PROTECTION) {
+                    protectionHandles[protectionCount] = handle;
+                    protectionData[protectionCount++] = d;
+                } else {
+                    telemetryHandles[telemetryCount] = handle;
+                    telemetryData[telemetryCount++] = d;
+                }
+            }
+            if (dictionary.getChannelCount() != channelCount) {
+                announceDictionary(dictionary, protectionCount > 0 ? Lane.PROTECTION : Lane.TOPOLOGY);
+            }
+            sendBatch(dictionary, protectionHandles, protectionData, protectionCount, Lane.PROTECTION);
+            sendBatch(dictionary, telemetryHandles, telemetryData, telemetryCount, Lane.TELEMETRY);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * sendBatch()
+     * <p>
+     * queues the first count rows as one MicrogridDatumBatchMessage in lane (nothing if count is 0)
+     */
+    private void sendBatch(MicrogridChannelDictionary dictionary, int[] handles, MicrogridDatum[] data, int count,
+                           Lane lane) throws IOException {
+        if (count == 0) return;
+        boolean compressed = (dispatcher.agreedEncodings() & MicrogridEncodingMessage.XOR_FLOATS) != 0;
+        sendDataMessage(new MicrogridDatumBatchMessage(dictionary.getVersion(),
+                Arrays.copyOf(handles, count), Arrays.copyOf(data, count), compressed), null, lane);
+    }
+
+    /**
+     * spool()
+     * <p>
+     * stores d in the spool instead of sending it if no receiver is reachable
+     *
+     * @return whether d was spooled
+     */
+    private boolean spool(MicrogridDatum d) throws IOException {
+        MappedSpool spool = this.spool;
+        if (spool == null || isReceiverReachable()) return false;
+        spool.append(d.getTimestamp(), encode(new MicrogridDatumMessage(d)));
+        return true;
+    }
+
+    /**
+     * spoolUndelivered()
+     * <p>
+     * stores the data in payloads, which no receiver got (see ReceiverDispatcher.fail()), in the spool, like data
+     * spooled right away: as full MicrogridDatumMessages, aggregates as their last sample (see aggregate()); data
+     * encoded against an older dictionary can't be resolved anymore and are lost, as is everything without a spool
+     */
+    private void spoolUndelivered(List<byte[]> payloads) {
+        if (spool == null || payloads.isEmpty()) return;
+        MicrogridChannelDictionary dictionary = this.channelDictionary;
+        List<MicrogridDatum> data = new ArrayList<MicrogridDatum>();
+        for (byte[] payload : payloads) {
+            try {
+                dictionary.resolve(MessageCodec.decode(payload), data);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            for (MicrogridDatum d : data) {
+                spool(d instanceof AggregateMicrogridDatum ? lastSample((AggregateMicrogridDatum) d) : d);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * isSpooling()
+     *
+     * @return whether data are currently spooled instead of sent (see spool())
+     */
+    private boolean isSpooling() {
+        return spool != null && !isReceiverReachable();
+    }
+
+    /**
+     * laneOf()
+     *
+     * @return the lane data like d travel in: PROTECTION for boolean data (faults, warnings, breaker trips),
+     * TELEMETRY for everything else (raw samples of aggregated channels go in the RAW lane, see aggregate())
+     */
+    private static Lane laneOf(MicrogridDatum d) {
+        return d instanceof BooleanMicrogridDatum ? Lane.PROTECTION : Lane.TELEMETRY;
+    }
+
+    /**
+     * announceDictionary()
+     * <p>
+     * sends dictionary after channels were added to it, ahead of the data that use the new channels: in the
+     * PROTECTION lane if protection events use them (so it isn't overtaken by them), else in the TOPOLOGY lane
+     * (the receiver ignores an announcement with fewer channels than the one it holds, so it doesn't matter if an
+     * older announcement arrives later)
+     */
+    private void announceDictionary(MicrogridChannelDictionary dictionary, Lane lane) throws IOException {
+        byte[] payload = encode(new MicrogridChannelDictionaryMessage(dictionary));
+        queue(lane == Lane.PROTECTION ? Lane.PROTECTION : Lane.TOPOLOGY, null, payload);
+    }
+
+    /**
+     * sendSubgraph()
+     * <p>
+     * sends our full subgraph, followed by our channel dictionary (so the receiver rebuilds it with the graph) and a
+     * MicrogridEncodingMessage offering our optional encodings (see ReceiveReplyMessagesBehavior)
+     * <p>
+     * called when we start, when setSubgraph() installs a different topology, and when a receiver asks for it or
+     * answers again after it was unreachable; SendMicrogridGraphMessageBehavior only renews it in between
+     */
+    private void sendSubgraph() {
+        sendSubgraph(null);
+    }
+
+    /**
+     * sendSubgraph()
+     *
+     * @param link the receiver to send the subgraph to, or null for all receivers (every receiver gets the current
+     *             value of each channel afterwards, see reportFilter)
+     */
+    private void sendSubgraph(ReceiverLink link) {
+        reportFilter.reset();
+        try {
+            long expirationMillis = System.currentTimeMillis() + this.gridUpdatePeriod + GRAPH_BUFFER_TIME_MILLIS;
+            sendObjectMessage(new MicrogridGraphMessage(this.subgraph, expirationMillis), link);
+            sendObjectMessage(new MicrogridChannelDictionaryMessage(this.channelDictionary), link);
+            sendObjectMessage(new MicrogridEncodingMessage(MicrogridEncodingMessage.SUPPORTED), link);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -141,50 +909,78 @@ public abstract class MicrogridSenderAgent extends Agent {
     /**
      * sendObjectMessage()
      * <p>
-     * sends the "content" object to the agent identified by the AID receiver via JADE messaging
-     * <p>
-     * called by SendMicrogridGraphMessageBehavior and sendDatum
-     * <p>
-     * adds the content as an ACLMessage to the message send queue (which is sent by the message send behavior)
-     * if the queue is full, we filter out all the data messages and try to add it
-     * if it's still full, we filter out all other message and it it
-     * this prioritizes graph messages, which are infrequent but critical
-     *
-     * @param content  object to send
-     * @param receiver agent id of the target receiver (usually this.receiver)
-     * @throws IOException throws IOException because serialization could fail
-     */
-    private void sendObjectMessage(Externalizable content, AID receiver) throws IOException, UnreadableException {
-        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(baos);
-        content.writeExternal(out);
-        out.close();
-        msg.setByteSequenceContent(baos.toByteArray());
-
-        msg.addReceiver(receiver);
-
-        //Try to add the message to the send queue; if it doesn't work, the queue is full
-        // if the queue is full, there's a problem. we're not gonna get all the data through
-        // we know new data is the priority, so clear the queue and add our message
-        if (!jadeMessageSendQueue.offer(msg)) {
-            System.out.println("Warning: Sender had to dump send queue");
-//            Collection<ACLMessage> graphMessages = new HashSet<ACLMessage>();
-//            Iterator<ACLMessage> iter = jadeMessageSendQueue.iterator();
-//            while (iter.hasNext()) {
-//                ACLMessage queuedMessage = iter.next();
-//                Serializable contentObject = queuedMessage.getContentObject();
-//                if (contentObject instanceof MicrogridGraphMessage) {
-//                    graphMessages.add(queuedMessage);
-//                }
-//            }
-//            jadeMessageSendQueue.clear();
-//            jadeMessageSendQueue.addAll(graphMessages);
-//            if (!jadeMessageSendQueue.offer(msg)) {
-                jadeMessageSendQueue.clear();
-                jadeMessageSendQueue.add(msg);
-//            }
+     * sends the "content" message to every receiver agent via JADE messaging, reachable or not
+     * <p>
+     * called by SendMicrogridGraphMessageBehavior and sendSubgraph()
+     * <p>
+     * encodes the content with MessageCodec and adds it to the TOPOLOGY lane of the message send queues (which are sent
+     * by the message send behavior): it is never conflated or dropped
+     *
+     * @param content message to send to the receivers
+     * @throws IOException throws IOException because encoding could fail
+     */
+    private void sendObjectMessage(Message content) throws IOException {
+        sendObjectMessage(content, null);
+    }
+
+    /**
+     * sendObjectMessage()
+     *
+     * @param content message to send
+     * @param link    the receiver to send it to, or null for all receivers
+     * @throws IOException throws IOException because encoding could fail
+     */
+    private void sendObjectMessage(Message content, ReceiverLink link) throws IOException {
+        wakeSendBehavior(dispatcher.queueTopology(encode(content), link));
+    }
+
+    /**
+     * sendDataMessage()
+     * <p>
+     * encodes a message carrying data and queues it in lane (see queue())
+     *
+     * @param content message to send to the receivers
+     * @param key     the _id of the datum content carries, or null if it must not be conflated (e.g. a batch)
+     * @param lane    PROTECTION, TELEMETRY or RAW
+     * @throws IOException throws IOException because encoding could fail
+     */
+    private void sendDataMessage(Message content, String key, Lane lane) throws IOException {
+        queue(lane, key, encode(content));
+    }
+
+    /**
+     * queue()
+     * <p>
+     * adds a data message to the send queue of every reachable receiver (see ReceiverDispatcher.queue()) and wakes
+     * sendBehavior
+     */
+    private void queue(Lane lane, String key, byte[] payload) {
+        wakeSendBehavior(dispatcher.queue(lane, key, payload));
+    }
+
+    /**
+     * wakeSendBehavior()
+     * <p>
+     * called after messages or samples were queued: wakes sendBehavior if it sleeps with nothing to send, or if urgent
+     *
+     * @param urgent whether to wake sendBehavior even if it waits for a queue's time threshold (a protection event was
+     *               queued, or a queue reached the size threshold)
+     */
+    private void wakeSendBehavior(boolean urgent) {
+        SendJadeMessagesBehavior b = sendBehavior;
+        if (b != null) b.wake(urgent);
+    }
+
+    /**
+     * encode()
+     *
+     * @return content encoded with MessageCodec (in encodeBuffer, then copied into the payload JADE keeps)
+     */
+    private byte[] encode(Message content) throws IOException {
+        synchronized (encodeBuffer) {
+            encodeBuffer.reset();
+            MessageCodec.encode(content, encodeBuffer);
+            return encodeBuffer.toByteArray();
         }
     }
 
@@ -193,11 +989,196 @@ public abstract class MicrogridSenderAgent extends Agent {
         return subgraph;
     }
 
+    /**
+     * getReportFilter()
+     * <p>
+     * subclasses configure report by exception here, e.g. in their constructor:
+     * getReportFilter().setDeadband(MicrogridFloatMeasurementType.VOLTAGE, Deadband.percent(1))
+     * (by default, float samples are sent whenever they change, boolean samples on transitions, and every channel at
+     * least every DEFAULT_HEARTBEAT_MILLIS)
+     *
+     * @return the filter that decides which samples are sent
+     */
+    public ReportByExceptionFilter getReportFilter() {
+        return reportFilter;
+    }
+
+    /**
+     * enableAggregation()
+     * <p>
+     * sends one AggregateMicrogridDatum (count, min, max, mean, last) per channel and window instead of every sample
+     * of type; for channels sampled far faster than the dashboard needs. Call it in the constructor of a subclass.
+     *
+     * @param type         a float measurement type
+     * @param windowMillis the window to aggregate over, or 0 to send every sample again
+     */
+    public void enableAggregation(MicrogridFloatMeasurementType type, long windowMillis) {
+        aggregator.setWindow(type, windowMillis);
+    }
+
+    /**
+     * setSendRawSamples()
+     *
+     * @param sendRawSamples whether to also send every sample of aggregated measurement types (in the RAW lane, so
+     *                       they don't delay other messages)
+     */
+    public void setSendRawSamples(boolean sendRawSamples) {
+        this.sendRawSamples = sendRawSamples;
+    }
+
+    /**
+     * getAggregator()
+     *
+     * @return the aggregator of this agent (for its sample and aggregate counts)
+     */
+    public WindowedAggregator getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * enableSpool()
+     * <p>
+     * stores data on disk while no receiver is reachable and replays them (at replayRate) once one answers again;
+     * call it in the constructor of a subclass. If file holds the spool of a previous run, its backlog is replayed.
+     *
+     * @param file          the spool file (one per agent)
+     * @param capacityBytes the size of the spool; once it is full, the oldest data are dropped (a datum takes about
+     *                      60 bytes)
+     * @throws IOException if the spool file cannot be opened
+     */
+    public void enableSpool(File file, int capacityBytes) throws IOException {
+        MappedSpool previous = this.spool;
+        this.spool = new MappedSpool(file, capacityBytes);
+        if (previous != null) previous.close();
+    }
+
+    /**
+     * setReplayRate()
+     *
+     * @param replayRate the most spooled data per second to replay; cannot be less than 1
+     */
+    public void setReplayRate(int replayRate) {
+        if (replayRate < 1) throw new IllegalArgumentException("replayRate cannot be less than 1 in MicrogridSenderAgent.setReplayRate()");
+        this.replayRate = replayRate;
+    }
+
+    /**
+     * getSpool()
+     *
+     * @return the spool (for its size and oldest unsent timestamp, see MappedSpool) or null if it isn't enabled
+     */
+    public MappedSpool getSpool() {
+        return spool;
+    }
+
+    public int getReplayRate() {
+        return replayRate;
+    }
+
+    /**
+     * getReplayedCount()
+     *
+     * @return the number of spooled data queued for sending so far
+     */
+    public long getReplayedCount() {
+        return replayedCount;
+    }
+
+    /**
+     * isReceiverReachable()
+     *
+     * @return whether at least one receiver is reachable (see ReceiverLink.isReachable())
+     */
+    public boolean isReceiverReachable() {
+        return dispatcher.isAnyReachable();
+    }
+
+    /**
+     * getReceiverLinks()
+     *
+     * @return the receivers we send to, with their send queues and health; the first is the primary receiver
+     */
+    public List<ReceiverLink> getReceiverLinks() {
+        return dispatcher.getLinks();
+    }
+
+    /**
+     * getConflatedMessageCount()
+     *
+     * @return the number of data messages that replaced a pending message for the same measurement before it was sent
+     * (summed over all receivers)
+     */
+    public long getConflatedMessageCount() {
+        return dispatcher.getConflatedCount();
+    }
+
+    /**
+     * getDroppedMessageCount()
+     *
+     * @return the number of data messages dropped because a send queue was full (summed over all receivers)
+     */
+    public long getDroppedMessageCount() {
+        return dispatcher.getDroppedCount();
+    }
+
+    /**
+     * getSendQueueLane()
+     *
+     * @param lane a lane of the send queue
+     * @return the queue of that lane for the primary receiver, for its statistics (e.g. getMeanLatencyNanos(), the time
+     * messages wait in it); see getReceiverLinks() for the other receivers
+     */
+    public ConflatingSendQueue<byte[]> getSendQueueLane(Lane lane) {
+        return dispatcher.getLinks().get(0).getSendQueue().getLane(lane);
+    }
+
+    /**
+     * setDispatchThresholds()
+     * <p>
+     * sets when the send behavior flushes the message send queue: as soon as maxBundleMessages messages are queued or
+     * the oldest one waited maxBundleDelayMillis, whichever comes first (protection events are always flushed right
+     * away). Lower thresholds mean lower latency; higher ones mean fewer, fuller ACLMessages (more throughput) and more
+     * time for newer values to replace queued ones.
+     * <p>
+     * may be called at any time, e.g. in the constructor of a subclass
+     *
+     * @param maxBundleMessages    size threshold; cannot be less than 1
+     * @param maxBundleDelayMillis time threshold in milliseconds; 0 flushes as soon as a message is queued
+     */
+    public void setDispatchThresholds(int maxBundleMessages, long maxBundleDelayMillis) {
+        dispatcher.setThresholds(maxBundleMessages, maxBundleDelayMillis);
+        wakeSendBehavior(true);
+    }
+
+    /**
+     * setSubgraph()
+     * <p>
+     * installs a new subgraph; if its topology differs from the current one, we start a new channel dictionary and
+     * (once the agent is running) send the full graph right away
+     *
+     * @param subgraph the subgraph (subgraph of the entire grid) that this agent knows about
+     */
     public void setSubgraph(MicrogridGraph subgraph) {
         if (subgraph == null) {
             throw new IllegalArgumentException("argument subgraph to MicrogridSenderAgent cannot be null");
         }
+        long contentHash = subgraph.getContentHash();
+        boolean changed = this.subgraph == null || contentHash != this.subgraphContentHash;
         this.subgraph = subgraph;
+        this.subgraphContentHash = contentHash;
+        if (!changed) return;
+
+        //Start a new dictionary version; the first one is random so that a restarted sender doesn't reuse the
+        // version (and therefore the handles) the receiver still holds from its previous run
+        synchronized (sampleLock) {
+            int version = this.channelDictionary == null
+                    ? new Random().nextInt(MAX_DICTIONARY_VERSION)
+                    : (this.channelDictionary.getVersion() + 1) % MAX_DICTIONARY_VERSION;
+            this.channelDictionary = new MicrogridChannelDictionary(version, subgraph);
+        }
+
+        //The constructor calls us before the send queue exists; setup() sends the first graph
+        if (this.dispatcher != null) sendSubgraph();
     }
 
     /**
@@ -207,8 +1188,9 @@ public abstract class MicrogridSenderAgent extends Agent {
      * private internal class: this class exists INSIDE the MicrogridReceiverAgent class and is private to it (it is used only in setup())
      * behavior: this a JADE behavior class
      * <p>
-     * This behavior sends our microgrid graph data to the receiver agent every period milliseconds
-     * We use MicrogridGraphMessages that expire just after the next is scheduled to be sent (see MicrogridGraphMessage docs)
+     * This behavior renews our microgrid graph data on the receiver agent every period milliseconds
+     * We use MicrogridGraphKeepAliveMessages (a few bytes instead of the whole subgraph) that expire just after the next
+     * is scheduled to be sent (see MicrogridGraphMessage docs); the full graph is sent by sendSubgraph()
      * <p>
      * We must send this information periodically because graph data expires on the LiveMicrogridGraph in the receiver agent.
      * This keeps the graph up to date if agents go offline (the subgraph they contribute will eventually be removed)
@@ -239,7 +1221,14 @@ public abstract class MicrogridSenderAgent extends Agent {
         @Override
         protected void onTick() {
             try {
-                sendObjectMessage(new MicrogridGraphMessage(getSubgraph(), System.currentTimeMillis() + getPeriod() + bufferTimeMillis), receiver);
+                sendObjectMessage(new MicrogridGraphKeepAliveMessage(getSubgraph().get_id(), subgraphContentHash,
+                        channelDictionary.getVersion(), System.currentTimeMillis() + getPeriod() + bufferTimeMillis));
+                //Probe unreachable receivers: they answer every encoding offer
+                for (ReceiverLink link : dispatcher.getLinks()) {
+                    if (!link.isReachable()) {
+                        sendObjectMessage(new MicrogridEncodingMessage(MicrogridEncodingMessage.SUPPORTED), link);
+                    }
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -249,41 +1238,196 @@ public abstract class MicrogridSenderAgent extends Agent {
     /**
      * SendJadeMessagesBehavior
      * <p>
-     * the behavior take "ACLMessage" elements from the jade message queue and sends them using jade messages
+     * the behavior takes the encoded messages from the send queue of each receiver and sends them using jade messages
+     * <p>
+     * use sendObjectMessage(), sendDatum() and sendData() to add messages to this queue
      * <p>
-     * use sendObjectMessage() to add jade messages to this queue
+     * each time it wakes up, the behavior moves the buffered samples into the send queues and lets dispatcher flush
+     * each queue that is due (see ReceiverDispatcher.dispatch() and setDispatchThresholds())
+     * <p>
+     * the behavior never polls: while the queues are empty it blocks until something is queued (see wake()); while it
+     * waits for a queue's time threshold, only a protection event or the size threshold wakes it early
      */
-    private class SendJadeMessagesBehavior extends CyclicBehaviour {
+    private class SendJadeMessagesBehavior extends CyclicBehaviour implements ReceiverDispatcher.Transport {
+        //What the behavior is doing, for wake()
+        private static final int RUNNING = 0;
+        private static final int WAITING = 1;
+        private static final int IDLE = 2;
+
         /**
-         * blockingTime
+         * state
          * <p>
-         * long
+         * AtomicInteger
          * <p>
-         * the amount of time to block for between sending messages
-         * lower = faster speed but higher risk of clogging receiving buffer
-         * higher = less CPU usage on this machine but lower throughput/higher risk of buffer overflow
+         * RUNNING, WAITING (blocked until a queue's time threshold) or IDLE (blocked with nothing queued)
          */
-        private final long blockingTime;
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
 
         /**
          * SendJadeMessagesBehavior()
          * <p>
          * constructor
          *
-         * @param a            the agent (this)
-         * @param blockingTime see blockingTime docs
+         * @param a the agent (this)
          */
-        public SendJadeMessagesBehavior(Agent a, long blockingTime) {
+        public SendJadeMessagesBehavior(Agent a) {
             super(a);
-            this.blockingTime = blockingTime;
         }
 
         @Override
         public void action() {
-            if (jadeMessageSendQueue.size() > 0) {
-                send(jadeMessageSendQueue.remove());
+            state.set(RUNNING);
+            try {
+                flushSamples();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            long blockMillis = dispatcher.dispatch(this);
+
+            //Block first, then publish the state and look again: whatever was queued in between wakes us
+            if (blockMillis < 0) {
+                block();
+                state.set(IDLE);
+                if (hasQueued()) wake(true);
+            } else {
+                block(blockMillis);
+                state.set(WAITING);
+                if (isDue()) wake(true);
+            }
+        }
+
+        @Override
+        public void send(ReceiverLink link, byte[] payload) {
+            myAgent.send(link.createMessage(payload));
+        }
+
+        /**
+         * wake()
+         * <p>
+         * restarts the behavior if it is IDLE, or WAITING and urgent; may be called from any thread
+         *
+         * @param urgent whether to wake the behavior even if it waits for a queue's time threshold
+         */
+        void wake(boolean urgent) {
+            int current = state.get();
+            if (current == IDLE || current == WAITING && urgent) {
+                if (state.compareAndSet(current, RUNNING)) restart();
+            }
+        }
+
+        /**
+         * hasQueued()
+         *
+         * @return whether there are messages or samples to send
+         */
+        private boolean hasQueued() {
+            synchronized (sampleLock) {
+                if (telemetrySamples.size() > 0 || protectionSamples.size() > 0) return true;
+            }
+            return dispatcher.hasQueued();
+        }
+
+        /**
+         * isDue()
+         *
+         * @return whether there are protection events to send or a queue reached the size threshold
+         */
+        private boolean isDue() {
+            synchronized (sampleLock) {
+                if (protectionSamples.size() > 0) return true;
+            }
+            return dispatcher.isDue();
+        }
+    }
+
+    /**
+     * ReplaySpoolBehavior
+     * <p>
+     * while a receiver is reachable, moves spooled data into the TELEMETRY lanes of the reachable receivers' send
+     * queues: replayRate per second at most, and only while each lane holds fewer than SEND_QUEUE_CAPACITY messages (replayed data are queued
+     * as required messages, so they are never dropped, and must not crowd out live data)
+     */
+    private class ReplaySpoolBehavior extends TickerBehaviour {
+        /**
+         * credit
+         * <p>
+         * double
+         * <p>
+         * the data we may still replay (replayRate accrues every tick; at most one second's worth is saved up)
+         */
+        private double credit;
+
+        ReplaySpoolBehavior(Agent a, long period) {
+            super(a, period);
+        }
+
+        @Override
+        protected void onTick() {
+            MappedSpool spool = MicrogridSenderAgent.this.spool;
+            if (spool == null || !isReceiverReachable() || spool.size() == 0) {
+                credit = 0;
+                return;
+            }
+            credit = Math.min(credit + replayRate * getPeriod() / 1000.0, replayRate);
+            while (credit >= 1 && dispatcher.getTelemetryBacklog() < SEND_QUEUE_CAPACITY) {
+                byte[] payload = spool.poll();
+                if (payload == null) break;
+                wakeSendBehavior(dispatcher.queueRequired(Lane.TELEMETRY, payload));
+                credit--;
+                replayedCount++;
+            }
+        }
+    }
+
+    /**
+     * ReceiveReplyMessagesBehavior
+     * <p>
+     * handles the receivers' replies:
+     * MicrogridEncodingMessage, MicrogridRateControlMessage, MicrogridInterestMessage: stored with the receiver's link
+     * (see ReceiverDispatcher.onReply()); reportFilter then throttles our float channels as much as the most overloaded
+     * reachable receiver asks and sends the float channels no reachable receiver watches only at a background heartbeat
+     * (see ReceiverDispatcher.applyReceiverRequests())
+     * MicrogridGraphRequestMessage: the receiver doesn't hold the subgraph or dictionary version we renewed; we resend
+     * both to it
+     * <p>
+     * FAILUREs (JADE couldn't deliver one of our messages) mark the receiver named by their conversation id unreachable
+     * (or every receiver, if the FAILURE doesn't name one); once no receiver is reachable, the data in the failed
+     * message and in the failed receivers' queues are spooled (see spoolUndelivered()). Any other message from a
+     * receiver marks it reachable again, and since it got no data in between, we resend it our subgraph
+     * <p>
+     * other incoming messages are ignored
+     */
+    private class ReceiveReplyMessagesBehavior extends CyclicBehaviour {
+        ReceiveReplyMessagesBehavior(Agent a) {
+            super(a);
+        }
+
+        @Override
+        public void action() {
+            ACLMessage msg = receive();
+            if (msg == null) {
+                block();
+                return;
+            }
+            if (msg.getPerformative() == ACLMessage.FAILURE) {
+                spoolUndelivered(dispatcher.fail(msg.getConversationId(), msg.getInReplyTo()));
+                dispatcher.applyReceiverRequests(reportFilter);
+                return;
+            }
+            ReceiverLink from = dispatcher.linkOf(msg.getSender());
+            Message content = null;
+            try {
+                content = MessageCodec.decode(msg.getByteSequenceContent());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            boolean resend = from != null && dispatcher.onReply(from, content);
+            if (content instanceof MicrogridGraphRequestMessage
+                    && ((MicrogridGraphRequestMessage) content).getSubgraphId().equals(subgraph.get_id())) {
+                resend = true;
             }
-            block(this.blockingTime);
+            dispatcher.applyReceiverRequests(reportFilter);
+            if (resend) sendSubgraph(from);
         }
     }
 }
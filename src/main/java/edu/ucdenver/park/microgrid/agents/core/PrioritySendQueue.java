@@ -0,0 +1,220 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PrioritySendQueue
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * the send queue of MicrogridSenderAgent: one ConflatingSendQueue per Lane
+ * <p>
+ * PROTECTION carries faults, warnings and breaker trips; TOPOLOGY carries graph, dictionary and other control
+ * messages; both are never conflated or dropped. TELEMETRY carries routine float data, which is conflated per
+ * measurement and dropped oldest-first under overload (see ConflatingSendQueue). RAW carries the raw samples of
+ * aggregated channels, which are dropped oldest-first, too.
+ * <p>
+ * poll() is weighted round robin: of every PROTECTION.weight + TOPOLOGY.weight + TELEMETRY.weight messages sent while
+ * every lane is busy, each lane gets its weight, higher lanes first. Idle lanes give their turns to the others, so
+ * protection events never wait behind a telemetry backlog, and telemetry still moves while protection events flood.
+ * Within a lane, messages keep their order.
+ * <p>
+ * TELEMETRY and RAW never pass a pending TOPOLOGY message, though: their data may be encoded against a dictionary
+ * that is still waiting in the TOPOLOGY lane, and a receiver that gets them first drops them as unresolved. They wait
+ * until the TOPOLOGY lane is empty (topology messages are few, so this costs telemetry little).
+ *
+ * @author Jake Billings
+ */
+public class PrioritySendQueue<T> {
+    /**
+     * Lane
+     * <p>
+     * enum
+     * <p>
+     * the lanes of the queue, highest priority first, and their share of the sends
+     */
+    public enum Lane {
+        PROTECTION(4),
+        TOPOLOGY(2),
+        TELEMETRY(1),
+        RAW(1);
+
+        private final int weight;
+
+        Lane(int weight) {
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    private static final Lane[] LANES = Lane.values();
+
+    /**
+     * lanes
+     * <p>
+     * ConflatingSendQueue[]
+     * <p>
+     * the queue of Lane l is lanes.get(l.ordinal())
+     */
+    private final List<ConflatingSendQueue<T>> lanes;
+
+    /**
+     * credits
+     * <p>
+     * int[]
+     * <p>
+     * the sends each lane has left in the current round; refilled to the weights when no busy lane has credit left
+     */
+    private final int[] credits = new int[LANES.length];
+
+    /**
+     * PrioritySendQueue()
+     * <p>
+     * constructor
+     *
+     * @param telemetryCapacity the most data messages the TELEMETRY and RAW lanes each hold before dropping the oldest
+     */
+    public PrioritySendQueue(int telemetryCapacity) {
+        this.lanes = new ArrayList<ConflatingSendQueue<T>>(LANES.length);
+        for (Lane lane : LANES) {
+            //Only TELEMETRY and RAW are offered droppable data, so the capacity doesn't matter for the other lanes
+            lanes.add(new ConflatingSendQueue<T>(telemetryCapacity));
+        }
+    }
+
+    /**
+     * add()
+     * <p>
+     * queues a message that must not be conflated or dropped
+     *
+     * @param lane the lane to queue it in
+     * @param item the message
+     */
+    public void add(Lane lane, T item) {
+        lanes.get(lane.ordinal()).add(item);
+    }
+
+    /**
+     * offer()
+     * <p>
+     * queues a telemetry message (see ConflatingSendQueue.offer())
+     *
+     * @param key  the conflation key (e.g. a datum _id) or null if the item must not be conflated
+     * @param item the message
+     */
+    public void offer(String key, T item) {
+        offer(Lane.TELEMETRY, key, item);
+    }
+
+    /**
+     * offer()
+     * <p>
+     * queues a droppable message in lane (see ConflatingSendQueue.offer())
+     *
+     * @param lane TELEMETRY or RAW
+     * @param key  the conflation key (e.g. a datum _id) or null if the item must not be conflated
+     * @param item the message
+     */
+    public void offer(Lane lane, String key, T item) {
+        if (lane != Lane.TELEMETRY && lane != Lane.RAW) throw new IllegalArgumentException("only TELEMETRY and RAW messages may be dropped");
+        lanes.get(lane.ordinal()).offer(key, item);
+    }
+
+    /**
+     * poll()
+     *
+     * @return the next message by weighted round robin (TELEMETRY and RAW only once TOPOLOGY is empty) or null if
+     * every lane is empty
+     */
+    public synchronized T poll() {
+        for (int round = 0; round < 2; round++) {
+            boolean topologyPending = hasPending(Lane.TOPOLOGY);
+            for (Lane lane : LANES) {
+                int i = lane.ordinal();
+                if (topologyPending && (lane == Lane.TELEMETRY || lane == Lane.RAW)) continue;
+                if (credits[i] > 0) {
+                    T item = lanes.get(i).poll();
+                    if (item != null) {
+                        credits[i]--;
+                        return item;
+                    }
+                }
+            }
+            //Every busy lane used its turns (or everything is empty); start a new round
+            for (Lane lane : LANES) {
+                credits[lane.ordinal()] = lane.getWeight();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * drain()
+     * <p>
+     * removes every message from lane (e.g. to store them while their receiver is unreachable)
+     *
+     * @param lane a lane
+     * @return the messages that were in lane, oldest first
+     */
+    public List<T> drain(Lane lane) {
+        ConflatingSendQueue<T> queue = lanes.get(lane.ordinal());
+        List<T> items = new ArrayList<T>();
+        T item;
+        while ((item = queue.poll()) != null) {
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * hasPending()
+     *
+     * @param lane a lane
+     * @return whether lane holds messages that haven't been polled yet
+     */
+    public boolean hasPending(Lane lane) {
+        return lanes.get(lane.ordinal()).size() > 0;
+    }
+
+    /**
+     * getLane()
+     *
+     * @param lane a lane
+     * @return the queue of that lane (for its counters and latency statistics; don't queue into it directly)
+     */
+    public ConflatingSendQueue<T> getLane(Lane lane) {
+        return lanes.get(lane.ordinal());
+    }
+
+    /**
+     * getOldestWaitNanos()
+     *
+     * @return how long the oldest message in any lane has been waiting, or -1 if every lane is empty
+     */
+    public long getOldestWaitNanos() {
+        long oldest = -1;
+        for (ConflatingSendQueue<T> lane : lanes) {
+            oldest = Math.max(oldest, lane.getOldestWaitNanos());
+        }
+        return oldest;
+    }
+
+    //----Getters----
+    public int size() {
+        int size = 0;
+        for (ConflatingSendQueue<T> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+}
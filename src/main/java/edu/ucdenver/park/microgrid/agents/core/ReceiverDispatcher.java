@@ -0,0 +1,583 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import edu.ucdenver.park.microgrid.agents.core.PrioritySendQueue.Lane;
+import edu.ucdenver.park.microgrid.message.ByteBufferDataOutput;
+import edu.ucdenver.park.microgrid.message.Message;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridEncodingMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridInterestMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridRateControlMessage;
+import jade.core.AID;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ReceiverDispatcher
+ * <p>
+ * class
+ * <p>
+ * mutable; queueing and the link getters are thread safe, dispatch() must only be called by one thread at a time
+ * <p>
+ * the receivers a MicrogridSenderAgent sends to (see ReceiverLink) and the fan-out to them: every payload is queued in
+ * the send queue of each receiver it goes to, and dispatch() flushes each queue on its own, so a slow, unreachable or
+ * failing receiver doesn't hold back the others
+ * <p>
+ * a queue is flushed once its size or time threshold is reached (see setThresholds()) or a protection event is
+ * waiting; a flush drains everything queued (in priority order, see PrioritySendQueue) into MicrogridBundleMessages of
+ * up to MAX_BUNDLE_BYTES each. Until it flushes, messages stay in the queue, where newer values still replace older
+ * ones. If a receiver hasn't agreed to MicrogridEncodingMessage.BUNDLES, every message is sent to it on its own.
+ *
+ * @author Jake Billings
+ */
+public class ReceiverDispatcher {
+    /**
+     * Transport
+     * <p>
+     * interface
+     * <p>
+     * sends payloads (in MicrogridSenderAgent, as ACLMessages created by ReceiverLink.createMessage())
+     */
+    public interface Transport {
+        /**
+         * send()
+         *
+         * @param link    the receiver to send payload to
+         * @param payload an encoded message or bundle (shared with other receivers; must not be modified)
+         */
+        void send(ReceiverLink link, byte[] payload);
+    }
+
+    /**
+     * links
+     * <p>
+     * ReceiverLink[]
+     * <p>
+     * the receivers, each with its own send queue and health; links[0] is the primary receiver
+     */
+    private final ReceiverLink[] links;
+
+    /**
+     * maxBundleMessages
+     * <p>
+     * int
+     * <p>
+     * size threshold: a queue is flushed as soon as this many messages are queued (see setThresholds())
+     */
+    private volatile int maxBundleMessages = DEFAULT_MAX_BUNDLE_MESSAGES;
+
+    /**
+     * maxBundleDelayMillis
+     * <p>
+     * long
+     * <p>
+     * time threshold: a queue is flushed once its oldest message waited this long (see setThresholds())
+     */
+    private volatile long maxBundleDelayMillis = DEFAULT_MAX_BUNDLE_DELAY_MILLIS;
+
+    /**
+     * DEFAULT_MAX_BUNDLE_MESSAGES
+     * <p>
+     * int
+     * <p>
+     * default size threshold; a tick of the dummy controllers is well under this, so they are flushed by time
+     */
+    public static final int DEFAULT_MAX_BUNDLE_MESSAGES = 64;
+
+    /**
+     * DEFAULT_MAX_BUNDLE_DELAY_MILLIS
+     * <p>
+     * long
+     * <p>
+     * default time threshold; the old send behavior waited this long between single messages, so no message waits
+     * longer than it used to
+     */
+    public static final long DEFAULT_MAX_BUNDLE_DELAY_MILLIS = 10;
+
+    /**
+     * MAX_BUNDLE_BYTES
+     * <p>
+     * int
+     * <p>
+     * a flush is split into several bundles of at most this many bytes (a message that is bigger on its own, e.g. a
+     * large graph message, is sent by itself)
+     */
+    private static final int MAX_BUNDLE_BYTES = 8192;
+
+    /**
+     * bundle
+     * <p>
+     * byte[][]
+     * <p>
+     * the payloads of the bundle being packed (only the first bundleCount are used; grows as needed)
+     */
+    private byte[][] bundle = new byte[DEFAULT_MAX_BUNDLE_MESSAGES][];
+    private int bundleCount;
+    private int bundleBytes;
+
+    /**
+     * bundleBuffer
+     * <p>
+     * ByteBufferDataOutput
+     * <p>
+     * the buffer bundles are encoded into (only used by dispatch(), so it needs no lock)
+     */
+    private final ByteBufferDataOutput bundleBuffer = new ByteBufferDataOutput(MAX_BUNDLE_BYTES);
+
+    /**
+     * ReceiverDispatcher()
+     * <p>
+     * constructor
+     *
+     * @param receivers         the agent ids (AIDs) of the receivers; the first is the primary receiver
+     * @param telemetryCapacity the most droppable messages each lane of each send queue holds (see PrioritySendQueue)
+     */
+    public ReceiverDispatcher(List<AID> receivers, int telemetryCapacity) {
+        if (receivers == null || receivers.isEmpty())
+            throw new IllegalArgumentException("receivers cannot be empty when creating ReceiverDispatcher");
+        if (new HashSet<AID>(receivers).size() != receivers.size())
+            throw new IllegalArgumentException("receivers cannot contain duplicates when creating ReceiverDispatcher");
+        ReceiverLink[] links = new ReceiverLink[receivers.size()];
+        for (int i = 0; i < links.length; i++) {
+            if (receivers.get(i) == null)
+                throw new IllegalArgumentException("receiver cannot be null when creating ReceiverDispatcher");
+            links[i] = new ReceiverLink(receivers.get(i), telemetryCapacity);
+        }
+        this.links = links;
+    }
+
+    /**
+     * queue()
+     * <p>
+     * adds a data message to the send queue of every reachable receiver (they all share payload): protection events
+     * are never conflated or dropped; telemetry and raw samples replace a pending message with the same key and may be
+     * dropped under overload (see ConflatingSendQueue)
+     *
+     * @param lane    the lane to queue payload in
+     * @param key     the conflation key (e.g. a datum _id) or null if payload must not be conflated
+     * @param payload the encoded message
+     * @return whether a queue is due now (see isDue())
+     */
+    public boolean queue(Lane lane, String key, byte[] payload) {
+        boolean due = false;
+        for (ReceiverLink link : links) {
+            if (!link.isReachable()) continue;
+            if (lane == Lane.TELEMETRY || lane == Lane.RAW) {
+                link.getSendQueue().offer(lane, key, payload);
+            } else {
+                link.getSendQueue().add(lane, payload);
+            }
+            due |= isDue(link, lane);
+        }
+        return due;
+    }
+
+    /**
+     * queueRequired()
+     * <p>
+     * adds a message that must not be conflated or dropped (e.g. replayed data) to the send queue of every reachable
+     * receiver
+     *
+     * @return whether a queue is due now
+     */
+    public boolean queueRequired(Lane lane, byte[] payload) {
+        boolean due = false;
+        for (ReceiverLink link : links) {
+            if (!link.isReachable()) continue;
+            link.getSendQueue().add(lane, payload);
+            due |= isDue(link, lane);
+        }
+        return due;
+    }
+
+    /**
+     * queueTopology()
+     * <p>
+     * adds a topology message to the TOPOLOGY lane of link's send queue, reachable or not (topology messages also
+     * probe unreachable receivers)
+     *
+     * @param link the receiver to send payload to, or null for all receivers
+     * @return whether a queue is due now
+     */
+    public boolean queueTopology(byte[] payload, ReceiverLink link) {
+        boolean due = false;
+        for (ReceiverLink l : links) {
+            if (link == null || l == link) {
+                l.getSendQueue().add(Lane.TOPOLOGY, payload);
+                due |= isDue(l, Lane.TOPOLOGY);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * isDue()
+     *
+     * @return whether link's queue is due after a message was queued in lane (a protection event, or the size
+     * threshold reached)
+     */
+    private boolean isDue(ReceiverLink link, Lane lane) {
+        return lane == Lane.PROTECTION || link.getSendQueue().size() >= maxBundleMessages;
+    }
+
+    /**
+     * dispatch()
+     * <p>
+     * flushes every queue that is due to transport; an exception while flushing one queue is logged and doesn't keep
+     * the others from being flushed
+     *
+     * @return how long the queues can wait before they must be looked at again, or -1 if they are all empty
+     */
+    public long dispatch(Transport transport) {
+        long blockMillis = -1;
+        for (ReceiverLink link : links) {
+            long waitMillis = dispatch(link, transport);
+            if (waitMillis >= 0) blockMillis = blockMillis < 0 ? waitMillis : Math.min(blockMillis, waitMillis);
+        }
+        return blockMillis;
+    }
+
+    /**
+     * dispatch()
+     * <p>
+     * flushes the queue of link if it is due
+     *
+     * @return how long link's queue can wait before it must be looked at again, or -1 if it is empty
+     */
+    private long dispatch(ReceiverLink link, Transport transport) {
+        PrioritySendQueue<byte[]> queue = link.getSendQueue();
+        long waitedNanos = queue.getOldestWaitNanos();
+        if (waitedNanos < 0) return -1;
+        long waitedMillis = waitedNanos / 1000000L;
+        long delayMillis = maxBundleDelayMillis;
+        if (waitedMillis < delayMillis && queue.size() < maxBundleMessages && !queue.hasPending(Lane.PROTECTION)) {
+            return delayMillis - waitedMillis;
+        }
+        try {
+            flush(link, transport);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            Arrays.fill(bundle, 0, bundleCount, null);
+            bundleCount = 0;
+            bundleBytes = 0;
+        }
+        //Whatever was queued while we flushed may wait the whole delay
+        return queue.size() > 0 ? Math.max(delayMillis, 1) : -1;
+    }
+
+    /**
+     * flush()
+     * <p>
+     * sends everything in the queue of link
+     */
+    private void flush(ReceiverLink link, Transport transport) throws IOException {
+        boolean bundling = (link.getEncodings() & MicrogridEncodingMessage.BUNDLES) != 0;
+        PrioritySendQueue<byte[]> queue = link.getSendQueue();
+        byte[] payload;
+        while ((payload = queue.poll()) != null) {
+            if (!bundling) {
+                transport.send(link, payload);
+                continue;
+            }
+            if (bundleCount > 0 && bundleBytes + payload.length > MAX_BUNDLE_BYTES) sendBundle(link, transport);
+            if (bundleCount == bundle.length) bundle = Arrays.copyOf(bundle, bundleCount * 2);
+            bundle[bundleCount++] = payload;
+            bundleBytes += payload.length;
+        }
+        if (bundleCount > 0) sendBundle(link, transport);
+    }
+
+    /**
+     * sendBundle()
+     * <p>
+     * sends the payloads in bundle to link as one message (a single payload is sent as it is) and empties bundle
+     */
+    private void sendBundle(ReceiverLink link, Transport transport) throws IOException {
+        byte[] payload;
+        if (bundleCount == 1) {
+            payload = bundle[0];
+        } else {
+            bundleBuffer.reset();
+            MessageCodec.encodeBundle(bundleBuffer, bundle, bundleCount);
+            payload = bundleBuffer.toByteArray();
+        }
+        Arrays.fill(bundle, 0, bundleCount, null);
+        bundleCount = 0;
+        bundleBytes = 0;
+        transport.send(link, payload);
+    }
+
+    /**
+     * hasQueued()
+     *
+     * @return whether a send queue holds messages
+     */
+    public boolean hasQueued() {
+        for (ReceiverLink link : links) {
+            if (link.getSendQueue().size() > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * isDue()
+     *
+     * @return whether a send queue holds a protection event or reached the size threshold
+     */
+    public boolean isDue() {
+        for (ReceiverLink link : links) {
+            PrioritySendQueue<byte[]> queue = link.getSendQueue();
+            if (queue.hasPending(Lane.PROTECTION) || queue.size() >= maxBundleMessages) return true;
+        }
+        return false;
+    }
+
+    /**
+     * fail()
+     * <p>
+     * marks the receiver named name unreachable (or every receiver, if name doesn't name one): JADE couldn't deliver
+     * a message to it
+     * <p>
+     * once no receiver is reachable, nobody got the data that were still on their way: the payload of the failed
+     * message and the PROTECTION and TELEMETRY lanes of the failed receivers' queues are removed and returned, so they
+     * can be spooled. While another receiver is reachable, it already has them, and they stay where they are.
+     *
+     * @param name      the name of a receiver (the conversation id of the messages we send it, see ReceiverLink)
+     * @param inReplyTo the reply-with id of the message that failed, or null if it isn't known
+     * @return the payloads no receiver got (data, graph and other control messages alike), oldest first
+     */
+    public List<byte[]> fail(String name, String inReplyTo) {
+        ReceiverLink failed = linkNamed(name);
+        for (ReceiverLink link : links) {
+            if (failed != null && link != failed) continue;
+            if (link.isReachable()) {
+                System.err.println("WARNING: MicrogridSenderAgent cannot reach its receiver " + link.getReceiver());
+            }
+            link.setReachable(false);
+        }
+        List<byte[]> undelivered = new ArrayList<byte[]>();
+        if (isAnyReachable()) return undelivered;
+        for (ReceiverLink link : links) {
+            if (failed != null && link != failed) continue;
+            byte[] payload = inReplyTo == null ? null : link.takeSent(inReplyTo);
+            if (payload != null) undelivered.add(payload);
+            undelivered.addAll(link.getSendQueue().drain(Lane.PROTECTION));
+            undelivered.addAll(link.getSendQueue().drain(Lane.TELEMETRY));
+        }
+        return undelivered;
+    }
+
+    /**
+     * onReply()
+     * <p>
+     * marks link reachable (it answered) and stores what content asks for:
+     * MicrogridEncodingMessage: the encodings link agreed to (its throttling and interest are forgotten, since the
+     * receiver forgets them when it renegotiates)
+     * MicrogridRateControlMessage: how much link asks us to throttle
+     * MicrogridInterestMessage: the channels somebody at link watches
+     *
+     * @param link    the receiver that sent a reply
+     * @param content the decoded reply, or null if it couldn't be decoded
+     * @return whether link was unreachable until now (it got no data in between, so it needs our subgraph again)
+     */
+    public boolean onReply(ReceiverLink link, Message content) {
+        boolean reconnected = !link.isReachable();
+        link.setReachable(true);
+        if (content instanceof MicrogridEncodingMessage) {
+            link.setEncodings(((MicrogridEncodingMessage) content).getEncodings() & MicrogridEncodingMessage.SUPPORTED);
+            link.setRateControl(null);
+            link.setInterest(null);
+        } else if (content instanceof MicrogridRateControlMessage) {
+            link.setRateControl((MicrogridRateControlMessage) content);
+        } else if (content instanceof MicrogridInterestMessage) {
+            MicrogridInterestMessage interest = (MicrogridInterestMessage) content;
+            link.setInterest(interest.isAll() ? null : interest.getChannelIds());
+        }
+        return reconnected;
+    }
+
+    /**
+     * applyReceiverRequests()
+     * <p>
+     * every payload goes to all reachable receivers, so filter throttles as much as the most overloaded of them asked
+     * and sends every channel any of them watches; unreachable receivers don't hold back the others
+     */
+    public void applyReceiverRequests(ReportByExceptionFilter filter) {
+        int minIntervalMillis = 0;
+        float deadbandScale = 1f;
+        Set<String> interest = null;
+        boolean watchesAll = false;
+        for (ReceiverLink link : links) {
+            if (!link.isReachable()) continue;
+            MicrogridRateControlMessage rateControl = link.getRateControl();
+            if (rateControl != null) {
+                minIntervalMillis = Math.max(minIntervalMillis, rateControl.getMinIntervalMillis());
+                deadbandScale = Math.max(deadbandScale, rateControl.getDeadbandScale());
+            }
+            Set<String> watched = link.getInterest();
+            if (watched == null) {
+                watchesAll = true;
+            } else {
+                if (interest == null) interest = new HashSet<String>();
+                interest.addAll(watched);
+            }
+        }
+        filter.setRateControl(minIntervalMillis, deadbandScale);
+        filter.setInterest(watchesAll ? null : interest);
+    }
+
+    /**
+     * linkOf()
+     *
+     * @param receiver the agent id (AID) of a receiver
+     * @return the link to that receiver or null if there is none
+     */
+    public ReceiverLink linkOf(AID receiver) {
+        for (ReceiverLink link : links) {
+            if (link.getReceiver().equals(receiver)) return link;
+        }
+        return null;
+    }
+
+    /**
+     * linkNamed()
+     *
+     * @param name the name of a receiver (the conversation id of the messages we send it)
+     * @return the link to that receiver or null if there is none
+     */
+    private ReceiverLink linkNamed(String name) {
+        for (ReceiverLink link : links) {
+            if (link.getReceiver().getName().equals(name)) return link;
+        }
+        return null;
+    }
+
+    /**
+     * setThresholds()
+     * <p>
+     * sets when a send queue is flushed: as soon as maxBundleMessages messages are queued or the oldest one waited
+     * maxBundleDelayMillis, whichever comes first (protection events are always flushed right away)
+     *
+     * @param maxBundleMessages    size threshold; cannot be less than 1
+     * @param maxBundleDelayMillis time threshold in milliseconds; 0 flushes as soon as a message is queued
+     */
+    public void setThresholds(int maxBundleMessages, long maxBundleDelayMillis) {
+        if (maxBundleMessages < 1)
+            throw new IllegalArgumentException("maxBundleMessages cannot be less than 1 in ReceiverDispatcher.setThresholds()");
+        if (maxBundleDelayMillis < 0)
+            throw new IllegalArgumentException("maxBundleDelayMillis cannot be negative in ReceiverDispatcher.setThresholds()");
+        this.maxBundleMessages = maxBundleMessages;
+        this.maxBundleDelayMillis = maxBundleDelayMillis;
+    }
+
+    /**
+     * isAnyReachable()
+     *
+     * @return whether at least one receiver is reachable (see ReceiverLink.isReachable())
+     */
+    public boolean isAnyReachable() {
+        for (ReceiverLink link : links) {
+            if (link.isReachable()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * isTopologyPending()
+     *
+     * @return whether a topology message (e.g. a new dictionary) waits in the send queue of a reachable receiver; data
+     * that overtake it must not refer to it
+     */
+    public boolean isTopologyPending() {
+        for (ReceiverLink link : links) {
+            if (link.isReachable() && link.getSendQueue().hasPending(Lane.TOPOLOGY)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * agreedEncodings()
+     *
+     * @return the optional encodings all reachable receivers agreed to; messages are encoded once for all of them, so
+     * only these may be used in payloads (bundling is decided per receiver when sending)
+     */
+    public int agreedEncodings() {
+        int agreed = MicrogridEncodingMessage.SUPPORTED;
+        boolean any = false;
+        for (ReceiverLink link : links) {
+            if (!link.isReachable()) continue;
+            agreed &= link.getEncodings();
+            any = true;
+        }
+        return any ? agreed : 0;
+    }
+
+    /**
+     * getTelemetryBacklog()
+     *
+     * @return the most messages in the TELEMETRY lane of a reachable receiver
+     */
+    public int getTelemetryBacklog() {
+        int backlog = 0;
+        for (ReceiverLink link : links) {
+            if (link.isReachable()) backlog = Math.max(backlog, link.getSendQueue().getLane(Lane.TELEMETRY).size());
+        }
+        return backlog;
+    }
+
+    //----Getters----
+
+    /**
+     * getLinks()
+     *
+     * @return the receivers, with their send queues and health; the first is the primary receiver
+     */
+    public List<ReceiverLink> getLinks() {
+        return Collections.unmodifiableList(Arrays.asList(links));
+    }
+
+    public int getMaxBundleMessages() {
+        return maxBundleMessages;
+    }
+
+    public long getMaxBundleDelayMillis() {
+        return maxBundleDelayMillis;
+    }
+
+    /**
+     * getConflatedCount()
+     *
+     * @return the number of data messages that replaced a pending message for the same measurement before it was sent
+     * (summed over all receivers)
+     */
+    public long getConflatedCount() {
+        long count = 0;
+        for (ReceiverLink link : links) {
+            count += link.getConflatedCount();
+        }
+        return count;
+    }
+
+    /**
+     * getDroppedCount()
+     *
+     * @return the number of data messages dropped because a send queue was full (summed over all receivers)
+     */
+    public long getDroppedCount() {
+        long count = 0;
+        for (ReceiverLink link : links) {
+            count += link.getDroppedCount();
+        }
+        return count;
+    }
+}
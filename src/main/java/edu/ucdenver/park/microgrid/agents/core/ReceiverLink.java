@@ -0,0 +1,227 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import edu.ucdenver.park.microgrid.agents.core.PrioritySendQueue.Lane;
+import edu.ucdenver.park.microgrid.message.MicrogridRateControlMessage;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ReceiverLink
+ * <p>
+ * class
+ * <p>
+ * thread safe
+ * <p>
+ * One of the receivers a MicrogridSenderAgent sends to, with its own send queue and health: the optional encodings
+ * it agreed to and whether JADE can currently deliver to it. The sender encodes every message once and adds the same
+ * payload to the queue of each receiver it goes to; each queue is then conflated, dropped and bundled on its own, so a
+ * slow or unreachable receiver doesn't hold back the others.
+ * <p>
+ * The ACLMessages we send carry the receiver's name as conversation id and a reply-with id of their own, which JADE
+ * copies into the FAILURE it returns if it can't deliver them (as conversation id and in-reply-to), so the sender
+ * knows which receiver failed and which payload it didn't get.
+ *
+ * @author Jake Billings
+ */
+public class ReceiverLink {
+    private final AID receiver;
+
+    /**
+     * sendQueue
+     * <p>
+     * PrioritySendQueue of byte[]
+     * <p>
+     * the encoded messages waiting to be sent to receiver (the payloads are shared with the other receivers' queues and
+     * must not be modified)
+     */
+    private final PrioritySendQueue<byte[]> sendQueue;
+
+    /**
+     * encodings
+     * <p>
+     * int
+     * <p>
+     * the optional encodings the receiver agreed to (bit set of MicrogridEncodingMessage constants)
+     */
+    private volatile int encodings = 0;
+
+    /**
+     * reachable
+     * <p>
+     * boolean
+     * <p>
+     * false from the time JADE reports that a message to the receiver could not be delivered until the receiver
+     * answers again; while it is false, the receiver only gets topology messages (keep-alives and encoding offers that
+     * probe it)
+     */
+    private volatile boolean reachable = true;
+
+    /**
+     * rateControl
+     * <p>
+     * MicrogridRateControlMessage
+     * <p>
+     * how much the receiver last asked us to throttle, or null if it didn't (cleared when encodings are renegotiated,
+     * since the receiver forgets it then too)
+     */
+    private volatile MicrogridRateControlMessage rateControl;
+
+    /**
+     * interest
+     * <p>
+     * Set of String
+     * <p>
+     * the _ids of the channels somebody at the receiver watches, or null for every channel (until the receiver tells
+     * us; cleared when encodings are renegotiated)
+     */
+    private volatile Set<String> interest;
+
+    /**
+     * sent
+     * <p>
+     * LinkedHashMap String, byte[]
+     * <p>
+     * the payloads of the last SENT_CAPACITY ACLMessages sent to the receiver, by their reply-with id, so the payload of
+     * a message JADE couldn't deliver can still be spooled (guarded by itself)
+     */
+    private final Map<String, byte[]> sent = new LinkedHashMap<String, byte[]>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > SENT_CAPACITY;
+        }
+    };
+
+    /**
+     * SENT_CAPACITY
+     * <p>
+     * int
+     * <p>
+     * how many sent payloads are remembered; JADE reports a failed delivery within a few messages, so older ones were
+     * delivered (or are lost anyway)
+     */
+    private static final int SENT_CAPACITY = 32;
+
+    private volatile long sentMessageCount;
+
+    /**
+     * ReceiverLink()
+     * <p>
+     * constructor
+     *
+     * @param receiver          the agent id (AID) of the MicrogridReceiverAgent
+     * @param telemetryCapacity the most droppable messages each lane of the send queue holds (see PrioritySendQueue)
+     */
+    ReceiverLink(AID receiver, int telemetryCapacity) {
+        if (receiver == null) throw new IllegalArgumentException("receiver cannot be null when creating a ReceiverLink");
+        this.receiver = receiver;
+        this.sendQueue = new PrioritySendQueue<byte[]>(telemetryCapacity);
+    }
+
+    /**
+     * createMessage()
+     *
+     * @param payload the encoded message (JADE keeps a reference to it, so it must not be reused)
+     * @return an ACLMessage carrying payload to receiver
+     */
+    public ACLMessage createMessage(byte[] payload) {
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setByteSequenceContent(payload);
+        msg.addReceiver(receiver);
+        msg.setConversationId(receiver.getName());
+        String replyWith = receiver.getName() + "-" + sentMessageCount;
+        msg.setReplyWith(replyWith);
+        synchronized (sent) {
+            sent.put(replyWith, payload);
+        }
+        sentMessageCount++;
+        return msg;
+    }
+
+    /**
+     * takeSent()
+     *
+     * @param replyWith the reply-with id of an ACLMessage created by createMessage() (the in-reply-to of its FAILURE)
+     * @return the payload of that message, or null if it isn't remembered (anymore); it is forgotten afterwards
+     */
+    byte[] takeSent(String replyWith) {
+        synchronized (sent) {
+            return sent.remove(replyWith);
+        }
+    }
+
+    void setEncodings(int encodings) {
+        this.encodings = encodings;
+    }
+
+    void setReachable(boolean reachable) {
+        this.reachable = reachable;
+    }
+
+    void setRateControl(MicrogridRateControlMessage rateControl) {
+        this.rateControl = rateControl;
+    }
+
+    void setInterest(Set<String> interest) {
+        this.interest = interest;
+    }
+
+    //----Getters----
+    public AID getReceiver() {
+        return receiver;
+    }
+
+    public PrioritySendQueue<byte[]> getSendQueue() {
+        return sendQueue;
+    }
+
+    public int getEncodings() {
+        return encodings;
+    }
+
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    public MicrogridRateControlMessage getRateControl() {
+        return rateControl;
+    }
+
+    public Set<String> getInterest() {
+        return interest;
+    }
+
+    /**
+     * getSentMessageCount()
+     *
+     * @return the number of ACLMessages sent to the receiver (a bundle counts once)
+     */
+    public long getSentMessageCount() {
+        return sentMessageCount;
+    }
+
+    /**
+     * getConflatedCount()
+     *
+     * @return the number of telemetry messages for the receiver that were replaced by newer ones before being sent
+     */
+    public long getConflatedCount() {
+        return sendQueue.getLane(Lane.TELEMETRY).getConflatedCount();
+    }
+
+    /**
+     * getDroppedCount()
+     *
+     * @return the number of telemetry messages for the receiver dropped because its queue was full
+     */
+    public long getDroppedCount() {
+        return sendQueue.getLane(Lane.TELEMETRY).getDroppedCount();
+    }
+}
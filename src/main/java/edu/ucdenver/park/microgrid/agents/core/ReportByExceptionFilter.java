@@ -0,0 +1,367 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import edu.ucdenver.park.microgrid.data.BooleanMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridFloatMeasurementType;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ReportByExceptionFilter
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * decides which samples MicrogridSenderAgent sends (report by exception): a sample is sent only if it differs enough
+ * from the last value sent for its channel (the measurement at a node, i.e. the datum _id), or if the channel hasn't
+ * been sent for heartbeatMillis so the receiver still sees that it is alive
+ * <p>
+ * float samples differ enough if they are outside the Deadband of their measurement type around the last value sent
+ * (any change, if the type has no deadband); boolean samples differ enough if they changed (transitions)
+ * <p>
+ * samples are compared with the last value sent, not the last sample, so slow drifts are reported once they add up to
+ * the deadband. Heartbeats use datum timestamps.
+ * <p>
+ * when the receiver asks the sender to slow down (see setRateControl()), float channels are additionally sent at most
+ * once per minIntervalMillis and their deadbands are widened; boolean channels (protection events) are never throttled
+ * <p>
+ * likewise, once the receiver told us which channels somebody watches (see setInterest()), float channels nobody
+ * watches are only sent every backgroundHeartbeatMillis
+ *
+ * @author Jake Billings
+ */
+public class ReportByExceptionFilter {
+    /**
+     * DEFAULT_BACKGROUND_HEARTBEAT_MILLIS
+     * <p>
+     * long
+     * <p>
+     * by default, a float channel nobody watches is sent this often
+     */
+    public static final long DEFAULT_BACKGROUND_HEARTBEAT_MILLIS = 30000;
+
+    /**
+     * Deadband
+     * <p>
+     * class
+     * <p>
+     * immutable
+     * <p>
+     * how far a float measurement must move from the last value sent before it is sent again: an absolute amount (in
+     * the unit of the measurement) or a percent of the last value sent
+     */
+    public static final class Deadband {
+        private final float amount;
+        private final boolean percent;
+
+        private Deadband(float amount, boolean percent) {
+            if (!(amount >= 0)) throw new IllegalArgumentException("amount must be a non-negative number when creating a Deadband");
+            this.amount = amount;
+            this.percent = percent;
+        }
+
+        /**
+         * absolute()
+         *
+         * @param amount the change (e.g. in Volts) a value must exceed to be sent
+         * @return a deadband of amount around the last value sent
+         */
+        public static Deadband absolute(float amount) {
+            return new Deadband(amount, false);
+        }
+
+        /**
+         * percent()
+         *
+         * @param percent the change in percent of the last value sent a value must exceed to be sent
+         * @return a deadband of percent around the last value sent
+         */
+        public static Deadband percent(float percent) {
+            return new Deadband(percent, true);
+        }
+
+        /**
+         * isExceeded()
+         *
+         * @param sent  the last value sent
+         * @param value the new sample
+         * @return whether value is outside this deadband around sent (a change to or from NaN always is)
+         */
+        public boolean isExceeded(float sent, float value) {
+            return isExceeded(sent, value, 1f);
+        }
+
+        /**
+         * isExceeded()
+         *
+         * @param sent  the last value sent
+         * @param value the new sample
+         * @param scale the factor to widen this deadband by
+         * @return whether value is outside scale times this deadband around sent (a change to or from NaN always is)
+         */
+        public boolean isExceeded(float sent, float value, float scale) {
+            if (Float.isNaN(sent) || Float.isNaN(value)) return Float.isNaN(sent) != Float.isNaN(value);
+            float band = (percent ? Math.abs(sent) * amount / 100f : amount) * scale;
+            return Math.abs(value - sent) > band;
+        }
+
+        public String toString() {
+            return percent ? amount + "%" : Float.toString(amount);
+        }
+    }
+
+    /**
+     * Channel
+     * <p>
+     * the last value sent for one channel and when it was sampled
+     */
+    private static final class Channel {
+        private long sentTimestamp;
+        private float floatValue;
+        private boolean booleanValue;
+    }
+
+    /**
+     * deadbands
+     * <p>
+     * Deadband[]
+     * <p>
+     * the deadband of each float measurement type, indexed by type _id (null: any change is sent)
+     */
+    private final Deadband[] deadbands = new Deadband[128];
+
+    private final Map<String, Channel> channels = new HashMap<String, Channel>();
+
+    private long heartbeatMillis;
+    private long suppressedCount;
+
+    //Rate control requested by the receiver (see setRateControl())
+    private long minIntervalMillis = 0;
+    private float deadbandScale = 1f;
+
+    /**
+     * interest
+     * <p>
+     * Set of String
+     * <p>
+     * the _ids of the channels somebody watches, or null if every channel is watched (see setInterest())
+     */
+    private Set<String> interest = null;
+    private long backgroundHeartbeatMillis = DEFAULT_BACKGROUND_HEARTBEAT_MILLIS;
+
+    /**
+     * ReportByExceptionFilter()
+     * <p>
+     * constructor
+     *
+     * @param heartbeatMillis the longest a channel goes without being sent (see setHeartbeatMillis())
+     */
+    public ReportByExceptionFilter(long heartbeatMillis) {
+        setHeartbeatMillis(heartbeatMillis);
+    }
+
+    /**
+     * setDeadband()
+     *
+     * @param type     a float measurement type
+     * @param deadband how far measurements of that type must move to be sent, or null to send every change
+     */
+    public synchronized void setDeadband(MicrogridFloatMeasurementType type, Deadband deadband) {
+        deadbands[type.get_id()] = deadband;
+    }
+
+    /**
+     * setHeartbeatMillis()
+     *
+     * @param heartbeatMillis the longest (in datum time) a channel goes without being sent, even if its value doesn't
+     *                        change; 0 sends every sample (no filtering)
+     */
+    public synchronized void setHeartbeatMillis(long heartbeatMillis) {
+        if (heartbeatMillis < 0) throw new IllegalArgumentException("heartbeatMillis cannot be negative in ReportByExceptionFilter");
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * setRateControl()
+     *
+     * @param minIntervalMillis the least time (in datum time) between two samples sent of a float channel; 0 for no
+     *                          limit
+     * @param deadbandScale     the factor to widen the deadbands of float channels by; 1 for the configured deadbands
+     */
+    public synchronized void setRateControl(long minIntervalMillis, float deadbandScale) {
+        if (minIntervalMillis < 0) throw new IllegalArgumentException("minIntervalMillis cannot be negative in ReportByExceptionFilter");
+        if (!(deadbandScale >= 1f)) throw new IllegalArgumentException("deadbandScale cannot be less than 1 in ReportByExceptionFilter");
+        this.minIntervalMillis = minIntervalMillis;
+        this.deadbandScale = deadbandScale;
+    }
+
+    /**
+     * setInterest()
+     * <p>
+     * channels that become watched are sent with their next sample, so a new plot fills right away
+     *
+     * @param interest the _ids of the float channels somebody watches, or null if every channel is watched
+     */
+    public synchronized void setInterest(Set<String> interest) {
+        for (String key : new HashSet<String>(channels.keySet())) {
+            if (!isInterested(key) && (interest == null || interest.contains(key))) channels.remove(key);
+        }
+        this.interest = interest == null ? null : new HashSet<String>(interest);
+    }
+
+    /**
+     * setBackgroundHeartbeatMillis()
+     *
+     * @param backgroundHeartbeatMillis how often (in datum time) a float channel nobody watches is sent
+     */
+    public synchronized void setBackgroundHeartbeatMillis(long backgroundHeartbeatMillis) {
+        if (backgroundHeartbeatMillis < 0) throw new IllegalArgumentException("backgroundHeartbeatMillis cannot be negative in ReportByExceptionFilter");
+        this.backgroundHeartbeatMillis = backgroundHeartbeatMillis;
+    }
+
+    /**
+     * shouldSend()
+     * <p>
+     * decides whether d is sent; if it is, d becomes the last value sent for its channel
+     *
+     * @param d a sample
+     * @return whether to send d
+     */
+    public boolean shouldSend(MicrogridDatum d) {
+        if (d instanceof FloatMicrogridDatum) {
+            FloatMicrogridDatum f = (FloatMicrogridDatum) d;
+            return shouldSend(f.get_id(), f.getMeasurementTypeId(), f.getTimestamp(), f.getValue());
+        }
+        if (d instanceof BooleanMicrogridDatum) {
+            BooleanMicrogridDatum b = (BooleanMicrogridDatum) d;
+            return shouldSend(b.get_id(), b.getTimestamp(), b.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * shouldSend()
+     * <p>
+     * shouldSend(d) for a float sample that isn't a datum (see MicrogridSenderAgent.sendFloat()); allocates nothing
+     * once the channel was seen
+     *
+     * @param key               the _id data from the sample's channel have
+     * @param measurementTypeId the _id of the channel's float measurement type
+     * @param timestamp         the time the sample was taken
+     * @param value             the sample
+     * @return whether to send the sample
+     */
+    public synchronized boolean shouldSend(String key, byte measurementTypeId, long timestamp, float value) {
+        Channel channel = channels.get(key);
+        if (channel == null) {
+            channel = new Channel();
+            channels.put(key, channel);
+        } else if (!isInterested(key) ? timestamp - channel.sentTimestamp < backgroundHeartbeatMillis
+                : timestamp - channel.sentTimestamp < minIntervalMillis
+                || !isHeartbeat(channel, timestamp) && !isExceeded(channel, measurementTypeId, value)) {
+            suppressedCount++;
+            return false;
+        }
+        channel.sentTimestamp = timestamp;
+        channel.floatValue = value;
+        return true;
+    }
+
+    /**
+     * shouldSend()
+     * <p>
+     * shouldSend(d) for a boolean sample that isn't a datum (see MicrogridSenderAgent.sendBoolean()); allocates
+     * nothing once the channel was seen
+     *
+     * @param key       the _id data from the sample's channel have
+     * @param timestamp the time the sample was taken
+     * @param value     the sample
+     * @return whether to send the sample
+     */
+    public synchronized boolean shouldSend(String key, long timestamp, boolean value) {
+        Channel channel = channels.get(key);
+        if (channel == null) {
+            channel = new Channel();
+            channels.put(key, channel);
+        } else if (!isHeartbeat(channel, timestamp) && value == channel.booleanValue) {
+            suppressedCount++;
+            return false;
+        }
+        channel.sentTimestamp = timestamp;
+        channel.booleanValue = value;
+        return true;
+    }
+
+    /**
+     * isHeartbeat()
+     *
+     * @return whether channel is due to be sent again even if its value didn't change
+     */
+    private boolean isHeartbeat(Channel channel, long timestamp) {
+        return timestamp - channel.sentTimestamp >= heartbeatMillis;
+    }
+
+    /**
+     * isInterested()
+     *
+     * @return whether somebody watches the channel with the _id key
+     */
+    private boolean isInterested(String key) {
+        return interest == null || interest.contains(key);
+    }
+
+    /**
+     * isExceeded()
+     *
+     * @return whether value moved beyond the (widened) deadband of its type since channel was last sent
+     */
+    private boolean isExceeded(Channel channel, byte measurementTypeId, float value) {
+        Deadband deadband = deadbands[measurementTypeId];
+        if (deadband == null) return Float.floatToIntBits(value) != Float.floatToIntBits(channel.floatValue);
+        return deadband.isExceeded(channel.floatValue, value, deadbandScale);
+    }
+
+    /**
+     * reset()
+     * <p>
+     * forgets every value sent, so the next sample of every channel is sent (e.g. when the receiver lost its state)
+     */
+    public synchronized void reset() {
+        channels.clear();
+    }
+
+    //----Getters----
+    public synchronized long getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    public synchronized long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    public synchronized float getDeadbandScale() {
+        return deadbandScale;
+    }
+
+    public synchronized long getBackgroundHeartbeatMillis() {
+        return backgroundHeartbeatMillis;
+    }
+
+    /**
+     * getSuppressedCount()
+     *
+     * @return the number of samples that were not sent
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.agents.core;
+
+import edu.ucdenver.park.microgrid.data.AggregateMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridFloatMeasurementType;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * WindowedAggregator
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * summarizes the float samples of every channel (the measurement at a node, i.e. the datum _id) of the measurement
+ * types it is configured for into one AggregateMicrogridDatum per window
+ * <p>
+ * A channel's window starts with its first sample and lasts windowMillis (in datum time). The window is closed, and
+ * its aggregate returned, by the first sample at or after its end, which starts the next window; aggregates are
+ * therefore sent as soon as a high-rate channel moves on, and a channel that stops sampling keeps its last window open.
+ *
+ * @author Jake Billings
+ */
+public class WindowedAggregator {
+    /**
+     * Window
+     * <p>
+     * the running summary of one channel's current window
+     */
+    private static final class Window {
+        private final byte typeId;
+        private long start;
+        private long end;
+        private long lastTimestamp;
+        private int count;
+        private float min;
+        private float max;
+        private double sum;
+        private float last;
+
+        private Window(byte typeId) {
+            this.typeId = typeId;
+        }
+    }
+
+    /**
+     * windowMillis
+     * <p>
+     * long[]
+     * <p>
+     * the window of each float measurement type, indexed by type _id (0: the type isn't aggregated)
+     */
+    private final long[] windowMillis = new long[128];
+
+    private final Map<String, Window> windows = new HashMap<String, Window>();
+
+    private long sampleCount;
+    private long aggregateCount;
+
+    /**
+     * setWindow()
+     *
+     * @param type         a float measurement type
+     * @param windowMillis the window to aggregate samples of that type over, or 0 to stop aggregating them (open windows
+     *                     of the type are discarded)
+     */
+    public synchronized void setWindow(MicrogridFloatMeasurementType type, long windowMillis) {
+        if (windowMillis < 0) throw new IllegalArgumentException("windowMillis cannot be negative in WindowedAggregator");
+        this.windowMillis[type.get_id()] = windowMillis;
+        if (windowMillis == 0) {
+            Iterator<Window> iterator = windows.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().typeId == type.get_id()) iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * isAggregated()
+     *
+     * @param d a sample
+     * @return whether add() takes samples like d
+     */
+    public synchronized boolean isAggregated(FloatMicrogridDatum d) {
+        return windowMillis[d.getMeasurementTypeId()] > 0;
+    }
+
+    /**
+     * isAggregated()
+     *
+     * @param type a float measurement type
+     * @return whether add() takes samples of type
+     */
+    public synchronized boolean isAggregated(MicrogridFloatMeasurementType type) {
+        return windowMillis[type.get_id()] > 0;
+    }
+
+    /**
+     * add()
+     * <p>
+     * adds d to the window of its channel (d's type must be aggregated, see isAggregated())
+     *
+     * @param d a sample
+     * @return the aggregate of the channel's previous window if d closed it, else null
+     */
+    public synchronized AggregateMicrogridDatum add(FloatMicrogridDatum d) {
+        long window = windowMillis[d.getMeasurementTypeId()];
+        if (window <= 0) throw new IllegalArgumentException("measurement type " + d.getMeasurementType() + " is not aggregated");
+        sampleCount++;
+        Window w = windows.get(d.get_id());
+        AggregateMicrogridDatum closed = null;
+        if (w == null) {
+            w = new Window(d.getMeasurementTypeId());
+            windows.put(d.get_id(), w);
+        } else if (d.getTimestamp() >= w.end) {
+            closed = new AggregateMicrogridDatum(w.start, w.lastTimestamp, d.getNode(),
+                    d.getMeasurementType(), w.count, w.min, w.max, (float) (w.sum / w.count), w.last);
+            aggregateCount++;
+            w.count = 0;
+        }
+        float value = d.getValue();
+        if (w.count == 0) {
+            w.start = d.getTimestamp();
+            w.end = w.start + window;
+            w.min = value;
+            w.max = value;
+            w.sum = 0;
+            w.lastTimestamp = w.start;
+        } else {
+            w.min = Math.min(w.min, value);
+            w.max = Math.max(w.max, value);
+        }
+        w.count++;
+        w.sum += value;
+        w.last = value;
+        w.lastTimestamp = Math.max(w.lastTimestamp, d.getTimestamp());
+        return closed;
+    }
+
+    //----Getters----
+    /**
+     * getSampleCount()
+     *
+     * @return the number of samples added
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * getAggregateCount()
+     *
+     * @return the number of aggregates returned by add()
+     */
+    public synchronized long getAggregateCount() {
+        return aggregateCount;
+    }
+}
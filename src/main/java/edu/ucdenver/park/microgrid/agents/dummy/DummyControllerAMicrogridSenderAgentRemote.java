@@ -9,7 +9,9 @@ import edu.ucdenver.park.microgrid.data.*;
 import jade.core.AID;
 import jade.core.behaviours.TickerBehaviour;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -103,6 +105,9 @@ public class DummyControllerAMicrogridSenderAgentRemote extends MicrogridSenderA
     public DummyControllerAMicrogridSenderAgentRemote() {
         //Call super with the parameters from above
         super(makeReceiverAID(), makeMicrogridGraph(), makeGridUpdatePeriod());
+
+        //Report by exception: skip samples that didn't change much
+        controller.configureReportFilter(getReportFilter());
     }
 
     
@@ -128,48 +133,52 @@ public class DummyControllerAMicrogridSenderAgentRemote extends MicrogridSenderA
             protected void onTick() {
                 MicrogridNode node = getSubgraph().getNodes().iterator().next();
 
-                sendDatum(
+                //Sample everything first, then send it as one batch
+                List<MicrogridDatum> data = new ArrayList<MicrogridDatum>();
+                data.add(
                         new FloatMicrogridDatum(
                                 System.currentTimeMillis(),
                                 g,
                                 MicrogridFloatMeasurementType.VOLTAGE,
                                 controller.getVoltage()));
-                sendDatum(
+                data.add(
                         new FloatMicrogridDatum(
                                 System.currentTimeMillis(),
                                 g,
                                 MicrogridFloatMeasurementType.AMPERAGE,
                                 controller.getAmperage()));
-                sendDatum(
+                data.add(
                         new FloatMicrogridDatum(
                                 System.currentTimeMillis(),
                                 gBreaker,
                                 MicrogridFloatMeasurementType.AMPERAGE,
                                 controller.getAmperage()));
-                sendDatum(
+                data.add(
                         new FloatMicrogridDatum(
                                 System.currentTimeMillis(),
                                 g,
                                 MicrogridFloatMeasurementType.WATTAGE,
                                 controller.getWattage()));
-                sendDatum(
+                data.add(
                         new BooleanMicrogridDatum(
                                 System.currentTimeMillis(),
                                 g,
                                 MicrogridBooleanMeasurementType.FAULT,
                                 controller.isFault()));
-                sendDatum(
+                data.add(
                         new BooleanMicrogridDatum(
                                 System.currentTimeMillis(),
                                 g,
                                 MicrogridBooleanMeasurementType.WARNING,
                                 controller.isWarning()));
-                sendDatum(
+                data.add(
                         new BooleanMicrogridDatum(
                                 System.currentTimeMillis(),
                                 gBreaker,
                                 MicrogridBooleanMeasurementType.CIRCUIT_BREAKER_TRIPPED,
                                 controller.isCircuitBreakerOpen()));
+
+                sendData(data);
             }
         });
     }
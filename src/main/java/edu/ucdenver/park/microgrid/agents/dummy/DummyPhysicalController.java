@@ -1,5 +1,9 @@
 package edu.ucdenver.park.microgrid.agents.dummy;
 
+import edu.ucdenver.park.microgrid.agents.core.ReportByExceptionFilter;
+import edu.ucdenver.park.microgrid.agents.core.ReportByExceptionFilter.Deadband;
+import edu.ucdenver.park.microgrid.data.MicrogridFloatMeasurementType;
+
 /**
  * DummyPhysicalController
  * <p>
@@ -36,6 +40,20 @@ public class DummyPhysicalController {
         return isFault();
     }
 
+    /**
+     * configureReportFilter()
+     * <p>
+     * sets deadbands that suit the dummy measurements: voltage is constant, so it is only sent as a heartbeat; the
+     * amperage sine (10 A) is sent about every 1 A and wattage about every 500 W
+     *
+     * @param filter the report filter of a dummy sender agent (see MicrogridSenderAgent.getReportFilter())
+     */
+    public void configureReportFilter(ReportByExceptionFilter filter) {
+        filter.setDeadband(MicrogridFloatMeasurementType.VOLTAGE, Deadband.percent(1));
+        filter.setDeadband(MicrogridFloatMeasurementType.AMPERAGE, Deadband.absolute(1));
+        filter.setDeadband(MicrogridFloatMeasurementType.WATTAGE, Deadband.absolute(500));
+    }
+
     private static DummyPhysicalController instance = new DummyPhysicalController();
 
     public static DummyPhysicalController getInstance() {
@@ -0,0 +1,241 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.data;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import javax.persistence.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * AggregateMicrogridDatum
+ *
+ * class
+ *
+ * immutable
+ *
+ * This class summarizes the float readings of one instrument over a window of time: their count, min, max, mean and
+ *  the last reading. Senders send one aggregate per window instead of every reading for channels that are sampled
+ *  far faster than the dashboard needs (see MicrogridSenderAgent.enableAggregation()).
+ *
+ * The timestamp of an aggregate is the timestamp of its last reading and its _id is the _id of the readings (the
+ *  node and measurement type) followed by KEY_SUFFIX: aggregates form a channel of their own, so they neither replace
+ *  nor are replaced by raw readings of the same channel in LiveMicrogrid, and an aggregate and the reading it ends on
+ *  are stored under different keys. getValue() is the last reading, so code that shows a FloatMicrogridDatum's value
+ *  shows an aggregate's, too.
+ *
+ * This class should fit into one INSERT call into a SQL database.
+ *
+ *  @author Jake Billings
+ */
+@Access(AccessType.PROPERTY)
+@Entity
+public class AggregateMicrogridDatum extends MicrogridDatum {
+    /**
+     * KEY_SUFFIX
+     *
+     * String
+     *
+     * appended to the _id of the readings to make the _id of their aggregates
+     */
+    public static final String KEY_SUFFIX = "-aggregate";
+
+    /**
+     * measurementType
+     *
+     * MicrogridFloatMeasurementType
+     *
+     * the type of measurement summarized (e.g. Volts, Amps, Watts)
+     */
+    private MicrogridFloatMeasurementType measurementType;
+
+    /**
+     * windowStart
+     *
+     * long
+     *
+     * the timestamp of the first reading in the window
+     */
+    private long windowStart;
+
+    /**
+     * count
+     *
+     * int
+     *
+     * the number of readings summarized; always at least one
+     */
+    private int count;
+
+    private float min;
+    private float max;
+    private float mean;
+    private float last;
+
+    /**
+     * AggregateMicrogridDatum
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public AggregateMicrogridDatum() {
+        super();
+    }
+
+    /**
+     * AggregateMicrogridDatum
+     *
+     * constructor
+     *
+     * @param windowStart the timestamp of the first reading
+     * @param timestamp the timestamp of the last reading
+     * @param node the node the readings were recorded at
+     * @param measurementType the MicrogridFloatMeasurementType of the readings
+     * @param count the number of readings
+     * @param min the smallest reading
+     * @param max the largest reading
+     * @param mean the mean of the readings
+     * @param last the last reading
+     */
+    public AggregateMicrogridDatum(long windowStart, long timestamp, MicrogridNode node,
+                                   MicrogridFloatMeasurementType measurementType,
+                                   int count, float min, float max, float mean, float last) {
+        super(timestamp, node, measurementType.get_id());
+        if (count < 1) throw new IllegalArgumentException("count must be positive when instantiating AggregateMicrogridDatum object");
+        if (windowStart > timestamp) throw new IllegalArgumentException("windowStart cannot be after timestamp when instantiating AggregateMicrogridDatum object");
+        this.measurementType = measurementType;
+        this.windowStart = windowStart;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.last = last;
+        this.internId();
+    }
+
+    /**
+     * getAggregateKey()
+     *
+     * @param node              the node readings were recorded at
+     * @param measurementTypeId the _id of their measurement type
+     * @return the _id of aggregates of those readings
+     */
+    public static String getAggregateKey(MicrogridNode node, byte measurementTypeId) {
+        return MicrogridIdentityRegistry.getInstance().measurementKey(node, measurementTypeId) + KEY_SUFFIX;
+    }
+
+    //----DB Property Getters----
+    @Column(name = "measurement_type_id")
+    public byte getMeasurementTypeId() {
+        return this.getMeasurementType().get_id();
+    }
+    public void setMeasurementTypeId(byte newId) {
+        this.setMeasurementType(MicrogridFloatMeasurementType.fromId(newId));
+    }
+    @Column(name = "window_start")
+    public long getWindowStart() {
+        return windowStart;
+    }
+    @Column(name = "sample_count")
+    public int getCount() {
+        return count;
+    }
+    @Column(name = "min_value")
+    public float getMin() {
+        return min;
+    }
+    @Column(name = "max_value")
+    public float getMax() {
+        return max;
+    }
+    @Column(name = "mean_value")
+    public float getMean() {
+        return mean;
+    }
+    @Column(name = "last_value")
+    public float getLast() {
+        return last;
+    }
+
+    //----Other Getters----
+    @Transient
+    @JsonInclude
+    public MicrogridFloatMeasurementType getMeasurementType() {
+        return measurementType;
+    }
+
+    /**
+     * getValue()
+     *
+     * @return the last reading (the value of this channel at getTimestamp())
+     */
+    @Transient
+    @JsonInclude
+    public float getValue() {
+        return last;
+    }
+
+    //----Setters----
+    private void setMeasurementType(MicrogridFloatMeasurementType measurementType) {
+        this.measurementType = measurementType;
+    }
+    private void setWindowStart(long windowStart) {
+        this.windowStart = windowStart;
+    }
+    private void setCount(int count) {
+        this.count = count;
+    }
+    private void setMin(float min) {
+        this.min = min;
+    }
+    private void setMax(float max) {
+        this.max = max;
+    }
+    private void setMean(float mean) {
+        this.mean = mean;
+    }
+    private void setLast(float last) {
+        this.last = last;
+    }
+
+    /**
+     * internId()
+     * <p>
+     * aggregates have an _id of their own (see getAggregateKey())
+     */
+    @Override
+    protected void internId() {
+        this.set_id(getAggregateKey(this.getNode(), this.getMeasurementTypeId()));
+    }
+
+    //----Encoders----
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        out.writeByte(this.getMeasurementType().get_id());
+        out.writeLong(this.getWindowStart());
+        out.writeInt(this.getCount());
+        out.writeFloat(this.getMin());
+        out.writeFloat(this.getMax());
+        out.writeFloat(this.getMean());
+        out.writeFloat(this.getLast());
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        super.read(in);
+        this.setMeasurementType(MicrogridFloatMeasurementType.fromId(in.readByte()));
+        this.setWindowStart(in.readLong());
+        this.setCount(in.readInt());
+        this.setMin(in.readFloat());
+        this.setMax(in.readFloat());
+        this.setMean(in.readFloat());
+        this.setLast(in.readFloat());
+        this.internId();
+    }
+}
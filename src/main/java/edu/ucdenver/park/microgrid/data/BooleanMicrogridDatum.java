@@ -7,9 +7,9 @@ package edu.ucdenver.park.microgrid.data;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import javax.persistence.*;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * BooleanMicrogridDatum
@@ -115,18 +115,19 @@ public class BooleanMicrogridDatum extends MicrogridDatum {
         this.value = value;
     }
 
-    //----Externalizers----
+    //----Encoders----
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
-        super.writeExternal(out);
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
         out.writeBoolean(this.getValue());
         out.writeByte(this.getMeasurementType().get_id());
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        super.readExternal(in);
+    public void read(DataInput in) throws IOException {
+        super.read(in);
         this.setValue(in.readBoolean());
         this.setMeasurementType(MicrogridBooleanMeasurementType.fromId(in.readByte()));
+        this.internId();
     }
 }
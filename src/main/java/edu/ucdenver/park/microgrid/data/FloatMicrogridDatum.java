@@ -7,9 +7,9 @@ package edu.ucdenver.park.microgrid.data;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import javax.persistence.*;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * FloatMicrogridDatum
@@ -114,18 +114,19 @@ public class FloatMicrogridDatum extends MicrogridDatum {
         this.value = value;
     }
 
-    //----Externalizers----
+    //----Encoders----
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
-        super.writeExternal(out);
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
         out.writeFloat(this.getValue());
         out.writeByte(this.getMeasurementType().get_id());
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        super.readExternal(in);
+    public void read(DataInput in) throws IOException {
+        super.read(in);
         this.setValue(in.readFloat());
         this.setMeasurementType(MicrogridFloatMeasurementType.fromId(in.readByte()));
+        this.internId();
     }
 }
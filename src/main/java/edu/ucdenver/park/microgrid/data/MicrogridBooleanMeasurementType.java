@@ -4,24 +4,26 @@
  */
 package edu.ucdenver.park.microgrid.data;
 
-import com.fasterxml.jackson.annotation.JsonFormat;
-
 /**
  * MicrogridBooleanMeasurementType
  *
- * enum
+ * class
+ *
+ * immutable
  *
  * types of measurements MicrogridBooleamDatum can have and unit strings for them
  *
  * E.g. Voltage-Volts-V
  *
+ * The types below are built in; more are registered at startup from configuration (see
+ *  MicrogridMeasurementTypeRegistry). There is exactly one instance per _id, so types may be compared with ==.
+ *
  * @author Jake Billings
  */
-@JsonFormat(shape = JsonFormat.Shape.OBJECT)
-public enum MicrogridBooleanMeasurementType {
-    FAULT((byte) -1, "Fault", "Fault", "Nominal"),
-    WARNING((byte) -2, "Warning", "Warning", "Nominal"),
-    CIRCUIT_BREAKER_TRIPPED((byte) -3, "Circuit Breaker", "Open", "Nominal (Closed)");
+public final class MicrogridBooleanMeasurementType {
+    public static final MicrogridBooleanMeasurementType FAULT = new MicrogridBooleanMeasurementType((byte) -1, "Fault", "Fault", "Nominal");
+    public static final MicrogridBooleanMeasurementType WARNING = new MicrogridBooleanMeasurementType((byte) -2, "Warning", "Warning", "Nominal");
+    public static final MicrogridBooleanMeasurementType CIRCUIT_BREAKER_TRIPPED = new MicrogridBooleanMeasurementType((byte) -3, "Circuit Breaker", "Open", "Nominal (Closed)");
 
     /**
      * _id
@@ -76,7 +78,9 @@ public enum MicrogridBooleanMeasurementType {
     /**
      * MicrogridBooleanMeasurementType
      *
-     * enum constructor
+     * constructor
+     *
+     * use MicrogridMeasurementTypeRegistry.registerBooleanType() to add types
      *
      * @param _id the unique negative _id
      * @param name the name of the measurement type
@@ -84,6 +88,7 @@ public enum MicrogridBooleanMeasurementType {
      * @param falseName the name if it's false (e.g. open)
      */
     MicrogridBooleanMeasurementType(byte _id, String name, String trueName, String falseName) {
+        if (_id >= 0) throw new IllegalArgumentException("_id must be negative when creating a MicrogridBooleanMeasurementType");
         this._id = _id;
         this.name = name;
         this.trueName = trueName;
@@ -93,20 +98,17 @@ public enum MicrogridBooleanMeasurementType {
     /**
      * fromId()
      *
-     * returns the enum item that has the provided _id
+     * returns the registered type that has the provided _id (see MicrogridMeasurementTypeRegistry)
      *
-     * throws IllegalArgumentException if there is no item with that _id
+     * throws IllegalArgumentException if there is no type with that _id
      *
      * @param _id the _id to match
-     * @return the enum item
+     * @return the type
      */
     public static MicrogridBooleanMeasurementType fromId(byte _id) {
-        for (MicrogridBooleanMeasurementType a : MicrogridBooleanMeasurementType.class.getEnumConstants()) {
-            if (a.get_id() == _id) {
-                return a;
-            }
-        }
-        throw new IllegalArgumentException("No MicrogridBooleanMeasurementType with that _id");
+        MicrogridBooleanMeasurementType type = MicrogridMeasurementTypeRegistry.getInstance().getBooleanType(_id);
+        if (type == null) throw new IllegalArgumentException("No MicrogridBooleanMeasurementType with that _id");
+        return type;
     }
 
     //----Getters----
@@ -122,4 +124,9 @@ public enum MicrogridBooleanMeasurementType {
     public String getFalseName() {
         return falseName;
     }
+
+    @Override
+    public String toString() {
+        return name;
+    }
 }
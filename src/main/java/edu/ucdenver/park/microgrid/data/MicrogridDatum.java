@@ -10,9 +10,9 @@ import edu.ucdenver.park.microgrid.data.abs.Datum;
 import javax.persistence.Column;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.Transient;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * MicrogridDatum
@@ -74,7 +74,7 @@ public abstract class MicrogridDatum extends Datum {
      * @param measurementTypeId the id of the measurement type
      */
     public MicrogridDatum(long timestamp, MicrogridNode node, int measurementTypeId) {
-        super(node.get_id() + "-" + measurementTypeId, timestamp);
+        super(MicrogridIdentityRegistry.getInstance().measurementKey(node, measurementTypeId), timestamp);
         this.node = node;
     }
 
@@ -84,23 +84,38 @@ public abstract class MicrogridDatum extends Datum {
         return node;
     }
 
+    /**
+     * getMeasurementTypeId()
+     *
+     * @return the _id of this datum's measurement type (positive for float types, negative for boolean types)
+     */
+    public abstract byte getMeasurementTypeId();
+
     //----Setters----
     private void setNode(MicrogridNode node) {
         this.node = node;
     }
 
-    //----Externalizers----
+    //----Encoders----
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
-        super.writeExternal(out);
-        this.getNode().writeExternal(out);
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        this.getNode().write(out);
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        super.readExternal(in);
-        MicrogridNode node = new MicrogridNode();
-        node.readExternal(in);
-        this.setNode(node);
+    public void read(DataInput in) throws IOException {
+        super.read(in);
+        this.setNode(MicrogridNode.readInterned(in));
+    }
+
+    /**
+     * internId()
+     * <p>
+     * replaces the _id read by read() with the canonical measurement key from MicrogridIdentityRegistry
+     * subclasses call this once they have read their measurement type
+     */
+    protected void internId() {
+        this.set_id(MicrogridIdentityRegistry.getInstance().measurementKey(this.getNode(), this.getMeasurementTypeId()));
     }
 }
@@ -7,9 +7,9 @@ package edu.ucdenver.park.microgrid.data;
 import edu.ucdenver.park.microgrid.data.abs.Edge;
 import edu.ucdenver.park.microgrid.data.abs.Node;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * MicrogridEdge
@@ -66,25 +66,21 @@ public class MicrogridEdge extends Edge<MicrogridNode> {
         this.microgridEdgeType = microgridEdgeType;
     }
 
-    //----Externalizers----
+    //----Encoders----
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
+    public void write(DataOutput out) throws IOException {
         out.writeUTF(this.get_id());
         out.write(this.getMicrogridEdgeType().get_id());
-        this.getTo().writeExternal(out);
-        this.getFrom().writeExternal(out);
+        this.getTo().write(out);
+        this.getFrom().write(out);
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    public void read(DataInput in) throws IOException {
         this.set_id(in.readUTF());
         this.setMicrogridEdgeType(MicrogridEdgeType.fromId(in.readByte()));
-        MicrogridNode to = new MicrogridNode();
-        to.readExternal(in);
-        this.setTo(to);
-        MicrogridNode from = new MicrogridNode();
-        from.readExternal(in);
-        this.setFrom(from);
+        this.setTo(MicrogridNode.readInterned(in));
+        this.setFrom(MicrogridNode.readInterned(in));
     }
 }
 
@@ -63,6 +63,21 @@ public enum MicrogridEdgeType {
         return name;
     }
 
+    /**
+     * BY_ID
+     *
+     * MicrogridEdgeType[]
+     *
+     * the item with _id i is BY_ID[i & 0xFF] (fromId() indexes this instead of scanning values())
+     */
+    private static final MicrogridEdgeType[] BY_ID = new MicrogridEdgeType[256];
+
+    static {
+        for (MicrogridEdgeType a : values()) {
+            BY_ID[a.get_id() & 0xFF] = a;
+        }
+    }
+
     /**
      * fromId()
      *
@@ -74,11 +89,8 @@ public enum MicrogridEdgeType {
      * @return the enum item
      */
     public static MicrogridEdgeType fromId(byte _id) {
-        for (MicrogridEdgeType a : MicrogridEdgeType.class.getEnumConstants()) {
-            if (a.get_id() == _id) {
-                return a;
-            }
-        }
-        throw new IllegalArgumentException("No MicrogridEdgeType with that _id");
+        MicrogridEdgeType type = BY_ID[_id & 0xFF];
+        if (type == null) throw new IllegalArgumentException("No MicrogridEdgeType with that _id");
+        return type;
     }
 }
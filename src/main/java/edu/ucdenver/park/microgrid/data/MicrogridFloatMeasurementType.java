@@ -4,24 +4,27 @@
  */
 package edu.ucdenver.park.microgrid.data;
 
-import com.fasterxml.jackson.annotation.JsonFormat;
-
 /**
  * MicrogridFloatMeasurementType
  *
- * enum
+ * class
+ *
+ * immutable
  *
  * types of measurements MicrogridFloatDatum can have and unit strings for them
  *
  * E.g. Voltage-Volts-V
  *
+ * The types below are built in; more (frequency, state of charge, temperature...) are registered at startup from
+ *  configuration (see MicrogridMeasurementTypeRegistry). There is exactly one instance per _id, so types may be
+ *  compared with ==.
+ *
  * @author Jake Billings
  */
-@JsonFormat(shape = JsonFormat.Shape.OBJECT)
-public enum MicrogridFloatMeasurementType {
-    VOLTAGE((byte) 1, "Voltage", "Volts", "V", "Potential Difference"),
-    AMPERAGE((byte) 2, "Amperage", "Amps", "A", "Current"),
-    WATTAGE((byte) 3, "Wattage", "Watts", "W", "Power");
+public final class MicrogridFloatMeasurementType {
+    public static final MicrogridFloatMeasurementType VOLTAGE = new MicrogridFloatMeasurementType((byte) 1, "Voltage", "Volts", "V", "Potential Difference");
+    public static final MicrogridFloatMeasurementType AMPERAGE = new MicrogridFloatMeasurementType((byte) 2, "Amperage", "Amps", "A", "Current");
+    public static final MicrogridFloatMeasurementType WATTAGE = new MicrogridFloatMeasurementType((byte) 3, "Wattage", "Watts", "W", "Power");
 
     /**
      * _id
@@ -89,12 +92,15 @@ public enum MicrogridFloatMeasurementType {
      *
      * constructor
      *
+     * use MicrogridMeasurementTypeRegistry.registerFloatType() to add types
+     *
      * @param _id  the numeric id (decided in protocol spec) 1
      * @param name the human-readable name "Volatage"
      * @param unitName the human-readable unit name "Volts"
      * @param unitAbbreviation "V"
      */
     MicrogridFloatMeasurementType(byte _id, String name, String unitName, String unitAbbreviation, String baseUnitType) {
+        if (_id <= 0) throw new IllegalArgumentException("_id must be positive when creating a MicrogridFloatMeasurementType");
         this._id = _id;
         this.name = name;
         this.unitName = unitName;
@@ -105,23 +111,20 @@ public enum MicrogridFloatMeasurementType {
     /**
      * fromId()
      *
-     * returns the enum item that has the provided _id
+     * returns the registered type that has the provided _id (see MicrogridMeasurementTypeRegistry)
      *
-     * throws IllegalArgumentException if there is no item with that _id
+     * throws IllegalArgumentException if there is no type with that _id
      *
      * @param _id the _id to match
-     * @return the enum item
+     * @return the type
      */
     public static MicrogridFloatMeasurementType fromId(byte _id) {
-        for (MicrogridFloatMeasurementType a : MicrogridFloatMeasurementType.class.getEnumConstants()) {
-            if (a.get_id() == _id) {
-                return a;
-            }
-        }
-        throw new IllegalArgumentException("No MicrogridFloatMeasurementType with that _id");
+        MicrogridFloatMeasurementType type = MicrogridMeasurementTypeRegistry.getInstance().getFloatType(_id);
+        if (type == null) throw new IllegalArgumentException("No MicrogridFloatMeasurementType with that _id");
+        return type;
     }
 
-    //----Getters----+
+    //----Getters----
     public byte get_id() {
         return this._id;
     }
@@ -137,4 +140,9 @@ public enum MicrogridFloatMeasurementType {
     public String getBaseUnitType() {
         return baseUnitType;
     }
+
+    @Override
+    public String toString() {
+        return name;
+    }
 }
@@ -4,14 +4,18 @@
  */
 package edu.ucdenver.park.microgrid.data;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import edu.ucdenver.park.microgrid.data.abs.Edge;
 import edu.ucdenver.park.microgrid.data.abs.Graph;
 import edu.ucdenver.park.microgrid.data.abs.Node;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -79,35 +83,72 @@ public class MicrogridGraph extends Graph<MicrogridEdge, MicrogridNode> {
         return new MicrogridGraph(newId, (Set<MicrogridEdge>) rawUnion.getEdges(), (Set<MicrogridNode>) rawUnion.getNodes());
     }
 
-    //----Externalizers----
+    /**
+     * getContentHash()
+     * <p>
+     * a 64 bit FNV-1a hash of the graph's _id, its nodes (_id and type) and its edges (_id, endpoints and type),
+     * independent of set iteration order
+     * <p>
+     * two graphs with the same content hash have the same topology; senders use it as the version of their subgraph
+     * so a MicrogridGraphKeepAliveMessage can refer to a graph the receiver already holds
+     *
+     * @return the content hash of this graph
+     */
+    @JsonIgnore
+    public long getContentHash() {
+        List<String> parts = new ArrayList<String>();
+        for (MicrogridNode node : this.getNodes()) {
+            parts.add("n\u0000" + node.get_id() + "\u0000" + node.getMicrogridNodeType().get_id());
+        }
+        for (MicrogridEdge edge : this.getEdges()) {
+            parts.add("e\u0000" + edge.get_id() + "\u0000" + edge.getFrom().get_id() + "\u0000" + edge.getTo().get_id()
+                    + "\u0000" + edge.getMicrogridEdgeType().get_id());
+        }
+        Collections.sort(parts);
+
+        long hash = fnv1a(0xcbf29ce484222325L, this.get_id());
+        for (String part : parts) {
+            hash = fnv1a(hash, "\u0001" + part);
+        }
+        return hash;
+    }
+
+    private static long fnv1a(long hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    //----Encoders----
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
+    public void write(DataOutput out) throws IOException {
         out.writeUTF(this.get_id());
         out.writeInt(this.getNodes().size());
         for (MicrogridNode node : this.getNodes()) {
-            node.writeExternal(out);
+            node.write(out);
         }
         out.writeInt(this.getEdges().size());
         for (MicrogridEdge edge : this.getEdges()) {
-            edge.writeExternal(out);
+            edge.write(out);
         }
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    public void read(DataInput in) throws IOException {
         this.set_id(in.readUTF());
         int nodeCount = in.readInt();
         Set<MicrogridNode> nodes = new HashSet<MicrogridNode>();
         for (int i = 0; i<nodeCount; i++) {
-            MicrogridNode n = new MicrogridNode();
-            n.readExternal(in);
-            nodes.add(n);
+            nodes.add(MicrogridNode.readInterned(in));
         }
         int edgeCount = in.readInt();
         Set<MicrogridEdge> edges = new HashSet<MicrogridEdge>();
         for (int i = 0; i<edgeCount; i++) {
             MicrogridEdge e = new MicrogridEdge();
-            e.readExternal(in);
+            e.read(in);
             edges.add(e);
         }
         this.setNodes(nodes);
@@ -0,0 +1,261 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.data;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MicrogridIdentityRegistry
+ * <p>
+ * class: singleton
+ * <p>
+ * thread safe
+ * <p>
+ * Interns the identities data refer to: MicrogridNodes and measurement keys (the _id every datum from the same node
+ * and measurement type shares, see MicrogridDatum). Decoders ask the registry for the canonical node with a given _id
+ * and type instead of keeping the node they just read, and datum constructors ask it for the measurement key instead
+ * of concatenating a new string. In steady state, every datum from the same channel therefore refers to the same node
+ * and _id instances, and resolving a channel handle (see MicrogridChannelDictionary) allocates nothing but the datum.
+ * Canonical nodes are created by the registry itself, never adopted from callers, and must not be modified.
+ * <p>
+ * Memory stays bounded: there is one entry per distinct node _id (holding the node and the few measurement keys built
+ * from it), and at most MAX_NODES of them. Once the registry is full, the least recently used quarter of the entries is
+ * evicted, so node ids that churn on a long-running receiver don't pin memory. An evicted node stays valid (nodes are
+ * equal by _id); data decoded later just get a new canonical instance.
+ *
+ * @author Jake Billings
+ */
+public class MicrogridIdentityRegistry {
+    /**
+     * MAX_NODES
+     * <p>
+     * int
+     * <p>
+     * the most nodes the shared registry interns (far more than any grid we render)
+     */
+    public static final int MAX_NODES = 1 << 16;
+
+    private static MicrogridIdentityRegistry ourInstance = new MicrogridIdentityRegistry(MAX_NODES);
+
+    public static MicrogridIdentityRegistry getInstance() {
+        return ourInstance;
+    }
+
+    /**
+     * Entry
+     * <p>
+     * the canonical node for one _id, the measurement keys built from it so far, and when it was last used (see clock)
+     */
+    private static final class Entry {
+        private final MicrogridNode node;
+        private volatile MeasurementKeys measurementKeys = MeasurementKeys.NONE;
+        private volatile long lastUsed;
+
+        private Entry(MicrogridNode node, long lastUsed) {
+            this.node = node;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * MeasurementKeys
+     * <p>
+     * immutable: the measurement keys built from one node and their measurement type ids (replaced, under the entry's
+     * lock, when a key is added, so lookups need no lock); a node has a handful of measurement types, so a linear
+     * search is as fast as a table sized for every type id and far smaller
+     */
+    private static final class MeasurementKeys {
+        private static final MeasurementKeys NONE = new MeasurementKeys(new int[0], new String[0]);
+
+        private final int[] measurementTypeIds;
+        private final String[] keys;
+
+        private MeasurementKeys(int[] measurementTypeIds, String[] keys) {
+            this.measurementTypeIds = measurementTypeIds;
+            this.keys = keys;
+        }
+
+        private String get(int measurementTypeId) {
+            for (int i = 0; i < measurementTypeIds.length; i++) {
+                if (measurementTypeIds[i] == measurementTypeId) return keys[i];
+            }
+            return null;
+        }
+
+        private MeasurementKeys with(int measurementTypeId, String key) {
+            int[] ids = Arrays.copyOf(measurementTypeIds, measurementTypeIds.length + 1);
+            String[] k = Arrays.copyOf(keys, keys.length + 1);
+            ids[ids.length - 1] = measurementTypeId;
+            k[k.length - 1] = key;
+            return new MeasurementKeys(ids, k);
+        }
+    }
+
+    private final int maxNodes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * clock
+     * <p>
+     * AtomicLong
+     * <p>
+     * advances whenever a node is registered; entries store its value when they are used, so eviction can tell which
+     * were used least recently (reading it costs nothing, and an entry used again before the next registration isn't
+     * written again)
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+    private volatile long evictedCount;
+
+    /**
+     * MicrogridIdentityRegistry()
+     * <p>
+     * constructor
+     * <p>
+     * use getInstance() except in tests
+     *
+     * @param maxNodes the most nodes to intern; cannot be less than 1
+     */
+    public MicrogridIdentityRegistry(int maxNodes) {
+        if (maxNodes < 1) throw new IllegalArgumentException("maxNodes cannot be less than 1 when creating a MicrogridIdentityRegistry");
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * node()
+     *
+     * @param _id               the _id of the node
+     * @param microgridNodeType the type of the node
+     * @return the canonical node with that _id and type (if a node's type changes, the new one becomes canonical)
+     */
+    public MicrogridNode node(String _id, MicrogridNodeType microgridNodeType) {
+        Entry entry = entries.get(_id);
+        if (entry != null && entry.node.getMicrogridNodeType() == microgridNodeType) {
+            return touch(entry).node;
+        }
+        return register(_id, microgridNodeType).node;
+    }
+
+    /**
+     * node()
+     *
+     * @param node any node
+     * @return the canonical node equal to node with the same type (never node itself: the registry holds its own copy,
+     * so callers that keep modifying their nodes can't change the node every decoded datum shares)
+     */
+    public MicrogridNode node(MicrogridNode node) {
+        return node(node.get_id(), node.getMicrogridNodeType());
+    }
+
+    /**
+     * measurementKey()
+     *
+     * @param node              the node a datum was recorded at
+     * @param measurementTypeId the _id of the datum's measurement type
+     * @return the canonical _id of data from that node and measurement type: node _id + "-" + measurementTypeId
+     */
+    public String measurementKey(MicrogridNode node, int measurementTypeId) {
+        Entry entry = entries.get(node.get_id());
+        if (entry == null) {
+            entry = register(node.get_id(), node.getMicrogridNodeType());
+        } else {
+            touch(entry);
+        }
+
+        String key = entry.measurementKeys.get(measurementTypeId);
+        if (key != null) return key;
+        synchronized (entry) {
+            key = entry.measurementKeys.get(measurementTypeId);
+            if (key == null) {
+                key = node.get_id() + "-" + measurementTypeId;
+                entry.measurementKeys = entry.measurementKeys.with(measurementTypeId, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * size()
+     *
+     * @return the number of interned nodes
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * getEvictedCount()
+     *
+     * @return the number of nodes evicted because the registry was full
+     */
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * touch()
+     * <p>
+     * marks entry as used now
+     *
+     * @return entry
+     */
+    private Entry touch(Entry entry) {
+        long now = clock.get();
+        if (entry.lastUsed != now) entry.lastUsed = now;
+        return entry;
+    }
+
+    /**
+     * register()
+     * <p>
+     * makes a new node with _id and type canonical for _id, evicting the least recently used entries first if the
+     * registry is full
+     *
+     * @return the new entry
+     */
+    private Entry register(String _id, MicrogridNodeType microgridNodeType) {
+        if (entries.size() >= maxNodes && !entries.containsKey(_id)) evict();
+        Entry entry = new Entry(new MicrogridNode(_id, microgridNodeType), clock.incrementAndGet());
+        entries.put(_id, entry);
+        return entry;
+    }
+
+    /**
+     * evict()
+     * <p>
+     * removes the least recently used quarter of the entries (at least one), so a registry that churns through node
+     * ids only sorts its entries once every maxNodes / 4 new nodes
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            //Another thread may have evicted while we waited
+            int size = entries.size();
+            if (size < maxNodes) return;
+            long[] lastUsed = new long[size];
+            int count = 0;
+            for (Entry entry : entries.values()) {
+                if (count == lastUsed.length) break;
+                lastUsed[count++] = entry.lastUsed;
+            }
+            if (count == 0) return;
+            Arrays.sort(lastUsed, 0, count);
+            int quota = Math.max(1, count / 4);
+            long threshold = lastUsed[quota - 1];
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (quota > 0 && iterator.hasNext()) {
+                if (iterator.next().lastUsed <= threshold) {
+                    iterator.remove();
+                    quota--;
+                    evictedCount++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MicrogridMeasurementTypeRegistry
+ * <p>
+ * class: singleton
+ * <p>
+ * thread safe
+ * <p>
+ * Maps measurement type _ids to MicrogridFloatMeasurementTypes (positive _ids) and MicrogridBooleanMeasurementTypes
+ * (negative _ids) by indexing an array, so decoding a datum's type is a single load instead of a scan.
+ * <p>
+ * The built-in types are always registered. More are registered at startup from configuration:
+ * the classpath resource CONFIG_RESOURCE, then the file named by the system property CONFIG_PROPERTY (if set), or
+ * programmatically with registerFloatType()/registerBooleanType(). Types should be registered before data with their
+ * _ids are sent or received (unknown _ids fail to decode). Every agent of a deployment should load the same
+ * configuration; an _id can't be registered twice with different descriptors.
+ * <p>
+ * Configuration format (JSON):
+ * {"float": [{"_id": 4, "name": "Frequency", "unitName": "Hertz", "unitAbbreviation": "Hz", "baseUnitType": "Frequency"}],
+ * "boolean": [{"_id": -4, "name": "Islanded", "trueName": "Islanded", "falseName": "Grid Connected"}]}
+ *
+ * @author Jake Billings
+ */
+public class MicrogridMeasurementTypeRegistry {
+    /**
+     * CONFIG_RESOURCE
+     * <p>
+     * String
+     * <p>
+     * classpath resource with the measurement types every agent registers
+     */
+    public static final String CONFIG_RESOURCE = "measurementTypes.json";
+
+    /**
+     * CONFIG_PROPERTY
+     * <p>
+     * String
+     * <p>
+     * system property naming a file with additional measurement types (e.g. -Dmicrogrid.measurementTypes=site.json)
+     */
+    public static final String CONFIG_PROPERTY = "microgrid.measurementTypes";
+
+    private static MicrogridMeasurementTypeRegistry ourInstance = createDefaultInstance();
+
+    public static MicrogridMeasurementTypeRegistry getInstance() {
+        return ourInstance;
+    }
+
+    /**
+     * floatTypes, booleanTypes
+     * <p>
+     * the float type with _id i is floatTypes[i]; the boolean type with _id i is booleanTypes[-i]
+     * <p>
+     * replaced (copy on write) by every registration so that lookups need no lock
+     */
+    private volatile MicrogridFloatMeasurementType[] floatTypes = new MicrogridFloatMeasurementType[Byte.MAX_VALUE + 1];
+    private volatile MicrogridBooleanMeasurementType[] booleanTypes = new MicrogridBooleanMeasurementType[-Byte.MIN_VALUE + 1];
+
+    /**
+     * MicrogridMeasurementTypeRegistry()
+     * <p>
+     * constructor
+     * <p>
+     * creates a registry with only the built-in types; use getInstance() except in tests
+     */
+    public MicrogridMeasurementTypeRegistry() {
+        register(MicrogridFloatMeasurementType.VOLTAGE);
+        register(MicrogridFloatMeasurementType.AMPERAGE);
+        register(MicrogridFloatMeasurementType.WATTAGE);
+        register(MicrogridBooleanMeasurementType.FAULT);
+        register(MicrogridBooleanMeasurementType.WARNING);
+        register(MicrogridBooleanMeasurementType.CIRCUIT_BREAKER_TRIPPED);
+    }
+
+    /**
+     * createDefaultInstance()
+     * <p>
+     * builds the shared registry: built-in types, then CONFIG_RESOURCE, then the file named by CONFIG_PROPERTY
+     * a broken configuration is reported and skipped so that the built-in types keep working
+     */
+    private static MicrogridMeasurementTypeRegistry createDefaultInstance() {
+        MicrogridMeasurementTypeRegistry registry = new MicrogridMeasurementTypeRegistry();
+        try {
+            InputStream in = MicrogridMeasurementTypeRegistry.class.getClassLoader().getResourceAsStream(CONFIG_RESOURCE);
+            if (in != null) {
+                try {
+                    registry.load(in);
+                } finally {
+                    in.close();
+                }
+            }
+            String path = System.getProperty(CONFIG_PROPERTY);
+            if (path != null) {
+                InputStream file = new FileInputStream(path);
+                try {
+                    registry.load(file);
+                } finally {
+                    file.close();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return registry;
+    }
+
+    //----Lookup----
+    /**
+     * getFloatType()
+     *
+     * @param _id a measurement type _id
+     * @return the float type with that _id or null if there is none
+     */
+    public MicrogridFloatMeasurementType getFloatType(byte _id) {
+        return _id > 0 ? floatTypes[_id] : null;
+    }
+
+    /**
+     * getBooleanType()
+     *
+     * @param _id a measurement type _id
+     * @return the boolean type with that _id or null if there is none
+     */
+    public MicrogridBooleanMeasurementType getBooleanType(byte _id) {
+        return _id < 0 ? booleanTypes[-_id] : null;
+    }
+
+    /**
+     * getFloatTypes()
+     *
+     * @return every registered float type, ordered by _id
+     */
+    public List<MicrogridFloatMeasurementType> getFloatTypes() {
+        return registered(floatTypes);
+    }
+
+    /**
+     * getBooleanTypes()
+     *
+     * @return every registered boolean type, ordered by -_id
+     */
+    public List<MicrogridBooleanMeasurementType> getBooleanTypes() {
+        return registered(booleanTypes);
+    }
+
+    private static <T> List<T> registered(T[] types) {
+        List<T> list = new ArrayList<T>();
+        for (T type : types) {
+            if (type != null) list.add(type);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    //----Registration----
+    /**
+     * registerFloatType()
+     *
+     * @param _id              positive _id (declared in the protocol spec)
+     * @param name             the human-readable name, e.g. "Frequency"
+     * @param unitName         the human-readable unit name, e.g. "Hertz"
+     * @param unitAbbreviation e.g. "Hz"
+     * @param baseUnitType     e.g. "Frequency"
+     * @return the registered type (the existing one if an identical type was registered before)
+     * @throws IllegalArgumentException if _id is not positive or already registered with other descriptors
+     */
+    public MicrogridFloatMeasurementType registerFloatType(byte _id, String name, String unitName,
+                                                           String unitAbbreviation, String baseUnitType) {
+        return register(new MicrogridFloatMeasurementType(_id, name, unitName, unitAbbreviation, baseUnitType));
+    }
+
+    /**
+     * registerBooleanType()
+     *
+     * @param _id       negative _id (declared in the protocol spec)
+     * @param name      the human-readable name, e.g. "Islanded"
+     * @param trueName  the human-readable value if the measurement is true
+     * @param falseName the human-readable value if the measurement is false
+     * @return the registered type (the existing one if an identical type was registered before)
+     * @throws IllegalArgumentException if _id is not negative or already registered with other descriptors
+     */
+    public MicrogridBooleanMeasurementType registerBooleanType(byte _id, String name, String trueName, String falseName) {
+        return register(new MicrogridBooleanMeasurementType(_id, name, trueName, falseName));
+    }
+
+    private synchronized MicrogridFloatMeasurementType register(MicrogridFloatMeasurementType type) {
+        MicrogridFloatMeasurementType existing = floatTypes[type.get_id()];
+        if (existing != null) {
+            if (existing.getName().equals(type.getName()) && existing.getUnitName().equals(type.getUnitName())
+                    && existing.getUnitAbbreviation().equals(type.getUnitAbbreviation())
+                    && existing.getBaseUnitType().equals(type.getBaseUnitType())) {
+                return existing;
+            }
+            throw new IllegalArgumentException("MicrogridFloatMeasurementType _id " + type.get_id() + " is already registered as " + existing.getName());
+        }
+        MicrogridFloatMeasurementType[] types = Arrays.copyOf(floatTypes, floatTypes.length);
+        types[type.get_id()] = type;
+        floatTypes = types;
+        return type;
+    }
+
+    private synchronized MicrogridBooleanMeasurementType register(MicrogridBooleanMeasurementType type) {
+        MicrogridBooleanMeasurementType existing = booleanTypes[-type.get_id()];
+        if (existing != null) {
+            if (existing.getName().equals(type.getName()) && existing.getTrueName().equals(type.getTrueName())
+                    && existing.getFalseName().equals(type.getFalseName())) {
+                return existing;
+            }
+            throw new IllegalArgumentException("MicrogridBooleanMeasurementType _id " + type.get_id() + " is already registered as " + existing.getName());
+        }
+        MicrogridBooleanMeasurementType[] types = Arrays.copyOf(booleanTypes, booleanTypes.length);
+        types[-type.get_id()] = type;
+        booleanTypes = types;
+        return type;
+    }
+
+    /**
+     * load()
+     * <p>
+     * registers every type in a JSON configuration (see the class docs for the format)
+     *
+     * @param in the configuration
+     * @throws IOException              if in isn't valid JSON
+     * @throws IllegalArgumentException if a type is missing a field or conflicts with a registered type
+     */
+    public void load(InputStream in) throws IOException {
+        JsonNode config = new ObjectMapper().readTree(in);
+        if (config == null) return;
+        for (JsonNode type : config.path("float")) {
+            registerFloatType(id(type), text(type, "name"), text(type, "unitName"),
+                    text(type, "unitAbbreviation"), text(type, "baseUnitType"));
+        }
+        for (JsonNode type : config.path("boolean")) {
+            registerBooleanType(id(type), text(type, "name"), text(type, "trueName"), text(type, "falseName"));
+        }
+    }
+
+    private static byte id(JsonNode type) {
+        JsonNode id = type.get("_id");
+        if (id == null || !id.canConvertToInt() || id.intValue() < Byte.MIN_VALUE || id.intValue() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("measurement type _id must be a byte: " + type);
+        }
+        return (byte) id.intValue();
+    }
+
+    private static String text(JsonNode type, String field) {
+        JsonNode value = type.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("measurement type is missing " + field + ": " + type);
+        }
+        return value.textValue();
+    }
+}
@@ -6,9 +6,9 @@ package edu.ucdenver.park.microgrid.data;
 
 import edu.ucdenver.park.microgrid.data.abs.Node;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * MicrogridNode
@@ -58,16 +58,32 @@ public class MicrogridNode extends Node {
         this.microgridNodeType = microgridNodeType;
     }
 
-    //----Externalizers----
+    //----Encoders----
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
-        super.writeExternal(out);
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
         out.writeByte(this.getMicrogridNodeType().get_id());
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        super.readExternal(in);
+    public void read(DataInput in) throws IOException {
+        super.read(in);
         this.setMicrogridNodeType(MicrogridNodeType.fromId(in.readByte()));
     }
+
+    /**
+     * readInterned()
+     * <p>
+     * reads a node written by write() and returns the canonical instance from MicrogridIdentityRegistry
+     * decoders use this instead of read() so that repeated nodes don't each allocate a new MicrogridNode
+     *
+     * @param in the DataInput to read from
+     * @return the canonical node
+     * @throws IOException if in fails to read or the node type is unknown
+     */
+    public static MicrogridNode readInterned(DataInput in) throws IOException {
+        String _id = in.readUTF();
+        MicrogridNodeType microgridNodeType = MicrogridNodeType.fromId(in.readByte());
+        return MicrogridIdentityRegistry.getInstance().node(_id, microgridNodeType);
+    }
 }
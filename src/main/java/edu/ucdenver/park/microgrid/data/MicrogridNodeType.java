@@ -50,6 +50,21 @@ public enum MicrogridNodeType {
         this.name = name;
     }
 
+    /**
+     * BY_ID
+     *
+     * MicrogridNodeType[]
+     *
+     * the item with _id i is BY_ID[i & 0xFF] (fromId() indexes this instead of scanning values())
+     */
+    private static final MicrogridNodeType[] BY_ID = new MicrogridNodeType[256];
+
+    static {
+        for (MicrogridNodeType a : values()) {
+            BY_ID[a.get_id() & 0xFF] = a;
+        }
+    }
+
     /**
      * fromId()
      *
@@ -61,12 +76,9 @@ public enum MicrogridNodeType {
      * @return the enum item
      */
     public static MicrogridNodeType fromId(byte _id) {
-        for (MicrogridNodeType a : MicrogridNodeType.class.getEnumConstants()) {
-            if (a.get_id() == _id) {
-                return a;
-            }
-        }
-        throw new IllegalArgumentException("No MicrogridNodeType with that _id");
+        MicrogridNodeType type = BY_ID[_id & 0xFF];
+        if (type == null) throw new IllegalArgumentException("No MicrogridNodeType with that _id");
+        return type;
     }
 
     //----Getters----
@@ -6,9 +6,9 @@ package edu.ucdenver.park.microgrid.data.abs;
 
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * Datum
@@ -75,16 +75,16 @@ public abstract class Datum extends Entity {
         this.timestamp = timestamp;
     }
 
-    //----Externalizers----
+    //----Encoders----
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
-        super.writeExternal(out);
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
         out.writeLong(timestamp);
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        super.readExternal(in);
+    public void read(DataInput in) throws IOException {
+        super.read(in);
         this.setTimestamp(in.readLong());
     }
 }
@@ -4,9 +4,9 @@
  */
 package edu.ucdenver.park.microgrid.data.abs;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * Edge
@@ -81,20 +81,20 @@ public class Edge<N extends Node> extends Entity {
     }
 
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
-        super.writeExternal(out);
-        this.getTo().writeExternal(out);
-        this.getFrom().writeExternal(out);
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        this.getTo().write(out);
+        this.getFrom().write(out);
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        super.readExternal(in);
+    public void read(DataInput in) throws IOException {
+        super.read(in);
         Node to = new Node();
-        to.readExternal(in);
+        to.read(in);
         this.setTo((N) to);
         Node from = new Node();
-        from.readExternal(in);
+        from.read(in);
         this.setTo((N) from);
     }
 }
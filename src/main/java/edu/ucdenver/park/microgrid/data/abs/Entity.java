@@ -81,11 +81,13 @@ public abstract class Entity implements Externalizable {
      *
      * we trust that the _id is unique, so hash only the _id for the object's hash code
      *
-     * @return Objects.hash(_id)
+     * String caches its own hash code, so this doesn't rehash the _id (or allocate a varargs array like Objects.hash())
+     *
+     * @return the hash code of _id
      */
     @Override
     public int hashCode() {
-        return Objects.hash(_id);
+        return _id == null ? 0 : _id.hashCode();
     }
 
     //----Getters----
@@ -99,11 +101,38 @@ public abstract class Entity implements Externalizable {
     }
 
     //----Externalizers----
+    // writeExternal()/readExternal() delegate to write()/read() so that the same encoding is used whether we are
+    //  externalized through an ObjectOutputStream or encoded directly by MessageCodec (ObjectOutput is a DataOutput)
     public void writeExternal(ObjectOutput out) throws IOException {
-        out.writeUTF(this.get_id());
+        this.write(out);
     }
 
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        this.read(in);
+    }
+
+    //----Encoders----
+    /**
+     * write()
+     *
+     * writes this entity to out; subclasses override this (not writeExternal()) to add their own fields
+     *
+     * @param out the DataOutput to write to
+     * @throws IOException if out fails to write
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(this.get_id());
+    }
+
+    /**
+     * read()
+     *
+     * reads the fields written by write() from in; subclasses override this (not readExternal())
+     *
+     * @param in the DataInput to read from
+     * @throws IOException if in fails to read or the data is malformed
+     */
+    public void read(DataInput in) throws IOException {
         this.set_id(in.readUTF());
     }
 }
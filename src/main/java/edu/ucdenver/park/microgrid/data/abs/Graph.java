@@ -4,9 +4,9 @@
  */
 package edu.ucdenver.park.microgrid.data.abs;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -107,33 +107,33 @@ public class Graph<E extends Edge, N extends Node> extends Entity {
     }
 
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException {
-        super.writeExternal(out);
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
         out.writeInt(this.getNodes().size());
         for (N node : this.getNodes()) {
-            node.writeExternal(out);
+            node.write(out);
         }
         out.writeInt(this.getEdges().size());
         for (E edge : this.getEdges()) {
-            edge.writeExternal(out);
+            edge.write(out);
         }
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        super.readExternal(in);
+    public void read(DataInput in) throws IOException {
+        super.read(in);
         int nodeCount = in.readInt();
         Set<N> nodes = new HashSet<N>();
         for (int i = 0; i<nodeCount; i++) {
             Node n = new Node();
-            n.readExternal(in);
+            n.read(in);
             nodes.add((N) n);
         }
         int edgeCount = in.readInt();
         Set<E> edges = new HashSet<E>();
         for (int i = 0; i<edgeCount; i++) {
             Edge<Node> e = new Edge<Node>();
-            e.readExternal(in);
+            e.read(in);
             edges.add((E) e);
         }
         this.setNodes(nodes);
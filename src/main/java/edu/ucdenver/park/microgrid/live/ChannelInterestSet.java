@@ -0,0 +1,127 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.live;
+
+import edu.ucdenver.park.microgrid.message.MicrogridInterestMessage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ChannelInterestSet
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * the channels (datum _ids) somebody at the receiver is watching: plotted by a Socket.IO client, persisted, or used by
+ * an alarm rule. Every watcher is an owner (e.g. a Socket.IO session id) with its own channels, so a watcher that goes
+ * away can be removed with all its channels at once; an owner may also watch every channel (e.g. a data logger that
+ * persists everything).
+ * <p>
+ * MicrogridReceiverAgent pushes the set to its senders (see MicrogridInterestMessage) whenever getVersion() changes.
+ *
+ * @author Jake Billings
+ */
+public class ChannelInterestSet {
+    private final Map<String, Set<String>> channelsByOwner = new HashMap<String, Set<String>>();
+    private final Set<String> ownersOfAllChannels = new HashSet<String>();
+
+    /**
+     * version
+     * <p>
+     * int
+     * <p>
+     * incremented on every change of the set
+     */
+    private int version;
+
+    /**
+     * add()
+     *
+     * @param owner     the watcher
+     * @param channelId the _id of the data of a channel owner watches
+     */
+    public synchronized void add(String owner, String channelId) {
+        Set<String> channels = channelsByOwner.get(owner);
+        if (channels == null) {
+            channels = new HashSet<String>();
+            channelsByOwner.put(owner, channels);
+        }
+        if (channels.add(channelId)) version++;
+    }
+
+    /**
+     * remove()
+     *
+     * @param owner     the watcher
+     * @param channelId the _id of the data of a channel owner no longer watches
+     */
+    public synchronized void remove(String owner, String channelId) {
+        Set<String> channels = channelsByOwner.get(owner);
+        if (channels == null || !channels.remove(channelId)) return;
+        if (channels.isEmpty()) channelsByOwner.remove(owner);
+        version++;
+    }
+
+    /**
+     * setAllChannels()
+     *
+     * @param owner the watcher
+     * @param all   whether owner watches every channel
+     */
+    public synchronized void setAllChannels(String owner, boolean all) {
+        if (all ? ownersOfAllChannels.add(owner) : ownersOfAllChannels.remove(owner)) version++;
+    }
+
+    /**
+     * removeOwner()
+     * <p>
+     * forgets every channel owner watches (e.g. when a Socket.IO client disconnects)
+     *
+     * @param owner the watcher
+     */
+    public synchronized void removeOwner(String owner) {
+        boolean changed = channelsByOwner.remove(owner) != null;
+        changed |= ownersOfAllChannels.remove(owner);
+        if (changed) version++;
+    }
+
+    /**
+     * isWatched()
+     *
+     * @param channelId the _id of the data of a channel
+     * @return whether anybody watches the channel
+     */
+    public synchronized boolean isWatched(String channelId) {
+        if (!ownersOfAllChannels.isEmpty()) return true;
+        for (Set<String> channels : channelsByOwner.values()) {
+            if (channels.contains(channelId)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * toMessage()
+     *
+     * @return the set as a message for the senders
+     */
+    public synchronized MicrogridInterestMessage toMessage() {
+        Set<String> channelIds = new HashSet<String>();
+        if (ownersOfAllChannels.isEmpty()) {
+            for (Set<String> channels : channelsByOwner.values()) {
+                channelIds.addAll(channels);
+            }
+        }
+        return new MicrogridInterestMessage(!ownersOfAllChannels.isEmpty(), channelIds);
+    }
+
+    //----Getters----
+    public synchronized int getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,537 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.live;
+
+import edu.ucdenver.park.microgrid.message.Message;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridBundleMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * IngestPipeline
+ * <p>
+ * class
+ * <p>
+ * thread safe (offer() must always be called from the same thread, e.g. the receiver agent's thread)
+ * <p>
+ * decodes received payloads and applies them to a LiveMicrogridGraph on several cores, in three stages:
+ * <p>
+ * 1. offer() puts the raw payload into the next slot of a ring buffer; that is all the receiving thread does
+ * 2. decode workers take slots in any order and decode them (bundles are unpacked into their messages)
+ * 3. apply shards walk the ring in order; each applies the channel data of the channels in its shard (see
+ * LiveMicrogridGraph.shardOf()), so the values of a channel are applied in the order they were received while
+ * different channels are applied in parallel
+ * <p>
+ * Messages that aren't channel data (graphs, dictionaries, keep-alives, encodings...) change what the data that follow
+ * them mean, so they are barriers: every shard finishes the slots before, then shard 0 handles the slot alone (data
+ * and all, passing the other messages to the Handler) while the other shards wait.
+ * <p>
+ * A slot is reused once every shard applied it; offer() returns false while the ring is full.
+ * <p>
+ * Idle threads yield briefly, then park until another stage makes progress (see signal()), so an idle pipeline uses
+ * no CPU and a payload offered to it is picked up right away.
+ *
+ * @param <C> the context received with each payload (e.g. the ACLMessage), passed back to the Handler
+ * @author Jake Billings
+ */
+public class IngestPipeline<C> {
+    /**
+     * Handler
+     * <p>
+     * interface
+     * <p>
+     * gets the messages that aren't channel data and is told when each payload is done; called from the pipeline's
+     * threads, never concurrently for the same slot
+     */
+    public interface Handler<C> {
+        /**
+         * onControl()
+         * <p>
+         * called in order of receipt while no channel data are being applied
+         *
+         * @param context the context offered with the payload
+         * @param sender  the name of the agent that sent the payload
+         * @param message a decoded message that isn't channel data
+         */
+        void onControl(C context, String sender, Message message);
+
+        /**
+         * onProcessed()
+         *
+         * @param context         the context offered with the payload
+         * @param sender          the name of the agent that sent the payload
+         * @param lagNanos        how long the payload waited before it was decoded
+         * @param processingNanos how long decoding and applying it took
+         */
+        void onProcessed(C context, String sender, long lagNanos, long processingNanos);
+    }
+
+    /**
+     * Slot
+     * <p>
+     * one entry of the ring: a payload, its decoded messages and the progress of the shards through it
+     */
+    private static final class Slot<C> {
+        //Written by offer()
+        private C context;
+        private String sender;
+        private byte[] payload;
+        private long receivedNanos;
+
+        //Written by the decode worker
+        private long decodeStartNanos;
+        private Message[] messages;
+        private boolean control;
+
+        /**
+         * decoded
+         * <p>
+         * the sequence number of the payload the slot holds once it is decoded
+         */
+        private volatile long decoded = -1;
+
+        //Barrier of a control slot: the shards that reached it, and the sequence number once shard 0 applied it
+        private final AtomicInteger arrivals = new AtomicInteger();
+        private volatile long controlApplied = -1;
+
+        private final AtomicInteger remainingShards = new AtomicInteger();
+    }
+
+    private static final Message[] NO_MESSAGES = new Message[0];
+
+    /**
+     * SPINS
+     * <p>
+     * int
+     * <p>
+     * how often an idle thread yields before it parks until signal()ed
+     */
+    private static final int SPINS = 100;
+
+    private final LiveMicrogridGraph live;
+    private final Handler<C> handler;
+    private final List<Slot<C>> slots;
+    private final int decodeWorkers;
+    private final int applyShards;
+
+    /**
+     * published
+     * <p>
+     * long
+     * <p>
+     * the sequence number offer() gives the next payload; every slot before it was published
+     */
+    private volatile long published = 0;
+
+    private final AtomicLong decodeClaim = new AtomicLong();
+
+    /**
+     * applied
+     * <p>
+     * AtomicLongArray
+     * <p>
+     * the sequence number each shard applies next
+     */
+    private final AtomicLongArray applied;
+
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private volatile Thread[] parkable = new Thread[0];
+    private volatile boolean running;
+    private boolean stopped;
+
+    /**
+     * signals
+     * <p>
+     * AtomicLong
+     * <p>
+     * counts the changes idle threads may be waiting for (see signal() and idle())
+     */
+    private final AtomicLong signals = new AtomicLong();
+    private final AtomicInteger parked = new AtomicInteger();
+
+    /**
+     * roomCallback
+     * <p>
+     * AtomicReference of Runnable
+     * <p>
+     * run once the ring has room again (see whenNotFull())
+     */
+    private final AtomicReference<Runnable> roomCallback = new AtomicReference<Runnable>();
+
+    /**
+     * IngestPipeline()
+     * <p>
+     * constructor
+     *
+     * @param live          the graph to apply channel data to
+     * @param capacity      the most payloads in the pipeline at once
+     * @param decodeWorkers the number of threads that decode payloads
+     * @param applyShards   the number of threads that apply channel data
+     * @param handler       gets the other messages
+     */
+    public IngestPipeline(LiveMicrogridGraph live, int capacity, int decodeWorkers, int applyShards, Handler<C> handler) {
+        if (live == null) throw new IllegalArgumentException("live cannot be null when creating an IngestPipeline");
+        if (handler == null) throw new IllegalArgumentException("handler cannot be null when creating an IngestPipeline");
+        if (capacity < 1) throw new IllegalArgumentException("capacity cannot be less than 1 when creating an IngestPipeline");
+        if (decodeWorkers < 1) throw new IllegalArgumentException("decodeWorkers cannot be less than 1 when creating an IngestPipeline");
+        if (applyShards < 1) throw new IllegalArgumentException("applyShards cannot be less than 1 when creating an IngestPipeline");
+        this.live = live;
+        this.handler = handler;
+        this.slots = new ArrayList<Slot<C>>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots.add(new Slot<C>());
+        }
+        this.decodeWorkers = decodeWorkers;
+        this.applyShards = applyShards;
+        this.applied = new AtomicLongArray(applyShards);
+    }
+
+    /**
+     * start()
+     * <p>
+     * starts the decode workers and apply shards (daemon threads); a stopped pipeline cannot be started again
+     */
+    public synchronized void start() {
+        if (stopped) throw new IllegalStateException("IngestPipeline cannot be restarted");
+        if (running) return;
+        running = true;
+        for (int i = 0; i < decodeWorkers; i++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    decodeLoop();
+                }
+            }, "microgrid-ingest-decode-" + i));
+        }
+        for (int i = 0; i < applyShards; i++) {
+            final int shard = i;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    applyLoop(shard);
+                }
+            }, "microgrid-ingest-apply-" + i));
+        }
+        parkable = threads.toArray(new Thread[threads.size()]);
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * stop()
+     * <p>
+     * stops the threads; payloads still in the pipeline are abandoned
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        stopped = true;
+        signal();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        threads.clear();
+    }
+
+    /**
+     * offer()
+     * <p>
+     * must always be called from the same thread
+     *
+     * @param context passed back to the Handler
+     * @param sender  the name of the agent that sent payload
+     * @param payload an encoded message (see MessageCodec)
+     * @return false if the pipeline is full (payload was not added)
+     */
+    public boolean offer(C context, String sender, byte[] payload) {
+        return offer(context, sender, payload, System.nanoTime());
+    }
+
+    /**
+     * offer()
+     * <p>
+     * offer() for a payload that waited before it was offered (e.g. in a FairIngressQueue); the wait counts towards
+     * its lag
+     *
+     * @param context       passed back to the Handler
+     * @param sender        the name of the agent that sent payload
+     * @param payload       an encoded message (see MessageCodec)
+     * @param receivedNanos the System.nanoTime() payload was received at
+     * @return false if the pipeline is full (payload was not added)
+     */
+    public boolean offer(C context, String sender, byte[] payload, long receivedNanos) {
+        long sequence = published;
+        if (isFull()) return false;
+        Slot<C> slot = slot(sequence);
+        slot.context = context;
+        slot.sender = sender;
+        slot.payload = payload;
+        slot.receivedNanos = receivedNanos;
+        slot.arrivals.set(0);
+        slot.remainingShards.set(applyShards);
+        published = sequence + 1;
+        signal();
+        return true;
+    }
+
+    /**
+     * whenNotFull()
+     * <p>
+     * runs callback (once) as soon as offer() would accept a payload again: right away if it would now, else on the
+     * pipeline thread that makes room; a later call replaces a callback that didn't run yet
+     *
+     * @param callback what to run, e.g. restarting the blocked behavior that offers payloads
+     */
+    public void whenNotFull(Runnable callback) {
+        roomCallback.set(callback);
+        notifyRoom();
+    }
+
+    private void notifyRoom() {
+        Runnable callback = roomCallback.get();
+        if (callback != null && !isFull() && roomCallback.compareAndSet(callback, null)) callback.run();
+    }
+
+    private Slot<C> slot(long sequence) {
+        return slots.get((int) (sequence % slots.size()));
+    }
+
+    private long minApplied() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < applyShards; i++) {
+            min = Math.min(min, applied.get(i));
+        }
+        return min;
+    }
+
+    /**
+     * decodeLoop()
+     * <p>
+     * what each decode worker does: claims the next sequence number, waits until it is published and decodes it
+     */
+    private void decodeLoop() {
+        while (running) {
+            long sequence = decodeClaim.getAndIncrement();
+            int spins = 0;
+            for (long seen = signals.get(); published <= sequence; seen = signals.get()) {
+                if (!running) return;
+                spins = idle(spins, seen);
+            }
+            Slot<C> slot = slot(sequence);
+            slot.decodeStartNanos = System.nanoTime();
+            try {
+                Message message = MessageCodec.decode(slot.payload);
+                if (message instanceof MicrogridBundleMessage) {
+                    MicrogridBundleMessage bundle = (MicrogridBundleMessage) message;
+                    slot.messages = new Message[bundle.size()];
+                    for (int i = 0; i < bundle.size(); i++) {
+                        slot.messages[i] = bundle.getMessage(i);
+                    }
+                } else {
+                    slot.messages = new Message[]{message};
+                }
+            } catch (Throwable t) {
+                //Even an Error (e.g. an OutOfMemoryError on a payload we failed to bound) must not kill the worker
+                //before the slot is published, or every apply shard would wait for it forever
+                t.printStackTrace();
+                slot.messages = NO_MESSAGES;
+            }
+            slot.control = false;
+            for (Message message : slot.messages) {
+                if (!isChannelData(message)) slot.control = true;
+            }
+            slot.decoded = sequence;
+            signal();
+        }
+    }
+
+    /**
+     * applyLoop()
+     * <p>
+     * what each apply shard does: applies the slots in order, waiting for each to be decoded (and, at a control slot,
+     * for the other shards)
+     *
+     * @param shard the index of the shard
+     */
+    private void applyLoop(int shard) {
+        long sequence = applied.get(shard);
+        while (running) {
+            Slot<C> slot = slot(sequence);
+            int spins = 0;
+            for (long seen = signals.get(); slot.decoded != sequence; seen = signals.get()) {
+                if (!running) return;
+                spins = idle(spins, seen);
+            }
+            if (!slot.control) {
+                applyChannelData(slot, shard);
+            } else if (shard == 0) {
+                spins = 0;
+                for (long seen = signals.get(); slot.arrivals.get() < applyShards - 1; seen = signals.get()) {
+                    if (!running) return;
+                    spins = idle(spins, seen);
+                }
+                applyAll(slot);
+                slot.controlApplied = sequence;
+                signal();
+            } else {
+                slot.arrivals.incrementAndGet();
+                signal();
+                spins = 0;
+                for (long seen = signals.get(); slot.controlApplied != sequence; seen = signals.get()) {
+                    if (!running) return;
+                    spins = idle(spins, seen);
+                }
+            }
+            if (slot.remainingShards.decrementAndGet() == 0) {
+                long now = System.nanoTime();
+                try {
+                    handler.onProcessed(slot.context, slot.sender, slot.decodeStartNanos - slot.receivedNanos,
+                            now - slot.decodeStartNanos);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                slot.context = null;
+                slot.payload = null;
+                slot.messages = null;
+            }
+            applied.set(shard, ++sequence);
+            notifyRoom();
+        }
+    }
+
+    /**
+     * applyChannelData()
+     * <p>
+     * applies the channel data of slot that belong to shard
+     */
+    private void applyChannelData(Slot<C> slot, int shard) {
+        for (Message message : slot.messages) {
+            applyChannelData(slot.sender, message, shard, applyShards);
+        }
+    }
+
+    /**
+     * applyChannelData()
+     * <p>
+     * applies the values of message (if it is channel data) that belong to shard of shardCount
+     * <p>
+     * an exception (e.g. from a DatumHandler) is logged and skips the rest of message only; if it reached applyLoop(),
+     * the shard would stop and the pipeline would stay full
+     */
+    private void applyChannelData(String sender, Message message, int shard, int shardCount) {
+        try {
+            if (message instanceof MicrogridDatumBatchMessage) {
+                live.receiveMessage(sender, (MicrogridDatumBatchMessage) message, shard, shardCount);
+            } else if (message instanceof MicrogridChannelDatumMessage) {
+                live.receiveMessage(sender, (MicrogridChannelDatumMessage) message, shard, shardCount);
+            } else if (message instanceof MicrogridDatumMessage) {
+                live.receiveMessage((MicrogridDatumMessage) message, shard, shardCount);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * applyAll()
+     * <p>
+     * applies every message of a control slot in order (only shard 0 does, while the others wait)
+     */
+    private void applyAll(Slot<C> slot) {
+        for (Message message : slot.messages) {
+            if (isChannelData(message)) {
+                applyChannelData(slot.sender, message, 0, 1);
+            } else {
+                try {
+                    handler.onControl(slot.context, slot.sender, message);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static boolean isChannelData(Message message) {
+        return message instanceof MicrogridDatumBatchMessage || message instanceof MicrogridChannelDatumMessage
+                || message instanceof MicrogridDatumMessage;
+    }
+
+    /**
+     * idle()
+     * <p>
+     * waits a little: yields for the first SPINS calls, then parks until signal() is called (unless it was since the
+     * caller read seen, so a signal between checking and parking isn't lost)
+     *
+     * @param spins the number of times the caller waited so far
+     * @param seen  signals, read before the caller checked what it waits for
+     * @return spins + 1
+     */
+    private int idle(int spins, long seen) {
+        if (spins < SPINS) {
+            Thread.yield();
+        } else {
+            parked.incrementAndGet();
+            if (signals.get() == seen && running) LockSupport.park(this);
+            parked.decrementAndGet();
+        }
+        return spins + 1;
+    }
+
+    /**
+     * signal()
+     * <p>
+     * called after every change an idle thread may wait for (a payload published or decoded, a barrier reached or
+     * passed); wakes the parked threads, if there are any
+     */
+    private void signal() {
+        signals.incrementAndGet();
+        if (parked.get() == 0) return;
+        for (Thread thread : parkable) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    //----Getters----
+    /**
+     * isFull()
+     *
+     * @return whether offer() would return false (until the shards apply a payload)
+     */
+    public boolean isFull() {
+        return published - slots.size() >= minApplied();
+    }
+
+    /**
+     * size()
+     *
+     * @return the number of payloads offered but not applied by every shard yet
+     */
+    public int size() {
+        return (int) (published - minApplied());
+    }
+
+    public int getCapacity() {
+        return slots.size();
+    }
+
+    public int getDecodeWorkers() {
+        return decodeWorkers;
+    }
+
+    public int getApplyShards() {
+        return applyShards;
+    }
+}
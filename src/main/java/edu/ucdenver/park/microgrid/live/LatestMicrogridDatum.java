@@ -0,0 +1,101 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.live;
+
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridNode;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+
+/**
+ * LatestMicrogridDatum
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * the latest value LiveMicrogridGraph received for one datum _id
+ * <p>
+ * Values that arrive as channel data (single or batched) are stored as they were encoded: the sender's dictionary,
+ * the channel handle, the timestamp and the value. They are only resolved into a MicrogridDatum when get() is called
+ * (e.g. by the next snapshot), and most of them are overwritten before that happens. Entries are updated in place,
+ * so storing a value allocates nothing.
+ * <p>
+ * Values older than the one held are ignored, so history replayed by a sender (see MappedSpool) doesn't replace
+ * newer live values.
+ *
+ * @author Jake Billings
+ */
+final class LatestMicrogridDatum {
+    /**
+     * datum
+     * <p>
+     * MicrogridDatum
+     * <p>
+     * the resolved value; null while the latest value is still encoded (dictionary != null)
+     */
+    private MicrogridDatum datum;
+
+    private MicrogridChannelDictionary dictionary;
+    private int channelHandle;
+    private long timestamp = Long.MIN_VALUE;
+    private boolean isBooleanValue;
+    private boolean booleanValue;
+    private float floatValue;
+
+    /**
+     * set()
+     * <p>
+     * stores a datum that was already decoded
+     */
+    synchronized void set(MicrogridDatum datum) {
+        if (datum.getTimestamp() < this.timestamp) return;
+        this.datum = datum;
+        this.dictionary = null;
+        this.timestamp = datum.getTimestamp();
+    }
+
+    /**
+     * set()
+     * <p>
+     * stores an encoded channel value; dictionary must know the channel (see MicrogridChannelDictionary.getChannelKey())
+     */
+    synchronized void set(MicrogridChannelDictionary dictionary, int channelHandle, long timestamp,
+                          boolean isBooleanValue, boolean booleanValue, float floatValue) {
+        if (timestamp < this.timestamp) return;
+        this.datum = null;
+        this.dictionary = dictionary;
+        this.channelHandle = channelHandle;
+        this.timestamp = timestamp;
+        this.isBooleanValue = isBooleanValue;
+        this.booleanValue = booleanValue;
+        this.floatValue = floatValue;
+    }
+
+    /**
+     * getNode()
+     *
+     * @return the node the latest value was measured at (without resolving it) or null if nothing was set yet
+     */
+    synchronized MicrogridNode getNode() {
+        if (datum != null) return datum.getNode();
+        if (dictionary != null) return dictionary.getChannelNode(channelHandle);
+        return null;
+    }
+
+    /**
+     * get()
+     * <p>
+     * resolves the latest value (once; the datum is kept until the next set())
+     *
+     * @return the latest value or null if nothing was set yet
+     */
+    synchronized MicrogridDatum get() {
+        if (datum == null && dictionary != null) {
+            datum = dictionary.resolve(channelHandle, timestamp, isBooleanValue, booleanValue, floatValue);
+            dictionary = null;
+        }
+        return datum;
+    }
+}
@@ -8,13 +8,21 @@ import edu.ucdenver.park.microgrid.data.MicrogridDatum;
 import edu.ucdenver.park.microgrid.data.MicrogridGraph;
 import edu.ucdenver.park.microgrid.data.MicrogridNode;
 import edu.ucdenver.park.microgrid.data.abs.Datum;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
 import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphKeepAliveMessage;
 import edu.ucdenver.park.microgrid.message.MicrogridGraphMessage;
 
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * LiveMicrogridGraph
@@ -50,18 +58,37 @@ public class LiveMicrogridGraph {
      * <p>
      * this map stores the latest message for each individual subgraph id contained within that message
      * <p>
-     * we don't remove expired graphMessages. we just ignore them when assembling the complete graph
-     * <p>
-     * snapshots of state iterate through these values (ignoring expired message) and union all the graphs
+     * we don't remove expired graphMessages, so a keep-alive can still renew an expired subgraph
      * <p>
      * received events put() a message in this map based on the _id property of the graph in the message
      */
     private final Map<String, MicrogridGraphMessage> graphMessages = new ConcurrentHashMap<String, MicrogridGraphMessage>();
 
     /**
-     * datumMessages
+     * mergedGraph
+     * <p>
+     * MergedMicrogridGraph
+     * <p>
+     * the union of the subgraphs in graphMessages that haven't expired, updated as messages arrive (see
+     * getCurrentState())
+     */
+    private final MergedMicrogridGraph mergedGraph = new MergedMicrogridGraph("live-microgrid-graph");
+
+    /**
+     * graphContentHashes
+     * <p>
+     * Map String, Long
+     * <p>
+     * the content hash (MicrogridGraph.getContentHash()) of the subgraph in graphMessages with the same key
+     * <p>
+     * computed once per full graph message so keep-alive messages can be matched without rehashing the graph
+     */
+    private final Map<String, Long> graphContentHashes = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * latestData
      * <p>
-     * Map String, MicrogridDatumMessage
+     * ConcurrentMap String, LatestMicrogridDatum
      * <p>
      * this map stores the last datum received for each unique datum _id received
      * <p>
@@ -70,8 +97,46 @@ public class LiveMicrogridGraph {
      * these snapshots will be sent to frontend via socket io on a regular basis
      * <p>
      * this saves communication overhead with the web client when we start receiving a lot of data
+     * <p>
+     * channel data are stored encoded and only resolved when a snapshot reads them (see LatestMicrogridDatum), unless
+     * DatumHandlers are registered: handlers need every datum, so we resolve each one as it arrives
+     */
+    private final ConcurrentMap<String, LatestMicrogridDatum> latestData = new ConcurrentHashMap<String, LatestMicrogridDatum>();
+
+    /**
+     * latestDataByNode
+     * <p>
+     * ConcurrentMap String, ConcurrentMap String, LatestMicrogridDatum
+     * <p>
+     * the entries of latestData by node _id and then datum _id (one per measurement type of the node)
+     * <p>
+     * a datum _id always belongs to the same node, so an entry is indexed once, when its _id is first received; node
+     * snapshots then read only the node's own entries instead of scanning latestData for every node
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, LatestMicrogridDatum>> latestDataByNode =
+            new ConcurrentHashMap<String, ConcurrentMap<String, LatestMicrogridDatum>>();
+
+    /**
+     * channelDictionaries
+     * <p>
+     * Map String, MicrogridChannelDictionary
+     * <p>
+     * the latest channel dictionary announced by each sender (keyed by the sender's agent name)
+     * <p>
+     * used to resolve the handles in MicrogridChannelDatumMessages; replaced every time the sender announces its
+     * dictionary again
+     */
+    private final Map<String, MicrogridChannelDictionary> channelDictionaries = new ConcurrentHashMap<String, MicrogridChannelDictionary>();
+
+    /**
+     * unresolvedDatumCount
+     * <p>
+     * AtomicLong
+     * <p>
+     * number of channel data (single or batched) dropped because we didn't have the dictionary they were encoded against
+     * (e.g. the dictionary announcement was lost; the next keep-alive from the sender notices and we request it again)
      */
-    private final Map<String, MicrogridDatumMessage> datumMessages = new ConcurrentHashMap<String, MicrogridDatumMessage>();
+    private final AtomicLong unresolvedDatumCount = new AtomicLong();
 
     /**
      * receiveMessage(MicrogridGraphMessage)
@@ -87,7 +152,35 @@ public class LiveMicrogridGraph {
      * @param message a MicrogridGraph message representing the complete current state of the subgraph of the agent that sent it
      */
     public void receiveMessage(MicrogridGraphMessage message) {
-        graphMessages.put(message.getSubgraph().get_id(), message);
+        String id = message.getSubgraph().get_id();
+        long contentHash = message.getSubgraph().getContentHash();
+        graphContentHashes.put(id, contentHash);
+        graphMessages.put(id, message);
+        mergedGraph.put(message.getSubgraph(), contentHash, message.getExpirationMillis());
+    }
+
+    /**
+     * receiveMessage(String, MicrogridGraphKeepAliveMessage)
+     * <p>
+     * renews the expiration of a subgraph we already hold, as if the sender had sent the same graph again
+     *
+     * @param sender  name of the agent that sent the message
+     * @param message a keep-alive message naming a subgraph, its version and the sender's dictionary version
+     * @return false if we don't hold that version of the subgraph or of sender's dictionary (the caller should ask
+     * the sender for its full graph)
+     */
+    public boolean receiveMessage(String sender, MicrogridGraphKeepAliveMessage message) {
+        String id = message.getSubgraphId();
+        MicrogridGraphMessage current = graphMessages.get(id);
+        Long contentHash = graphContentHashes.get(id);
+        MicrogridChannelDictionary dictionary = channelDictionaries.get(sender);
+        if (current == null || contentHash == null || contentHash != message.getContentHash()
+                || dictionary == null || dictionary.getVersion() != message.getDictionaryVersion()) {
+            return false;
+        }
+        graphMessages.put(id, new MicrogridGraphMessage(current.getSubgraph(), message.getExpirationMillis()));
+        mergedGraph.put(current.getSubgraph(), contentHash, message.getExpirationMillis());
+        return true;
     }
 
     /**
@@ -104,48 +197,217 @@ public class LiveMicrogridGraph {
      * @param message a MicrogridDatumMessage message containing a datum
      */
     public void receiveMessage(MicrogridDatumMessage message) {
-        datumMessages.put(message.getDatum().get_id(), message);
-        fireDatumEvent(message.getDatum());
+        receiveDatum(message.getDatum());
     }
 
     /**
-     * getCurrentState()
+     * receiveMessage(MicrogridDatumMessage, int, int)
+     * <p>
+     * receiveMessage(MicrogridDatumMessage) if the datum's channel is in shard (see IngestPipeline)
+     */
+    void receiveMessage(MicrogridDatumMessage message, int shard, int shardCount) {
+        MicrogridDatum datum = message.getDatum();
+        if (shardCount == 1 || shardOf(datum.get_id(), shardCount) == shard) receiveDatum(datum);
+    }
+
+    /**
+     * shardOf()
+     * <p>
+     * senders may send the same channel as full data and as channel data (e.g. when its node isn't in their
+     * dictionary yet, or when replaying spooled data), so both are sharded by the channel's _id: channel data are
+     * sharded once their handle is resolved to it
+     *
+     * @param key        the _id of a channel's data
+     * @param shardCount the number of shards
+     * @return the shard the channel's values are applied by (see IngestPipeline)
+     */
+    static int shardOf(String key, int shardCount) {
+        return (key.hashCode() & 0x7fffffff) % shardCount;
+    }
+
+    /**
+     * receiveDatum()
      * <p>
-     * iterates through the values of graphMessages ignoring expired graphMessages
+     * stores d as the latest value of its _id and fires the "onDatum" event to DatumHandlers
+     */
+    private void receiveDatum(MicrogridDatum d) {
+        LatestMicrogridDatum latest = latestData.get(d.get_id());
+        if (latest == null) latest = createLatest(d.get_id(), d.getNode());
+        latest.set(d);
+        fireDatumEvent(d);
+    }
+
+    /**
+     * receiveChannelValue()
      * <p>
-     * unions all of the graphs to create one large graph representing the entire known grid based on the emssages we have
+     * stores a channel value from dictionary as the latest value of its channel, without resolving it unless
+     * DatumHandlers need the datum
      *
-     * @return a MicrogridGraph object representing the known graph state at this point in time
+     * @param key the _id of the channel's data (dictionary.getChannelKey(), not null)
      */
-    public MicrogridGraph getCurrentState() {
-        long now = System.currentTimeMillis();
-        MicrogridGraph graph = new MicrogridGraph("live-microgrid-graph");
-        for (MicrogridGraphMessage message : graphMessages.values()) {
-            if (message.getExpirationMillis() > now) {
-                graph = graph.union(graph.get_id(), message.getSubgraph());
-            } else {
-                System.out.println(message.getSubgraph().get_id() + " is expired by " + (now - message.getExpirationMillis()) + " ms");
+    private void receiveChannelValue(MicrogridChannelDictionary dictionary, String key, int channelHandle,
+                                     long timestamp, boolean isBooleanValue, boolean booleanValue, float floatValue) {
+        if (!datumHandlers.isEmpty()) {
+            receiveDatum(dictionary.resolve(channelHandle, timestamp, isBooleanValue, booleanValue, floatValue));
+            return;
+        }
+        LatestMicrogridDatum latest = latestData.get(key);
+        if (latest == null) latest = createLatest(key, dictionary.getChannelNode(channelHandle));
+        latest.set(dictionary, channelHandle, timestamp, isBooleanValue, booleanValue, floatValue);
+    }
+
+    /**
+     * createLatest()
+     * <p>
+     * called when latestData has no entry for key yet
+     *
+     * @param key  a datum _id
+     * @param node the node data with that _id are measured at
+     * @return the entry in latestData for key (created and indexed by node unless another thread just did)
+     */
+    private LatestMicrogridDatum createLatest(String key, MicrogridNode node) {
+        LatestMicrogridDatum created = new LatestMicrogridDatum();
+        LatestMicrogridDatum latest = latestData.putIfAbsent(key, created);
+        if (latest != null) return latest;
+        ConcurrentMap<String, LatestMicrogridDatum> nodeData = latestDataByNode.get(node.get_id());
+        if (nodeData == null) {
+            ConcurrentMap<String, LatestMicrogridDatum> createdNodeData = new ConcurrentHashMap<String, LatestMicrogridDatum>();
+            nodeData = latestDataByNode.putIfAbsent(node.get_id(), createdNodeData);
+            if (nodeData == null) nodeData = createdNodeData;
+        }
+        nodeData.put(key, created);
+        return created;
+    }
+
+    /**
+     * receiveMessage(String, MicrogridChannelDictionaryMessage)
+     * <p>
+     * replaces the channel dictionary we hold for sender
+     * <p>
+     * channels are only ever added to a dictionary version, so an announcement of the version we hold with fewer
+     * channels is stale (senders may send announcements out of order, see MicrogridSenderAgent) and ignored
+     *
+     * @param sender  name of the agent that sent the message
+     * @param message the dictionary announcement
+     */
+    public void receiveMessage(String sender, MicrogridChannelDictionaryMessage message) {
+        MicrogridChannelDictionary dictionary = message.getDictionary();
+        MicrogridChannelDictionary current = channelDictionaries.get(sender);
+        if (current != null && current.getVersion() == dictionary.getVersion()
+                && current.getChannelCount() > dictionary.getChannelCount()) {
+            return;
+        }
+        channelDictionaries.put(sender, dictionary);
+    }
+
+    /**
+     * receiveMessage(String, MicrogridChannelDatumMessage)
+     * <p>
+     * resolves the channel handle through sender's dictionary and then behaves like receiveMessage(MicrogridDatumMessage)
+     * (the datum itself is only built when it is read, see latestData)
+     * <p>
+     * drops the message if we don't hold the dictionary version it was encoded against
+     *
+     * @param sender  name of the agent that sent the message
+     * @param message a channel datum message
+     */
+    public void receiveMessage(String sender, MicrogridChannelDatumMessage message) {
+        receiveMessage(sender, message, 0, 1);
+    }
+
+    /**
+     * receiveMessage(String, MicrogridChannelDatumMessage, int, int)
+     * <p>
+     * receiveMessage(String, MicrogridChannelDatumMessage) if the channel is in shard (see IngestPipeline)
+     */
+    void receiveMessage(String sender, MicrogridChannelDatumMessage message, int shard, int shardCount) {
+        MicrogridChannelDictionary dictionary = channelDictionaries.get(sender);
+        String key = dictionary == null || dictionary.getVersion() != message.getDictionaryVersion() ? null
+                : dictionary.getChannelKey(message.getChannelHandle(), message.isBooleanValue());
+        if (key == null) {
+            //Unresolvable values belong to no shard; shard 0 counts them
+            if (shard == 0) unresolvedDatumCount.incrementAndGet();
+            return;
+        }
+        if (shardCount > 1 && shardOf(key, shardCount) != shard) return;
+        receiveChannelValue(dictionary, key, message.getChannelHandle(), message.getTimestamp(),
+                message.isBooleanValue(), message.getBooleanValue(), message.getFloatValue());
+    }
+
+    /**
+     * receiveMessage(String, MicrogridDatumBatchMessage)
+     * <p>
+     * resolves every row of the batch through sender's dictionary in one pass and stores/fires it like
+     * receiveMessage(MicrogridDatumMessage) would
+     * <p>
+     * drops the whole batch if we don't hold the dictionary version it was encoded against
+     *
+     * @param sender  name of the agent that sent the message
+     * @param message a batch of channel data
+     */
+    public void receiveMessage(String sender, MicrogridDatumBatchMessage message) {
+        receiveMessage(sender, message, 0, 1);
+    }
+
+    /**
+     * receiveMessage(String, MicrogridDatumBatchMessage, int, int)
+     * <p>
+     * receiveMessage(String, MicrogridDatumBatchMessage) for the rows whose channels are in shard (see IngestPipeline)
+     */
+    void receiveMessage(String sender, MicrogridDatumBatchMessage message, int shard, int shardCount) {
+        MicrogridChannelDictionary dictionary = channelDictionaries.get(sender);
+        if (dictionary == null || dictionary.getVersion() != message.getDictionaryVersion()) {
+            //Unresolvable values belong to no shard; shard 0 counts them
+            if (shard == 0) unresolvedDatumCount.addAndGet(message.size());
+            return;
+        }
+        for (int i = 0; i < message.size(); i++) {
+            String key = dictionary.getChannelKey(message.getChannelHandle(i), message.isBooleanValue(i));
+            if (key == null) {
+                if (shard == 0) unresolvedDatumCount.incrementAndGet();
+                continue;
             }
+            if (shardCount > 1 && shardOf(key, shardCount) != shard) continue;
+            receiveChannelValue(dictionary, key, message.getChannelHandle(i), message.getTimestamp(i),
+                    message.isBooleanValue(i), message.getBooleanValue(i), message.getFloatValue(i));
         }
-        return graph;
+    }
+
+    /**
+     * getCurrentState()
+     * <p>
+     * the union of all of the graphs in the messages we have that haven't expired: one large graph representing the
+     * entire known grid
+     * <p>
+     * the union is maintained as messages arrive (see MergedMicrogridGraph), so this doesn't copy any graph unless the
+     * topology changed since the last call
+     *
+     * @return a MicrogridGraph object representing the known graph state at this point in time (shared with other
+     * callers; do not modify)
+     */
+    public MicrogridGraph getCurrentState() {
+        return mergedGraph.get(System.currentTimeMillis());
     }
 
     /**
      * getSnapshotForNode()
      * <p>
-     * filters the "up-to-date" measurement set to just values that are for the node n
+     * looks up the "up-to-date" values for the node n (see latestDataByNode)
      * then, returns a MicrogridNodeSnapshot, which contains the node information AND
      * the measurement information
+     * <p>
+     * resolves the values of n that are still encoded
      *
      * @param n the node to search for
      * @return a snapshot of measruement values of node n
      */
     public MicrogridNodeSnapshot getCurrentNodeState(MicrogridNode n) {
         Set<MicrogridDatum> data = new HashSet<MicrogridDatum>();
-        for (MicrogridDatumMessage message : datumMessages.values()) {
-            MicrogridDatum datum = message.getDatum();
-            if (datum.getNode().get_id().equals(n.get_id())) {
-                data.add(datum);
+        Map<String, LatestMicrogridDatum> nodeData = latestDataByNode.get(n.get_id());
+        if (nodeData != null) {
+            for (LatestMicrogridDatum latest : nodeData.values()) {
+                MicrogridDatum datum = latest.get();
+                if (datum != null) data.add(datum);
             }
         }
         return new MicrogridNodeSnapshot(n, data);
@@ -159,6 +421,8 @@ public class LiveMicrogridGraph {
      * the graph
      * <p>
      * filters out nodes that don't have measurements
+     * <p>
+     * costs one lookup per node plus the measurements read (see latestDataByNode)
      *
      * @return a set of microgrid node snapshots representing the last known measurement state at each node
      */
@@ -174,8 +438,18 @@ public class LiveMicrogridGraph {
         return snapshots;
     }
 
+    /**
+     * getUnresolvedDatumCount()
+     *
+     * @return the number of channel data dropped because we didn't have a matching dictionary
+     */
+    public long getUnresolvedDatumCount() {
+        return unresolvedDatumCount.get();
+    }
+
     //--Event Handler Sets--
-    private final Set<DatumHandler> datumHandlers = new HashSet<DatumHandler>();
+    //Handlers may be called from several threads at once (see IngestPipeline); each channel's data arrive in order
+    private final Set<DatumHandler> datumHandlers = new CopyOnWriteArraySet<DatumHandler>();
 
     //--Handler Registrations--
     public void registerDatumHadler(DatumHandler h) {
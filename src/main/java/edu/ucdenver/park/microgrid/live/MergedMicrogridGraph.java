@@ -0,0 +1,200 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.live;
+
+import edu.ucdenver.park.microgrid.data.MicrogridEdge;
+import edu.ucdenver.park.microgrid.data.MicrogridGraph;
+import edu.ucdenver.park.microgrid.data.MicrogridNode;
+import edu.ucdenver.park.microgrid.data.abs.Entity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * MergedMicrogridGraph
+ * <p>
+ * class
+ * <p>
+ * mutable, thread safe
+ * <p>
+ * the union of the subgraphs that haven't expired, maintained as subgraphs arrive and expire instead of being rebuilt
+ * from all of them on every read
+ * <p>
+ * every node and edge is counted once per subgraph that contains it, so an entity shared by several subgraphs (e.g.
+ * the bus between two controllers) stays in the union until the last of them expires. Only subgraphs that change the
+ * union cost work, proportional to their own size (keep-alives and repeated graphs only move an expiration); the
+ * union's MicrogridGraph is built once per change and then returned to every reader as it is.
+ *
+ * @author Jake Billings
+ */
+public class MergedMicrogridGraph {
+    /**
+     * Member
+     * <p>
+     * a subgraph in the union and when it expires
+     */
+    private static final class Member {
+        private final MicrogridGraph subgraph;
+        private final long contentHash;
+        private long expirationMillis;
+
+        private Member(MicrogridGraph subgraph, long contentHash, long expirationMillis) {
+            this.subgraph = subgraph;
+            this.contentHash = contentHash;
+            this.expirationMillis = expirationMillis;
+        }
+    }
+
+    /**
+     * Counted
+     * <p>
+     * an entity of the union and the number of members that contain it
+     */
+    private static final class Counted<T> {
+        private T entity;
+        private int count;
+    }
+
+    private final String _id;
+    private final Map<String, Member> members = new HashMap<String, Member>();
+    private final Map<String, Counted<MicrogridNode>> nodes = new HashMap<String, Counted<MicrogridNode>>();
+    private final Map<String, Counted<MicrogridEdge>> edges = new HashMap<String, Counted<MicrogridEdge>>();
+
+    /**
+     * nextExpirationMillis
+     * <p>
+     * long
+     * <p>
+     * the earliest expiration of a member (Long.MAX_VALUE if there are none); reads only look for expired members
+     * once it has passed
+     */
+    private long nextExpirationMillis = Long.MAX_VALUE;
+
+    /**
+     * union
+     * <p>
+     * MicrogridGraph
+     * <p>
+     * the union as of the last change, or null if it changed since it was last read
+     */
+    private MicrogridGraph union;
+
+    /**
+     * MergedMicrogridGraph()
+     * <p>
+     * constructor
+     *
+     * @param _id the _id of the union graph
+     */
+    public MergedMicrogridGraph(String _id) {
+        this._id = _id;
+    }
+
+    /**
+     * put()
+     * <p>
+     * adds subgraph to the union until expirationMillis, replacing the member with the same _id
+     *
+     * @param subgraph         a subgraph
+     * @param contentHash      subgraph.getContentHash(); a member with the same hash only gets the new expiration
+     * @param expirationMillis when subgraph expires
+     */
+    public synchronized void put(MicrogridGraph subgraph, long contentHash, long expirationMillis) {
+        Member member = members.get(subgraph.get_id());
+        if (member != null && member.contentHash == contentHash) {
+            member.expirationMillis = expirationMillis;
+            nextExpirationMillis = Math.min(nextExpirationMillis, expirationMillis);
+            return;
+        }
+        if (member != null) remove(member);
+        members.put(subgraph.get_id(), new Member(subgraph, contentHash, expirationMillis));
+        for (MicrogridNode node : subgraph.getNodes()) {
+            add(nodes, node);
+        }
+        for (MicrogridEdge edge : subgraph.getEdges()) {
+            add(edges, edge);
+        }
+        nextExpirationMillis = Math.min(nextExpirationMillis, expirationMillis);
+        union = null;
+    }
+
+    /**
+     * get()
+     * <p>
+     * removes the members that expired by now, then returns the union (built again only if it changed)
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @return the union of the members that haven't expired; shared by every reader, so it must not be modified
+     */
+    public synchronized MicrogridGraph get(long now) {
+        if (now >= nextExpirationMillis) expire(now);
+        if (union == null) {
+            Set<MicrogridNode> unionNodes = new HashSet<MicrogridNode>();
+            for (Counted<MicrogridNode> node : nodes.values()) {
+                unionNodes.add(node.entity);
+            }
+            Set<MicrogridEdge> unionEdges = new HashSet<MicrogridEdge>();
+            for (Counted<MicrogridEdge> edge : edges.values()) {
+                unionEdges.add(edge.entity);
+            }
+            union = new MicrogridGraph(_id, Collections.unmodifiableSet(unionEdges), Collections.unmodifiableSet(unionNodes));
+        }
+        return union;
+    }
+
+    private void expire(long now) {
+        nextExpirationMillis = Long.MAX_VALUE;
+        Iterator<Member> iterator = members.values().iterator();
+        while (iterator.hasNext()) {
+            Member member = iterator.next();
+            if (member.expirationMillis <= now) {
+                System.out.println(member.subgraph.get_id() + " is expired by " + (now - member.expirationMillis) + " ms");
+                iterator.remove();
+                removeEntities(member);
+            } else {
+                nextExpirationMillis = Math.min(nextExpirationMillis, member.expirationMillis);
+            }
+        }
+    }
+
+    private void remove(Member member) {
+        members.remove(member.subgraph.get_id());
+        removeEntities(member);
+    }
+
+    private void removeEntities(Member member) {
+        for (MicrogridNode node : member.subgraph.getNodes()) {
+            release(nodes, node);
+        }
+        for (MicrogridEdge edge : member.subgraph.getEdges()) {
+            release(edges, edge);
+        }
+        union = null;
+    }
+
+    /**
+     * add()
+     * <p>
+     * counts entity once more; the newest copy of an entity (e.g. a node whose type changed) is the one in the union
+     */
+    private static <T extends Entity> void add(Map<String, Counted<T>> counts, T entity) {
+        Counted<T> counted = counts.get(entity.get_id());
+        if (counted == null) {
+            counted = new Counted<T>();
+            counts.put(entity.get_id(), counted);
+        }
+        counted.entity = entity;
+        counted.count++;
+    }
+
+    private static <T extends Entity> void release(Map<String, Counted<T>> counts, T entity) {
+        Counted<T> counted = counts.get(entity.get_id());
+        if (counted != null && --counted.count == 0) counts.remove(entity.get_id());
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * BitInput
+ * <p>
+ * class
+ * <p>
+ * mutable
+ * <p>
+ * reads values written by BitOutput; the padding of the last byte is simply never read
+ *
+ * @author Jake Billings
+ */
+final class BitInput {
+    private final DataInput in;
+
+    //the bits of the current byte we haven't read yet (in the low bitCount bits of current)
+    private int current;
+    private int bitCount;
+
+    BitInput(DataInput in) {
+        this.in = in;
+    }
+
+    boolean readBit() throws IOException {
+        return readBits(1) == 1;
+    }
+
+    /**
+     * readBits()
+     *
+     * @param count the number of bits to read (0 to 64)
+     * @return the bits as the low count bits of a long
+     * @throws IOException if in fails to read
+     */
+    long readBits(int count) throws IOException {
+        long value = 0;
+        while (count > 0) {
+            if (bitCount == 0) {
+                current = in.readUnsignedByte();
+                bitCount = 8;
+            }
+            int take = Math.min(bitCount, count);
+            int chunk = (current >>> (bitCount - take)) & ((1 << take) - 1);
+            value = (value << take) | chunk;
+            bitCount -= take;
+            count -= take;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * BitOutput
+ * <p>
+ * class
+ * <p>
+ * mutable
+ * <p>
+ * writes values of any bit width (most significant bit first) to a DataOutput, packing them into whole bytes
+ * used by the compressed columns of MicrogridDatumBatchMessage; call flush() after the last value
+ *
+ * @author Jake Billings
+ */
+final class BitOutput {
+    private final DataOutput out;
+
+    //the bits that don't fill a whole byte yet (in the low bitCount bits of current)
+    private int current;
+    private int bitCount;
+
+    BitOutput(DataOutput out) {
+        this.out = out;
+    }
+
+    void writeBit(boolean bit) throws IOException {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * writeBits()
+     *
+     * @param value the value whose low count bits we write
+     * @param count the number of bits to write (0 to 64)
+     * @throws IOException if out fails to write
+     */
+    void writeBits(long value, int count) throws IOException {
+        while (count > 0) {
+            int take = Math.min(8 - bitCount, count);
+            int chunk = (int) (value >>> (count - take)) & ((1 << take) - 1);
+            current = (current << take) | chunk;
+            bitCount += take;
+            count -= take;
+            if (bitCount == 8) {
+                out.writeByte(current);
+                current = 0;
+                bitCount = 0;
+            }
+        }
+    }
+
+    /**
+     * flush()
+     * <p>
+     * writes the last partial byte (padded with zero bits)
+     *
+     * @throws IOException if out fails to write
+     */
+    void flush() throws IOException {
+        if (bitCount > 0) {
+            out.writeByte(current << (8 - bitCount));
+            current = 0;
+            bitCount = 0;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBufferDataInput
+ * <p>
+ * class
+ * <p>
+ * mutable
+ * <p>
+ * DataInput implementation that reads straight out of a ByteBuffer without copying it
+ * <p>
+ * MessageCodec uses this instead of ByteArrayInputStream + ObjectInputStream when decoding a message. It reads the
+ * same format DataOutputStream (and ByteBufferDataOutput) writes.
+ * <p>
+ * Reading past the end of the buffer throws EOFException like any other DataInput.
+ *
+ * @author Jake Billings
+ */
+public class ByteBufferDataInput implements DataInput {
+    /**
+     * buffer
+     * <p>
+     * ByteBuffer
+     * <p>
+     * the buffer we are reading from; its position advances as we read
+     */
+    private final ByteBuffer buffer;
+
+    public ByteBufferDataInput(ByteBuffer buffer) {
+        if (buffer == null) throw new IllegalArgumentException("buffer cannot be null when creating a ByteBufferDataInput");
+        this.buffer = buffer;
+    }
+
+    /**
+     * remaining()
+     *
+     * @return the number of unread bytes left in the buffer
+     */
+    public int remaining() {
+        return buffer.remaining();
+    }
+
+    /**
+     * require()
+     * <p>
+     * throws EOFException if fewer than n bytes are left
+     *
+     * @param n the number of bytes about to be read
+     */
+    private void require(int n) throws EOFException {
+        if (buffer.remaining() < n) throw new EOFException();
+    }
+
+    //----DataInput----
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        require(len);
+        buffer.get(b, off, len);
+    }
+
+    public int skipBytes(int n) {
+        int skipped = Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public byte readByte() throws IOException {
+        try {
+            return buffer.get();
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    public short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    public char readChar() throws IOException {
+        require(2);
+        return buffer.getChar();
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    /**
+     * readLine()
+     * <p>
+     * not supported; nothing in our protocol is line based
+     */
+    public String readLine() {
+        throw new UnsupportedOperationException("readLine() is not supported by ByteBufferDataInput");
+    }
+
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+}
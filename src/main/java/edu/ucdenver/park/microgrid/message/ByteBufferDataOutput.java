@@ -0,0 +1,210 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBufferDataOutput
+ * <p>
+ * class
+ * <p>
+ * mutable
+ * <p>
+ * DataOutput implementation that writes straight into a heap ByteBuffer which grows as needed
+ * <p>
+ * MessageCodec uses this instead of ByteArrayOutputStream + ObjectOutputStream so that encoding a message doesn't pay
+ * for an object stream header, block-data framing, or a chain of stream objects. The bytes written are identical to
+ * the bytes DataOutputStream would write for the same calls.
+ * <p>
+ * The buffer may be reset() and reused between messages.
+ *
+ * @author Jake Billings
+ */
+public class ByteBufferDataOutput implements DataOutput {
+    /**
+     * buffer
+     * <p>
+     * ByteBuffer
+     * <p>
+     * the heap buffer we are writing to; replaced with a larger copy when it fills up
+     */
+    private ByteBuffer buffer;
+
+    public ByteBufferDataOutput(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    /**
+     * ensureCapacity()
+     * <p>
+     * makes sure there are at least n bytes remaining in the buffer, doubling its size if there aren't
+     *
+     * @param n the number of bytes that are about to be written
+     */
+    private void ensureCapacity(int n) {
+        if (buffer.remaining() < n) {
+            int newCapacity = Math.max(buffer.capacity() * 2, buffer.position() + n);
+            ByteBuffer larger = ByteBuffer.allocate(newCapacity);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    //----Buffer Access----
+    /**
+     * reset()
+     * <p>
+     * discards everything written so far so the buffer can be reused
+     */
+    public void reset() {
+        buffer.clear();
+    }
+
+    /**
+     * size()
+     *
+     * @return the number of bytes written since the last reset()
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * array()
+     * <p>
+     * the backing array; only the first size() bytes are valid
+     *
+     * @return the backing array of the buffer (not a copy)
+     */
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    /**
+     * toByteArray()
+     *
+     * @return a copy of the bytes written since the last reset()
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    //----DataOutput----
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer.put((byte) b);
+    }
+
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        buffer.put(b, off, len);
+    }
+
+    public void writeBoolean(boolean v) {
+        write(v ? 1 : 0);
+    }
+
+    public void writeByte(int v) {
+        write(v);
+    }
+
+    public void writeShort(int v) {
+        ensureCapacity(2);
+        buffer.putShort((short) v);
+    }
+
+    public void writeChar(int v) {
+        ensureCapacity(2);
+        buffer.putChar((char) v);
+    }
+
+    public void writeInt(int v) {
+        ensureCapacity(4);
+        buffer.putInt(v);
+    }
+
+    public void writeLong(long v) {
+        ensureCapacity(8);
+        buffer.putLong(v);
+    }
+
+    public void writeFloat(float v) {
+        ensureCapacity(4);
+        buffer.putFloat(v);
+    }
+
+    public void writeDouble(double v) {
+        ensureCapacity(8);
+        buffer.putDouble(v);
+    }
+
+    public void writeBytes(String s) {
+        int len = s.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++) {
+            buffer.put((byte) s.charAt(i));
+        }
+    }
+
+    public void writeChars(String s) {
+        int len = s.length();
+        ensureCapacity(len * 2);
+        for (int i = 0; i < len; i++) {
+            buffer.putChar(s.charAt(i));
+        }
+    }
+
+    /**
+     * writeUTF()
+     * <p>
+     * writes s in the "modified UTF-8" format used by DataOutputStream.writeUTF() so that DataInput.readUTF()
+     * (including ObjectInputStream) can read it back
+     *
+     * @param s the string to write
+     * @throws UTFDataFormatException if the encoded string is longer than 65535 bytes
+     */
+    public void writeUTF(String s) throws IOException {
+        int len = s.length();
+        int utfLength = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                utfLength++;
+            } else if (c > 0x07FF) {
+                utfLength += 3;
+            } else {
+                utfLength += 2;
+            }
+        }
+        if (utfLength > 65535) throw new UTFDataFormatException("encoded string too long: " + utfLength + " bytes");
+
+        ensureCapacity(utfLength + 2);
+        buffer.putShort((short) utfLength);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                buffer.put((byte) c);
+            } else if (c > 0x07FF) {
+                buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
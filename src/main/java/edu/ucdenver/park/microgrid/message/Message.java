@@ -4,10 +4,12 @@
  */
 package edu.ucdenver.park.microgrid.message;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.Serializable;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * Message
@@ -21,20 +23,96 @@ import java.io.Serializable;
  * For instance, the MicrogridFloatDatumMessage contains one float datum.
  * For instance, the MicrogridGraphMessage contains one datum.
  *
+ * Every message begins with a one byte type id that read() uses to pick the subclass to decode:
+ *  1 = MicrogridDatumMessage
+ *  2 = MicrogridGraphMessage
+ *  3 = MicrogridChannelDictionaryMessage
+ *  4 = MicrogridChannelDatumMessage
+ *  5 = MicrogridDatumBatchMessage
+ *  6 = MicrogridEncodingMessage
+ *  7 = MicrogridDatumBatchMessage (compressed)
+ *  8 = MicrogridGraphKeepAliveMessage
+ *  9 = MicrogridGraphRequestMessage
+ * 10 = MicrogridBundleMessage
+ * 11 = MicrogridRateControlMessage
+ * 12 = MicrogridInterestMessage
+ *
+ * Messages are normally encoded/decoded with MessageCodec, which adds a small versioned header. They still
+ *  implement Externalizable so that old ObjectOutputStream-framed payloads can be decoded.
+ *
  * @author Jake Billings
  */
 public abstract class Message implements Externalizable {
-    public static Message read(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    /**
+     * read()
+     *
+     * reads the type byte from in and then decodes the matching Message subclass
+     *
+     * @param in the DataInput to read from (ObjectInputStream and ByteBufferDataInput both work)
+     * @return the decoded message
+     * @throws IOException if the type byte is unknown or the message is malformed
+     */
+    public static Message read(DataInput in) throws IOException {
         byte type = in.readByte();
         Message m;
         if (type == 1) {
             m = new MicrogridDatumMessage();
         } else if (type == 2) {
             m = new MicrogridGraphMessage();
+        } else if (type == 3) {
+            m = new MicrogridChannelDictionaryMessage();
+        } else if (type == 4) {
+            m = new MicrogridChannelDatumMessage();
+        } else if (type == 5) {
+            m = new MicrogridDatumBatchMessage();
+        } else if (type == 6) {
+            m = new MicrogridEncodingMessage();
+        } else if (type == 7) {
+            m = new MicrogridDatumBatchMessage(true);
+        } else if (type == 8) {
+            m = new MicrogridGraphKeepAliveMessage();
+        } else if (type == 9) {
+            m = new MicrogridGraphRequestMessage();
+        } else if (type == 10) {
+            m = new MicrogridBundleMessage();
+        } else if (type == 11) {
+            m = new MicrogridRateControlMessage();
+        } else if (type == 12) {
+            m = new MicrogridInterestMessage();
         } else {
             throw new IOException("Invalid message type");
         }
-        m.readExternal(in);
+        m.readBody(in);
         return m;
     }
+
+    //----Encoders----
+    /**
+     * write()
+     *
+     * writes this message to out including the leading type byte
+     *
+     * @param out the DataOutput to write to
+     * @throws IOException if out fails to write
+     */
+    public abstract void write(DataOutput out) throws IOException;
+
+    /**
+     * readBody()
+     *
+     * reads this message from in; the type byte has already been consumed by Message.read()
+     *
+     * @param in the DataInput to read from
+     * @throws IOException if in fails to read or the data is malformed
+     */
+    public abstract void readBody(DataInput in) throws IOException;
+
+    //----Externalizers----
+    public void writeExternal(ObjectOutput out) throws IOException {
+        this.write(out);
+    }
+
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        this.readBody(in);
+    }
 }
@@ -0,0 +1,373 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import edu.ucdenver.park.microgrid.data.AggregateMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * MessageCodec
+ * <p>
+ * class: static utility
+ * <p>
+ * encodes Message objects into the byte payload of a JADE ACLMessage and decodes them again
+ * <p>
+ * Payload format:
+ * byte 0: MAGIC (0x4D, 'M')
+ * byte 1: the oldest codec VERSION that can read the payload (see versionOf())
+ * byte 2...: the message itself as written by Message.write() (starting with its type byte)
+ * <p>
+ * Older senders wrapped every message in an ObjectOutputStream. Those payloads start with the Java serialization
+ * stream magic (0xACED) instead of our MAGIC byte, so decode() still accepts them by falling back to
+ * ObjectInputStream. New payloads skip the object stream header and block-data framing entirely, which saves
+ * 6 bytes per message (more for messages over 1 KB) and several allocations per decode.
+ *
+ * @author Jake Billings
+ */
+public final class MessageCodec {
+    /**
+     * MAGIC
+     * <p>
+     * byte
+     * <p>
+     * first byte of every payload written by this codec; chosen so it can never collide with the first byte of a
+     * Java serialization stream (0xAC)
+     */
+    public static final byte MAGIC = 0x4D;
+
+    /**
+     * VERSION
+     * <p>
+     * byte
+     * <p>
+     * the newest payload version this codec reads and writes
+     * bump this whenever the encoding of an existing message type changes
+     * <p>
+     * 1: the original encoding
+     * 2: MicrogridDatumMessages may carry an AggregateMicrogridDatum (datum type 0x03)
+     */
+    public static final byte VERSION = 2;
+
+    /**
+     * BASE_VERSION
+     * <p>
+     * byte
+     * <p>
+     * the version of payloads that don't use anything added since version 1
+     */
+    private static final byte BASE_VERSION = 1;
+
+    /**
+     * HEADER_SIZE
+     * <p>
+     * int
+     * <p>
+     * number of bytes in front of the encoded message (MAGIC + VERSION)
+     */
+    public static final int HEADER_SIZE = 2;
+
+    /**
+     * INITIAL_BUFFER_SIZE
+     * <p>
+     * int
+     * <p>
+     * starting capacity of encode buffers; big enough for any datum message, graph messages grow the buffer
+     */
+    private static final int INITIAL_BUFFER_SIZE = 128;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * encode()
+     * <p>
+     * writes the header followed by m to out
+     *
+     * @param m   the message to encode
+     * @param out the buffer to write to
+     * @throws IOException if the message cannot be written
+     */
+    public static void encode(Message m, ByteBufferDataOutput out) throws IOException {
+        out.writeByte(MAGIC);
+        out.writeByte(versionOf(m));
+        m.write(out);
+    }
+
+    /**
+     * encode()
+     *
+     * @param m the message to encode
+     * @return a new byte array containing the header followed by m
+     * @throws IOException if the message cannot be written
+     */
+    public static byte[] encode(Message m) throws IOException {
+        ByteBufferDataOutput out = new ByteBufferDataOutput(INITIAL_BUFFER_SIZE);
+        encode(m, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * encodeChannelDatum()
+     * <p>
+     * writes the header followed by new MicrogridChannelDatumMessage(dictionaryVersion, channelHandle, datum) to out
+     * without creating the message; with a reused out, encoding a datum allocates nothing
+     *
+     * @param out               the buffer to write to
+     * @param dictionaryVersion the version of the dictionary channelHandle was assigned in
+     * @param channelHandle     the handle of datum's channel
+     * @param datum             the datum to encode
+     * @throws IOException if the message cannot be written
+     */
+    public static void encodeChannelDatum(ByteBufferDataOutput out, int dictionaryVersion, int channelHandle,
+                                          MicrogridDatum datum) throws IOException {
+        out.writeByte(MAGIC);
+        out.writeByte(BASE_VERSION);
+        MicrogridChannelDatumMessage.write(out, dictionaryVersion, channelHandle, datum);
+    }
+
+    /**
+     * encodeBundle()
+     * <p>
+     * writes the header followed by a MicrogridBundleMessage of the first count payloads to out, without decoding
+     * them (see MicrogridBundleMessage.write()); the bundle has the newest version of the payloads
+     *
+     * @param out      the buffer to write to
+     * @param payloads payloads written by this codec
+     * @param count    the number of payloads to bundle
+     * @throws IOException if a payload wasn't written by this codec
+     */
+    public static void encodeBundle(ByteBufferDataOutput out, byte[][] payloads, int count) throws IOException {
+        byte version = BASE_VERSION;
+        for (int i = 0; i < count; i++) {
+            if (payloads[i].length > 1 && payloads[i][1] > version) version = payloads[i][1];
+        }
+        out.writeByte(MAGIC);
+        out.writeByte(version);
+        MicrogridBundleMessage.write(out, payloads, count);
+    }
+
+    /**
+     * versionOf()
+     * <p>
+     * payloads are written with the oldest version that can express them, so receivers that only read older versions
+     * still read every message that doesn't need a newer one (and reject the others as a whole instead of failing
+     * halfway through them)
+     *
+     * @param m a message
+     * @return the oldest codec version that can read m
+     */
+    static byte versionOf(Message m) {
+        if (m instanceof MicrogridDatumMessage) {
+            return ((MicrogridDatumMessage) m).getDatum() instanceof AggregateMicrogridDatum ? 2 : BASE_VERSION;
+        }
+        if (m instanceof MicrogridBundleMessage) {
+            MicrogridBundleMessage bundle = (MicrogridBundleMessage) m;
+            byte version = BASE_VERSION;
+            for (int i = 0; i < bundle.size(); i++) {
+                version = (byte) Math.max(version, versionOf(bundle.getMessage(i)));
+            }
+            return version;
+        }
+        return BASE_VERSION;
+    }
+
+    /**
+     * decode()
+     *
+     * @param payload the byte sequence content of an ACLMessage
+     * @return the decoded message
+     * @throws IOException if the payload is not a message we understand
+     */
+    public static Message decode(byte[] payload) throws IOException {
+        return decode(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * decode()
+     * <p>
+     * reads one message from the buffer, advancing its position past the message
+     * <p>
+     * accepts both codec payloads and legacy ObjectOutputStream payloads
+     *
+     * @param buffer the buffer positioned at the start of a payload
+     * @return the decoded message
+     * @throws IOException if the payload is not a message we understand
+     */
+    public static Message decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) throw new IOException("Message payload too short");
+
+        int start = buffer.position();
+        byte first = buffer.get(start);
+        byte second = buffer.get(start + 1);
+
+        //Legacy senders: the payload is a Java object stream (0xACED...)
+        if (first == (byte) 0xAC && second == (byte) 0xED) {
+            byte[] legacy = new byte[buffer.remaining()];
+            buffer.get(legacy);
+            return Message.read(new ObjectInputStream(new ByteArrayInputStream(legacy)));
+        }
+
+        if (first != MAGIC) throw new IOException("Unknown message payload format");
+        if (second < 1 || second > VERSION) throw new IOException("Unsupported message codec version " + second);
+
+        buffer.position(start + HEADER_SIZE);
+        return Message.read(new ByteBufferDataInput(buffer));
+    }
+
+    /**
+     * peekType()
+     *
+     * @param payload the byte sequence content of an ACLMessage
+     * @return the type byte of the message in payload (see Message.read()) without decoding it, or 0 if payload isn't
+     * a codec payload (e.g. a legacy one)
+     */
+    public static byte peekType(byte[] payload) {
+        if (payload == null || payload.length <= HEADER_SIZE || payload[0] != MAGIC) return 0;
+        return payload[HEADER_SIZE];
+    }
+
+    /**
+     * isTelemetry()
+     * <p>
+     * peeks into payload without decoding it (see peekType())
+     *
+     * @param payload the byte sequence content of an ACLMessage
+     * @return whether payload holds nothing but float data: a float or aggregate MicrogridDatumMessage, a float
+     * MicrogridChannelDatumMessage, a batch without boolean rows, or a bundle of those. Boolean data (protection
+     * events), graph, dictionary and other control messages, legacy payloads (which we can't peek into) and payloads we
+     * can't parse are not telemetry.
+     */
+    public static boolean isTelemetry(byte[] payload) {
+        if (payload == null || payload.length <= HEADER_SIZE || payload[0] != MAGIC) return false;
+        try {
+            return isTelemetry(ByteBuffer.wrap(payload, HEADER_SIZE, payload.length - HEADER_SIZE), true);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * isTelemetry()
+     *
+     * @param buffer         the buffer positioned at the type byte of a message (without the codec header)
+     * @param bundlesAllowed whether the message may be a bundle (bundles don't nest)
+     * @return see isTelemetry(byte[])
+     * @throws IOException if the message is truncated
+     */
+    private static boolean isTelemetry(ByteBuffer buffer, boolean bundlesAllowed) throws IOException {
+        ByteBufferDataInput in = new ByteBufferDataInput(buffer);
+        switch (in.readByte()) {
+            case 1: //MicrogridDatumMessage: 0x01 float, 0x02 boolean, 0x03 aggregate
+                byte indicator = in.readByte();
+                return indicator == 0x01 || indicator == 0x03;
+            case 4: //MicrogridChannelDatumMessage
+                readVarInt(in);
+                return (readVarInt(in) & 1) == 0;
+            case 5: //MicrogridDatumBatchMessage
+            case 7: //Compressed MicrogridDatumBatchMessage
+                readVarInt(in);
+                int groupCount = readVarInt(in);
+                for (int g = 0; g < groupCount; g++) {
+                    if ((readVarInt(in) & 1) == 1) return false;
+                    readVarInt(in);
+                }
+                return true;
+            case 10: //MicrogridBundleMessage
+                if (!bundlesAllowed) return false;
+                int count = readVarInt(in);
+                for (int i = 0; i < count; i++) {
+                    int length = readVarInt(in);
+                    if (length < 1 || length > buffer.remaining()) throw new IOException("Truncated MicrogridBundleMessage");
+                    ByteBuffer message = buffer.slice();
+                    message.limit(length);
+                    if (!isTelemetry(message, false)) return false;
+                    buffer.position(buffer.position() + length);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    //----Varints----
+    /**
+     * writeVarInt()
+     * <p>
+     * writes a non-negative int using 7 bits per byte, low bits first; the high bit of each byte is set when more
+     * bytes follow. Values under 128 take one byte, values under 16384 take two.
+     *
+     * @param out   the DataOutput to write to
+     * @param value the value to write; must not be negative
+     * @throws IOException if out fails to write
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        if (value < 0) throw new IllegalArgumentException("varint value cannot be negative");
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * readVarInt()
+     *
+     * @param in the DataInput to read from
+     * @return the value written by writeVarInt()
+     * @throws IOException if in fails to read or the varint is longer than 5 bytes
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * writeZigZagVarLong()
+     * <p>
+     * writes a signed long as a varint after zigzag encoding it (0, -1, 1, -2, ... become 0, 1, 2, 3, ...) so that
+     * small negative values stay short; used for timestamp deltas
+     *
+     * @param out   the DataOutput to write to
+     * @param value the value to write
+     * @throws IOException if out fails to write
+     */
+    public static void writeZigZagVarLong(DataOutput out, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+
+    /**
+     * readZigZagVarLong()
+     *
+     * @param in the DataInput to read from
+     * @return the value written by writeZigZagVarLong()
+     * @throws IOException if in fails to read or the varint is longer than 10 bytes
+     */
+    public static long readZigZagVarLong(DataInput in) throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.readByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+        throw new IOException("Malformed varint");
+    }
+}
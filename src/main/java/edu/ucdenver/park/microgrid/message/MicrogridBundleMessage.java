@@ -0,0 +1,142 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MicrogridBundleMessage
+ *
+ * class
+ *
+ * immutable
+ *
+ * Carries several messages in one ACLMessage. The sender's dispatcher packs everything it drains from its send queue
+ *  into bundles (see MicrogridSenderAgent), so the per-ACLMessage overhead of JADE (envelope, routing, one delivery
+ *  per message) is paid once per bundle instead of once per datum. The receiver handles the messages in order, as if
+ *  they had arrived one by one.
+ *
+ * Senders only send bundles after the receiver agreed to MicrogridEncodingMessage.BUNDLES.
+ *
+ * Format: type byte (10), varint message count, then for each message: varint length, the message as written by
+ *  Message.write() (without the MessageCodec header). Bundles don't nest.
+ *
+ * @author Jake Billings
+ */
+public class MicrogridBundleMessage extends Message {
+    /**
+     * MicrogridBundleMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridBundleMessage() {}
+
+    /**
+     * MAX_SIZE, MAX_MESSAGE_BYTES
+     *
+     * int
+     *
+     * the most messages one bundle may carry and the longest message it may carry; decoding rejects larger counts
+     *  and lengths (and ones longer than the bytes left in the payload) instead of allocating for them
+     */
+    public static final int MAX_SIZE = 1 << 16;
+    public static final int MAX_MESSAGE_BYTES = 1 << 24;
+
+    private Message[] messages;
+
+    /**
+     * MicrogridBundleMessage()
+     *
+     * constructor
+     *
+     * @param messages the messages to bundle, in the order the receiver should handle them
+     */
+    public MicrogridBundleMessage(Message[] messages) {
+        if (messages == null) throw new IllegalArgumentException("messages cannot be null when creating a MicrogridBundleMessage");
+        for (Message m : messages) {
+            if (m == null) throw new IllegalArgumentException("messages cannot contain null when creating a MicrogridBundleMessage");
+            if (m instanceof MicrogridBundleMessage) throw new IllegalArgumentException("bundles cannot be nested when creating a MicrogridBundleMessage");
+        }
+        this.messages = messages.clone();
+    }
+
+    //----Getters----
+    public int size() {
+        return messages.length;
+    }
+
+    public Message getMessage(int i) {
+        return messages[i];
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(10);
+        MessageCodec.writeVarInt(out, messages.length);
+        ByteBufferDataOutput buffer = new ByteBufferDataOutput(128);
+        for (Message m : messages) {
+            buffer.reset();
+            m.write(buffer);
+            byte[] bytes = buffer.toByteArray();
+            MessageCodec.writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * write()
+     * <p>
+     * writes a bundle of already encoded messages to out without decoding them
+     *
+     * @param out      the DataOutput to write to
+     * @param payloads MessageCodec payloads (see MessageCodec.encode()); their headers are stripped
+     * @param count    the number of payloads to bundle (from the start of payloads)
+     * @throws IOException if out fails to write
+     */
+    public static void write(DataOutput out, byte[][] payloads, int count) throws IOException {
+        out.writeByte(10);
+        MessageCodec.writeVarInt(out, count);
+        for (int i = 0; i < count; i++) {
+            byte[] payload = payloads[i];
+            if (payload.length <= MessageCodec.HEADER_SIZE || payload[0] != MessageCodec.MAGIC) {
+                throw new IOException("Only MessageCodec payloads can be bundled");
+            }
+            MessageCodec.writeVarInt(out, payload.length - MessageCodec.HEADER_SIZE);
+            out.write(payload, MessageCodec.HEADER_SIZE, payload.length - MessageCodec.HEADER_SIZE);
+        }
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        int count = MessageCodec.readVarInt(in);
+        //Each message takes at least two bytes (its length and type)
+        if (count < 0 || count > MAX_SIZE || count > remaining(in) / 2) throw new IOException("Invalid message count " + count + " in MicrogridBundleMessage");
+        Message[] messages = new Message[count];
+        for (int i = 0; i < count; i++) {
+            int length = MessageCodec.readVarInt(in);
+            if (length < 1 || length > MAX_MESSAGE_BYTES || length > remaining(in)) throw new IOException("Invalid message length " + length + " in MicrogridBundleMessage");
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.get(0) == 10) throw new IOException("Bundles cannot be nested");
+            messages[i] = Message.read(new ByteBufferDataInput(buffer));
+        }
+        this.messages = messages;
+    }
+
+    /**
+     * remaining()
+     *
+     * @param in the DataInput being read
+     * @return the number of bytes left in in, or Integer.MAX_VALUE if in can't tell (e.g. an ObjectInputStream)
+     */
+    private static int remaining(DataInput in) {
+        return in instanceof ByteBufferDataInput ? ((ByteBufferDataInput) in).remaining() : Integer.MAX_VALUE;
+    }
+}
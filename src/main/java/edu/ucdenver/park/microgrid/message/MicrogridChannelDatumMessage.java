@@ -0,0 +1,150 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import edu.ucdenver.park.microgrid.data.BooleanMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * MicrogridChannelDatumMessage
+ *
+ * class
+ *
+ * message
+ *
+ * Compact version of MicrogridDatumMessage. Instead of the datum's _id and node, it carries the channel handle the
+ *  sender assigned in its MicrogridChannelDictionary. The receiver turns it back into a datum with
+ *  MicrogridChannelDictionary.resolve().
+ *
+ * Format: type byte (4), varint dictionary version, varint (channel handle << 1 | 1 if the value is boolean),
+ *  long timestamp, then a float or a boolean value
+ *
+ * @author Jake Billings
+ */
+public class MicrogridChannelDatumMessage extends Message {
+    /**
+     * MicrogridChannelDatumMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridChannelDatumMessage() {}
+
+    private int dictionaryVersion;
+    private int channelHandle;
+    private long timestamp;
+    private boolean booleanValue;
+    private boolean isBooleanValue;
+    private float floatValue;
+
+    /**
+     * MicrogridChannelDatumMessage()
+     * <p>
+     * constructor
+     *
+     * @param dictionaryVersion the version of the dictionary channelHandle was assigned in
+     * @param channelHandle     the handle of datum's channel
+     * @param datum             the datum to send
+     */
+    public MicrogridChannelDatumMessage(int dictionaryVersion, int channelHandle, MicrogridDatum datum) {
+        this.dictionaryVersion = dictionaryVersion;
+        this.channelHandle = channelHandle;
+        this.timestamp = datum.getTimestamp();
+        if (datum instanceof FloatMicrogridDatum) {
+            this.floatValue = ((FloatMicrogridDatum) datum).getValue();
+        } else if (datum instanceof BooleanMicrogridDatum) {
+            this.isBooleanValue = true;
+            this.booleanValue = ((BooleanMicrogridDatum) datum).getValue();
+        } else {
+            throw new IllegalArgumentException("invalid datum type in MicrogridChannelDatumMessage");
+        }
+    }
+
+    //----Getters----
+    public int getDictionaryVersion() {
+        return dictionaryVersion;
+    }
+
+    public int getChannelHandle() {
+        return channelHandle;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isBooleanValue() {
+        return isBooleanValue;
+    }
+
+    public boolean getBooleanValue() {
+        return booleanValue;
+    }
+
+    public float getFloatValue() {
+        return floatValue;
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        write(out, dictionaryVersion, channelHandle, timestamp, isBooleanValue, booleanValue, floatValue);
+    }
+
+    /**
+     * write()
+     * <p>
+     * writes the message new MicrogridChannelDatumMessage(dictionaryVersion, channelHandle, datum) would write,
+     * without creating it (see MessageCodec.encodeChannelDatum())
+     *
+     * @param out               the DataOutput to write to
+     * @param dictionaryVersion the version of the dictionary channelHandle was assigned in
+     * @param channelHandle     the handle of datum's channel
+     * @param datum             the datum to send
+     * @throws IOException if out fails to write
+     */
+    public static void write(DataOutput out, int dictionaryVersion, int channelHandle, MicrogridDatum datum) throws IOException {
+        if (datum instanceof FloatMicrogridDatum) {
+            write(out, dictionaryVersion, channelHandle, datum.getTimestamp(), false, false,
+                    ((FloatMicrogridDatum) datum).getValue());
+        } else if (datum instanceof BooleanMicrogridDatum) {
+            write(out, dictionaryVersion, channelHandle, datum.getTimestamp(), true,
+                    ((BooleanMicrogridDatum) datum).getValue(), 0f);
+        } else {
+            throw new IllegalArgumentException("invalid datum type in MicrogridChannelDatumMessage");
+        }
+    }
+
+    private static void write(DataOutput out, int dictionaryVersion, int channelHandle, long timestamp,
+                              boolean isBooleanValue, boolean booleanValue, float floatValue) throws IOException {
+        out.writeByte(4);
+        MessageCodec.writeVarInt(out, dictionaryVersion);
+        MessageCodec.writeVarInt(out, (channelHandle << 1) | (isBooleanValue ? 1 : 0));
+        out.writeLong(timestamp);
+        if (isBooleanValue) {
+            out.writeBoolean(booleanValue);
+        } else {
+            out.writeFloat(floatValue);
+        }
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        this.dictionaryVersion = MessageCodec.readVarInt(in);
+        int handleAndKind = MessageCodec.readVarInt(in);
+        this.channelHandle = handleAndKind >>> 1;
+        this.isBooleanValue = (handleAndKind & 1) == 1;
+        this.timestamp = in.readLong();
+        if (isBooleanValue) {
+            this.booleanValue = in.readBoolean();
+        } else {
+            this.floatValue = in.readFloat();
+        }
+    }
+}
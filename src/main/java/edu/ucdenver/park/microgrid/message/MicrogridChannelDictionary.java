@@ -0,0 +1,373 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import edu.ucdenver.park.microgrid.data.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * MicrogridChannelDictionary
+ * <p>
+ * class
+ * <p>
+ * mutable (channels can only be added)
+ * <p>
+ * A channel is one measurement location and type, e.g. "voltage at microgrid-node-a-g". Every datum from the same
+ * channel has the same _id (see MicrogridDatum). Sending that _id and the whole MicrogridNode with every datum means
+ * most of a datum message is strings. Instead, the sender numbers its nodes and channels with small integer handles,
+ * announces the numbering once (MicrogridChannelDictionaryMessage), and then sends MicrogridChannelDatumMessages
+ * that only carry the handle.
+ * <p>
+ * Node handles are the positions of the subgraph's nodes sorted by _id. Channel handles are assigned in the order
+ * channels are first used. Handles are only meaningful together with the dictionary's version; the sender starts a
+ * new version whenever its subgraph changes, and the receiver keeps one dictionary per sender.
+ *
+ * @author Jake Billings
+ */
+public class MicrogridChannelDictionary {
+    /**
+     * MAX_NODES, MAX_CHANNELS
+     * <p>
+     * int
+     * <p>
+     * the most nodes and channels a dictionary holds; read() rejects announcements with more, so a corrupt or hostile
+     * payload can't make the receiver allocate for them (far more than any subgraph has: a node has at most one
+     * channel per measurement type)
+     */
+    public static final int MAX_NODES = 1 << 16;
+    public static final int MAX_CHANNELS = 1 << 20;
+
+    /**
+     * version
+     * <p>
+     * int
+     * <p>
+     * identifies this numbering; channel datum messages carry the version they were encoded against so a receiver
+     * holding a different dictionary can tell that it must not resolve them
+     */
+    private final int version;
+
+    /**
+     * nodes
+     * <p>
+     * List<MicrogridNode>
+     * <p>
+     * the node with handle i is nodes.get(i)
+     */
+    private final List<MicrogridNode> nodes;
+
+    /**
+     * nodeHandles
+     * <p>
+     * Map String, Integer
+     * <p>
+     * node _id to node handle
+     */
+    private final Map<String, Integer> nodeHandles;
+
+    /**
+     * channelNodes, channelMeasurementTypeIds, channelCount
+     * <p>
+     * the node handle and measurement type id of channel i are channelNodes[i] and channelMeasurementTypeIds[i]
+     */
+    private int[] channelNodes = new int[16];
+    private byte[] channelMeasurementTypeIds = new byte[16];
+    private int channelCount;
+
+    /**
+     * channelHandles
+     * <p>
+     * Map String, Integer
+     * <p>
+     * channel key (the _id a datum from that channel has) to channel handle
+     */
+    private final Map<String, Integer> channelHandles = new HashMap<String, Integer>();
+
+    /**
+     * MicrogridChannelDictionary()
+     * <p>
+     * constructor
+     * <p>
+     * numbers the nodes of subgraph; channels are added later with addChannel()
+     *
+     * @param version  the version of this numbering
+     * @param subgraph the subgraph whose nodes we number; cannot have more than MAX_NODES nodes
+     */
+    public MicrogridChannelDictionary(int version, MicrogridGraph subgraph) {
+        this(version, sortById(subgraph.getNodes()));
+        if (nodes.size() > MAX_NODES) throw new IllegalArgumentException("subgraph cannot have more than " + MAX_NODES + " nodes when creating a MicrogridChannelDictionary");
+    }
+
+    private MicrogridChannelDictionary(int version, List<MicrogridNode> nodes) {
+        if (version < 0) throw new IllegalArgumentException("version cannot be negative when creating a MicrogridChannelDictionary");
+        this.version = version;
+        this.nodes = nodes;
+        this.nodeHandles = new HashMap<String, Integer>();
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeHandles.put(nodes.get(i).get_id(), i);
+        }
+    }
+
+    private static List<MicrogridNode> sortById(Collection<MicrogridNode> nodes) {
+        List<MicrogridNode> sorted = new ArrayList<MicrogridNode>(nodes);
+        Collections.sort(sorted, new Comparator<MicrogridNode>() {
+            public int compare(MicrogridNode a, MicrogridNode b) {
+                return a.get_id().compareTo(b.get_id());
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * channelKey()
+     *
+     * @return the _id every datum from this node and measurement type has (see MicrogridDatum)
+     */
+    private static String channelKey(MicrogridNode node, byte measurementTypeId) {
+        return node.get_id() + "-" + measurementTypeId;
+    }
+
+    //----Sender----
+    /**
+     * getChannelHandle()
+     *
+     * @param datum a datum we want to send
+     * @return the handle of the channel datum belongs to or -1 if the channel hasn't been added
+     */
+    public synchronized int getChannelHandle(MicrogridDatum datum) {
+        Integer handle = channelHandles.get(datum.get_id());
+        return handle == null ? -1 : handle;
+    }
+
+    /**
+     * addChannel()
+     * <p>
+     * assigns the next channel handle to the channel of datum (if it doesn't have one already)
+     *
+     * @param datum a datum from the channel to add
+     * @return the channel handle or -1 if the datum's node isn't part of this dictionary or it holds MAX_CHANNELS
+     * channels already
+     */
+    public synchronized int addChannel(MicrogridDatum datum) {
+        Integer existing = channelHandles.get(datum.get_id());
+        if (existing != null) return existing;
+        Integer nodeHandle = nodeHandles.get(datum.getNode().get_id());
+        if (nodeHandle == null) return -1;
+        return appendChannel(nodeHandle, datum.getMeasurementTypeId());
+    }
+
+    /**
+     * addChannel()
+     * <p>
+     * assigns the next channel handle to a channel without a datum from it (if it doesn't have one already)
+     *
+     * @param node              the node the channel measures at
+     * @param measurementTypeId the _id of the channel's measurement type
+     * @return the channel handle or -1 if node isn't part of this dictionary or it holds MAX_CHANNELS channels already
+     */
+    public synchronized int addChannel(MicrogridNode node, byte measurementTypeId) {
+        Integer nodeHandle = nodeHandles.get(node.get_id());
+        if (nodeHandle == null) return -1;
+        Integer existing = channelHandles.get(channelKey(node, measurementTypeId));
+        if (existing != null) return existing;
+        return appendChannel(nodeHandle, measurementTypeId);
+    }
+
+    private int appendChannel(int nodeHandle, byte measurementTypeId) {
+        if (channelCount == MAX_CHANNELS) return -1;
+        if (channelCount == channelNodes.length) {
+            channelNodes = Arrays.copyOf(channelNodes, channelCount * 2);
+            channelMeasurementTypeIds = Arrays.copyOf(channelMeasurementTypeIds, channelCount * 2);
+        }
+        int handle = channelCount++;
+        channelNodes[handle] = nodeHandle;
+        channelMeasurementTypeIds[handle] = measurementTypeId;
+        channelHandles.put(channelKey(nodes.get(nodeHandle), measurementTypeId), handle);
+        return handle;
+    }
+
+    //----Receiver----
+    /**
+     * resolve()
+     * <p>
+     * turns a channel datum message back into the datum the sender sent
+     *
+     * @param message a channel datum message from the sender this dictionary belongs to
+     * @return the datum or null if the message was encoded against another version or an unknown channel
+     */
+    public MicrogridDatum resolve(MicrogridChannelDatumMessage message) {
+        if (message.getDictionaryVersion() != version) return null;
+        return resolve(message.getChannelHandle(), message.getTimestamp(), message.isBooleanValue(),
+                message.getBooleanValue(), message.getFloatValue());
+    }
+
+    /**
+     * resolve()
+     * <p>
+     * turns one row of a batch back into the datum the sender sent
+     * <p>
+     * callers check the batch's dictionary version once (see getVersion()) instead of once per row
+     *
+     * @param batch a batch from the sender this dictionary belongs to, encoded against this version
+     * @param row   the row of the batch to resolve
+     * @return the datum or null if the row refers to an unknown channel
+     */
+    public MicrogridDatum resolve(MicrogridDatumBatchMessage batch, int row) {
+        return resolve(batch.getChannelHandle(row), batch.getTimestamp(row), batch.isBooleanValue(row),
+                batch.getBooleanValue(row), batch.getFloatValue(row));
+    }
+
+    /**
+     * resolve()
+     * <p>
+     * turns any message carrying data back into the data the sender sent: the datum of a MicrogridDatumMessage, the
+     * resolved datum of a channel datum message, the resolved rows of a batch, and the data of each message in a
+     * bundle; other messages, and data encoded against another version or an unknown channel, add nothing
+     *
+     * @param message a message from the sender this dictionary belongs to
+     * @param data    the list the data are added to
+     */
+    public void resolve(Message message, List<MicrogridDatum> data) {
+        if (message instanceof MicrogridDatumMessage) {
+            data.add(((MicrogridDatumMessage) message).getDatum());
+        } else if (message instanceof MicrogridChannelDatumMessage) {
+            MicrogridDatum datum = resolve((MicrogridChannelDatumMessage) message);
+            if (datum != null) data.add(datum);
+        } else if (message instanceof MicrogridDatumBatchMessage) {
+            MicrogridDatumBatchMessage batch = (MicrogridDatumBatchMessage) message;
+            if (batch.getDictionaryVersion() != version) return;
+            for (int row = 0; row < batch.size(); row++) {
+                MicrogridDatum datum = resolve(batch, row);
+                if (datum != null) data.add(datum);
+            }
+        } else if (message instanceof MicrogridBundleMessage) {
+            MicrogridBundleMessage bundle = (MicrogridBundleMessage) message;
+            for (int i = 0; i < bundle.size(); i++) {
+                resolve(bundle.getMessage(i), data);
+            }
+        }
+    }
+
+    /**
+     * resolve()
+     * <p>
+     * builds the datum a channel datum message or batch row with these values stands for
+     *
+     * @return the datum or null if handle is an unknown channel, the value kind doesn't match the channel or the
+     * channel's measurement type isn't registered here (see MicrogridMeasurementTypeRegistry)
+     */
+    public synchronized MicrogridDatum resolve(int handle, long timestamp, boolean isBooleanValue,
+                                               boolean booleanValue, float floatValue) {
+        if (handle < 0 || handle >= channelCount) return null;
+
+        MicrogridNode node = nodes.get(channelNodes[handle]);
+        byte measurementTypeId = channelMeasurementTypeIds[handle];
+        if (isBooleanValue != measurementTypeId < 0) return null;
+        MicrogridMeasurementTypeRegistry types = MicrogridMeasurementTypeRegistry.getInstance();
+        if (isBooleanValue) {
+            MicrogridBooleanMeasurementType type = types.getBooleanType(measurementTypeId);
+            return type == null ? null : new BooleanMicrogridDatum(timestamp, node, type, booleanValue);
+        }
+        MicrogridFloatMeasurementType type = types.getFloatType(measurementTypeId);
+        return type == null ? null : new FloatMicrogridDatum(timestamp, node, type, floatValue);
+    }
+
+    /**
+     * getChannelKey()
+     * <p>
+     * lets receivers file a value under its channel without resolving it into a datum
+     *
+     * @param handle         a channel handle
+     * @param isBooleanValue whether the value sent on the channel is a boolean
+     * @return the (interned) _id data from the channel have, or null if resolve() would return null
+     */
+    public synchronized String getChannelKey(int handle, boolean isBooleanValue) {
+        if (handle < 0 || handle >= channelCount) return null;
+        byte measurementTypeId = channelMeasurementTypeIds[handle];
+        if (isBooleanValue != measurementTypeId < 0) return null;
+        //A sender may use a type we haven't registered; its values could never be resolved, so they have no key
+        MicrogridMeasurementTypeRegistry types = MicrogridMeasurementTypeRegistry.getInstance();
+        if (isBooleanValue ? types.getBooleanType(measurementTypeId) == null : types.getFloatType(measurementTypeId) == null) return null;
+        return MicrogridIdentityRegistry.getInstance().measurementKey(nodes.get(channelNodes[handle]), measurementTypeId);
+    }
+
+    /**
+     * getChannelNode()
+     *
+     * @param handle a channel handle
+     * @return the node the channel measures at or null if handle is an unknown channel
+     */
+    public synchronized MicrogridNode getChannelNode(int handle) {
+        if (handle < 0 || handle >= channelCount) return null;
+        return nodes.get(channelNodes[handle]);
+    }
+
+    //----Getters----
+    public int getVersion() {
+        return version;
+    }
+
+    public synchronized int getChannelCount() {
+        return channelCount;
+    }
+
+    public List<MicrogridNode> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    //----Encoders----
+    /**
+     * write()
+     * <p>
+     * format: varint version, varint node count, nodes, varint channel count, (varint node handle, byte measurement
+     * type id) per channel
+     *
+     * @param out the DataOutput to write to
+     * @throws IOException if out fails to write
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        MessageCodec.writeVarInt(out, version);
+        MessageCodec.writeVarInt(out, nodes.size());
+        for (MicrogridNode node : nodes) {
+            node.write(out);
+        }
+        MessageCodec.writeVarInt(out, channelCount);
+        for (int i = 0; i < channelCount; i++) {
+            MessageCodec.writeVarInt(out, channelNodes[i]);
+            out.writeByte(channelMeasurementTypeIds[i]);
+        }
+    }
+
+    /**
+     * read()
+     *
+     * @param in the DataInput to read from
+     * @return the dictionary written by write()
+     * @throws IOException if in fails to read, the dictionary has more than MAX_NODES nodes or MAX_CHANNELS channels,
+     *                     or a channel refers to a node that doesn't exist
+     */
+    public static MicrogridChannelDictionary read(DataInput in) throws IOException {
+        int version = MessageCodec.readVarInt(in);
+        int nodeCount = MessageCodec.readVarInt(in);
+        if (nodeCount < 0 || nodeCount > MAX_NODES) throw new IOException("Invalid node count " + nodeCount + " in MicrogridChannelDictionary");
+        List<MicrogridNode> nodes = new ArrayList<MicrogridNode>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(MicrogridNode.readInterned(in));
+        }
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(version, nodes);
+        int channelCount = MessageCodec.readVarInt(in);
+        if (channelCount < 0 || channelCount > MAX_CHANNELS) throw new IOException("Invalid channel count " + channelCount + " in MicrogridChannelDictionary");
+        for (int i = 0; i < channelCount; i++) {
+            int nodeHandle = MessageCodec.readVarInt(in);
+            if (nodeHandle < 0 || nodeHandle >= nodeCount) throw new IOException("Channel refers to unknown node handle " + nodeHandle);
+            dictionary.appendChannel(nodeHandle, in.readByte());
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * MicrogridChannelDictionaryMessage
+ *
+ * class
+ *
+ * message
+ *
+ * Announces a sender's MicrogridChannelDictionary so the receiver can resolve the handles in
+ *  MicrogridChannelDatumMessages from that sender.
+ *
+ * Senders send this message right after each MicrogridGraphMessage (so the receiver rebuilds the dictionary whenever
+ *  the graph is refreshed) and whenever they assign a new channel handle.
+ *
+ * @author Jake Billings
+ */
+public class MicrogridChannelDictionaryMessage extends Message {
+    /**
+     * MicrogridChannelDictionaryMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridChannelDictionaryMessage() {}
+
+    private MicrogridChannelDictionary dictionary;
+
+    public MicrogridChannelDictionaryMessage(MicrogridChannelDictionary dictionary) {
+        if (dictionary == null) throw new IllegalArgumentException("dictionary cannot be null when creating a MicrogridChannelDictionaryMessage");
+        this.dictionary = dictionary;
+    }
+
+    //----Getters----
+    public MicrogridChannelDictionary getDictionary() {
+        return dictionary;
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(3);
+        this.getDictionary().write(out);
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        this.dictionary = MicrogridChannelDictionary.read(in);
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import edu.ucdenver.park.microgrid.data.BooleanMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
+import edu.ucdenver.park.microgrid.data.MicrogridDatum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * MicrogridDatumBatchMessage
+ *
+ * class
+ *
+ * message
+ *
+ * Carries many data from one sender in one payload. Like MicrogridChannelDatumMessage, data refer to their channel by
+ *  the handle the sender assigned in its MicrogridChannelDictionary, so one batch is resolved against one dictionary
+ *  version.
+ *
+ * Rows are grouped by channel handle (rows of the same channel keep the order they were added in) and written
+ *  column by column:
+ *  type byte (5), varint dictionary version,
+ *  varint group count, then per group: varint (channel handle << 1 | 1 if the values are boolean), varint row count,
+ *  timestamps: long first timestamp, then a zigzag varint delta to the previous row for every other row,
+ *  floats: 4 bytes per float row,
+ *  booleans: one bit per boolean row (lowest bit first), padded to a whole byte
+ *
+ * Readings taken in the same tick share their timestamp, so most deltas are a single zero byte.
+ *
+ * Compressed batches (type byte 7, only sent once the receiver has agreed to MicrogridEncodingMessage.XOR_FLOATS)
+ *  have the same keys but write all columns into one bit stream, following the Gorilla time series encoding:
+ *  timestamps: the first timestamp in 64 bits, then per row the change of the delta to the previous row of the same
+ *  channel ("delta of delta"; a channel's first row continues from the previous channel's first row) as
+ *  '0' for no change, or '10', '110', '1110', '1111' followed by 7, 9, 12 or 64 bits of the zigzag encoded value,
+ *  floats: per channel the first value in 32 bits, then the XOR with the previous value as '0' if it is equal,
+ *  '10' + the meaningful bits if they fit in the previous leading/trailing zero window, or
+ *  '11' + 5 bits of leading zeros + 5 bits of (meaningful bit count - 1) + the meaningful bits,
+ *  booleans: one bit per boolean row
+ * Sampled waveforms change slowly between rows, so rows of a channel typically take one or two bytes instead of six.
+ *
+ * @author Jake Billings
+ */
+public class MicrogridDatumBatchMessage extends Message {
+    /**
+     * MAX_SIZE
+     *
+     * int
+     *
+     * the most rows one batch may carry; decoding rejects larger batches instead of allocating for them
+     */
+    public static final int MAX_SIZE = 1 << 16;
+
+    /**
+     * MicrogridDatumBatchMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridDatumBatchMessage() {}
+
+    /**
+     * MicrogridDatumBatchMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization of compressed batches (see Message.read())
+     */
+    MicrogridDatumBatchMessage(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    private int dictionaryVersion;
+    private boolean compressed;
+    private int size;
+
+    //Columns; row i of the batch is (channelHandles[i], timestamps[i], isBooleanValues[i], floatValues[i] or booleanValues[i])
+    private int[] channelHandles;
+    private long[] timestamps;
+    private boolean[] isBooleanValues;
+    private float[] floatValues;
+    private boolean[] booleanValues;
+
+    /**
+     * MicrogridDatumBatchMessage()
+     * <p>
+     * constructor
+     * <p>
+     * copies data into columns grouped by channel handle
+     *
+     * @param dictionaryVersion the version of the dictionary the handles were assigned in
+     * @param channelHandles    channelHandles[i] is the handle of the channel of data[i]
+     * @param data              the data to send
+     */
+    public MicrogridDatumBatchMessage(int dictionaryVersion, int[] channelHandles, MicrogridDatum[] data) {
+        this(dictionaryVersion, channelHandles, data, false);
+    }
+
+    /**
+     * MicrogridDatumBatchMessage()
+     * <p>
+     * constructor
+     * <p>
+     * copies data into columns grouped by channel handle
+     *
+     * @param dictionaryVersion the version of the dictionary the handles were assigned in
+     * @param channelHandles    channelHandles[i] is the handle of the channel of data[i]
+     * @param data              the data to send
+     * @param compressed        true to use the compressed encoding (only if the receiver agreed to XOR_FLOATS)
+     */
+    public MicrogridDatumBatchMessage(int dictionaryVersion, int[] channelHandles, MicrogridDatum[] data, boolean compressed) {
+        if (channelHandles.length != data.length) throw new IllegalArgumentException("channelHandles and data must have the same length when creating a MicrogridDatumBatchMessage");
+        if (data.length > MAX_SIZE) throw new IllegalArgumentException("cannot create a MicrogridDatumBatchMessage with more than " + MAX_SIZE + " data");
+        this.dictionaryVersion = dictionaryVersion;
+        this.compressed = compressed;
+        allocate(data.length);
+        int[] rows = sortByChannel(channelHandles, data.length);
+        for (int i = 0; i < data.length; i++) {
+            int row = rows[i];
+            MicrogridDatum datum = data[i];
+            this.channelHandles[row] = channelHandles[i];
+            this.timestamps[row] = datum.getTimestamp();
+            if (datum instanceof FloatMicrogridDatum) {
+                this.floatValues[row] = ((FloatMicrogridDatum) datum).getValue();
+            } else if (datum instanceof BooleanMicrogridDatum) {
+                this.isBooleanValues[row] = true;
+                this.booleanValues[row] = ((BooleanMicrogridDatum) datum).getValue();
+            } else {
+                throw new IllegalArgumentException("invalid datum type in MicrogridDatumBatchMessage");
+            }
+        }
+    }
+
+    /**
+     * MicrogridDatumBatchMessage()
+     * <p>
+     * constructor
+     * <p>
+     * copies the first size rows of columns a sender filled without creating data (see ChannelSampleBuffer) into
+     * columns grouped by channel handle
+     *
+     * @param dictionaryVersion the version of the dictionary the handles were assigned in
+     * @param size              the number of rows to copy
+     * @param channelHandles    channelHandles[i] is the handle of the channel of row i
+     * @param timestamps        timestamps[i] is the timestamp of row i
+     * @param isBooleanValues   isBooleanValues[i] is true if row i carries a boolean value
+     * @param floatValues       floatValues[i] is the value of row i if it is a float
+     * @param booleanValues     booleanValues[i] is the value of row i if it is a boolean
+     * @param compressed        true to use the compressed encoding (only if the receiver agreed to XOR_FLOATS)
+     */
+    public MicrogridDatumBatchMessage(int dictionaryVersion, int size, int[] channelHandles, long[] timestamps,
+                                      boolean[] isBooleanValues, float[] floatValues, boolean[] booleanValues,
+                                      boolean compressed) {
+        if (size < 0 || size > channelHandles.length || size > timestamps.length || size > isBooleanValues.length
+                || size > floatValues.length || size > booleanValues.length) throw new IllegalArgumentException("size cannot exceed the columns when creating a MicrogridDatumBatchMessage");
+        if (size > MAX_SIZE) throw new IllegalArgumentException("cannot create a MicrogridDatumBatchMessage with more than " + MAX_SIZE + " data");
+        this.dictionaryVersion = dictionaryVersion;
+        this.compressed = compressed;
+        allocate(size);
+        int[] rows = sortByChannel(channelHandles, size);
+        for (int i = 0; i < size; i++) {
+            int row = rows[i];
+            this.channelHandles[row] = channelHandles[i];
+            this.timestamps[row] = timestamps[i];
+            this.isBooleanValues[row] = isBooleanValues[i];
+            this.floatValues[row] = floatValues[i];
+            this.booleanValues[row] = booleanValues[i];
+        }
+    }
+
+    /**
+     * sortByChannel()
+     * <p>
+     * counting sort by handle (stable, so each channel keeps its order)
+     *
+     * @param channelHandles the handles of the rows
+     * @param size           the number of rows
+     * @return the row each input row goes to
+     */
+    private static int[] sortByChannel(int[] channelHandles, int size) {
+        int maxHandle = -1;
+        for (int i = 0; i < size; i++) {
+            if (channelHandles[i] < 0) throw new IllegalArgumentException("channel handles cannot be negative in a MicrogridDatumBatchMessage");
+            maxHandle = Math.max(maxHandle, channelHandles[i]);
+        }
+        int[] next = new int[maxHandle + 2];
+        for (int i = 0; i < size; i++) {
+            next[channelHandles[i] + 1]++;
+        }
+        for (int h = 1; h < next.length; h++) {
+            next[h] += next[h - 1];
+        }
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = next[channelHandles[i]]++;
+        }
+        return rows;
+    }
+
+    private void allocate(int size) {
+        this.size = size;
+        this.channelHandles = new int[size];
+        this.timestamps = new long[size];
+        this.isBooleanValues = new boolean[size];
+        this.floatValues = new float[size];
+        this.booleanValues = new boolean[size];
+    }
+
+    //----Getters----
+    public int getDictionaryVersion() {
+        return dictionaryVersion;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * size()
+     *
+     * @return the number of rows (data) in this batch
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getChannelHandle(int row) {
+        return channelHandles[row];
+    }
+
+    public long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    public boolean isBooleanValue(int row) {
+        return isBooleanValues[row];
+    }
+
+    public boolean getBooleanValue(int row) {
+        return booleanValues[row];
+    }
+
+    public float getFloatValue(int row) {
+        return floatValues[row];
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(compressed ? 7 : 5);
+        MessageCodec.writeVarInt(out, dictionaryVersion);
+
+        //Keys: one entry per run of rows with the same channel
+        int groupCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || channelHandles[i] != channelHandles[i - 1]) groupCount++;
+        }
+        MessageCodec.writeVarInt(out, groupCount);
+        int start = 0;
+        for (int i = 1; i <= size; i++) {
+            if (i == size || channelHandles[i] != channelHandles[start]) {
+                MessageCodec.writeVarInt(out, (channelHandles[start] << 1) | (isBooleanValues[start] ? 1 : 0));
+                MessageCodec.writeVarInt(out, i - start);
+                start = i;
+            }
+        }
+
+        if (compressed) {
+            writeCompressedColumns(out);
+        } else {
+            writeColumns(out);
+        }
+    }
+
+    private void writeColumns(DataOutput out) throws IOException {
+        //Timestamps
+        if (size > 0) out.writeLong(timestamps[0]);
+        for (int i = 1; i < size; i++) {
+            MessageCodec.writeZigZagVarLong(out, timestamps[i] - timestamps[i - 1]);
+        }
+
+        //Floats
+        for (int i = 0; i < size; i++) {
+            if (!isBooleanValues[i]) out.writeFloat(floatValues[i]);
+        }
+
+        //Booleans
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isBooleanValues[i]) continue;
+            if (booleanValues[i]) bits |= 1 << bitCount;
+            if (++bitCount == 8) {
+                out.writeByte(bits);
+                bits = 0;
+                bitCount = 0;
+            }
+        }
+        if (bitCount > 0) out.writeByte(bits);
+    }
+
+    private void writeCompressedColumns(DataOutput out) throws IOException {
+        BitOutput bits = new BitOutput(out);
+
+        //Timestamps
+        if (size > 0) bits.writeBits(timestamps[0], 64);
+        long previous = size > 0 ? timestamps[0] : 0;
+        long previousDelta = 0;
+        long groupStart = previous;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || channelHandles[i] != channelHandles[i - 1]) {
+                previous = groupStart;
+                previousDelta = 0;
+                groupStart = timestamps[i];
+            }
+            long delta = timestamps[i] - previous;
+            writeDeltaOfDelta(bits, delta - previousDelta);
+            previousDelta = delta;
+            previous = timestamps[i];
+        }
+
+        //Floats
+        int previousBits = 0;
+        int leading = -1;
+        int trailing = 0;
+        for (int i = 0; i < size; i++) {
+            if (isBooleanValues[i]) continue;
+            int valueBits = Float.floatToRawIntBits(floatValues[i]);
+            if (i == 0 || channelHandles[i] != channelHandles[i - 1]) {
+                bits.writeBits(valueBits, 32);
+                leading = -1;
+            } else {
+                int xor = valueBits ^ previousBits;
+                if (xor == 0) {
+                    bits.writeBit(false);
+                } else {
+                    bits.writeBit(true);
+                    int xorLeading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+                    int xorTrailing = Integer.numberOfTrailingZeros(xor);
+                    if (leading >= 0 && xorLeading >= leading && xorTrailing >= trailing) {
+                        bits.writeBit(false);
+                        bits.writeBits(xor >>> trailing, 32 - leading - trailing);
+                    } else {
+                        int meaningful = 32 - xorLeading - xorTrailing;
+                        bits.writeBit(true);
+                        bits.writeBits(xorLeading, 5);
+                        bits.writeBits(meaningful - 1, 5);
+                        bits.writeBits(xor >>> xorTrailing, meaningful);
+                        leading = xorLeading;
+                        trailing = xorTrailing;
+                    }
+                }
+            }
+            previousBits = valueBits;
+        }
+
+        //Booleans
+        for (int i = 0; i < size; i++) {
+            if (isBooleanValues[i]) bits.writeBit(booleanValues[i]);
+        }
+        bits.flush();
+    }
+
+    private static void writeDeltaOfDelta(BitOutput bits, long deltaOfDelta) throws IOException {
+        long zigZag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 63);
+        if (zigZag == 0) {
+            bits.writeBits(0, 1);
+        } else if (zigZag < (1 << 7)) {
+            bits.writeBits(2, 2);
+            bits.writeBits(zigZag, 7);
+        } else if (zigZag < (1 << 9)) {
+            bits.writeBits(6, 3);
+            bits.writeBits(zigZag, 9);
+        } else if (zigZag < (1 << 12)) {
+            bits.writeBits(14, 4);
+            bits.writeBits(zigZag, 12);
+        } else {
+            bits.writeBits(15, 4);
+            bits.writeBits(zigZag, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitInput bits) throws IOException {
+        long zigZag;
+        if (!bits.readBit()) {
+            return 0;
+        } else if (!bits.readBit()) {
+            zigZag = bits.readBits(7);
+        } else if (!bits.readBit()) {
+            zigZag = bits.readBits(9);
+        } else if (!bits.readBit()) {
+            zigZag = bits.readBits(12);
+        } else {
+            zigZag = bits.readBits(64);
+        }
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        this.dictionaryVersion = MessageCodec.readVarInt(in);
+
+        //Keys
+        int groupCount = MessageCodec.readVarInt(in);
+        if (groupCount > MAX_SIZE) throw new IOException("Too many groups in MicrogridDatumBatchMessage");
+        int[] groupKeys = new int[groupCount];
+        int[] groupSizes = new int[groupCount];
+        int total = 0;
+        for (int g = 0; g < groupCount; g++) {
+            groupKeys[g] = MessageCodec.readVarInt(in);
+            groupSizes[g] = MessageCodec.readVarInt(in);
+            total += groupSizes[g];
+            if (total > MAX_SIZE) throw new IOException("Too many rows in MicrogridDatumBatchMessage");
+        }
+        allocate(total);
+        int row = 0;
+        for (int g = 0; g < groupCount; g++) {
+            for (int i = 0; i < groupSizes[g]; i++, row++) {
+                channelHandles[row] = groupKeys[g] >>> 1;
+                isBooleanValues[row] = (groupKeys[g] & 1) == 1;
+            }
+        }
+
+        if (compressed) {
+            readCompressedColumns(in);
+        } else {
+            readColumns(in);
+        }
+    }
+
+    private void readColumns(DataInput in) throws IOException {
+        //Timestamps
+        if (size > 0) timestamps[0] = in.readLong();
+        for (int i = 1; i < size; i++) {
+            timestamps[i] = timestamps[i - 1] + MessageCodec.readZigZagVarLong(in);
+        }
+
+        //Floats
+        for (int i = 0; i < size; i++) {
+            if (!isBooleanValues[i]) floatValues[i] = in.readFloat();
+        }
+
+        //Booleans
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isBooleanValues[i]) continue;
+            if (bitCount == 0) bits = in.readUnsignedByte();
+            booleanValues[i] = (bits & (1 << bitCount)) != 0;
+            bitCount = (bitCount + 1) % 8;
+        }
+    }
+
+    private void readCompressedColumns(DataInput in) throws IOException {
+        BitInput bits = new BitInput(in);
+
+        //Timestamps
+        long previous = size > 0 ? bits.readBits(64) : 0;
+        long previousDelta = 0;
+        long groupStart = previous;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || channelHandles[i] != channelHandles[i - 1]) {
+                previous = groupStart;
+                previousDelta = 0;
+            }
+            long delta = previousDelta + readDeltaOfDelta(bits);
+            timestamps[i] = previous + delta;
+            if (i == 0 || channelHandles[i] != channelHandles[i - 1]) groupStart = timestamps[i];
+            previousDelta = delta;
+            previous = timestamps[i];
+        }
+
+        //Floats
+        int previousBits = 0;
+        int leading = -1;
+        int trailing = 0;
+        for (int i = 0; i < size; i++) {
+            if (isBooleanValues[i]) continue;
+            int valueBits;
+            if (i == 0 || channelHandles[i] != channelHandles[i - 1]) {
+                valueBits = (int) bits.readBits(32);
+                leading = -1;
+            } else if (!bits.readBit()) {
+                valueBits = previousBits;
+            } else if (!bits.readBit()) {
+                if (leading < 0) throw new IOException("Malformed float column in MicrogridDatumBatchMessage");
+                valueBits = previousBits ^ ((int) bits.readBits(32 - leading - trailing) << trailing);
+            } else {
+                leading = (int) bits.readBits(5);
+                int meaningful = (int) bits.readBits(5) + 1;
+                trailing = 32 - leading - meaningful;
+                if (trailing < 0) throw new IOException("Malformed float column in MicrogridDatumBatchMessage");
+                valueBits = previousBits ^ ((int) bits.readBits(meaningful) << trailing);
+            }
+            floatValues[i] = Float.intBitsToFloat(valueBits);
+            previousBits = valueBits;
+        }
+
+        //Booleans
+        for (int i = 0; i < size; i++) {
+            if (isBooleanValues[i]) booleanValues[i] = bits.readBit();
+        }
+    }
+}
@@ -4,14 +4,15 @@
  */
 package edu.ucdenver.park.microgrid.message;
 
+import edu.ucdenver.park.microgrid.data.AggregateMicrogridDatum;
 import edu.ucdenver.park.microgrid.data.BooleanMicrogridDatum;
 import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
 import edu.ucdenver.park.microgrid.data.MicrogridDatum;
 import edu.ucdenver.park.microgrid.data.abs.Datum;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * MicrogridDatumMessage
@@ -52,30 +53,34 @@ public class MicrogridDatumMessage extends Message {
         this.datum = datum;
     }
 
-    //----Externalizers----
-    public void writeExternal(ObjectOutput out) throws IOException {
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
         out.writeByte(1); //Write 0x01 because we're a Datum message
         if (this.getDatum() instanceof FloatMicrogridDatum) {
             out.writeByte(0x01);
         } else if (this.getDatum() instanceof BooleanMicrogridDatum) {
             out.writeByte(0x02);
+        } else if (this.getDatum() instanceof AggregateMicrogridDatum) {
+            out.writeByte(0x03);
         } else {
             throw new IllegalArgumentException("invalid datum type in MicrogridDatumMessage");
         }
-        this.getDatum().writeExternal(out);
+        this.getDatum().write(out);
     }
 
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    public void readBody(DataInput in) throws IOException {
         byte typeIndicator = in.readByte();
         MicrogridDatum m;
         if (typeIndicator == 0x01) {
             m = new FloatMicrogridDatum();
         } else if (typeIndicator == 0x02) {
             m = new BooleanMicrogridDatum();
+        } else if (typeIndicator == 0x03) {
+            m = new AggregateMicrogridDatum();
         } else {
             throw new IllegalArgumentException("invalid datum type indicator");
         }
-        m.readExternal(in);
+        m.read(in);
         this.setDatum(m);
     }
 }
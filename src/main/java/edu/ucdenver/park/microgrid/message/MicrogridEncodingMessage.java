@@ -0,0 +1,121 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * MicrogridEncodingMessage
+ *
+ * class
+ *
+ * message
+ *
+ * Negotiates optional encodings between a sender and the receiver. The sender sends the encodings it can write
+ *  (together with its graph message); the receiver answers with the ones it can also read. The sender only uses an
+ *  optional encoding after the receiver has answered with it, so old receivers (which drop this message as an
+ *  unknown type) keep getting encodings they understand.
+ *
+ * Format: type byte (6), varint bit set of encodings
+ *
+ * @author Jake Billings
+ */
+public class MicrogridEncodingMessage extends Message {
+    /**
+     * XOR_FLOATS
+     *
+     * int
+     *
+     * compressed MicrogridDatumBatchMessages (delta-of-delta timestamps and XOR'd float values)
+     */
+    public static final int XOR_FLOATS = 1;
+
+    /**
+     * BUNDLES
+     *
+     * int
+     *
+     * MicrogridBundleMessages (several messages in one ACLMessage)
+     */
+    public static final int BUNDLES = 2;
+
+    /**
+     * RATE_CONTROL
+     *
+     * int
+     *
+     * MicrogridRateControlMessages from the receiver (the sender throttles itself when the receiver is overloaded)
+     */
+    public static final int RATE_CONTROL = 4;
+
+    /**
+     * INTEREST
+     *
+     * int
+     *
+     * MicrogridInterestMessages from the receiver (the sender sends channels nobody watches only at a background
+     *  heartbeat)
+     */
+    public static final int INTEREST = 8;
+
+    /**
+     * AGGREGATES
+     *
+     * int
+     *
+     * MicrogridDatumMessages carrying AggregateMicrogridDatums (MessageCodec version 2); senders send the last sample
+     *  of each window to receivers that didn't agree
+     */
+    public static final int AGGREGATES = 16;
+
+    /**
+     * SUPPORTED
+     *
+     * int
+     *
+     * every encoding this build can read and write
+     */
+    public static final int SUPPORTED = XOR_FLOATS | BUNDLES | RATE_CONTROL | INTEREST | AGGREGATES;
+
+    /**
+     * MicrogridEncodingMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridEncodingMessage() {}
+
+    private int encodings;
+
+    /**
+     * MicrogridEncodingMessage()
+     *
+     * constructor
+     *
+     * @param encodings bit set of encodings (e.g. XOR_FLOATS)
+     */
+    public MicrogridEncodingMessage(int encodings) {
+        if (encodings < 0) throw new IllegalArgumentException("encodings cannot be negative when creating a MicrogridEncodingMessage");
+        this.encodings = encodings;
+    }
+
+    //----Getters----
+    public int getEncodings() {
+        return encodings;
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(6);
+        MessageCodec.writeVarInt(out, encodings);
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        this.encodings = MessageCodec.readVarInt(in);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * MicrogridGraphKeepAliveMessage
+ *
+ * class
+ *
+ * immutable
+ *
+ * Renews the expiration of a subgraph the receiver already holds without resending it.
+ *
+ * Senders send a full MicrogridGraphMessage when they start, when their topology changes, and when the receiver asks
+ *  for it (MicrogridGraphRequestMessage). Every other period they only send this message, naming the subgraph by its
+ *  _id and version (MicrogridGraph.getContentHash()) and the version of the sender's channel dictionary. If the
+ *  receiver holds a different version of either (or none at all), it ignores the renewal and replies with a
+ *  MicrogridGraphRequestMessage, so a lost graph or dictionary announcement is repaired within one period.
+ *
+ * Format: type byte (8), UTF subgraph _id, long content hash, varint dictionary version, long expiration
+ *
+ * @author Jake Billings
+ */
+public class MicrogridGraphKeepAliveMessage extends Message {
+    /**
+     * MicrogridGraphKeepAliveMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridGraphKeepAliveMessage() {}
+
+    private String subgraphId;
+    private long contentHash;
+    private int dictionaryVersion;
+    private long expirationMillis;
+
+    /**
+     * MicrogridGraphKeepAliveMessage()
+     *
+     * constructor
+     *
+     * @param subgraphId       the _id of the subgraph to renew
+     * @param contentHash       the content hash of the subgraph to renew (see MicrogridGraph.getContentHash())
+     * @param dictionaryVersion the version of the sender's current channel dictionary
+     * @param expirationMillis  the new expiration (see MicrogridGraphMessage)
+     */
+    public MicrogridGraphKeepAliveMessage(String subgraphId, long contentHash, int dictionaryVersion, long expirationMillis) {
+        if (subgraphId == null) throw new IllegalArgumentException("subgraphId cannot be null when creating a MicrogridGraphKeepAliveMessage");
+        this.subgraphId = subgraphId;
+        this.contentHash = contentHash;
+        this.dictionaryVersion = dictionaryVersion;
+        this.expirationMillis = expirationMillis;
+    }
+
+    //----Getters----
+    public String getSubgraphId() {
+        return subgraphId;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public int getDictionaryVersion() {
+        return dictionaryVersion;
+    }
+
+    public long getExpirationMillis() {
+        return expirationMillis;
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(8);
+        out.writeUTF(subgraphId);
+        out.writeLong(contentHash);
+        MessageCodec.writeVarInt(out, dictionaryVersion);
+        out.writeLong(expirationMillis);
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        this.subgraphId = in.readUTF();
+        this.contentHash = in.readLong();
+        this.dictionaryVersion = MessageCodec.readVarInt(in);
+        this.expirationMillis = in.readLong();
+    }
+}
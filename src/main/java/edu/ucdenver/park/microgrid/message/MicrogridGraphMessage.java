@@ -6,9 +6,9 @@ package edu.ucdenver.park.microgrid.message;
 
 import edu.ucdenver.park.microgrid.data.MicrogridGraph;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 /**
  * MicrogridGraphMessage
@@ -98,17 +98,17 @@ public class MicrogridGraphMessage extends Message {
         this.expirationMillis = expirationMillis;
     }
 
-    //----Externalizers----
-    public void writeExternal(ObjectOutput out) throws IOException {
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
         out.writeByte(2);
         out.writeLong(this.getExpirationMillis());
-        this.getSubgraph().writeExternal(out);
+        this.getSubgraph().write(out);
     }
 
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    public void readBody(DataInput in) throws IOException {
         this.setExpirationMillis(in.readLong());
         MicrogridGraph g = new MicrogridGraph();
-        g.readExternal(in);
+        g.read(in);
         this.setSubgraph(g);
     }
 }
@@ -0,0 +1,57 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * MicrogridGraphRequestMessage
+ *
+ * class
+ *
+ * immutable
+ *
+ * Sent by the receiver in reply to a MicrogridGraphKeepAliveMessage for a subgraph or dictionary version it doesn't
+ *  hold (e.g. after the receiver restarted or an announcement was lost). The sender answers by sending its full
+ *  MicrogridGraphMessage and channel dictionary right away.
+ *
+ * Format: type byte (9), UTF subgraph _id
+ *
+ * @author Jake Billings
+ */
+public class MicrogridGraphRequestMessage extends Message {
+    /**
+     * MicrogridGraphRequestMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridGraphRequestMessage() {}
+
+    private String subgraphId;
+
+    public MicrogridGraphRequestMessage(String subgraphId) {
+        if (subgraphId == null) throw new IllegalArgumentException("subgraphId cannot be null when creating a MicrogridGraphRequestMessage");
+        this.subgraphId = subgraphId;
+    }
+
+    //----Getters----
+    public String getSubgraphId() {
+        return subgraphId;
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(9);
+        out.writeUTF(subgraphId);
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        this.subgraphId = in.readUTF();
+    }
+}
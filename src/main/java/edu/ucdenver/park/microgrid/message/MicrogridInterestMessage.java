@@ -0,0 +1,97 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * MicrogridInterestMessage
+ *
+ * class
+ *
+ * immutable
+ *
+ * Sent by the receiver to a sender (only if the sender offered MicrogridEncodingMessage.INTEREST) whenever the set of
+ *  channels somebody watches changes: channels plotted by a browser, persisted or used by alarm rules. The sender
+ *  sends the float channels outside the set only at a low background heartbeat; protection booleans are always sent.
+ *
+ * Format: type byte (12), boolean all channels, varint number of channels, UTF channel _ids (the _id of the channel's
+ *  data, e.g. "microgrid-node-a-g-1"; none if all channels are watched)
+ *
+ * @author Jake Billings
+ */
+public class MicrogridInterestMessage extends Message {
+    /**
+     * MicrogridInterestMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridInterestMessage() {}
+
+    private boolean all;
+    private Set<String> channelIds = Collections.emptySet();
+
+    /**
+     * MicrogridInterestMessage()
+     *
+     * constructor
+     *
+     * @param all        true if every channel is watched (channelIds is ignored then)
+     * @param channelIds the _ids of the channels watched
+     */
+    public MicrogridInterestMessage(boolean all, Collection<String> channelIds) {
+        if (channelIds == null) throw new IllegalArgumentException("channelIds cannot be null when creating a MicrogridInterestMessage");
+        this.all = all;
+        if (!all) this.channelIds = Collections.unmodifiableSet(new HashSet<String>(channelIds));
+    }
+
+    //----Getters----
+    /**
+     * isAll()
+     *
+     * @return whether every channel is watched
+     */
+    public boolean isAll() {
+        return all;
+    }
+
+    /**
+     * getChannelIds()
+     *
+     * @return the _ids of the channels watched (empty if isAll())
+     */
+    public Set<String> getChannelIds() {
+        return channelIds;
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(12);
+        out.writeBoolean(all);
+        MessageCodec.writeVarInt(out, channelIds.size());
+        for (String channelId : channelIds) {
+            out.writeUTF(channelId);
+        }
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        this.all = in.readBoolean();
+        int size = MessageCodec.readVarInt(in);
+        if (size < 0) throw new IOException("Invalid number of channels " + size);
+        Set<String> channelIds = new HashSet<String>();
+        for (int i = 0; i < size; i++) {
+            channelIds.add(in.readUTF());
+        }
+        this.channelIds = Collections.unmodifiableSet(channelIds);
+    }
+}
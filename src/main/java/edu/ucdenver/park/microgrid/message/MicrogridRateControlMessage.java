@@ -0,0 +1,77 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * MicrogridRateControlMessage
+ *
+ * class
+ *
+ * immutable
+ *
+ * Sent by an overloaded receiver to a sender (only if the sender offered MicrogridEncodingMessage.RATE_CONTROL) to
+ *  make it send less: each routine float channel at most once per minIntervalMillis, and only once it moved by
+ *  deadbandScale times its usual deadband. Protection events are never throttled. The receiver sends a message with
+ *  the normal values (0 and 1) once it has caught up.
+ *
+ * Format: type byte (11), varint min interval in milliseconds, float deadband scale
+ *
+ * @author Jake Billings
+ */
+public class MicrogridRateControlMessage extends Message {
+    /**
+     * MicrogridRateControlMessage
+     *
+     * constructor: empty
+     *
+     * for use with deserialization; do not use for instantiation
+     */
+    public MicrogridRateControlMessage() {}
+
+    private int minIntervalMillis;
+    private float deadbandScale = 1f;
+
+    /**
+     * MicrogridRateControlMessage()
+     *
+     * constructor
+     *
+     * @param minIntervalMillis the least time between two samples of a float channel the sender should send; 0 for
+     *                          no limit
+     * @param deadbandScale     the factor the sender should widen its deadbands by; 1 for its usual deadbands
+     */
+    public MicrogridRateControlMessage(int minIntervalMillis, float deadbandScale) {
+        if (minIntervalMillis < 0) throw new IllegalArgumentException("minIntervalMillis cannot be negative when creating a MicrogridRateControlMessage");
+        if (!(deadbandScale >= 1f)) throw new IllegalArgumentException("deadbandScale cannot be less than 1 when creating a MicrogridRateControlMessage");
+        this.minIntervalMillis = minIntervalMillis;
+        this.deadbandScale = deadbandScale;
+    }
+
+    //----Getters----
+    public int getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    public float getDeadbandScale() {
+        return deadbandScale;
+    }
+
+    //----Encoders----
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(11);
+        MessageCodec.writeVarInt(out, minIntervalMillis);
+        out.writeFloat(deadbandScale);
+    }
+
+    public void readBody(DataInput in) throws IOException {
+        this.minIntervalMillis = MessageCodec.readVarInt(in);
+        this.deadbandScale = in.readFloat();
+        if (!(deadbandScale >= 1f)) throw new IOException("Invalid deadband scale " + deadbandScale);
+    }
+}
@@ -1,5 +1,6 @@
 package edu.ucdenver.park.microgrid.persistence;
 
+import edu.ucdenver.park.microgrid.data.AggregateMicrogridDatum;
 import edu.ucdenver.park.microgrid.data.BooleanMicrogridDatum;
 import edu.ucdenver.park.microgrid.data.FloatMicrogridDatum;
 import edu.ucdenver.park.microgrid.dummy.Student;
@@ -46,6 +47,7 @@ public class MicrogridHibernateUtil {
         config.addAnnotatedClass(Student.class);
         config.addAnnotatedClass(FloatMicrogridDatum.class);
         config.addAnnotatedClass(BooleanMicrogridDatum.class);
+        config.addAnnotatedClass(AggregateMicrogridDatum.class);
 
         ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().applySettings(config.getProperties()).build();
 
@@ -40,8 +40,23 @@ public class MicrogridSocketIOServer implements MicrogridGraphHandler, DatumHand
     private final short port;
     private SocketIOServer server;
 
+    /**
+     * interest
+     * <p>
+     * ChannelInterestSet
+     * <p>
+     * the channels our clients are plotting, by client session id (see the "subscribe" and "unsubscribe" events)
+     */
+    private final ChannelInterestSet interest;
+
     public MicrogridSocketIOServer(LiveMicrogridGraph grid, short port) {
+        this(grid, new ChannelInterestSet(), port);
+    }
+
+    public MicrogridSocketIOServer(LiveMicrogridGraph grid, ChannelInterestSet interest, short port) {
+        if (interest == null) throw new IllegalArgumentException("interest cannot be null when creating a MicrogridSocketIOServer");
         this.grid = grid;
+        this.interest = interest;
         this.port = port;
     }
 
@@ -81,6 +96,31 @@ public class MicrogridSocketIOServer implements MicrogridGraphHandler, DatumHand
             }
         });
 
+        //Event: subscribe
+        // a client started plotting the measurement whose _id is the event data, so the senders must send it at full
+        // rate (see ChannelInterestSet)
+        server.addEventListener("subscribe", String.class, new DataListener<String>() {
+            public void onData(SocketIOClient client, String measurementId, AckRequest ackRequest) {
+                interest.add(client.getSessionId().toString(), measurementId);
+            }
+        });
+
+        //Event: unsubscribe
+        // a client stopped plotting the measurement whose _id is the event data
+        server.addEventListener("unsubscribe", String.class, new DataListener<String>() {
+            public void onData(SocketIOClient client, String measurementId, AckRequest ackRequest) {
+                interest.remove(client.getSessionId().toString(), measurementId);
+            }
+        });
+
+        //Event: disconnect
+        // a client that goes away no longer plots anything
+        server.addDisconnectListener(new DisconnectListener() {
+            public void onDisconnect(SocketIOClient client) {
+                interest.removeOwner(client.getSessionId().toString());
+            }
+        });
+
         //---Netty-Socketio Start---
         server.start();
 
@@ -142,4 +182,8 @@ public class MicrogridSocketIOServer implements MicrogridGraphHandler, DatumHand
     public short getPort() {
         return port;
     }
+
+    public ChannelInterestSet getInterest() {
+        return interest;
+    }
 }
@@ -55,10 +55,17 @@
     //An array of all of the events that users of this library are allowed to register
     var _validEvents = [];
 
+    //The number of subscribers to each measurement _id (see subscribe())
+    var _subscriptions = {};
+
     //Event: connect
     // logs a message to the console when we connect to the server
+    // (re)sends our subscriptions, since a server that restarted or dropped us doesn't know them
     socket.on('connect', function(data) {
         console.info('Client has connected to the server!',data);
+        Object.keys(_subscriptions).forEach(function (measurementId) {
+            socket.emit('subscribe', measurementId);
+        });
     });
     _validEvents.push('connect');
 
@@ -104,6 +111,41 @@
         socket.on(eventName, callback);
     };
 
+    /**
+     * subscribe()
+     *
+     * tells the backend that we are watching a measurement, so the senders send it at full rate instead of a low
+     *  background rate
+     *
+     * subscriptions are counted; the backend is only told about the first subscribe() and the last unsubscribe()
+     *
+     * @param measurementId the _id of the measurement (the _id of its data)
+     */
+    exports.subscribe = function (measurementId) {
+        if (typeof measurementId !== 'string') throw new Error('client.js: call to subscribe() requires a string measurementId');
+
+        _subscriptions[measurementId] = (_subscriptions[measurementId] || 0) + 1;
+        if (_subscriptions[measurementId] === 1) socket.emit('subscribe', measurementId);
+    };
+
+    /**
+     * unsubscribe()
+     *
+     * undoes one call to subscribe()
+     *
+     * @param measurementId the _id of the measurement (the _id of its data)
+     */
+    exports.unsubscribe = function (measurementId) {
+        if (typeof measurementId !== 'string') throw new Error('client.js: call to unsubscribe() requires a string measurementId');
+        if (!_subscriptions[measurementId]) return;
+
+        _subscriptions[measurementId]--;
+        if (_subscriptions[measurementId] === 0) {
+            delete _subscriptions[measurementId];
+            socket.emit('unsubscribe', measurementId);
+        }
+    };
+
     /**
      * removeListener()
      *
@@ -16,6 +16,8 @@
  *
  * listens for the "nodeSnapshots" event
  *
+ * subscribes to the measurement it plots, so the senders send it at full rate (see client.subscribe())
+ *
  * see plot.css
  */
 (function (root, factory) {
@@ -81,8 +83,12 @@
 
         var listener = client.on('nodeSnapshots', updatePlot);
 
+        //Ask the senders to send our measurement at full rate while we plot it
+        client.subscribe(measurementId);
+
         return function destroyPlot() {
             client.removeListener('nodeSnapshots', updatePlot);
+            client.unsubscribe(measurementId);
             smoothie.stop();
         };
     };
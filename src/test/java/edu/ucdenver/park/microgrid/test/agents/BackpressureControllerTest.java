@@ -0,0 +1,63 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import edu.ucdenver.park.microgrid.agents.core.BackpressureController;
+import edu.ucdenver.park.microgrid.message.MicrogridRateControlMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackpressureControllerTest {
+    @Test
+    void shouldThrottleHeavySendersFirstAndRecoverSlowly() {
+        BackpressureController backpressure = new BackpressureController(20, 250);
+        backpressure.setControllable("heavy", true);
+        backpressure.setControllable("light", true);
+        backpressure.setControllable("legacy", false);
+
+        //Lagging: the level rises one step per period
+        for (int level = 1; level <= 2; level++) {
+            backpressure.onQueued(15);
+            backpressure.onProcessed("heavy", 300000000L, 9000);
+            backpressure.onProcessed("light", 1000, 1000);
+            backpressure.onProcessed("legacy", 1000, 9000);
+            Map<String, MicrogridRateControlMessage> changes = backpressure.tick();
+            assertEquals(level, backpressure.getLevel());
+            assertEquals(level, backpressure.getLevel("heavy"));
+            assertEquals(level - 1, backpressure.getLevel("light"));
+            assertFalse(changes.containsKey("legacy"));
+        }
+        assertEquals(100, BackpressureController.controlFor(1).getMinIntervalMillis());
+        assertEquals(4f, BackpressureController.controlFor(2).getDeadbandScale());
+
+        //Calm: nothing changes until RECOVERY_PERIODS calm periods passed
+        for (int i = 1; i < BackpressureController.RECOVERY_PERIODS; i++) {
+            backpressure.onProcessed("heavy", 1000, 9000);
+            backpressure.onProcessed("light", 1000, 1000);
+            assertTrue(backpressure.tick().isEmpty());
+        }
+        backpressure.onProcessed("heavy", 1000, 9000);
+        backpressure.onProcessed("light", 1000, 1000);
+        Map<String, MicrogridRateControlMessage> changes = backpressure.tick();
+        assertEquals(1, backpressure.getLevel());
+        assertEquals(100, changes.get("heavy").getMinIntervalMillis());
+        assertEquals(0, changes.get("light").getMinIntervalMillis());
+
+        //Overflow: every sender slows down as much as it can
+        backpressure.onOverflow();
+        backpressure.onProcessed("heavy", 1000, 9000);
+        backpressure.onProcessed("light", 1000, 1000);
+        backpressure.tick();
+        assertEquals(BackpressureController.MAX_LEVEL, backpressure.getLevel());
+        assertEquals(BackpressureController.MAX_LEVEL - 1, backpressure.getLevel("light"));
+
+        //Renegotiating encodings resets a sender
+        backpressure.setControllable("heavy", true);
+        assertEquals(0, backpressure.getLevel("heavy"));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import edu.ucdenver.park.microgrid.agents.core.ChannelSampleBuffer;
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.dummy.DummyMicrogrid;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelSampleBufferTest {
+    private static MicrogridNode generator = new MicrogridNode("microgrid-node-n1-generator", MicrogridNodeType.GENERATOR);
+
+    @Test
+    void shouldEncodeTheSameBatchAsTheData() throws IOException {
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(3, new DummyMicrogrid());
+        int voltage = dictionary.addChannel(generator, MicrogridFloatMeasurementType.VOLTAGE.get_id());
+        int fault = dictionary.addChannel(generator, MicrogridBooleanMeasurementType.FAULT.get_id());
+        assertEquals(voltage, dictionary.addChannel(
+                new FloatMicrogridDatum(0, generator, MicrogridFloatMeasurementType.VOLTAGE, 0f)));
+
+        ChannelSampleBuffer samples = new ChannelSampleBuffer(16);
+        MicrogridDatum[] data = new MicrogridDatum[6];
+        int[] handles = new int[data.length];
+        for (int i = 0; i < data.length; i += 2) {
+            assertTrue(samples.append(3, voltage, 1000 + i, 120f + i));
+            assertTrue(samples.append(3, fault, 1000 + i, i == 2));
+            data[i] = new FloatMicrogridDatum(1000 + i, generator, MicrogridFloatMeasurementType.VOLTAGE, 120f + i);
+            data[i + 1] = new BooleanMicrogridDatum(1000 + i, generator, MicrogridBooleanMeasurementType.FAULT, i == 2);
+            handles[i] = voltage;
+            handles[i + 1] = fault;
+        }
+        assertEquals(data.length, samples.size());
+
+        for (boolean compressed : new boolean[]{false, true}) {
+            assertArrayEquals(MessageCodec.encode(new MicrogridDatumBatchMessage(3, handles, data, compressed)),
+                    MessageCodec.encode(samples.toBatchMessage(compressed)));
+        }
+
+        MicrogridDatumBatchMessage decoded = (MicrogridDatumBatchMessage) MessageCodec.decode(
+                MessageCodec.encode(samples.toBatchMessage(true)));
+        FloatMicrogridDatum first = (FloatMicrogridDatum) dictionary.resolve(decoded, 0);
+        assertEquals(generator.get_id() + "-" + MicrogridFloatMeasurementType.VOLTAGE.get_id(), first.get_id());
+        assertEquals(120f, first.getValue());
+    }
+
+    @Test
+    void shouldRefuseSamplesOfAnotherVersionOrOnceFull() {
+        ChannelSampleBuffer samples = new ChannelSampleBuffer(2);
+        assertTrue(samples.append(1, 0, 0, 1f));
+        assertFalse(samples.append(2, 0, 1, 1f));
+        assertTrue(samples.append(1, 0, 1, true));
+        assertFalse(samples.append(1, 0, 2, 1f));
+        assertEquals(2, samples.size());
+        assertEquals(1, samples.getDictionaryVersion());
+
+        samples.clear();
+        assertTrue(samples.append(2, 0, 2, 1f));
+        assertEquals(2, samples.getDictionaryVersion());
+
+        try {
+            new ChannelSampleBuffer(0);
+            fail("empty buffer");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
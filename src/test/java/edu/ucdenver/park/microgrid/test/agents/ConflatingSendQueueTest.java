@@ -0,0 +1,56 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import edu.ucdenver.park.microgrid.agents.core.ConflatingSendQueue;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConflatingSendQueueTest {
+    @Test
+    void shouldReplacePendingValueInPlace() {
+        ConflatingSendQueue<String> queue = new ConflatingSendQueue<String>(10);
+        queue.offer("voltage", "voltage 1");
+        queue.offer("amperage", "amperage 1");
+        queue.offer("voltage", "voltage 2");
+
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getConflatedCount());
+        assertEquals("voltage 2", queue.poll());
+        assertEquals("amperage 1", queue.poll());
+        assertNull(queue.poll());
+
+        //Once sent, a key is queued again instead of conflated
+        queue.offer("voltage", "voltage 3");
+        assertEquals(1, queue.getConflatedCount());
+        assertEquals("voltage 3", queue.poll());
+    }
+
+    @Test
+    void shouldDropOldestDataButNeverRequiredItems() {
+        ConflatingSendQueue<String> queue = new ConflatingSendQueue<String>(2);
+        queue.add("graph");
+        queue.offer(null, "batch 1");
+        queue.offer("voltage", "voltage 1");
+        queue.add("dictionary");
+        queue.offer(null, "batch 2");
+        queue.offer("voltage", "voltage 2");
+
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(1, queue.getConflatedCount());
+        assertEquals("graph", queue.poll());
+        assertEquals("voltage 2", queue.poll());
+        assertEquals("dictionary", queue.poll());
+        assertEquals("batch 2", queue.poll());
+        assertNull(queue.poll());
+
+        for (int i = 0; i < 100; i++) {
+            queue.add("keep-alive " + i);
+        }
+        assertEquals(100, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+    }
+}
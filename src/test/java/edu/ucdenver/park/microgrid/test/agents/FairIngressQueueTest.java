@@ -0,0 +1,107 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import edu.ucdenver.park.microgrid.agents.core.FairIngressQueue;
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.dummy.DummyMicrogrid;
+import edu.ucdenver.park.microgrid.message.Message;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridBundleMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairIngressQueueTest {
+    @Test
+    void shouldServeSendersRoundRobin() {
+        FairIngressQueue<String> queue = new FairIngressQueue<String>(100);
+        for (int i = 0; i < 5; i++) {
+            queue.offer("chatty", "chatty " + i, false);
+        }
+        queue.offer("quiet", "quiet 0", false);
+        queue.offer("other", "other 0", false);
+        queue.offer("quiet", "quiet 1", false);
+
+        assertEquals(8, queue.size());
+        assertEquals(5, queue.size("chatty"));
+        assertEquals("chatty 0", queue.poll());
+        assertEquals("quiet 0", queue.poll());
+        assertEquals("other 0", queue.poll());
+        assertEquals("chatty 1", queue.poll());
+        assertEquals("quiet 1", queue.poll());
+        assertEquals("chatty 2", queue.poll());
+        assertEquals("chatty 3", queue.poll());
+        assertEquals("chatty 4", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void shouldDropOldestDataOfTheFloodingSenderOnly() {
+        FairIngressQueue<String> queue = new FairIngressQueue<String>(2);
+        assertFalse(queue.offer("quiet", "quiet 0", false));
+        assertFalse(queue.offer("chatty", "dictionary", true));
+        assertFalse(queue.offer("chatty", "batch 0", false));
+        assertFalse(queue.offer("chatty", "batch 1", false));
+        assertTrue(queue.offer("chatty", "batch 2", false));
+        assertTrue(queue.offer("chatty", "batch 3", false));
+        assertFalse(queue.offer("quiet", "quiet 1", false));
+
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(2, queue.getDroppedCount("chatty"));
+        assertEquals(0, queue.getDroppedCount("quiet"));
+        assertEquals("quiet 0", queue.poll());
+        assertEquals("dictionary", queue.poll());
+        assertEquals("quiet 1", queue.poll());
+        assertEquals("batch 2", queue.poll());
+        assertEquals("batch 3", queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.getSenders().contains("chatty"));
+        assertTrue(queue.getMaxLagNanos("chatty") >= queue.getMeanLagNanos("chatty"));
+    }
+
+    @Test
+    void shouldKeepProtectionEventsOfTheFloodingSender() throws IOException {
+        MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(2, new DummyMicrogrid());
+        FloatMicrogridDatum voltage = new FloatMicrogridDatum(1000, battery, MicrogridFloatMeasurementType.VOLTAGE, 48f);
+        BooleanMicrogridDatum fault = new BooleanMicrogridDatum(1000, battery, MicrogridBooleanMeasurementType.FAULT, true);
+        int voltageHandle = dictionary.addChannel(voltage);
+        int faultHandle = dictionary.addChannel(fault);
+        byte[] telemetry = MessageCodec.encode(new MicrogridChannelDatumMessage(2, voltageHandle, voltage));
+        byte[] protection = MessageCodec.encode(new MicrogridChannelDatumMessage(2, faultHandle, fault));
+        byte[] bundledTelemetry = MessageCodec.encode(new MicrogridBundleMessage(new Message[]{
+                new MicrogridChannelDatumMessage(2, voltageHandle, voltage),
+                new MicrogridChannelDatumMessage(2, voltageHandle, voltage)}));
+        byte[] bundledProtection = MessageCodec.encode(new MicrogridBundleMessage(new Message[]{
+                new MicrogridChannelDatumMessage(2, voltageHandle, voltage),
+                new MicrogridChannelDatumMessage(2, faultHandle, fault)}));
+        byte[] bundledDictionary = MessageCodec.encode(new MicrogridBundleMessage(new Message[]{
+                new MicrogridChannelDictionaryMessage(dictionary),
+                new MicrogridChannelDatumMessage(2, voltageHandle, voltage)}));
+
+        //The receiver queues payloads that aren't telemetry as required (see MicrogridReceiverAgent.isRequired())
+        FairIngressQueue<byte[]> queue = new FairIngressQueue<byte[]>(2);
+        byte[][] flood = {protection, bundledProtection, bundledDictionary, telemetry, bundledTelemetry,
+                telemetry, telemetry, bundledTelemetry};
+        for (byte[] payload : flood) {
+            queue.offer("chatty", payload, !MessageCodec.isTelemetry(payload));
+        }
+
+        assertEquals(3, queue.getDroppedCount("chatty"));
+        assertSame(protection, queue.poll());
+        assertSame(bundledProtection, queue.poll());
+        assertSame(bundledDictionary, queue.poll());
+        assertSame(telemetry, queue.poll());
+        assertSame(bundledTelemetry, queue.poll());
+        assertNull(queue.poll());
+    }
+}
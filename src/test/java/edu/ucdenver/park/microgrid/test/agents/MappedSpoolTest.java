@@ -0,0 +1,104 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import edu.ucdenver.park.microgrid.agents.core.MappedSpool;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedSpoolTest {
+    private static byte[] payload(int i, int length) {
+        byte[] payload = new byte[length];
+        for (int j = 0; j < length; j++) {
+            payload[j] = (byte) (i + j);
+        }
+        return payload;
+    }
+
+    @Test
+    void shouldWrapAroundAndDropOldestWhenFull() throws IOException {
+        File file = File.createTempFile("microgrid-spool", ".bin");
+        file.deleteOnExit();
+        MappedSpool spool = new MappedSpool(file, 100);
+        assertEquals(-1, spool.getOldestTimestamp());
+        assertNull(spool.poll());
+
+        //Records take 12 + 20 bytes: three fit, the fourth drops the oldest and wraps to the start
+        for (int i = 0; i < 4; i++) {
+            assertTrue(spool.append(1000 + i, payload(i, 20)));
+        }
+        assertEquals(3, spool.size());
+        assertEquals(1, spool.getDroppedCount());
+        assertEquals(1001, spool.getOldestTimestamp());
+        for (int i = 1; i < 4; i++) {
+            assertArrayEquals(payload(i, 20), spool.poll());
+        }
+        assertNull(spool.poll());
+        assertEquals(0, spool.getUsedBytes());
+
+        assertFalse(spool.append(0, new byte[100]));
+        spool.close();
+    }
+
+    @Test
+    void shouldStoreLargeRecordsThatDontFitBeforeTheEnd() throws IOException {
+        File file = File.createTempFile("microgrid-spool", ".bin");
+        file.deleteOnExit();
+        MappedSpool spool = new MappedSpool(file, 100);
+
+        //The spool is empty, but the tail is at 50 and a record of 12 + 48 bytes doesn't fit before the end
+        assertTrue(spool.append(1000, payload(0, 38)));
+        assertArrayEquals(payload(0, 38), spool.poll());
+        assertTrue(spool.append(1001, payload(1, 48)));
+        assertEquals(1, spool.size());
+        assertEquals(0, spool.getDroppedCount());
+        assertEquals(1001, spool.getOldestTimestamp());
+        assertArrayEquals(payload(1, 48), spool.poll());
+        assertNull(spool.poll());
+        assertEquals(0, spool.size());
+
+        //The same once every record before it has to be dropped
+        assertTrue(spool.append(1002, payload(2, 8)));
+        assertTrue(spool.append(1003, payload(3, 80)));
+        assertEquals(1, spool.size());
+        assertEquals(1, spool.getDroppedCount());
+        assertArrayEquals(payload(3, 80), spool.poll());
+        assertNull(spool.poll());
+        assertEquals(0, spool.size());
+        assertEquals(0, spool.getUsedBytes());
+        spool.close();
+    }
+
+    @Test
+    void shouldResumeBacklogAfterReopening() throws IOException {
+        File file = File.createTempFile("microgrid-spool", ".bin");
+        file.deleteOnExit();
+        MappedSpool spool = new MappedSpool(file, 4096);
+        for (int i = 0; i < 50; i++) {
+            spool.append(i, payload(i, 1 + i % 7));
+        }
+        for (int i = 0; i < 10; i++) {
+            spool.poll();
+        }
+        spool.close();
+
+        MappedSpool reopened = new MappedSpool(file, 4096);
+        assertEquals(40, reopened.size());
+        assertEquals(10, reopened.getOldestTimestamp());
+        for (int i = 10; i < 50; i++) {
+            assertArrayEquals(payload(i, 1 + i % 7), reopened.poll());
+        }
+        reopened.close();
+
+        //A different capacity starts over
+        MappedSpool resized = new MappedSpool(file, 2048);
+        assertEquals(0, resized.size());
+        resized.close();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import edu.ucdenver.park.microgrid.agents.core.PrioritySendQueue;
+import edu.ucdenver.park.microgrid.agents.core.PrioritySendQueue.Lane;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrioritySendQueueTest {
+    @Test
+    void shouldSendByWeightWhileEveryLaneIsBusy() {
+        PrioritySendQueue<String> queue = new PrioritySendQueue<String>(100);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(null, "telemetry");
+            queue.add(Lane.TOPOLOGY, "topology");
+            queue.add(Lane.PROTECTION, "protection");
+        }
+
+        //Protection events go first, but every round still moves topology twice
+        String[] rounds = {"protection", "protection", "protection", "protection", "topology", "topology",
+                "protection", "protection", "protection", "protection", "topology", "topology",
+                "protection", "protection", "topology", "topology",
+                //Once a lane runs dry, the others share its turns
+                "topology", "topology", "topology", "topology"};
+        for (String expected : rounds) {
+            assertEquals(expected, queue.poll());
+        }
+
+        //Telemetry never passes pending topology (it may depend on it), so it goes last
+        for (int i = 0; i < 10; i++) {
+            assertEquals("telemetry", queue.poll());
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void shouldNotLetDataPassPendingTopology() {
+        PrioritySendQueue<String> queue = new PrioritySendQueue<String>(100);
+        queue.add(Lane.TOPOLOGY, "keep-alive");
+        queue.add(Lane.TOPOLOGY, "graph");
+        queue.add(Lane.TOPOLOGY, "dictionary v2");
+        queue.offer(null, "batch encoded against v2");
+        queue.offer(Lane.RAW, null, "raw samples encoded against v2");
+        queue.add(Lane.PROTECTION, "fault");
+
+        assertEquals("fault", queue.poll());
+        assertEquals("keep-alive", queue.poll());
+        assertEquals("graph", queue.poll());
+        assertEquals("dictionary v2", queue.poll());
+        assertEquals("batch encoded against v2", queue.poll());
+        assertEquals("raw samples encoded against v2", queue.poll());
+        assertNull(queue.poll());
+
+        //Data queued after the topology is sent move again
+        queue.offer(null, "batch");
+        assertEquals("batch", queue.poll());
+    }
+
+    @Test
+    void shouldNeverDropProtectionEventsAndMeasureLatency() {
+        PrioritySendQueue<String> queue = new PrioritySendQueue<String>(2);
+        for (int i = 0; i < 50; i++) {
+            queue.add(Lane.PROTECTION, "fault " + i);
+            queue.offer("voltage " + (i % 5), "voltage " + i);
+        }
+        assertTrue(queue.hasPending(Lane.PROTECTION));
+        assertFalse(queue.hasPending(Lane.TOPOLOGY));
+        assertEquals(52, queue.size());
+        assertEquals(0, queue.getLane(Lane.PROTECTION).getDroppedCount());
+        assertEquals(48, queue.getLane(Lane.TELEMETRY).getDroppedCount());
+
+        int faults = 0;
+        String item;
+        while ((item = queue.poll()) != null) {
+            if (item.startsWith("fault")) faults++;
+        }
+        assertEquals(50, faults);
+        assertEquals(50, queue.getLane(Lane.PROTECTION).getPolledCount());
+        assertEquals(2, queue.getLane(Lane.TELEMETRY).getPolledCount());
+        assertTrue(queue.getLane(Lane.PROTECTION).getMeanLatencyNanos() >= 0);
+        assertTrue(queue.getLane(Lane.PROTECTION).getMaxLatencyNanos() >= queue.getLane(Lane.PROTECTION).getMeanLatencyNanos());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import edu.ucdenver.park.microgrid.agents.core.PrioritySendQueue.Lane;
+import edu.ucdenver.park.microgrid.agents.core.ReceiverDispatcher;
+import edu.ucdenver.park.microgrid.agents.core.ReceiverLink;
+import edu.ucdenver.park.microgrid.message.MicrogridEncodingMessage;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiverDispatcherTest {
+    private static final AID PRIMARY = new AID("primary@microgrid", AID.ISGUID);
+    private static final AID STANDBY = new AID("standby@microgrid", AID.ISGUID);
+    private static final AID LOGGER = new AID("logger@microgrid", AID.ISGUID);
+
+    /**
+     * RecordingTransport
+     * <p>
+     * remembers the payloads sent to each receiver; throws for the receiver named failing
+     */
+    private static class RecordingTransport implements ReceiverDispatcher.Transport {
+        private final Map<AID, List<byte[]>> sent = new HashMap<AID, List<byte[]>>();
+        private AID failing;
+
+        @Override
+        public void send(ReceiverLink link, byte[] payload) {
+            if (link.getReceiver().equals(failing)) throw new IllegalStateException("cannot send to " + failing);
+            if (!sent.containsKey(link.getReceiver())) sent.put(link.getReceiver(), new ArrayList<byte[]>());
+            sent.get(link.getReceiver()).add(payload);
+        }
+
+        private List<byte[]> sentTo(AID receiver) {
+            List<byte[]> payloads = sent.get(receiver);
+            return payloads == null ? new ArrayList<byte[]>() : payloads;
+        }
+    }
+
+    private static ReceiverDispatcher dispatcher() {
+        ReceiverDispatcher dispatcher = new ReceiverDispatcher(Arrays.asList(PRIMARY, STANDBY, LOGGER), 20);
+        dispatcher.setThresholds(1, 0);
+        return dispatcher;
+    }
+
+    @Test
+    void shouldShareOnePayloadWithEveryHealthyLink() {
+        ReceiverDispatcher dispatcher = dispatcher();
+        byte[] voltage = {1, 2, 3};
+        byte[] fault = {4, 5, 6};
+        assertTrue(dispatcher.queue(Lane.TELEMETRY, "voltage", voltage));
+        assertTrue(dispatcher.queue(Lane.PROTECTION, null, fault));
+        assertTrue(dispatcher.isDue());
+
+        RecordingTransport transport = new RecordingTransport();
+        assertEquals(-1, dispatcher.dispatch(transport));
+        for (AID receiver : new AID[]{PRIMARY, STANDBY, LOGGER}) {
+            List<byte[]> payloads = transport.sentTo(receiver);
+            assertEquals(2, payloads.size());
+            //Protection events go first; every receiver gets the very same arrays, nothing is encoded twice
+            assertSame(fault, payloads.get(0));
+            assertSame(voltage, payloads.get(1));
+        }
+        assertFalse(dispatcher.hasQueued());
+    }
+
+    @Test
+    void shouldKeepSendingToHealthyLinksWhenOneFails() {
+        ReceiverDispatcher dispatcher = dispatcher();
+        //The others still get the data, so nothing is handed back to be spooled
+        assertTrue(dispatcher.fail(STANDBY.getName(), null).isEmpty());
+        assertFalse(dispatcher.linkOf(STANDBY).isReachable());
+        assertTrue(dispatcher.linkOf(PRIMARY).isReachable());
+        assertTrue(dispatcher.isAnyReachable());
+
+        //Data skip the unreachable standby; topology messages still probe it
+        byte[] voltage = {1, 2, 3};
+        byte[] probe = {7, 8, 9};
+        dispatcher.queue(Lane.TELEMETRY, "voltage", voltage);
+        dispatcher.queueTopology(probe, dispatcher.linkOf(STANDBY));
+
+        //The primary throws while it is sent to; the others are sent to all the same
+        RecordingTransport transport = new RecordingTransport();
+        transport.failing = PRIMARY;
+        dispatcher.dispatch(transport);
+        assertEquals(0, transport.sentTo(PRIMARY).size());
+        assertEquals(Arrays.asList(probe), transport.sentTo(STANDBY));
+        assertEquals(Arrays.asList(voltage), transport.sentTo(LOGGER));
+
+        //Once the standby answers, it needs our subgraph again and gets data like the others
+        assertTrue(dispatcher.onReply(dispatcher.linkOf(STANDBY), null));
+        assertFalse(dispatcher.onReply(dispatcher.linkOf(STANDBY), null));
+        byte[] current = {4, 5, 6};
+        dispatcher.queue(Lane.TELEMETRY, "current", current);
+        transport.failing = null;
+        dispatcher.dispatch(transport);
+        assertSame(current, transport.sentTo(STANDBY).get(1));
+        assertSame(current, transport.sentTo(LOGGER).get(1));
+    }
+
+    @Test
+    void shouldSendTopologyBeforeTheDataThatDependOnIt() {
+        ReceiverDispatcher dispatcher = dispatcher();
+        byte[] keepAlive = {1};
+        byte[] graph = {2};
+        byte[] dictionary = {3};
+        byte[] batch = {4};
+        dispatcher.queueTopology(keepAlive, null);
+        dispatcher.queueTopology(graph, null);
+        dispatcher.queueTopology(dictionary, null);
+        dispatcher.queue(Lane.TELEMETRY, "batch", batch);
+
+        RecordingTransport transport = new RecordingTransport();
+        dispatcher.dispatch(transport);
+        for (AID receiver : new AID[]{PRIMARY, STANDBY, LOGGER}) {
+            assertEquals(Arrays.asList(keepAlive, graph, dictionary, batch), transport.sentTo(receiver));
+        }
+    }
+
+    @Test
+    void shouldOnlyUseEncodingsEveryReachableLinkAgreedTo() {
+        ReceiverDispatcher dispatcher = dispatcher();
+        int all = MicrogridEncodingMessage.XOR_FLOATS | MicrogridEncodingMessage.BUNDLES;
+        dispatcher.onReply(dispatcher.linkOf(PRIMARY), new MicrogridEncodingMessage(all));
+        dispatcher.onReply(dispatcher.linkOf(STANDBY), new MicrogridEncodingMessage(all));
+        dispatcher.onReply(dispatcher.linkOf(LOGGER), new MicrogridEncodingMessage(MicrogridEncodingMessage.BUNDLES));
+        assertEquals(MicrogridEncodingMessage.BUNDLES, dispatcher.agreedEncodings());
+
+        //An unreachable logger doesn't hold back the others
+        dispatcher.fail(LOGGER.getName(), null);
+        assertEquals(all, dispatcher.agreedEncodings());
+
+        //A FAILURE that names no receiver marks all of them unreachable
+        dispatcher.fail("unknown@microgrid", null);
+        assertFalse(dispatcher.isAnyReachable());
+        assertEquals(0, dispatcher.agreedEncodings());
+    }
+
+    @Test
+    void shouldHandBackUndeliveredDataOnceNoLinkIsReachable() {
+        ReceiverDispatcher dispatcher = new ReceiverDispatcher(Arrays.asList(PRIMARY), 20);
+        dispatcher.setThresholds(1, 0);
+        final List<ACLMessage> messages = new ArrayList<ACLMessage>();
+        ReceiverDispatcher.Transport transport = new ReceiverDispatcher.Transport() {
+            @Override
+            public void send(ReceiverLink link, byte[] payload) {
+                messages.add(link.createMessage(payload));
+            }
+        };
+        byte[] voltage = {1, 2, 3};
+        dispatcher.queue(Lane.TELEMETRY, "voltage", voltage);
+        dispatcher.dispatch(transport);
+        assertEquals(1, messages.size());
+
+        //JADE reports the failure while more messages wait in the queue
+        byte[] fault = {4, 5, 6};
+        byte[] current = {7, 8, 9};
+        byte[] graph = {10, 11, 12};
+        dispatcher.queue(Lane.PROTECTION, null, fault);
+        dispatcher.queue(Lane.TELEMETRY, "current", current);
+        dispatcher.queueTopology(graph, null);
+        List<byte[]> undelivered = dispatcher.fail(PRIMARY.getName(), messages.get(0).getReplyWith());
+        assertEquals(3, undelivered.size());
+        assertSame(voltage, undelivered.get(0));
+        assertSame(fault, undelivered.get(1));
+        assertSame(current, undelivered.get(2));
+
+        //Topology messages stay (they probe the receiver), and nothing is handed back twice
+        assertEquals(1, dispatcher.linkOf(PRIMARY).getSendQueue().size());
+        assertTrue(dispatcher.linkOf(PRIMARY).getSendQueue().hasPending(Lane.TOPOLOGY));
+        assertTrue(dispatcher.fail(PRIMARY.getName(), messages.get(0).getReplyWith()).isEmpty());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import edu.ucdenver.park.microgrid.agents.core.ReportByExceptionFilter;
+import edu.ucdenver.park.microgrid.agents.core.ReportByExceptionFilter.Deadband;
+import edu.ucdenver.park.microgrid.data.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportByExceptionFilterTest {
+    private static MicrogridNode generator = new MicrogridNode("microgrid-node-n1-generator", MicrogridNodeType.GENERATOR);
+
+    private static FloatMicrogridDatum voltage(long timestamp, float value) {
+        return new FloatMicrogridDatum(timestamp, generator, MicrogridFloatMeasurementType.VOLTAGE, value);
+    }
+
+    private static BooleanMicrogridDatum fault(long timestamp, boolean value) {
+        return new BooleanMicrogridDatum(timestamp, generator, MicrogridBooleanMeasurementType.FAULT, value);
+    }
+
+    @Test
+    void shouldSendOnlyOutsideDeadbandOrOnHeartbeat() {
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(5000);
+        filter.setDeadband(MicrogridFloatMeasurementType.VOLTAGE, Deadband.absolute(2));
+
+        assertTrue(filter.shouldSend(voltage(0, 500f)));
+        assertFalse(filter.shouldSend(voltage(100, 501.5f)));
+        //Drift is measured from the last value sent, not the last sample
+        assertTrue(filter.shouldSend(voltage(200, 502.5f)));
+        assertFalse(filter.shouldSend(voltage(300, 501f)));
+        assertTrue(filter.shouldSend(voltage(5200, 501f)));
+        assertTrue(filter.shouldSend(voltage(5300, Float.NaN)));
+        assertFalse(filter.shouldSend(voltage(5400, Float.NaN)));
+        assertEquals(3, filter.getSuppressedCount());
+
+        filter.setDeadband(MicrogridFloatMeasurementType.VOLTAGE, Deadband.percent(10));
+        assertTrue(filter.shouldSend(voltage(5500, 100f)));
+        assertFalse(filter.shouldSend(voltage(5600, 91f)));
+        assertTrue(filter.shouldSend(voltage(5700, 89f)));
+    }
+
+    @Test
+    void shouldSendBooleansOnTransitionsAndHeartbeat() {
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(1000);
+        assertTrue(filter.shouldSend(fault(0, false)));
+        assertFalse(filter.shouldSend(fault(100, false)));
+        assertTrue(filter.shouldSend(fault(200, true)));
+        assertFalse(filter.shouldSend(fault(300, true)));
+        assertTrue(filter.shouldSend(fault(1200, true)));
+
+        filter.reset();
+        assertTrue(filter.shouldSend(fault(1300, true)));
+
+        filter.setHeartbeatMillis(0);
+        assertTrue(filter.shouldSend(fault(1300, true)));
+    }
+
+    @Test
+    void shouldThrottleFloatsButNotBooleansUnderRateControl() {
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(5000);
+        filter.setDeadband(MicrogridFloatMeasurementType.VOLTAGE, Deadband.absolute(2));
+        filter.setRateControl(400, 4);
+
+        assertTrue(filter.shouldSend(voltage(0, 500f)));
+        //Too soon, even though it is far outside the deadband
+        assertFalse(filter.shouldSend(voltage(100, 520f)));
+        //Inside the widened deadband (4 x 2 V)
+        assertFalse(filter.shouldSend(voltage(500, 507f)));
+        assertTrue(filter.shouldSend(voltage(600, 509f)));
+
+        assertTrue(filter.shouldSend(fault(0, false)));
+        assertTrue(filter.shouldSend(fault(1, true)));
+
+        filter.setRateControl(0, 1);
+        assertTrue(filter.shouldSend(voltage(601, 512f)));
+
+        try {
+            filter.setRateControl(0, 0.5f);
+            fail("narrowed deadbands");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    void shouldSendUnwatchedFloatsOnlyAtBackgroundHeartbeat() {
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(5000);
+        filter.setBackgroundHeartbeatMillis(30000);
+        String watched = voltage(0, 0f).get_id();
+        filter.setInterest(Collections.<String>emptySet());
+
+        assertTrue(filter.shouldSend(voltage(0, 500f)));
+        assertFalse(filter.shouldSend(voltage(100, 600f)));
+        assertFalse(filter.shouldSend(voltage(5100, 600f)));
+        //Protection booleans are sent anyway
+        assertTrue(filter.shouldSend(fault(0, false)));
+        assertTrue(filter.shouldSend(fault(200, true)));
+        assertTrue(filter.shouldSend(voltage(30000, 600f)));
+
+        //A channel that becomes watched is sent with its next sample, then filtered as usual
+        filter.setInterest(Collections.singleton(watched));
+        assertTrue(filter.shouldSend(voltage(30100, 600f)));
+        assertFalse(filter.shouldSend(voltage(30200, 600f)));
+        assertTrue(filter.shouldSend(voltage(30300, 601f)));
+
+        filter.setInterest(null);
+        assertTrue(filter.shouldSend(voltage(30400, 602f)));
+    }
+
+    @Test
+    void shouldCutSteadyStateTrafficByAnOrderOfMagnitude() {
+        //One minute of the dummy controllers' 10 Hz ticks: constant voltage, a 10 A sine and the booleans derived from it
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(5000);
+        filter.setDeadband(MicrogridFloatMeasurementType.VOLTAGE, Deadband.percent(1));
+        filter.setDeadband(MicrogridFloatMeasurementType.AMPERAGE, Deadband.absolute(1));
+        filter.setDeadband(MicrogridFloatMeasurementType.WATTAGE, Deadband.absolute(500));
+        int samples = 0;
+        int sent = 0;
+        for (long t = 0; t < 60000; t += 100) {
+            float amperage = (float) Math.sin(t * 6.283185 / 10000) * 10;
+            float wattage = 500f * amperage;
+            MicrogridDatum[] tick = {
+                    voltage(t, 500f),
+                    new FloatMicrogridDatum(t, generator, MicrogridFloatMeasurementType.AMPERAGE, amperage),
+                    new FloatMicrogridDatum(t, generator, MicrogridFloatMeasurementType.WATTAGE, wattage),
+                    fault(t, wattage < 0),
+                    new BooleanMicrogridDatum(t, generator, MicrogridBooleanMeasurementType.WARNING, wattage > 0)
+            };
+            for (MicrogridDatum d : tick) {
+                samples++;
+                if (filter.shouldSend(d)) sent++;
+            }
+        }
+        System.out.println("Report by exception sent " + sent + " of " + samples + " dummy samples");
+        assertEquals(samples - sent, filter.getSuppressedCount());
+        assertTrue(sent * 5 < samples);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.agents;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucdenver.park.microgrid.agents.core.WindowedAggregator;
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.live.LiveMicrogridGraph;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WindowedAggregatorTest {
+    private static MicrogridNode generator = new MicrogridNode("microgrid-node-n1-generator", MicrogridNodeType.GENERATOR);
+
+    private static FloatMicrogridDatum voltage(long timestamp, float value) {
+        return new FloatMicrogridDatum(timestamp, generator, MicrogridFloatMeasurementType.VOLTAGE, value);
+    }
+
+    @Test
+    void shouldSummarizeEachWindowWhenTheNextSampleArrives() {
+        WindowedAggregator aggregator = new WindowedAggregator();
+        aggregator.setWindow(MicrogridFloatMeasurementType.VOLTAGE, 1000);
+        assertTrue(aggregator.isAggregated(voltage(0, 0f)));
+        assertFalse(aggregator.isAggregated(new FloatMicrogridDatum(0, generator, MicrogridFloatMeasurementType.AMPERAGE, 0f)));
+
+        //100 samples per second for three seconds
+        int sent = 0;
+        AggregateMicrogridDatum first = null;
+        for (int i = 0; i < 300; i++) {
+            AggregateMicrogridDatum aggregate = aggregator.add(voltage(10 * i, i % 100));
+            if (aggregate != null) {
+                sent++;
+                if (first == null) first = aggregate;
+            }
+        }
+        System.out.println("Windowed aggregation sent " + sent + " aggregates for " + aggregator.getSampleCount() + " samples");
+        assertEquals(2, sent);
+        assertEquals(2, aggregator.getAggregateCount());
+        assertEquals(300, aggregator.getSampleCount());
+
+        assertEquals(generator.get_id() + "-" + MicrogridFloatMeasurementType.VOLTAGE.get_id() + AggregateMicrogridDatum.KEY_SUFFIX, first.get_id());
+        assertSame(MicrogridFloatMeasurementType.VOLTAGE, first.getMeasurementType());
+        assertEquals(0, first.getWindowStart());
+        assertEquals(990, first.getTimestamp());
+        assertEquals(100, first.getCount());
+        assertEquals(0f, first.getMin());
+        assertEquals(99f, first.getMax());
+        assertEquals(49.5f, first.getMean());
+        assertEquals(99f, first.getLast());
+        assertEquals(99f, first.getValue());
+    }
+
+    @Test
+    void shouldStopAggregatingWhenTheWindowIsZero() {
+        WindowedAggregator aggregator = new WindowedAggregator();
+        aggregator.setWindow(MicrogridFloatMeasurementType.VOLTAGE, 1000);
+        aggregator.add(voltage(0, 1f));
+        aggregator.setWindow(MicrogridFloatMeasurementType.VOLTAGE, 0);
+        assertFalse(aggregator.isAggregated(voltage(2000, 1f)));
+        try {
+            aggregator.add(voltage(2000, 1f));
+            fail("sample of a type that isn't aggregated");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        //The discarded window isn't reported once aggregation is turned back on
+        aggregator.setWindow(MicrogridFloatMeasurementType.VOLTAGE, 1000);
+        assertNull(aggregator.add(voltage(3000, 1f)));
+        assertEquals(0, aggregator.getAggregateCount());
+    }
+
+    @Test
+    void shouldRoundTripSerializeAndIngestAggregates() throws IOException {
+        AggregateMicrogridDatum aggregate = new AggregateMicrogridDatum(1000, 1990, generator,
+                MicrogridFloatMeasurementType.VOLTAGE, 100, 118.5f, 121.25f, 120.125f, 120.5f);
+        AggregateMicrogridDatum decoded = (AggregateMicrogridDatum) ((MicrogridDatumMessage) MessageCodec.decode(
+                MessageCodec.encode(new MicrogridDatumMessage(aggregate)))).getDatum();
+        assertEquals(aggregate.get_id(), decoded.get_id());
+        assertEquals(generator, decoded.getNode());
+        assertSame(MicrogridFloatMeasurementType.VOLTAGE, decoded.getMeasurementType());
+        assertEquals(1000, decoded.getWindowStart());
+        assertEquals(1990, decoded.getTimestamp());
+        assertEquals(100, decoded.getCount());
+        assertEquals(118.5f, decoded.getMin());
+        assertEquals(121.25f, decoded.getMax());
+        assertEquals(120.125f, decoded.getMean());
+        assertEquals(120.5f, decoded.getLast());
+
+        JsonNode json = new ObjectMapper().valueToTree(decoded);
+        assertEquals(100, json.get("count").intValue());
+        assertEquals(118.5f, json.get("min").floatValue());
+        assertEquals(121.25f, json.get("max").floatValue());
+        assertEquals(120.125f, json.get("mean").floatValue());
+        assertEquals(120.5f, json.get("value").floatValue());
+        assertEquals("Volts", json.get("measurementType").get("unitName").textValue());
+
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        live.receiveMessage(new MicrogridDatumMessage(decoded));
+        assertEquals(1, live.getCurrentNodeState(generator).getMeasurements().size());
+    }
+
+    @Test
+    void shouldKeepAggregatesApartFromTheReadingsOfTheirChannel() {
+        FloatMicrogridDatum last = voltage(1990, 120.5f);
+        AggregateMicrogridDatum aggregate = new AggregateMicrogridDatum(1000, 1990, generator,
+                MicrogridFloatMeasurementType.VOLTAGE, 100, 118.5f, 121.25f, 120.125f, 120.5f);
+        assertNotEquals(last.get_id(), aggregate.get_id());
+        assertEquals(AggregateMicrogridDatum.getAggregateKey(generator, MicrogridFloatMeasurementType.VOLTAGE.get_id()), aggregate.get_id());
+
+        //A newer reading doesn't replace the aggregate, nor the aggregate the reading
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        live.receiveMessage(new MicrogridDatumMessage(last));
+        live.receiveMessage(new MicrogridDatumMessage(aggregate));
+        live.receiveMessage(new MicrogridDatumMessage(voltage(2000, 121f)));
+        Set<MicrogridDatum> measurements = live.getCurrentNodeState(generator).getMeasurements();
+        assertEquals(2, measurements.size());
+        assertTrue(measurements.contains(aggregate));
+    }
+}
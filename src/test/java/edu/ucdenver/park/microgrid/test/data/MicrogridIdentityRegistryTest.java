@@ -0,0 +1,97 @@
+package edu.ucdenver.park.microgrid.test.data;
+
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrogridIdentityRegistryTest {
+    private static MicrogridNode g = new MicrogridNode("microgrid-node-registry-g", MicrogridNodeType.GENERATOR);
+
+    @Test
+    void shouldDecodeDataWithCanonicalNodesAndIds() throws IOException {
+        FloatMicrogridDatum datum = new FloatMicrogridDatum(System.currentTimeMillis(), g, MicrogridFloatMeasurementType.VOLTAGE, 1f);
+        byte[] rawBytes = MessageCodec.encode(new MicrogridDatumMessage(datum));
+
+        MicrogridDatum first = ((MicrogridDatumMessage) MessageCodec.decode(rawBytes)).getDatum();
+        MicrogridDatum second = ((MicrogridDatumMessage) MessageCodec.decode(rawBytes)).getDatum();
+
+        assertSame(first.getNode(), second.getNode());
+        assertSame(first.get_id(), second.get_id());
+        assertSame(datum.get_id(), first.get_id());
+        assertEquals(g, first.getNode());
+    }
+
+    @Test
+    void shouldReplaceCanonicalNodeWhenTypeChanges() {
+        MicrogridIdentityRegistry registry = new MicrogridIdentityRegistry(10);
+        MicrogridNode battery = registry.node("microgrid-node-x", MicrogridNodeType.BATTERY);
+        assertSame(battery, registry.node("microgrid-node-x", MicrogridNodeType.BATTERY));
+        assertSame(battery, registry.node(new MicrogridNode("microgrid-node-x", MicrogridNodeType.BATTERY)));
+
+        MicrogridNode load = registry.node("microgrid-node-x", MicrogridNodeType.LOAD);
+        assertNotSame(battery, load);
+        assertEquals(MicrogridNodeType.LOAD, load.getMicrogridNodeType());
+        assertSame(load, registry.node("microgrid-node-x", MicrogridNodeType.LOAD));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void shouldNotAdoptNodesCallersCanModify() {
+        MicrogridIdentityRegistry registry = new MicrogridIdentityRegistry(10);
+        MicrogridNode mine = new MicrogridNode("microgrid-node-y", MicrogridNodeType.BATTERY);
+        registry.measurementKey(mine, MicrogridFloatMeasurementType.VOLTAGE.get_id());
+        MicrogridNode canonical = registry.node(mine);
+        assertNotSame(mine, canonical);
+        assertEquals(mine, canonical);
+
+        //Changing our node doesn't change the one every decoded datum shares
+        mine.setMicrogridNodeType(MicrogridNodeType.LOAD);
+        assertEquals(MicrogridNodeType.BATTERY, canonical.getMicrogridNodeType());
+        assertSame(canonical, registry.node("microgrid-node-y", MicrogridNodeType.BATTERY));
+    }
+
+    @Test
+    void shouldStayBoundedWhenFull() {
+        MicrogridIdentityRegistry registry = new MicrogridIdentityRegistry(2);
+        for (int i = 0; i < 100; i++) {
+            MicrogridNode node = registry.node("microgrid-node-" + i, MicrogridNodeType.HUB);
+            assertEquals("microgrid-node-" + i + "-1", registry.measurementKey(node, 1));
+        }
+        assertEquals(2, registry.size());
+        assertEquals(98, registry.getEvictedCount());
+        assertSame(registry.node("microgrid-node-0", MicrogridNodeType.HUB), registry.node("microgrid-node-0", MicrogridNodeType.HUB));
+        MicrogridNode first = registry.node("microgrid-node-0", MicrogridNodeType.HUB);
+        assertSame(registry.measurementKey(first, -3), registry.measurementKey(first, -3));
+        assertEquals("microgrid-node-0-1000", registry.measurementKey(first, 1000));
+    }
+
+    @Test
+    void shouldEvictTheLeastRecentlyUsedNodes() {
+        MicrogridIdentityRegistry registry = new MicrogridIdentityRegistry(8);
+        MicrogridNode[] nodes = new MicrogridNode[8];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = registry.node("microgrid-node-" + i, MicrogridNodeType.LOAD);
+        }
+
+        //The oldest two nodes are still in use; the next oldest two are evicted to make room
+        String key = registry.measurementKey(nodes[0], 1);
+        assertSame(nodes[1], registry.node(new MicrogridNode("microgrid-node-1", MicrogridNodeType.LOAD)));
+        registry.node("microgrid-node-8", MicrogridNodeType.LOAD);
+        assertEquals(7, registry.size());
+        assertEquals(2, registry.getEvictedCount());
+        assertSame(nodes[0], registry.node("microgrid-node-0", MicrogridNodeType.LOAD));
+        assertSame(key, registry.measurementKey(nodes[0], 1));
+        assertSame(nodes[1], registry.node("microgrid-node-1", MicrogridNodeType.LOAD));
+        assertSame(nodes[4], registry.node("microgrid-node-4", MicrogridNodeType.LOAD));
+
+        //An evicted node is still equal to its new canonical instance
+        MicrogridNode second = registry.node("microgrid-node-2", MicrogridNodeType.LOAD);
+        assertNotSame(nodes[2], second);
+        assertEquals(nodes[2], second);
+    }
+}
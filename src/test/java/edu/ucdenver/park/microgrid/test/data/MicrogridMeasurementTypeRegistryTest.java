@@ -0,0 +1,82 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrogridMeasurementTypeRegistryTest {
+    private static MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+
+    @Test
+    void shouldLookUpBuiltInTypesById() {
+        MicrogridMeasurementTypeRegistry registry = new MicrogridMeasurementTypeRegistry();
+        assertSame(MicrogridFloatMeasurementType.AMPERAGE, registry.getFloatType((byte) 2));
+        assertSame(MicrogridBooleanMeasurementType.CIRCUIT_BREAKER_TRIPPED, registry.getBooleanType((byte) -3));
+        assertNull(registry.getFloatType((byte) -3));
+        assertNull(registry.getBooleanType((byte) 2));
+        assertNull(registry.getFloatType((byte) 100));
+        assertNull(registry.getFloatType((byte) 0));
+        assertSame(MicrogridNodeType.HUB, MicrogridNodeType.fromId((byte) 5));
+        assertSame(MicrogridEdgeType.BUS, MicrogridEdgeType.fromId((byte) 1));
+        try {
+            MicrogridNodeType.fromId((byte) -1);
+            fail("unknown node type _id");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    void shouldRegisterTypesFromConfiguration() throws IOException {
+        MicrogridMeasurementTypeRegistry registry = new MicrogridMeasurementTypeRegistry();
+        registry.load(new ByteArrayInputStream(("{\"float\": [{\"_id\": 40, \"name\": \"Irradiance\", \"unitName\": "
+                + "\"Watts per Square Meter\", \"unitAbbreviation\": \"W/m2\", \"baseUnitType\": \"Irradiance\"}],"
+                + "\"boolean\": [{\"_id\": -40, \"name\": \"Islanded\", \"trueName\": \"Islanded\", "
+                + "\"falseName\": \"Grid Connected\"}]}").getBytes("UTF-8")));
+
+        MicrogridFloatMeasurementType irradiance = registry.getFloatType((byte) 40);
+        assertEquals("W/m2", irradiance.getUnitAbbreviation());
+        assertEquals("Grid Connected", registry.getBooleanType((byte) -40).getFalseName());
+        assertEquals(4, registry.getFloatTypes().size());
+        assertSame(irradiance, registry.registerFloatType((byte) 40, "Irradiance", "Watts per Square Meter", "W/m2", "Irradiance"));
+        try {
+            registry.registerFloatType((byte) 40, "Humidity", "Percent", "%", "Humidity");
+            fail("conflicting _id");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            registry.registerBooleanType((byte) 41, "Open", "Open", "Closed");
+            fail("positive boolean _id");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    void shouldDecodeAndSerializeConfiguredTypes() throws IOException {
+        //Frequency is registered by the measurementTypes.json resource
+        MicrogridFloatMeasurementType frequency = MicrogridFloatMeasurementType.fromId((byte) 4);
+        assertEquals("Hz", frequency.getUnitAbbreviation());
+
+        FloatMicrogridDatum datum = new FloatMicrogridDatum(1000, battery, frequency, 60.02f);
+        FloatMicrogridDatum decoded = (FloatMicrogridDatum) ((MicrogridDatumMessage) MessageCodec.decode(
+                MessageCodec.encode(new MicrogridDatumMessage(datum)))).getDatum();
+        assertSame(frequency, decoded.getMeasurementType());
+        assertEquals(battery.get_id() + "-4", decoded.get_id());
+
+        JsonNode json = new ObjectMapper().valueToTree(decoded).get("measurementType");
+        assertEquals(4, json.get("_id").intValue());
+        assertEquals("Frequency", json.get("name").textValue());
+        assertEquals("Hertz", json.get("unitName").textValue());
+    }
+}
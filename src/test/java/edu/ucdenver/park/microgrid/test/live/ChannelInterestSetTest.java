@@ -0,0 +1,48 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.live;
+
+import edu.ucdenver.park.microgrid.live.ChannelInterestSet;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridInterestMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelInterestSetTest {
+    @Test
+    void shouldTrackWatchersAndVersion() throws IOException {
+        ChannelInterestSet interest = new ChannelInterestSet();
+        interest.add("browser-1", "microgrid-node-a-g-1");
+        interest.add("browser-1", "microgrid-node-a-g-2");
+        interest.add("browser-2", "microgrid-node-a-g-1");
+        int version = interest.getVersion();
+        interest.add("browser-2", "microgrid-node-a-g-1");
+        assertEquals(version, interest.getVersion());
+
+        MicrogridInterestMessage decoded = (MicrogridInterestMessage) MessageCodec.decode(
+                MessageCodec.encode(interest.toMessage()));
+        assertFalse(decoded.isAll());
+        assertEquals(new HashSet<String>(Arrays.asList("microgrid-node-a-g-1", "microgrid-node-a-g-2")), decoded.getChannelIds());
+
+        //A browser that goes away takes its plots with it
+        interest.removeOwner("browser-1");
+        assertTrue(interest.getVersion() > version);
+        assertTrue(interest.isWatched("microgrid-node-a-g-1"));
+        assertFalse(interest.isWatched("microgrid-node-a-g-2"));
+        interest.remove("browser-2", "microgrid-node-a-g-1");
+        assertTrue(interest.toMessage().getChannelIds().isEmpty());
+
+        interest.setAllChannels("persistence", true);
+        assertTrue(interest.isWatched("microgrid-node-a-g-2"));
+        decoded = (MicrogridInterestMessage) MessageCodec.decode(MessageCodec.encode(interest.toMessage()));
+        assertTrue(decoded.isAll());
+        assertTrue(decoded.getChannelIds().isEmpty());
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.live;
+
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.data.abs.Datum;
+import edu.ucdenver.park.microgrid.dummy.DummyMicrogrid;
+import edu.ucdenver.park.microgrid.live.DatumHandler;
+import edu.ucdenver.park.microgrid.live.IngestPipeline;
+import edu.ucdenver.park.microgrid.live.LiveMicrogridGraph;
+import edu.ucdenver.park.microgrid.message.Message;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumBatchMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IngestPipelineTest {
+    /**
+     * DictionaryHandler
+     * <p>
+     * applies dictionaries the way MicrogridReceiverAgent does and counts the payloads processed
+     */
+    private static class DictionaryHandler implements IngestPipeline.Handler<Object> {
+        private final LiveMicrogridGraph live;
+        private final AtomicInteger processed = new AtomicInteger();
+
+        DictionaryHandler(LiveMicrogridGraph live) {
+            this.live = live;
+        }
+
+        public void onControl(Object context, String sender, Message message) {
+            if (message instanceof MicrogridChannelDictionaryMessage) {
+                live.receiveMessage(sender, (MicrogridChannelDictionaryMessage) message);
+            }
+        }
+
+        public void onProcessed(Object context, String sender, long lagNanos, long processingNanos) {
+            processed.incrementAndGet();
+        }
+    }
+
+    private static void drain(IngestPipeline<Object> pipeline) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pipeline.size() > 0) {
+            assert System.currentTimeMillis() < deadline;
+            Thread.sleep(1);
+        }
+    }
+
+    private static void offer(IngestPipeline<Object> pipeline, String sender, byte[] payload) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!pipeline.offer(null, sender, payload)) {
+            assert System.currentTimeMillis() < deadline;
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void shouldApplyEveryChannelInOrderAcrossShards() throws IOException, InterruptedException {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        final Map<String, List<Float>> values = new HashMap<String, List<Float>>();
+        live.registerDatumHadler(new DatumHandler() {
+            public void onDatum(Datum datum) {
+                synchronized (values) {
+                    List<Float> channel = values.get(datum.get_id());
+                    if (channel == null) {
+                        channel = new ArrayList<Float>();
+                        values.put(datum.get_id(), channel);
+                    }
+                    channel.add(((FloatMicrogridDatum) datum).getValue());
+                }
+            }
+        });
+        DictionaryHandler handler = new DictionaryHandler(live);
+        IngestPipeline<Object> pipeline = new IngestPipeline<Object>(live, 8, 3, 3, handler);
+        pipeline.start();
+
+        DummyMicrogrid grid = new DummyMicrogrid();
+        List<MicrogridNode> nodes = new ArrayList<MicrogridNode>(grid.getNodes());
+        int offered = 0;
+        for (int sender = 0; sender < 3; sender++) {
+            MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(1, grid);
+            int[] handles = new int[nodes.size()];
+            for (int i = 0; i < handles.length; i++) {
+                handles[i] = dictionary.addChannel(nodes.get(i), MicrogridFloatMeasurementType.VOLTAGE.get_id());
+            }
+            byte[] payload = MessageCodec.encode(new MicrogridChannelDictionaryMessage(dictionary));
+            while (!pipeline.offer(null, "sender-" + sender, payload)) Thread.yield();
+            offered++;
+            for (int batch = 0; batch < 50; batch++) {
+                MicrogridDatum[] data = new MicrogridDatum[handles.length];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = new FloatMicrogridDatum(1000 + batch, nodes.get(i), MicrogridFloatMeasurementType.VOLTAGE, batch);
+                }
+                payload = MessageCodec.encode(new MicrogridDatumBatchMessage(1, handles, data));
+                while (!pipeline.offer(null, "sender-" + sender, payload)) Thread.yield();
+                offered++;
+            }
+        }
+        drain(pipeline);
+        pipeline.stop();
+
+        assert handler.processed.get() == offered;
+        assert live.getUnresolvedDatumCount() == 0;
+        assert values.size() == nodes.size();
+        for (List<Float> channel : values.values()) {
+            assert channel.size() == 150;
+            for (int i = 0; i < channel.size(); i++) {
+                assert channel.get(i) == i % 50;
+            }
+        }
+    }
+
+    @Test
+    void shouldRefuseOffersWhileFull() throws IOException, InterruptedException {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        IngestPipeline<Object> pipeline = new IngestPipeline<Object>(live, 2, 1, 2, new DictionaryHandler(live));
+        byte[] payload = MessageCodec.encode(new MicrogridChannelDictionaryMessage(new MicrogridChannelDictionary(1, new DummyMicrogrid())));
+
+        assert pipeline.offer(null, "sender", payload);
+        assert pipeline.offer(null, "sender", payload);
+        assert !pipeline.offer(null, "sender", payload);
+        assert pipeline.size() == 2;
+
+        pipeline.start();
+        drain(pipeline);
+        assert pipeline.offer(null, "sender", payload);
+        drain(pipeline);
+        pipeline.stop();
+        try {
+            pipeline.start();
+            assert false;
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    void shouldWakeParkedThreadsAndCallBackOnceNotFull() throws IOException, InterruptedException {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        DictionaryHandler handler = new DictionaryHandler(live);
+        IngestPipeline<Object> pipeline = new IngestPipeline<Object>(live, 1, 2, 2, handler);
+        byte[] payload = MessageCodec.encode(new MicrogridChannelDictionaryMessage(new MicrogridChannelDictionary(1, new DummyMicrogrid())));
+        final AtomicInteger callbacks = new AtomicInteger();
+        Runnable callback = new Runnable() {
+            public void run() {
+                callbacks.incrementAndGet();
+            }
+        };
+
+        assert pipeline.offer(null, "sender", payload);
+        assert pipeline.isFull();
+        pipeline.whenNotFull(callback);
+        assert callbacks.get() == 0;
+
+        //The threads find the payload right away, and park once idle
+        pipeline.start();
+        drain(pipeline);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (callbacks.get() == 0) {
+            assert System.currentTimeMillis() < deadline;
+            Thread.sleep(1);
+        }
+        assert callbacks.get() == 1;
+        Thread.sleep(50);
+
+        //Parked threads are woken by the next payload
+        assert pipeline.offer(null, "sender", payload);
+        drain(pipeline);
+        assert handler.processed.get() == 2;
+        pipeline.whenNotFull(callback);
+        assert callbacks.get() == 2;
+        pipeline.stop();
+    }
+
+    @Test
+    void shouldKeepApplyingWhenDatumHandlersThrow() throws IOException, InterruptedException {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        live.registerDatumHadler(new DatumHandler() {
+            public void onDatum(Datum datum) {
+                throw new IllegalStateException("Queue full");
+            }
+        });
+        DictionaryHandler handler = new DictionaryHandler(live);
+        IngestPipeline<Object> pipeline = new IngestPipeline<Object>(live, 2, 1, 2, handler);
+        pipeline.start();
+
+        DummyMicrogrid grid = new DummyMicrogrid();
+        MicrogridNode node = grid.getNodes().iterator().next();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(1, grid);
+        int handle = dictionary.addChannel(node, MicrogridFloatMeasurementType.VOLTAGE.get_id());
+        byte[] payload = MessageCodec.encode(new MicrogridChannelDictionaryMessage(dictionary));
+        offer(pipeline, "sender", payload);
+        for (int i = 0; i < 10; i++) {
+            MicrogridDatum datum = new FloatMicrogridDatum(1000 + i, node, MicrogridFloatMeasurementType.VOLTAGE, i);
+            payload = MessageCodec.encode(new MicrogridDatumBatchMessage(1, new int[]{handle}, new MicrogridDatum[]{datum}));
+            offer(pipeline, "sender", payload);
+        }
+        drain(pipeline);
+        pipeline.stop();
+
+        assert handler.processed.get() == 11;
+        assert !pipeline.isFull();
+    }
+
+    @Test
+    void shouldKeepDecodingWhenPayloadsCannotBeRead() throws InterruptedException {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        DictionaryHandler handler = new DictionaryHandler(live);
+        IngestPipeline<Object> pipeline = new IngestPipeline<Object>(live, 2, 1, 1, handler);
+        pipeline.start();
+
+        //A bundle claiming 2^31 - 1 messages, an unknown format and a truncated header
+        byte[][] payloads = {
+                {MessageCodec.MAGIC, MessageCodec.VERSION, 10, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+                {1, 2, 3, 4},
+                {MessageCodec.MAGIC}
+        };
+        for (int i = 0; i < 10; i++) {
+            offer(pipeline, "sender", payloads[i % payloads.length]);
+        }
+        drain(pipeline);
+        pipeline.stop();
+
+        assert handler.processed.get() == 10;
+        assert !pipeline.isFull();
+    }
+
+    @Test
+    void shouldApplyAChannelInOrderWhateverFormItIsSentIn() throws IOException, InterruptedException {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        final List<Float> values = new ArrayList<Float>();
+        live.registerDatumHadler(new DatumHandler() {
+            public void onDatum(Datum datum) {
+                synchronized (values) {
+                    values.add(((FloatMicrogridDatum) datum).getValue());
+                }
+            }
+        });
+        DictionaryHandler handler = new DictionaryHandler(live);
+        IngestPipeline<Object> pipeline = new IngestPipeline<Object>(live, 8, 3, 4, handler);
+        pipeline.start();
+
+        DummyMicrogrid grid = new DummyMicrogrid();
+        MicrogridNode node = grid.getNodes().iterator().next();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(1, grid);
+        int handle = dictionary.addChannel(node, MicrogridFloatMeasurementType.VOLTAGE.get_id());
+        offer(pipeline, "sender", MessageCodec.encode(new MicrogridChannelDictionaryMessage(dictionary)));
+        for (int i = 0; i < 200; i++) {
+            MicrogridDatum datum = new FloatMicrogridDatum(1000 + i, node, MicrogridFloatMeasurementType.VOLTAGE, i);
+            //The sender falls back to full data for some values of a channel (see MicrogridSenderAgent.sendFloat())
+            offer(pipeline, "sender", MessageCodec.encode(i % 3 == 0 ? new MicrogridDatumMessage(datum)
+                    : new MicrogridDatumBatchMessage(1, new int[]{handle}, new MicrogridDatum[]{datum})));
+        }
+        drain(pipeline);
+        pipeline.stop();
+
+        assert values.size() == 200;
+        for (int i = 0; i < values.size(); i++) {
+            assert values.get(i) == i;
+        }
+    }
+}
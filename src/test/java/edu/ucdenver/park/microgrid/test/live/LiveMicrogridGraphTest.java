@@ -4,12 +4,26 @@
  */
 package edu.ucdenver.park.microgrid.test.live;
 
-import edu.ucdenver.park.microgrid.data.MicrogridGraph;
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.data.abs.Datum;
 import edu.ucdenver.park.microgrid.dummy.DummyMicrogrid;
+import edu.ucdenver.park.microgrid.live.DatumHandler;
 import edu.ucdenver.park.microgrid.live.LiveMicrogridGraph;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionary;
+import edu.ucdenver.park.microgrid.message.MicrogridChannelDictionaryMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphKeepAliveMessage;
 import edu.ucdenver.park.microgrid.message.MicrogridGraphMessage;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 class LiveMicrogridGraphTest {
     @Test
     void shouldStartWithEmptyState() {
@@ -43,4 +57,170 @@ class LiveMicrogridGraphTest {
         assert state.getNodes().size() == 0;
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldRenewExpiredGraphWithKeepAlive() {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        DummyMicrogrid grid = new DummyMicrogrid();
+        live.receiveMessage(new MicrogridGraphMessage(grid, System.currentTimeMillis()-1000));
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(new MicrogridChannelDictionary(5, grid)));
+
+        assert live.receiveMessage("sender", new MicrogridGraphKeepAliveMessage(grid.get_id(), grid.getContentHash(), 5, System.currentTimeMillis()+60000));
+        MicrogridGraph state = live.getCurrentState();
+
+        assert state.getEdges().size() == grid.getEdges().size();
+        assert state.getNodes().size() == grid.getNodes().size();
+    }
+
+    @Test
+    void shouldRejectKeepAliveForUnknownVersions() {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        DummyMicrogrid grid = new DummyMicrogrid();
+        long expiration = System.currentTimeMillis()+60000;
+
+        assert !live.receiveMessage("sender", new MicrogridGraphKeepAliveMessage(grid.get_id(), grid.getContentHash(), 5, expiration));
+
+        live.receiveMessage(new MicrogridGraphMessage(grid, System.currentTimeMillis()-1000));
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(new MicrogridChannelDictionary(5, grid)));
+        assert !live.receiveMessage("sender", new MicrogridGraphKeepAliveMessage(grid.get_id(), grid.getContentHash()+1, 5, expiration));
+        assert !live.receiveMessage("sender", new MicrogridGraphKeepAliveMessage(grid.get_id(), grid.getContentHash(), 6, expiration));
+        assert live.getCurrentState().getNodes().size() == 0;
+    }
+
+    @Test
+    void shouldResolveOnlyTheLatestChannelValueForSnapshots() {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(2, new DummyMicrogrid());
+        MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+        FloatMicrogridDatum first = new FloatMicrogridDatum(1000, battery, MicrogridFloatMeasurementType.VOLTAGE, 47f);
+        FloatMicrogridDatum second = new FloatMicrogridDatum(2000, battery, MicrogridFloatMeasurementType.VOLTAGE, 48f);
+        int handle = dictionary.addChannel(first);
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(dictionary));
+
+        live.receiveMessage("sender", new MicrogridChannelDatumMessage(2, handle, first));
+        live.receiveMessage("sender", new MicrogridChannelDatumMessage(2, handle, second));
+        live.receiveMessage("sender", new MicrogridChannelDatumMessage(2, handle + 1, second));
+
+        assert live.getUnresolvedDatumCount() == 1;
+        assert live.getCurrentNodeState(battery).getMeasurements().size() == 1;
+        FloatMicrogridDatum latest = (FloatMicrogridDatum) live.getCurrentNodeState(battery).getMeasurements().iterator().next();
+        assert latest.get_id().equals(second.get_id());
+        assert latest.getTimestamp() == 2000;
+        assert latest.getValue() == 48f;
+    }
+
+    @Test
+    void shouldCountChannelsOfUnregisteredTypesAsUnresolved() {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        DummyMicrogrid grid = new DummyMicrogrid();
+        live.receiveMessage(new MicrogridGraphMessage(grid, System.currentTimeMillis() + 60000));
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(2, grid);
+        MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+        //The sender knows a float type 99 that this receiver never registered
+        int handle = dictionary.addChannel(battery, (byte) 99);
+        assert dictionary.getChannelKey(handle, false) == null;
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(dictionary));
+
+        FloatMicrogridDatum value = new FloatMicrogridDatum(1000, battery, MicrogridFloatMeasurementType.VOLTAGE, 47f);
+        live.receiveMessage("sender", new MicrogridChannelDatumMessage(2, handle, value));
+
+        assert live.getUnresolvedDatumCount() == 1;
+        assert dictionary.resolve(handle, 1000, false, false, 47f) == null;
+        assert live.getCurrentNodeState(battery).getMeasurements().isEmpty();
+
+        //Snapshots of every node still work
+        live.receiveMessage(new MicrogridDatumMessage(value));
+        assert live.getCurrentStateForAllNodes().size() == 1;
+    }
+
+    @Test
+    void shouldSnapshotOnlyTheMeasurementsOfEachNode() {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(2, new DummyMicrogrid());
+        MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+        MicrogridNode generator = new MicrogridNode("microgrid-node-n1-generator", MicrogridNodeType.GENERATOR);
+        FloatMicrogridDatum voltage = new FloatMicrogridDatum(1000, battery, MicrogridFloatMeasurementType.VOLTAGE, 48f);
+        FloatMicrogridDatum current = new FloatMicrogridDatum(1000, battery, MicrogridFloatMeasurementType.AMPERAGE, 2f);
+        FloatMicrogridDatum generated = new FloatMicrogridDatum(1000, generator, MicrogridFloatMeasurementType.VOLTAGE, 120f);
+        int handle = dictionary.addChannel(voltage);
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(dictionary));
+
+        //One of battery's values arrives through the dictionary, the others as whole data
+        live.receiveMessage("sender", new MicrogridChannelDatumMessage(2, handle, voltage));
+        live.receiveMessage(new MicrogridDatumMessage(current));
+        live.receiveMessage(new MicrogridDatumMessage(generated));
+
+        Set<MicrogridDatum> batteryData = live.getCurrentNodeState(battery).getMeasurements();
+        assert batteryData.size() == 2;
+        assert batteryData.contains(voltage) && batteryData.contains(current);
+        Set<MicrogridDatum> generatorData = live.getCurrentNodeState(generator).getMeasurements();
+        assert generatorData.size() == 1;
+        assert generatorData.contains(generated);
+        assert live.getCurrentNodeState(new MicrogridNode("microgrid-node-n2-battery", MicrogridNodeType.BATTERY)).getMeasurements().isEmpty();
+    }
+
+    @Test
+    void shouldResolveEveryChannelValueForDatumHandlers() {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        final List<Datum> handled = new ArrayList<Datum>();
+        live.registerDatumHadler(new DatumHandler() {
+            public void onDatum(Datum datum) {
+                handled.add(datum);
+            }
+        });
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(2, new DummyMicrogrid());
+        MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+        BooleanMicrogridDatum fault = new BooleanMicrogridDatum(1000, battery, MicrogridBooleanMeasurementType.FAULT, true);
+        int handle = dictionary.addChannel(fault);
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(dictionary));
+
+        live.receiveMessage("sender", new MicrogridChannelDatumMessage(2, handle, fault));
+        live.receiveMessage("sender", new MicrogridChannelDatumMessage(2, handle, fault));
+
+        assert handled.size() == 2;
+        assert handled.get(1).get_id().equals(fault.get_id());
+    }
+
+    @Test
+    void shouldIgnoreStaleDictionaryAnnouncements() throws IOException {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(5, new DummyMicrogrid());
+        MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+        FloatMicrogridDatum voltage = new FloatMicrogridDatum(1000, battery, MicrogridFloatMeasurementType.VOLTAGE, 48f);
+        BooleanMicrogridDatum fault = new BooleanMicrogridDatum(1000, battery, MicrogridBooleanMeasurementType.FAULT, true);
+
+        //The sender announced voltage, then (ahead of it) fault; the first announcement arrives last
+        dictionary.addChannel(voltage);
+        byte[] older = MessageCodec.encode(new MicrogridChannelDictionaryMessage(dictionary));
+        int faultHandle = dictionary.addChannel(fault);
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(dictionary));
+        live.receiveMessage("sender", (MicrogridChannelDictionaryMessage) MessageCodec.decode(older));
+
+        live.receiveMessage("sender", new MicrogridChannelDatumMessage(5, faultHandle, fault));
+        assert live.getUnresolvedDatumCount() == 0;
+        assert live.getCurrentNodeState(battery).getMeasurements().size() == 1;
+    }
+
+    @Test
+    void shouldNotReplaceNewerValuesWithReplayedHistory() {
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+        live.receiveMessage(new MicrogridDatumMessage(
+                new FloatMicrogridDatum(2000, battery, MicrogridFloatMeasurementType.VOLTAGE, 48f)));
+        live.receiveMessage(new MicrogridDatumMessage(
+                new FloatMicrogridDatum(1000, battery, MicrogridFloatMeasurementType.VOLTAGE, 12f)));
+
+        Datum latest = live.getCurrentNodeState(battery).getMeasurements().iterator().next();
+        assert latest.getTimestamp() == 2000;
+    }
+
+    @Test
+    void shouldHashGraphContentIndependentOfOrder() {
+        MicrogridGraph a = new DummyMicrogrid();
+        MicrogridGraph b = new MicrogridGraph(a.get_id());
+        b = b.union(a.get_id(), a);
+        MicrogridGraph smaller = new MicrogridGraph(a.get_id(), a.getEdges(), new HashSet<MicrogridNode>());
+
+        assert a.getContentHash() == b.getContentHash();
+        assert a.getContentHash() != smaller.getContentHash();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.live;
+
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.live.MergedMicrogridGraph;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergedMicrogridGraphTest {
+    private static MicrogridNode hub = new MicrogridNode("microgrid-node-central-hub", MicrogridNodeType.HUB);
+    private static MicrogridNode a = new MicrogridNode("microgrid-node-a-g", MicrogridNodeType.GENERATOR);
+    private static MicrogridNode b = new MicrogridNode("microgrid-node-b-l", MicrogridNodeType.LOAD);
+
+    /**
+     * makeSubgraph()
+     *
+     * @return a subgraph with _id id holding node, the central hub and a bus between them
+     */
+    private static MicrogridGraph makeSubgraph(String id, MicrogridNode node) {
+        Set<MicrogridNode> nodes = new HashSet<MicrogridNode>();
+        nodes.add(node);
+        nodes.add(hub);
+        Set<MicrogridEdge> edges = new HashSet<MicrogridEdge>();
+        edges.add(new MicrogridEdge("microgrid-edge-" + node.get_id(), node, hub, MicrogridEdgeType.BUS));
+        return new MicrogridGraph(id, edges, nodes);
+    }
+
+    @Test
+    void shouldKeepSharedNodesUntilTheLastSubgraphExpires() {
+        MergedMicrogridGraph merged = new MergedMicrogridGraph("merged");
+        MicrogridGraph subgraphA = makeSubgraph("microgrid-graph-a", a);
+        MicrogridGraph subgraphB = makeSubgraph("microgrid-graph-b", b);
+        merged.put(subgraphA, subgraphA.getContentHash(), 1000);
+        merged.put(subgraphB, subgraphB.getContentHash(), 2000);
+
+        MicrogridGraph union = merged.get(500);
+        assertEquals(3, union.getNodes().size());
+        assertEquals(2, union.getEdges().size());
+
+        union = merged.get(1500);
+        assertEquals(2, union.getNodes().size());
+        assertTrue(union.getNodes().contains(hub));
+        assertFalse(union.getNodes().contains(a));
+        assertEquals(1, union.getEdges().size());
+
+        assertEquals(0, merged.get(2000).getNodes().size());
+    }
+
+    @Test
+    void shouldOnlyRebuildWhenTheTopologyChanges() {
+        MergedMicrogridGraph merged = new MergedMicrogridGraph("merged");
+        MicrogridGraph subgraphA = makeSubgraph("microgrid-graph-a", a);
+        merged.put(subgraphA, subgraphA.getContentHash(), 1000);
+        MicrogridGraph union = merged.get(500);
+
+        //The same subgraph again (or a keep-alive) only moves the expiration
+        merged.put(subgraphA, subgraphA.getContentHash(), 3000);
+        assertSame(union, merged.get(1500));
+
+        //A new version replaces the old one
+        MicrogridGraph replacement = makeSubgraph("microgrid-graph-a", b);
+        merged.put(replacement, replacement.getContentHash(), 3000);
+        MicrogridGraph changed = merged.get(1500);
+        assertNotSame(union, changed);
+        assertTrue(changed.getNodes().contains(b));
+        assertFalse(changed.getNodes().contains(a));
+        assertEquals(2, changed.getNodes().size());
+        try {
+            changed.getNodes().add(a);
+            fail("the union must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            //expected
+        }
+    }
+}
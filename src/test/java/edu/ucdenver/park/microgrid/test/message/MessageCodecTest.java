@@ -0,0 +1,141 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.message;
+
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.dummy.DummyMicrogrid;
+import edu.ucdenver.park.microgrid.message.Message;
+import edu.ucdenver.park.microgrid.message.ByteBufferDataOutput;
+import edu.ucdenver.park.microgrid.message.MessageCodec;
+import edu.ucdenver.park.microgrid.message.MicrogridBundleMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridDatumMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridGraphMessage;
+import edu.ucdenver.park.microgrid.message.MicrogridRateControlMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+    private static MicrogridNode g = new MicrogridNode("microgrid-node-a-g", MicrogridNodeType.GENERATOR);
+
+    /**
+     * legacyEncode()
+     *
+     * @return m encoded the way MicrogridSenderAgent used to encode messages (ObjectOutputStream framing)
+     */
+    private static byte[] legacyEncode(Message m) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        m.writeExternal(out);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    @Test
+    void shouldEncodeAndDecodeFloatDatumMessage() throws IOException {
+        long now = System.currentTimeMillis();
+        MicrogridDatumMessage message = new MicrogridDatumMessage(
+                new FloatMicrogridDatum(now, g, MicrogridFloatMeasurementType.VOLTAGE, 3.14159f));
+
+        byte[] rawBytes = MessageCodec.encode(message);
+        System.out.println("Size of codec datum message is: " + rawBytes.length + " bytes (legacy: " + legacyEncode(message).length + " bytes)");
+
+        assertEquals(MessageCodec.MAGIC, rawBytes[0]);
+        assertEquals(1, rawBytes[1]);
+
+        Message decoded = MessageCodec.decode(rawBytes);
+        assertTrue(decoded instanceof MicrogridDatumMessage);
+        FloatMicrogridDatum datum = (FloatMicrogridDatum) ((MicrogridDatumMessage) decoded).getDatum();
+        assertEquals(message.getDatum().get_id(), datum.get_id());
+        assertEquals(now, datum.getTimestamp());
+        assertEquals(g, datum.getNode());
+        assertEquals(MicrogridNodeType.GENERATOR, datum.getNode().getMicrogridNodeType());
+        assertEquals(MicrogridFloatMeasurementType.VOLTAGE, datum.getMeasurementType());
+        assertEquals(3.14159f, datum.getValue());
+    }
+
+    @Test
+    void shouldEncodeAndDecodeGraphMessage() throws IOException {
+        MicrogridGraphMessage message = new MicrogridGraphMessage(new DummyMicrogrid(), 12345L);
+
+        byte[] rawBytes = MessageCodec.encode(message);
+        System.out.println("Size of codec graph message is: " + rawBytes.length + " bytes (legacy: " + legacyEncode(message).length + " bytes)");
+
+        MicrogridGraphMessage decoded = (MicrogridGraphMessage) MessageCodec.decode(rawBytes);
+        assertEquals(12345L, decoded.getExpirationMillis());
+        assertEquals(message.getSubgraph().get_id(), decoded.getSubgraph().get_id());
+        assertEquals(message.getSubgraph().getNodes(), decoded.getSubgraph().getNodes());
+        assertEquals(message.getSubgraph().getEdges(), decoded.getSubgraph().getEdges());
+    }
+
+    @Test
+    void shouldDecodeLegacyObjectStreamPayloads() throws IOException {
+        long now = System.currentTimeMillis();
+        MicrogridDatumMessage message = new MicrogridDatumMessage(
+                new BooleanMicrogridDatum(now, g, MicrogridBooleanMeasurementType.FAULT, true));
+
+        MicrogridDatumMessage decoded = (MicrogridDatumMessage) MessageCodec.decode(legacyEncode(message));
+        BooleanMicrogridDatum datum = (BooleanMicrogridDatum) decoded.getDatum();
+        assertEquals(now, datum.getTimestamp());
+        assertEquals(MicrogridBooleanMeasurementType.FAULT, datum.getMeasurementType());
+        assertTrue(datum.getValue());
+    }
+
+    @Test
+    void shouldEncodeAndDecodeRateControlMessage() throws IOException {
+        MicrogridRateControlMessage decoded = (MicrogridRateControlMessage) MessageCodec.decode(
+                MessageCodec.encode(new MicrogridRateControlMessage(800, 16f)));
+        assertEquals(800, decoded.getMinIntervalMillis());
+        assertEquals(16f, decoded.getDeadbandScale());
+
+        byte[] rawBytes = MessageCodec.encode(new MicrogridRateControlMessage(0, 1f));
+        rawBytes[rawBytes.length - 4] = 0; //deadband scale 0
+        try {
+            MessageCodec.decode(rawBytes);
+            fail("decode() should reject a deadband scale below 1");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    @Test
+    void shouldRejectNewerCodecVersions() throws IOException {
+        byte[] rawBytes = MessageCodec.encode(new MicrogridGraphMessage(new DummyMicrogrid(), 0));
+        rawBytes[1] = (byte) (MessageCodec.VERSION + 1);
+        try {
+            MessageCodec.decode(rawBytes);
+            fail("decode() should reject a payload from a newer codec version");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    @Test
+    void shouldWriteTheOldestVersionThatCanReadThePayload() throws IOException {
+        MicrogridDatumMessage reading = new MicrogridDatumMessage(
+                new FloatMicrogridDatum(1990, g, MicrogridFloatMeasurementType.VOLTAGE, 120.5f));
+        MicrogridDatumMessage aggregate = new MicrogridDatumMessage(new AggregateMicrogridDatum(1000, 1990, g,
+                MicrogridFloatMeasurementType.VOLTAGE, 100, 118.5f, 121.25f, 120.125f, 120.5f));
+        byte[] readingBytes = MessageCodec.encode(reading);
+        byte[] aggregateBytes = MessageCodec.encode(aggregate);
+
+        //Receivers that only read version 1 still read everything but aggregates
+        assertEquals(1, readingBytes[1]);
+        assertEquals(2, aggregateBytes[1]);
+        assertEquals(MessageCodec.VERSION, aggregateBytes[1]);
+        assertEquals(1, MessageCodec.encode(new MicrogridBundleMessage(new Message[]{reading, reading}))[1]);
+        assertEquals(2, MessageCodec.encode(new MicrogridBundleMessage(new Message[]{reading, aggregate}))[1]);
+        ByteBufferDataOutput out = new ByteBufferDataOutput(128);
+        MessageCodec.encodeBundle(out, new byte[][]{readingBytes, aggregateBytes}, 2);
+        byte[] bundleBytes = out.toByteArray();
+        assertEquals(2, bundleBytes[1]);
+        assertEquals(2, ((MicrogridBundleMessage) MessageCodec.decode(bundleBytes)).size());
+        assertTrue(((MicrogridDatumMessage) MessageCodec.decode(aggregateBytes)).getDatum() instanceof AggregateMicrogridDatum);
+    }
+}
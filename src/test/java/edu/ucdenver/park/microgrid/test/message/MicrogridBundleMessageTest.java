@@ -0,0 +1,84 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.message;
+
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.dummy.DummyMicrogrid;
+import edu.ucdenver.park.microgrid.message.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrogridBundleMessageTest {
+    private static MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+
+    @Test
+    void shouldBundleEncodedPayloadsWithoutDecodingThem() throws IOException {
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(12, new DummyMicrogrid());
+        FloatMicrogridDatum voltage = new FloatMicrogridDatum(1525559622009L, battery, MicrogridFloatMeasurementType.VOLTAGE, 48.5f);
+        int handle = dictionary.addChannel(voltage);
+        Message[] messages = {
+                new MicrogridChannelDictionaryMessage(dictionary),
+                new MicrogridChannelDatumMessage(12, handle, voltage),
+                new MicrogridDatumMessage(voltage)
+        };
+
+        byte[][] payloads = new byte[messages.length][];
+        int singleBytes = 0;
+        for (int i = 0; i < messages.length; i++) {
+            payloads[i] = MessageCodec.encode(messages[i]);
+            singleBytes += payloads[i].length;
+        }
+        ByteBufferDataOutput out = new ByteBufferDataOutput(16);
+        MessageCodec.encodeBundle(out, payloads, payloads.length);
+        byte[] rawBytes = out.toByteArray();
+        System.out.println("Size of codec bundle of " + messages.length + " messages is: " + rawBytes.length
+                + " bytes (" + singleBytes + " bytes in separate payloads)");
+
+        //Bundling payloads and bundling messages write the same bytes
+        assertArrayEquals(MessageCodec.encode(new MicrogridBundleMessage(messages)), rawBytes);
+
+        MicrogridBundleMessage decoded = (MicrogridBundleMessage) MessageCodec.decode(rawBytes);
+        assertEquals(messages.length, decoded.size());
+        for (int i = 0; i < messages.length; i++) {
+            assertEquals(messages[i].getClass(), decoded.getMessage(i).getClass());
+            assertArrayEquals(payloads[i], MessageCodec.encode(decoded.getMessage(i)));
+        }
+    }
+
+    @Test
+    void shouldNotNestBundles() {
+        MicrogridBundleMessage inner = new MicrogridBundleMessage(new Message[]{new MicrogridEncodingMessage(1)});
+        try {
+            new MicrogridBundleMessage(new Message[]{inner});
+            fail("bundles cannot be nested");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    void shouldRejectCorruptCountsAndLengthsBeforeAllocating() {
+        byte[][] corrupt = {
+                //A count of 2^31 - 1 messages in eight bytes
+                {MessageCodec.MAGIC, MessageCodec.VERSION, 10, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+                //One message of 2^31 - 1 bytes
+                {MessageCodec.MAGIC, MessageCodec.VERSION, 10, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+                //One empty message
+                {MessageCodec.MAGIC, MessageCodec.VERSION, 10, 1, 0, 6}
+        };
+        for (byte[] payload : corrupt) {
+            assertFalse(MessageCodec.isTelemetry(payload));
+            try {
+                MessageCodec.decode(payload);
+                fail("corrupt bundles cannot be decoded");
+            } catch (IOException e) {
+                //expected
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.message;
+
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.dummy.DummyMicrogrid;
+import edu.ucdenver.park.microgrid.message.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrogridChannelDictionaryTest {
+    private static MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+    private static MicrogridNode outsider = new MicrogridNode("microgrid-node-z", MicrogridNodeType.LOAD);
+
+    @Test
+    void shouldResolveChannelDatumMessagesAfterRoundTrip() throws IOException {
+        long now = System.currentTimeMillis();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(7, new DummyMicrogrid());
+        FloatMicrogridDatum voltage = new FloatMicrogridDatum(now, battery, MicrogridFloatMeasurementType.VOLTAGE, 48.5f);
+        BooleanMicrogridDatum fault = new BooleanMicrogridDatum(now, battery, MicrogridBooleanMeasurementType.FAULT, true);
+
+        assertEquals(-1, dictionary.getChannelHandle(voltage));
+        int voltageHandle = dictionary.addChannel(voltage);
+        int faultHandle = dictionary.addChannel(fault);
+        assertEquals(0, voltageHandle);
+        assertEquals(1, faultHandle);
+        assertEquals(voltageHandle, dictionary.addChannel(voltage));
+        assertEquals(voltageHandle, dictionary.getChannelHandle(voltage));
+
+        MicrogridChannelDictionaryMessage dictionaryMessage = (MicrogridChannelDictionaryMessage) MessageCodec.decode(
+                MessageCodec.encode(new MicrogridChannelDictionaryMessage(dictionary)));
+        MicrogridChannelDictionary received = dictionaryMessage.getDictionary();
+        assertEquals(7, received.getVersion());
+        assertEquals(2, received.getChannelCount());
+
+        byte[] rawBytes = MessageCodec.encode(new MicrogridChannelDatumMessage(7, voltageHandle, voltage));
+        System.out.println("Size of codec channel datum message is: " + rawBytes.length + " bytes (full datum message: "
+                + MessageCodec.encode(new MicrogridDatumMessage(voltage)).length + " bytes)");
+
+        FloatMicrogridDatum resolvedVoltage = (FloatMicrogridDatum) received.resolve(
+                (MicrogridChannelDatumMessage) MessageCodec.decode(rawBytes));
+        assertEquals(voltage.get_id(), resolvedVoltage.get_id());
+        assertEquals(now, resolvedVoltage.getTimestamp());
+        assertEquals(battery, resolvedVoltage.getNode());
+        assertEquals(MicrogridNodeType.BATTERY, resolvedVoltage.getNode().getMicrogridNodeType());
+        assertEquals(MicrogridFloatMeasurementType.VOLTAGE, resolvedVoltage.getMeasurementType());
+        assertEquals(48.5f, resolvedVoltage.getValue());
+
+        BooleanMicrogridDatum resolvedFault = (BooleanMicrogridDatum) received.resolve((MicrogridChannelDatumMessage)
+                MessageCodec.decode(MessageCodec.encode(new MicrogridChannelDatumMessage(7, faultHandle, fault))));
+        assertEquals(fault.get_id(), resolvedFault.get_id());
+        assertEquals(MicrogridBooleanMeasurementType.FAULT, resolvedFault.getMeasurementType());
+        assertTrue(resolvedFault.getValue());
+    }
+
+    @Test
+    void shouldEncodeChannelDatumWithoutMessageIntoReusedBuffer() throws IOException {
+        FloatMicrogridDatum voltage = new FloatMicrogridDatum(1525559622009L, battery, MicrogridFloatMeasurementType.VOLTAGE, 48.5f);
+        BooleanMicrogridDatum fault = new BooleanMicrogridDatum(1525559622009L, battery, MicrogridBooleanMeasurementType.FAULT, true);
+        ByteBufferDataOutput out = new ByteBufferDataOutput(4);
+
+        for (MicrogridDatum datum : new MicrogridDatum[]{voltage, fault}) {
+            out.reset();
+            MessageCodec.encodeChannelDatum(out, 300, 5, datum);
+            assertArrayEquals(MessageCodec.encode(new MicrogridChannelDatumMessage(300, 5, datum)), out.toByteArray());
+        }
+    }
+
+    @Test
+    void shouldNotResolveStaleOrUnknownHandles() {
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(3, new DummyMicrogrid());
+        FloatMicrogridDatum voltage = new FloatMicrogridDatum(0, battery, MicrogridFloatMeasurementType.VOLTAGE, 1f);
+        int handle = dictionary.addChannel(voltage);
+
+        assertNull(dictionary.resolve(new MicrogridChannelDatumMessage(2, handle, voltage)));
+        assertNull(dictionary.resolve(new MicrogridChannelDatumMessage(3, handle + 1, voltage)));
+        assertNotNull(dictionary.resolve(new MicrogridChannelDatumMessage(3, handle, voltage)));
+    }
+
+    @Test
+    void shouldNotAddChannelsForNodesOutsideTheSubgraph() {
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(0, new DummyMicrogrid());
+        assertEquals(-1, dictionary.addChannel(
+                new FloatMicrogridDatum(0, outsider, MicrogridFloatMeasurementType.AMPERAGE, 1f)));
+        assertEquals(0, dictionary.getChannelCount());
+    }
+
+    @Test
+    void shouldResolveEveryDataMessageInABundle() throws IOException {
+        long now = System.currentTimeMillis();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(7, new DummyMicrogrid());
+        FloatMicrogridDatum voltage = new FloatMicrogridDatum(now, battery, MicrogridFloatMeasurementType.VOLTAGE, 48.5f);
+        FloatMicrogridDatum current = new FloatMicrogridDatum(now, battery, MicrogridFloatMeasurementType.AMPERAGE, 2f);
+        BooleanMicrogridDatum fault = new BooleanMicrogridDatum(now, battery, MicrogridBooleanMeasurementType.FAULT, true);
+        FloatMicrogridDatum outside = new FloatMicrogridDatum(now, outsider, MicrogridFloatMeasurementType.VOLTAGE, 1f);
+        int voltageHandle = dictionary.addChannel(voltage);
+        int faultHandle = dictionary.addChannel(fault);
+        int currentHandle = dictionary.addChannel(current);
+
+        //Everything a sender may have queued: channel data, batches, full data, control messages and stale data
+        byte[][] payloads = {
+                MessageCodec.encode(new MicrogridChannelDatumMessage(7, voltageHandle, voltage)),
+                MessageCodec.encode(new MicrogridDatumBatchMessage(7, new int[]{faultHandle, currentHandle},
+                        new MicrogridDatum[]{fault, current}, true)),
+                MessageCodec.encode(new MicrogridDatumMessage(outside)),
+                MessageCodec.encode(new MicrogridChannelDictionaryMessage(dictionary)),
+                MessageCodec.encode(new MicrogridChannelDatumMessage(6, voltageHandle, voltage))
+        };
+        ByteBufferDataOutput out = new ByteBufferDataOutput(256);
+        MessageCodec.encodeBundle(out, payloads, payloads.length);
+
+        List<MicrogridDatum> data = new ArrayList<MicrogridDatum>();
+        dictionary.resolve(MessageCodec.decode(out.toByteArray()), data);
+        assertEquals(4, data.size());
+        assertEquals(voltage.get_id(), data.get(0).get_id());
+        assertEquals(48.5f, ((FloatMicrogridDatum) data.get(0)).getValue());
+        assertEquals(fault.get_id(), data.get(1).get_id());
+        assertTrue(((BooleanMicrogridDatum) data.get(1)).getValue());
+        assertEquals(current.get_id(), data.get(2).get_id());
+        assertEquals(2f, ((FloatMicrogridDatum) data.get(2)).getValue());
+        assertEquals(outside.get_id(), data.get(3).get_id());
+    }
+
+    @Test
+    void shouldRejectCorruptCountsBeforeAllocating() throws IOException {
+        //A node count, channel count or node handle off the wire that is too large or negative is an IOException
+        int[][] corrupt = {
+                {7, Integer.MAX_VALUE},
+                {7, MicrogridChannelDictionary.MAX_NODES + 1},
+                {7, -1},
+                {7, 0, MicrogridChannelDictionary.MAX_CHANNELS + 1},
+                {7, 0, -1},
+                {7, 0, 1, -1}
+        };
+        for (int[] varInts : corrupt) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int varInt : varInts) {
+                if (varInt == -1) {
+                    //writeVarInt() refuses negative values, but a five byte varint can still decode to one
+                    out.write(new byte[]{-1, -1, -1, -1, 0x0F});
+                } else {
+                    MessageCodec.writeVarInt(out, varInt);
+                }
+            }
+            try {
+                MicrogridChannelDictionary.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+                fail("corrupt dictionary " + Arrays.toString(varInts));
+            } catch (IOException expected) {
+            }
+        }
+    }
+}
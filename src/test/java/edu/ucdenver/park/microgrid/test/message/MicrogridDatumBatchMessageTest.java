@@ -0,0 +1,178 @@
+/*
+ * This file is subject to the terms and conditions defined in
+ * file 'LICENSE', which is part of this source code package.
+ */
+package edu.ucdenver.park.microgrid.test.message;
+
+import edu.ucdenver.park.microgrid.data.*;
+import edu.ucdenver.park.microgrid.dummy.DummyMicrogrid;
+import edu.ucdenver.park.microgrid.live.LiveMicrogridGraph;
+import edu.ucdenver.park.microgrid.message.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrogridDatumBatchMessageTest {
+    private static MicrogridNode generator = new MicrogridNode("microgrid-node-n1-generator", MicrogridNodeType.GENERATOR);
+    private static MicrogridNode battery = new MicrogridNode("microgrid-node-n1-battery", MicrogridNodeType.BATTERY);
+
+    /**
+     * makeTick()
+     *
+     * @return the data a controller samples in one tick (same shape as the dummy controller agents)
+     */
+    private static MicrogridDatum[] makeTick(long now, float value, boolean fault) {
+        return new MicrogridDatum[]{
+                new FloatMicrogridDatum(now, generator, MicrogridFloatMeasurementType.VOLTAGE, value),
+                new FloatMicrogridDatum(now, generator, MicrogridFloatMeasurementType.AMPERAGE, value / 2),
+                new FloatMicrogridDatum(now, battery, MicrogridFloatMeasurementType.AMPERAGE, value / 3),
+                new FloatMicrogridDatum(now, generator, MicrogridFloatMeasurementType.WATTAGE, value * 2),
+                new BooleanMicrogridDatum(now, generator, MicrogridBooleanMeasurementType.FAULT, fault),
+                new BooleanMicrogridDatum(now, generator, MicrogridBooleanMeasurementType.WARNING, !fault),
+                new BooleanMicrogridDatum(now, battery, MicrogridBooleanMeasurementType.CIRCUIT_BREAKER_TRIPPED, fault)
+        };
+    }
+
+    @Test
+    void shouldEncodeColumnsAndResolveEveryRow() throws IOException {
+        long now = System.currentTimeMillis();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(11, new DummyMicrogrid());
+
+        //Two ticks in one batch, interleaved the way they were sampled
+        MicrogridDatum[] first = makeTick(now, 120f, false);
+        MicrogridDatum[] second = makeTick(now + 100, 121f, true);
+        MicrogridDatum[] data = new MicrogridDatum[first.length * 2];
+        int[] handles = new int[data.length];
+        for (int i = 0; i < first.length; i++) {
+            data[i] = first[i];
+            data[first.length + i] = second[i];
+        }
+        for (int i = 0; i < data.length; i++) {
+            handles[i] = dictionary.addChannel(data[i]);
+        }
+
+        byte[] rawBytes = MessageCodec.encode(new MicrogridDatumBatchMessage(11, handles, data));
+        int singleBytes = 0;
+        for (int i = 0; i < data.length; i++) {
+            singleBytes += MessageCodec.encode(new MicrogridChannelDatumMessage(11, handles[i], data[i])).length;
+        }
+        System.out.println("Size of codec batch message with " + data.length + " data is: " + rawBytes.length
+                + " bytes (" + singleBytes + " bytes as channel datum messages)");
+
+        MicrogridDatumBatchMessage decoded = (MicrogridDatumBatchMessage) MessageCodec.decode(rawBytes);
+        assertEquals(11, decoded.getDictionaryVersion());
+        assertEquals(data.length, decoded.size());
+
+        //Rows come back grouped by channel, in the order they were added within each channel
+        for (int row = 0; row < decoded.size(); row++) {
+            MicrogridDatum datum = dictionary.resolve(decoded, row);
+            int handle = decoded.getChannelHandle(row);
+            MicrogridDatum expected = (row % 2 == 0 ? first : second)[handle];
+            assertEquals(handle, row / 2);
+            assertEquals(expected.get_id(), datum.get_id());
+            assertEquals(expected.getTimestamp(), datum.getTimestamp());
+            assertEquals(expected.getNode(), datum.getNode());
+            if (expected instanceof FloatMicrogridDatum) {
+                assertEquals(((FloatMicrogridDatum) expected).getValue(), ((FloatMicrogridDatum) datum).getValue());
+            } else {
+                assertEquals(((BooleanMicrogridDatum) expected).getValue(), ((BooleanMicrogridDatum) datum).getValue());
+            }
+        }
+    }
+
+    @Test
+    void shouldIngestBatchIntoLiveMicrogridGraph() {
+        long now = System.currentTimeMillis();
+        MicrogridChannelDictionary dictionary = new MicrogridChannelDictionary(4, new DummyMicrogrid());
+        MicrogridDatum[] data = makeTick(now, 48f, true);
+        int[] handles = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            handles[i] = dictionary.addChannel(data[i]);
+        }
+        MicrogridDatumBatchMessage batch = new MicrogridDatumBatchMessage(4, handles, data);
+
+        LiveMicrogridGraph live = new LiveMicrogridGraph();
+        live.receiveMessage("sender", batch);
+        assertEquals(data.length, live.getUnresolvedDatumCount());
+
+        live.receiveMessage("sender", new MicrogridChannelDictionaryMessage(dictionary));
+        live.receiveMessage("sender", batch);
+        assertEquals(data.length, live.getUnresolvedDatumCount());
+        assertEquals(5, live.getCurrentNodeState(generator).getMeasurements().size());
+        assertEquals(2, live.getCurrentNodeState(battery).getMeasurements().size());
+    }
+
+    /**
+     * assertSameRows()
+     * <p>
+     * asserts that two batches contain the same rows (comparing float bits so that NaN and -0 count)
+     */
+    private static void assertSameRows(MicrogridDatumBatchMessage expected, MicrogridDatumBatchMessage actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.getChannelHandle(row), actual.getChannelHandle(row));
+            assertEquals(expected.getTimestamp(row), actual.getTimestamp(row));
+            assertEquals(expected.isBooleanValue(row), actual.isBooleanValue(row));
+            assertEquals(expected.getBooleanValue(row), actual.getBooleanValue(row));
+            assertEquals(Float.floatToRawIntBits(expected.getFloatValue(row)), Float.floatToRawIntBits(actual.getFloatValue(row)));
+        }
+    }
+
+    @Test
+    void shouldCompressExampleDataDump() throws IOException {
+        List<MicrogridDatum> data = new ArrayList<MicrogridDatum>();
+        BufferedReader reader = new BufferedReader(new FileReader("docs/exampleDataDump.csv"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] columns = line.split(",");
+            data.add(new FloatMicrogridDatum(Long.parseLong(columns[0]), generator,
+                    MicrogridFloatMeasurementType.WATTAGE, Float.parseFloat(columns[1])));
+        }
+        reader.close();
+
+        MicrogridDatum[] rows = data.toArray(new MicrogridDatum[data.size()]);
+        int[] handles = new int[rows.length];
+        MicrogridDatumBatchMessage plain = new MicrogridDatumBatchMessage(1, handles, rows);
+        MicrogridDatumBatchMessage compressed = new MicrogridDatumBatchMessage(1, handles, rows, true);
+
+        byte[] plainBytes = MessageCodec.encode(plain);
+        byte[] compressedBytes = MessageCodec.encode(compressed);
+        System.out.println("Size of " + rows.length + " row example data dump batch: " + plainBytes.length
+                + " bytes plain, " + compressedBytes.length + " bytes compressed");
+        assertTrue(compressedBytes.length < plainBytes.length);
+
+        MicrogridDatumBatchMessage decoded = (MicrogridDatumBatchMessage) MessageCodec.decode(compressedBytes);
+        assertTrue(decoded.isCompressed());
+        assertSameRows(plain, decoded);
+    }
+
+    @Test
+    void shouldRoundTripCompressedEdgeCases() throws IOException {
+        Random random = new Random(42);
+        MicrogridDatum[] rows = new MicrogridDatum[2000];
+        int[] handles = new int[rows.length];
+        float[] special = {Float.NaN, -0f, 0f, Float.MAX_VALUE, Float.MIN_VALUE, Float.NEGATIVE_INFINITY};
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < rows.length; i++) {
+            //Timestamps jump by every delta-of-delta size, including backwards
+            timestamp += random.nextInt(5) == 0 ? (long) (random.nextGaussian() * 100000000L) : random.nextInt(300);
+            handles[i] = random.nextInt(6);
+            if (handles[i] == 5) {
+                rows[i] = new BooleanMicrogridDatum(timestamp, battery, MicrogridBooleanMeasurementType.FAULT, random.nextBoolean());
+            } else {
+                float value = random.nextInt(10) == 0 ? special[random.nextInt(special.length)] : (float) random.nextGaussian();
+                rows[i] = new FloatMicrogridDatum(timestamp, generator, MicrogridFloatMeasurementType.VOLTAGE, value);
+            }
+        }
+
+        MicrogridDatumBatchMessage compressed = new MicrogridDatumBatchMessage(9, handles, rows, true);
+        assertSameRows(compressed, (MicrogridDatumBatchMessage) MessageCodec.decode(MessageCodec.encode(compressed)));
+    }
+}